@@ -48,15 +48,28 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    testOptions {
+        unitTests {
+            // ControlLoop 등이 android.util.Log 를 부르므로 JVM 테스트에서는 기본값을 돌려준다
+            isReturnDefaultValues = true
+            all {
+                // 소크 테스트 길이: ./gradlew :app:testDebugUnitTest -PsoakSeconds=600
+                it.systemProperty("soak.seconds", project.findProperty("soakSeconds") ?: "2")
+            }
+        }
+    }
 }
 
 dependencies {
+    implementation(project(":protocol"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     implementation(libs.okhttp)
     testImplementation(libs.junit)
+    testImplementation(project(":simulator"))
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.workisgood.abcv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 연결 하나에 붙는 블루투스 쓰기 전용 루프. 자기 스레드(start())나 연결의 실행기(start(Executor)) 위에서 돈다.
+ * 호출자는 enqueue 로 명령을 넣고 바로 돌아가며, 스레드는 쌓인 명령을 이어 붙여
+ * write + flush 한 번으로 보낸다. RFCOMM 소켓이 막혀도 메인 스레드는 멈추지 않는다.
+ */
+final class BluetoothWriter {
+
+    interface Listener {
+        void onWriteFailed(IOException e);
+
+        /** write + flush 가 끝난 명령마다 writer 스레드에서 불린다. command 는 enqueue 한 바로 그 배열이다. */
+        default void onWritten(byte[] command, long writtenAtNanos) {
+        }
+    }
+
+    private static final int MAX_WRITE_SIZE = 256;
+
+    private final OutputStream outputStream;
+    private final Listener listener;
+    private final CommandQueue queue;
+    private final byte[] writeBuffer = new byte[MAX_WRITE_SIZE];
+    // 마지막 write 에 들어간 명령들 (명령은 최소 1바이트라 MAX_WRITE_SIZE 개를 넘지 않는다)
+    private final byte[][] written = new byte[MAX_WRITE_SIZE][];
+    private int writtenCount;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    // 루프를 돌리는 스레드. 시작 전에는 null
+    private volatile Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean parked;
+
+    private final AtomicLong rejectedCommands = new AtomicLong();
+    private volatile long writes;
+    private volatile long bytesWritten;
+    private volatile long lastWriteNanos;
+    private volatile long maxWriteNanos;
+    private volatile long totalWriteNanos;
+
+    BluetoothWriter(OutputStream outputStream, int queueCapacity, Listener listener) {
+        this.outputStream = outputStream;
+        this.listener = listener;
+        this.queue = new CommandQueue(queueCapacity);
+    }
+
+    void start() {
+        new Thread(this::run, "bt-writer").start();
+    }
+
+    /** 실행기의 스레드 하나를 stop 까지 차지한다 */
+    void start(Executor executor) {
+        executor.execute(this::run);
+    }
+
+    /** 블로킹 없이 큐에 넣는다. 멈췄거나 큐가 가득 차면 false */
+    boolean enqueue(byte[] command) {
+        if (!running || command.length > MAX_WRITE_SIZE || !queue.offer(command)) {
+            rejectedCommands.incrementAndGet();
+            return false;
+        }
+        Thread t = thread;
+        if (parked && t != null) {
+            LockSupport.unpark(t);
+        }
+        return true;
+    }
+
+    /**
+     * 새 명령은 더 받지 않고, 이미 들어온 명령은 drainTimeoutMs 안에서 내보낸다.
+     * 그래도 막혀 있는 write 는 호출자가 소켓을 닫아야 풀린다.
+     */
+    void stop(long drainTimeoutMs) {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        if (Thread.currentThread() == t) {
+            return;
+        }
+        try {
+            finished.await(drainTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isRunning() {
+        return running && finished.getCount() > 0;
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    long getRejectedCommands() {
+        return rejectedCommands.get();
+    }
+
+    long getWrites() {
+        return writes;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    long getMaxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    long getAverageWriteNanos() {
+        long count = writes;
+        return count == 0 ? 0 : totalWriteNanos / count;
+    }
+
+    private void run() {
+        thread = Thread.currentThread();
+        try {
+            runLoop();
+        } finally {
+            thread = null;
+            finished.countDown();
+        }
+    }
+
+    private void runLoop() {
+        while (running || !queue.isEmpty()) {
+            int length = drain();
+            if (length == 0) {
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                outputStream.write(writeBuffer, 0, length);
+                outputStream.flush();
+            } catch (IOException e) {
+                if (running) {
+                    running = false;
+                    listener.onWriteFailed(e);
+                }
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            lastWriteNanos = elapsed;
+            totalWriteNanos += elapsed;
+            if (elapsed > maxWriteNanos) {
+                maxWriteNanos = elapsed;
+            }
+            bytesWritten += length;
+            writes++;
+            long end = start + elapsed;
+            for (int i = 0; i < writtenCount; i++) {
+                listener.onWritten(written[i], end);
+                written[i] = null;
+            }
+        }
+    }
+
+    // 지금 큐에 있는 명령을 한 번의 write 에 들어갈 만큼 이어 붙인다
+    private int drain() {
+        int length = 0;
+        int next;
+        writtenCount = 0;
+        while ((next = queue.peekLength()) >= 0) {
+            if (length + next > writeBuffer.length) {
+                break;
+            }
+            byte[] command = queue.poll();
+            System.arraycopy(command, 0, writeBuffer, length, command.length);
+            length += command.length;
+            written[writtenCount++] = command;
+        }
+        return length;
+    }
+}
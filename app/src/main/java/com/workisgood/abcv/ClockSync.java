@@ -0,0 +1,124 @@
+package com.workisgood.abcv;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket ping/pong 으로 서버 시계와의 차이(offset)와 왕복 시간(RTT)을 추정한다. NTP 와 같은 방식이다.
+ *
+ * <pre>
+ * 앱 → 서버  {"type":"ping","data":{"seq":n,"t0":보낸 시각}}
+ * 서버 → 앱  {"type":"pong","data":{"seq":n,"t0":t0 그대로,"t1":받은 서버 시각,"t2":보낸 서버 시각}}
+ * offset = ((t1 - t0) + (t2 - t3)) / 2,  rtt = (t3 - t0) - (t2 - t1)   (t3 = pong 받은 시각)
+ * </pre>
+ * 앱 쪽 시각(t0, t3)은 벽시계가 아니라 단조 시계(nanoTime)를 ms 로 바꾼 값이라,
+ * offset 은 단조 시계 → 서버 epoch ms 변환값이 된다. 벽시계가 바뀌어도 흔들리지 않는다.
+ * 최근 SAMPLES 개 중 RTT 가 가장 짧은 표본의 offset 을 쓴다. 큐 대기로 늘어난 표본은 비대칭이라 덜 믿을 만하다.
+ * 아직 pong 을 못 받았으면 기기 벽시계 기준으로 변환한다.
+ */
+final class ClockSync {
+
+    private static final int SAMPLES = 8;
+    private static final long MAX_RTT_MS = 60_000L;
+
+    private final long[] sampleOffsetMs = new long[SAMPLES];
+    private final long[] sampleRttMs = new long[SAMPLES];
+    private int sampleCount;
+    private int sampleNext;
+    private long nextSeq = 1;
+    private long pongs;
+    private long rejected;
+    private long smoothedRttMs = -1;
+
+    private final LatencyHistogram rttMillis = new LatencyHistogram(MAX_RTT_MS);
+
+    // 변환은 텔레메트리 스레드에서 락 없이 한다
+    private volatile long offsetMs;
+    private volatile long bestRttMs = -1;
+    private volatile boolean synced;
+
+    /** wallMs, nowNanos 는 같은 순간의 System.currentTimeMillis() 와 System.nanoTime() */
+    ClockSync(long wallMs, long nowNanos) {
+        offsetMs = wallMs - TimeUnit.NANOSECONDS.toMillis(nowNanos);
+    }
+
+    /** 단조 시계 값을 서버 시계 epoch ms 로 바꾼다 */
+    long toServerMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + offsetMs;
+    }
+
+    /** ping 메시지를 만든다. 보내기 직전에 부른다. */
+    synchronized String buildPing(long nowNanos) {
+        return "{\"type\":\"ping\",\"data\":{\"seq\":" + (nextSeq++)
+                + ",\"t0\":" + TimeUnit.NANOSECONDS.toMillis(nowNanos) + "}}";
+    }
+
+    /**
+     * pong 하나를 반영한다. t3Nanos 는 메시지를 받은 순간의 nanoTime 이다.
+     * 앞뒤가 맞지 않는 표본(음수 RTT, 미래의 t0)은 버리고 false
+     */
+    synchronized boolean onPong(long t0Ms, long t1Ms, long t2Ms, long t3Nanos) {
+        long t3Ms = TimeUnit.NANOSECONDS.toMillis(t3Nanos);
+        long rtt = (t3Ms - t0Ms) - (t2Ms - t1Ms);
+        if (t0Ms > t3Ms || t2Ms < t1Ms || rtt < 0 || rtt > MAX_RTT_MS) {
+            rejected++;
+            return false;
+        }
+        pongs++;
+        long offset = ((t1Ms - t0Ms) + (t2Ms - t3Ms)) / 2;
+        sampleOffsetMs[sampleNext] = offset;
+        sampleRttMs[sampleNext] = rtt;
+        sampleNext = (sampleNext + 1) % SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, SAMPLES);
+        rttMillis.record(rtt);
+        smoothedRttMs = smoothedRttMs < 0 ? rtt : smoothedRttMs + (rtt - smoothedRttMs) / 8;
+
+        int best = 0;
+        for (int i = 1; i < sampleCount; i++) {
+            if (sampleRttMs[i] < sampleRttMs[best]) {
+                best = i;
+            }
+        }
+        offsetMs = sampleOffsetMs[best];
+        bestRttMs = sampleRttMs[best];
+        synced = true;
+        return true;
+    }
+
+    boolean isSynced() {
+        return synced;
+    }
+
+    /** 단조 시계 ms + offset = 서버 epoch ms */
+    long getOffsetMs() {
+        return offsetMs;
+    }
+
+    /** offset 을 고른 표본의 RTT. 아직 없으면 -1 */
+    long getBestRttMs() {
+        return bestRttMs;
+    }
+
+    /** 최근 RTT 의 지수 이동 평균(1/8). 아직 없으면 -1 */
+    synchronized long getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    LatencyHistogram getRttMillis() {
+        return rttMillis;
+    }
+
+    /**
+     * "clock":{...} 형태로 붙인다. wallSkewMs 는 (서버 시각 추정 - 기기 벽시계) 라서
+     * 기기 시계가 얼마나 틀렸는지 보여 준다.
+     */
+    synchronized void appendJson(StringBuilder sb, long wallMs, long nowNanos) {
+        sb.append("\"clock\":{\"synced\":").append(synced)
+                .append(",\"pongs\":").append(pongs)
+                .append(",\"rejected\":").append(rejected)
+                .append(",\"rttMs\":").append(smoothedRttMs)
+                .append(",\"bestRttMs\":").append(bestRttMs)
+                .append(",\"rttP99Ms\":").append(rttMillis.getPercentile(99))
+                .append(",\"wallSkewMs\":").append(toServerMillis(nowNanos) - wallMs)
+                .append('}');
+    }
+}
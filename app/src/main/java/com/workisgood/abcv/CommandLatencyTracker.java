@@ -0,0 +1,189 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+/**
+ * 보낸 명령이 텔레메트리에 반영되기까지 걸린 시간을 잰다.
+ * 명령을 보낼 때 그룹(주행/조향/팔)별로 그 시점의 목표값을 기준으로 잡아 두고,
+ * 목표값이 기준과 달라진 첫 텔레메트리 프레임이 오면 경과 시간을 히스토그램(µs)에 기록한다.
+ * 그룹마다 동시에 하나만 측정하므로 버튼을 누르고 있는 동안의 반복 전송은 새 측정을 만들지 않는다.
+ */
+final class CommandLatencyTracker {
+
+    static final int GROUP_DRIVE = 0;
+    static final int GROUP_STEER = 1;
+    static final int GROUP_ARM = 2;
+    static final int GROUP_COUNT = 3;
+
+    private static final String[] GROUP_NAMES = {"drive", "steer", "arm"};
+    private static final long MAX_LATENCY_MICROS = 10_000_000L;
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final long timeoutNanos;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[GROUP_COUNT];
+    private final long[] timeouts = new long[GROUP_COUNT];
+
+    // 측정 중인 그룹 비트. 텔레메트리 경로는 이 값이 0 이면 락 없이 돌아간다
+    private volatile int pendingGroups;
+    private final long[] probeStartNanos = new long[GROUP_COUNT];
+    private final int[][] baselines = new int[GROUP_COUNT][4];
+
+    // 마지막으로 본 목표값 (리더 스레드가 갱신)
+    private final int[] latestDrive = {UNKNOWN, UNKNOWN};
+    private final int[] latestSteer = {UNKNOWN};
+    private final int[] latestArm = {UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN};
+
+    CommandLatencyTracker(long timeoutNanos) {
+        this.timeoutNanos = timeoutNanos;
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            histograms[i] = new LatencyHistogram(MAX_LATENCY_MICROS);
+        }
+    }
+
+    /** ControlState 입력 비트들이 속한 그룹 비트마스크 */
+    static int groupsForInputs(int inputs) {
+        int groups = 0;
+        if ((inputs & (ControlState.DRIVE_FORWARD | ControlState.DRIVE_BACKWARD)) != 0) {
+            groups |= 1 << GROUP_DRIVE;
+        }
+        if ((inputs & (ControlState.DRIVE_LEFT | ControlState.DRIVE_RIGHT)) != 0) {
+            groups |= 1 << GROUP_STEER;
+        }
+        if ((inputs & ~(ControlState.DRIVE_FORWARD | ControlState.DRIVE_BACKWARD
+                | ControlState.DRIVE_LEFT | ControlState.DRIVE_RIGHT)) != 0) {
+            groups |= 1 << GROUP_ARM;
+        }
+        return groups;
+    }
+
+    synchronized void onCommandSent(int groups, long nowNanos) {
+        for (int group = 0; group < GROUP_COUNT; group++) {
+            int bit = 1 << group;
+            if ((groups & bit) == 0) {
+                continue;
+            }
+            if ((pendingGroups & bit) != 0) {
+                if (nowNanos - probeStartNanos[group] < timeoutNanos) {
+                    continue;
+                }
+                timeouts[group]++;
+            }
+            probeStartNanos[group] = nowNanos;
+            int[] latest = latestFor(group);
+            System.arraycopy(latest, 0, baselines[group], 0, latest.length);
+            pendingGroups |= bit;
+        }
+    }
+
+    void onTelemetry(TelemetryParser parser, int type, long nowNanos) {
+        int group;
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                group = GROUP_DRIVE;
+                latestDrive[parser.motor.side] = parser.motor.targetThrottle;
+                break;
+            case TelemetryParser.TYPE_STEERING:
+                group = GROUP_STEER;
+                latestSteer[0] = parser.steering.targetAngle;
+                break;
+            case TelemetryParser.TYPE_ARM:
+                group = GROUP_ARM;
+                latestArm[0] = parser.arm.tgtBottom;
+                latestArm[1] = parser.arm.tgtLinkOne;
+                latestArm[2] = parser.arm.tgtLinkTwo;
+                latestArm[3] = parser.arm.tgtGrip;
+                break;
+            default:
+                return;
+        }
+        if ((pendingGroups & (1 << group)) != 0) {
+            checkProbe(group, nowNanos);
+        }
+    }
+
+    LatencyHistogram getHistogram(int group) {
+        return histograms[group];
+    }
+
+    synchronized long getTimeouts(int group) {
+        return timeouts[group];
+    }
+
+    /** "commandLatency":{"drive":{...},...} 형태로 붙인다. 값은 µs */
+    synchronized void appendJson(StringBuilder sb) {
+        sb.append("\"commandLatency\":{");
+        for (int group = 0; group < GROUP_COUNT; group++) {
+            LatencyHistogram h = histograms[group];
+            if (group > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(GROUP_NAMES[group]).append("\":{")
+                    .append("\"count\":").append(h.getCount())
+                    .append(",\"p50Us\":").append(h.getPercentile(50))
+                    .append(",\"p90Us\":").append(h.getPercentile(90))
+                    .append(",\"p99Us\":").append(h.getPercentile(99))
+                    .append(",\"maxUs\":").append(h.getMax())
+                    .append(",\"timeouts\":").append(timeouts[group])
+                    .append('}');
+        }
+        sb.append('}');
+    }
+
+    /** 오버레이용 한 줄 요약. 값은 ms */
+    synchronized void appendSummary(StringBuilder sb) {
+        sb.append("cmd→tlm ms");
+        for (int group = 0; group < GROUP_COUNT; group++) {
+            LatencyHistogram h = histograms[group];
+            sb.append("  ").append(GROUP_NAMES[group])
+                    .append(" p50 ").append(h.getPercentile(50) / 1000)
+                    .append(" p99 ").append(h.getPercentile(99) / 1000)
+                    .append(" n").append(h.getCount());
+            if (timeouts[group] > 0) {
+                sb.append(" t/o ").append(timeouts[group]);
+            }
+        }
+    }
+
+    private synchronized void checkProbe(int group, long nowNanos) {
+        int bit = 1 << group;
+        if ((pendingGroups & bit) == 0) {
+            return;
+        }
+        long elapsed = nowNanos - probeStartNanos[group];
+        if (elapsed > timeoutNanos) {
+            timeouts[group]++;
+            pendingGroups &= ~bit;
+            return;
+        }
+        int[] latest = latestFor(group);
+        int[] baseline = baselines[group];
+        boolean changed = false;
+        for (int i = 0; i < latest.length; i++) {
+            if (latest[i] == UNKNOWN) {
+                continue;
+            }
+            if (baseline[i] == UNKNOWN) {
+                // 명령 전 값을 몰랐으면 처음 본 값을 기준으로 삼는다
+                baseline[i] = latest[i];
+            } else if (baseline[i] != latest[i]) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            histograms[group].record(elapsed / 1000L);
+            pendingGroups &= ~bit;
+        }
+    }
+
+    private int[] latestFor(int group) {
+        switch (group) {
+            case GROUP_DRIVE:
+                return latestDrive;
+            case GROUP_STEER:
+                return latestSteer;
+            default:
+                return latestArm;
+        }
+    }
+}
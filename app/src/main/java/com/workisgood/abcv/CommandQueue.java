@@ -0,0 +1,86 @@
+package com.workisgood.abcv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 블루투스로 보낼 명령 바이트 배열을 담는 고정 크기 lock-free 큐.
+ * 슬롯마다 시퀀스 번호를 두는 방식이라 생산자가 여럿이어도 락 없이 offer 할 수 있고,
+ * 소비자는 writer 스레드 하나뿐이다. 배열은 복사하지 않고 참조만 넘기므로 넣은 뒤 수정하면 안 된다.
+ */
+final class CommandQueue {
+
+    private final int mask;
+    private final AtomicReferenceArray<byte[]> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    CommandQueue(int capacityPowerOfTwo) {
+        if (Integer.bitCount(capacityPowerOfTwo) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        mask = capacityPowerOfTwo - 1;
+        slots = new AtomicReferenceArray<>(capacityPowerOfTwo);
+        sequences = new AtomicLongArray(capacityPowerOfTwo);
+        for (int i = 0; i < capacityPowerOfTwo; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** @return 큐가 가득 차 있으면 false */
+    boolean offer(byte[] command) {
+        while (true) {
+            long t = tail.get();
+            int index = (int) (t & mask);
+            long seq = sequences.get(index);
+            if (seq == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    slots.lazySet(index, command);
+                    sequences.set(index, t + 1);
+                    return true;
+                }
+            } else if (seq < t) {
+                return false;
+            }
+        }
+    }
+
+    /** 소비자 스레드 전용. 비어 있거나 아직 게시 중인 슬롯이면 null */
+    byte[] poll() {
+        long h = head.get();
+        int index = (int) (h & mask);
+        if (sequences.get(index) != h + 1) {
+            return null;
+        }
+        byte[] command = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, h + mask + 1);
+        head.lazySet(h + 1);
+        return command;
+    }
+
+    /** 소비자 스레드 전용. poll 할 수 있는 항목이 있으면 그 길이, 없으면 -1 */
+    int peekLength() {
+        long h = head.get();
+        int index = (int) (h & mask);
+        if (sequences.get(index) != h + 1) {
+            return -1;
+        }
+        return slots.get(index).length;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,257 @@
+package com.workisgood.abcv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 연결 하나(연결 시도부터 끊길 때까지)의 I/O 스레드와 자원. 연결, 읽기, 쓰기 작업을 모두 이 스코프의
+ * 실행기에서 돌리고, 소켓과 스트림은 register 로 맡긴다. 스레드는 maxThreads 까지만 만들고 놀면 곧 내린다.
+ *
+ * close 는 맡긴 자원을 먼저 닫아 블로킹 connect/read/write 를 IOException 으로 풀고, 실행기를 내린 뒤
+ * 스레드가 모두 끝나기를 기다린다. RFCOMM 소켓의 read 는 interrupt 로 풀리지 않으므로 이 순서가 중요하다.
+ * closeTimeoutMs 안에 끝나지 않은 스레드는 Stats 의 orphaned 로 센다.
+ */
+final class ConnectionScope implements Executor, Closeable {
+
+    /** 모든 스코프가 같이 쓰는 카운터. 재연결이 몰려도 스레드가 쌓이지 않는지 여기서 본다 */
+    static final class Stats {
+        private final AtomicInteger openScopes = new AtomicInteger();
+        private final AtomicInteger liveThreads = new AtomicInteger();
+        private final AtomicInteger peakThreads = new AtomicInteger();
+        private final AtomicLong scopes = new AtomicLong();
+        private final AtomicLong tasks = new AtomicLong();
+        private final AtomicLong rejectedTasks = new AtomicLong();
+        private final AtomicLong orphanedThreads = new AtomicLong();
+
+        int getOpenScopes() {
+            return openScopes.get();
+        }
+
+        int getLiveThreads() {
+            return liveThreads.get();
+        }
+
+        int getPeakThreads() {
+            return peakThreads.get();
+        }
+
+        long getScopes() {
+            return scopes.get();
+        }
+
+        long getTasks() {
+            return tasks.get();
+        }
+
+        long getRejectedTasks() {
+            return rejectedTasks.get();
+        }
+
+        long getOrphanedThreads() {
+            return orphanedThreads.get();
+        }
+
+        /** "io":{...} 형태로 붙인다 */
+        void appendJson(StringBuilder sb) {
+            sb.append("\"io\":{\"openScopes\":").append(openScopes.get())
+                    .append(",\"liveThreads\":").append(liveThreads.get())
+                    .append(",\"peakThreads\":").append(peakThreads.get())
+                    .append(",\"scopes\":").append(scopes.get())
+                    .append(",\"tasks\":").append(tasks.get())
+                    .append(",\"rejected\":").append(rejectedTasks.get())
+                    .append(",\"orphaned\":").append(orphanedThreads.get())
+                    .append('}');
+        }
+    }
+
+    private static final long IDLE_THREAD_KEEPALIVE_MS = 1000L;
+
+    private final String name;
+    private final long closeTimeoutMs;
+    private final Stats stats;
+    private final ThreadPoolExecutor executor;
+    // 닫을 자원. this 락 아래에서만 쓴다
+    private final List<Closeable> resources = new ArrayList<>();
+    // 아직 끝나지 않은 스레드. 자기 자신을 락으로 쓰고, 스레드가 끝날 때마다 notifyAll
+    private final Set<Thread> threads = new HashSet<>();
+    private final AtomicInteger nextThreadId = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    private volatile boolean closed;
+
+    ConnectionScope(String name, int maxThreads, long closeTimeoutMs, Stats stats) {
+        this.name = name;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.stats = stats;
+        this.executor = new ThreadPoolExecutor(0, maxThreads, IDLE_THREAD_KEEPALIVE_MS, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), this::newThread);
+        stats.openScopes.incrementAndGet();
+        stats.scopes.incrementAndGet();
+    }
+
+    /** close 때 닫을 자원을 맡긴다. 이미 닫힌 스코프면 바로 닫고 false */
+    boolean register(Closeable resource) {
+        synchronized (this) {
+            if (!closed) {
+                resources.add(resource);
+                return true;
+            }
+        }
+        closeQuietly(resource);
+        return false;
+    }
+
+    /**
+     * 작업을 이 스코프의 스레드에서 돌린다. 작업은 연결이 끝날 때까지 스레드를 붙잡고 있어도 된다.
+     *
+     * @throws RejectedExecutionException 이미 닫혔거나 스레드가 maxThreads 만큼 다 차 있을 때
+     */
+    @Override
+    public void execute(Runnable task) {
+        // close 와 겹치지 않게 해서, 만들어진 스레드는 반드시 시작되도록 한다
+        synchronized (this) {
+            if (closed) {
+                stats.rejectedTasks.incrementAndGet();
+                throw new RejectedExecutionException(name + " closed");
+            }
+            submitted.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        completed.incrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                submitted.decrementAndGet();
+                stats.rejectedTasks.incrementAndGet();
+                throw e;
+            }
+        }
+        stats.tasks.incrementAndGet();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** 자원을 닫고 스레드를 내린다. 여러 번 불러도 된다. 이 스코프의 스레드에서 부르면 기다리지 않는다 */
+    @Override
+    public void close() {
+        List<Closeable> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(resources);
+            resources.clear();
+        }
+        // 나중에 맡긴 것부터 (스트림 → 소켓)
+        for (int i = toClose.size() - 1; i >= 0; i--) {
+            closeQuietly(toClose.get(i));
+        }
+        executor.shutdownNow();
+        stats.openScopes.decrementAndGet();
+        synchronized (threads) {
+            if (threads.contains(Thread.currentThread())) {
+                return;
+            }
+        }
+        try {
+            if (!awaitTermination(closeTimeoutMs)) {
+                stats.orphanedThreads.addAndGet(getLiveThreads());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 이 스코프의 스레드가 모두 끝날 때까지 기다린다. 시간 안에 끝나면 true */
+    boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (threads) {
+            while (!threads.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(threads, remaining);
+            }
+        }
+        return true;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /** 아직 끝나지 않은 스레드 수. 놀고 있는 스레드도 센다 */
+    int getLiveThreads() {
+        synchronized (threads) {
+            return threads.size();
+        }
+    }
+
+    long getTasksSubmitted() {
+        return submitted.get();
+    }
+
+    long getTasksCompleted() {
+        return completed.get();
+    }
+
+    /** 돌고 있는 작업 수 */
+    long getActiveTasks() {
+        return submitted.get() - completed.get();
+    }
+
+    /** "io":{...} 형태로 붙인다 */
+    void appendJson(StringBuilder sb) {
+        sb.append("\"io\":{\"threads\":").append(getLiveThreads())
+                .append(",\"tasks\":").append(submitted.get())
+                .append(",\"completed\":").append(completed.get())
+                .append('}');
+    }
+
+    private Thread newThread(Runnable worker) {
+        Thread thread = new Thread(() -> {
+            try {
+                worker.run();
+            } finally {
+                // 기다리는 쪽이 깨어났을 때 합계도 이미 줄어 있도록 먼저 뺀다
+                stats.liveThreads.decrementAndGet();
+                synchronized (threads) {
+                    threads.remove(Thread.currentThread());
+                    threads.notifyAll();
+                }
+            }
+        }, name + "-" + nextThreadId.incrementAndGet());
+        synchronized (threads) {
+            threads.add(thread);
+        }
+        int live = stats.liveThreads.incrementAndGet();
+        stats.peakThreads.accumulateAndGet(live, Math::max);
+        return thread;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
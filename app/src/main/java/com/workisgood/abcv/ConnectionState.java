@@ -0,0 +1,177 @@
+package com.workisgood.abcv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 연결 하나의 수명 idle → connecting → connected → draining → idle(또는 closed) 을 CAS 로 넘기는 상태 기계.
+ * 상태는 불변 Snapshot 하나라서, 읽는 쪽(명령 송신 같은 핫 패스)은 락 없이 get() 한 번으로 단계와 연결 자원을 함께 본다.
+ *
+ * 전이는 기대한 generation(연결 시도마다 1씩 는다)에서만 일어난다. 경쟁에서 진 쪽은 null/false 를 받고 물러나며,
+ * 자기만 들고 있는 자원(아직 상태에 올리지 못한 소켓 등)만 닫는다. 올라간 연결을 닫는 것은 draining 으로 넘긴 쪽 하나뿐이다.
+ * closed 는 끝 상태라 다시 연결하지 않는다.
+ */
+final class ConnectionState<T> {
+
+    static final int IDLE = 0;
+    static final int CONNECTING = 1;
+    static final int CONNECTED = 2;
+    static final int DRAINING = 3;
+    static final int CLOSED = 4;
+
+    private static final String[] PHASE_NAMES = {"idle", "connecting", "connected", "draining", "closed"};
+
+    /** 한 시점의 상태. 만든 뒤로 바뀌지 않는다 */
+    static final class Snapshot<T> {
+        final int phase;
+        final long generation;
+        /** connecting 부터 draining 까지의 연결 자원. idle/closed 에서는 null */
+        final T connection;
+        /** draining 중에 close 가 들어왔다. 정리가 끝나면 idle 대신 closed 로 간다 */
+        final boolean closeRequested;
+
+        Snapshot(int phase, long generation, T connection, boolean closeRequested) {
+            this.phase = phase;
+            this.generation = generation;
+            this.connection = connection;
+            this.closeRequested = closeRequested;
+        }
+
+        String phaseName() {
+            return PHASE_NAMES[phase];
+        }
+    }
+
+    private final AtomicReference<Snapshot<T>> state =
+            new AtomicReference<>(new Snapshot<>(IDLE, 0, null, false));
+    private final AtomicLong transitions = new AtomicLong();
+    private final AtomicLong raceLosses = new AtomicLong();
+
+    Snapshot<T> get() {
+        return state.get();
+    }
+
+    boolean isConnected() {
+        return state.get().phase == CONNECTED;
+    }
+
+    /** idle → connecting. 이미 연결 중이거나 연결돼 있거나 닫혔으면 null */
+    Snapshot<T> beginConnect(T connecting) {
+        while (true) {
+            Snapshot<T> current = state.get();
+            if (current.phase != IDLE) {
+                raceLosses.incrementAndGet();
+                return null;
+            }
+            Snapshot<T> next = new Snapshot<>(CONNECTING, current.generation + 1, connecting, false);
+            if (transition(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /** 이 generation 의 connecting → connected. 그 사이에 닫혔으면 null */
+    Snapshot<T> connected(long generation, T connection) {
+        while (true) {
+            Snapshot<T> current = state.get();
+            if (current.phase != CONNECTING || current.generation != generation) {
+                raceLosses.incrementAndGet();
+                return null;
+            }
+            Snapshot<T> next = new Snapshot<>(CONNECTED, generation, connection, false);
+            if (transition(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 이 generation 의 connecting/connected → draining. 돌려받은 쪽이 연결을 정리하고 finishDrain 을 부른다.
+     * 이미 다른 쪽이 정리 중이거나 다음 연결로 넘어갔으면 null
+     */
+    Snapshot<T> beginDrain(long generation) {
+        while (true) {
+            Snapshot<T> current = state.get();
+            if (current.generation != generation
+                    || (current.phase != CONNECTING && current.phase != CONNECTED)) {
+                raceLosses.incrementAndGet();
+                return null;
+            }
+            Snapshot<T> next = new Snapshot<>(DRAINING, generation, current.connection, false);
+            if (transition(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /** draining → idle, 정리 중에 close 가 들어왔으면 closed. idle 로 돌아갔으면 true */
+    boolean finishDrain(long generation) {
+        while (true) {
+            Snapshot<T> current = state.get();
+            if (current.phase != DRAINING || current.generation != generation) {
+                return false;
+            }
+            int phase = current.closeRequested ? CLOSED : IDLE;
+            if (transition(current, new Snapshot<>(phase, generation, null, false))) {
+                return phase == IDLE;
+            }
+        }
+    }
+
+    /**
+     * 끝 상태로 보낸다. 연결 중이거나 연결돼 있었으면 draining 스냅숏을 돌려주고, 받은 쪽이 정리한 뒤 finishDrain 을 부른다.
+     * 이미 다른 쪽이 정리 중이면 끝나는 대로 closed 로 가도록 표시만 하고 null
+     */
+    Snapshot<T> close() {
+        while (true) {
+            Snapshot<T> current = state.get();
+            Snapshot<T> next;
+            switch (current.phase) {
+                case IDLE:
+                    next = new Snapshot<>(CLOSED, current.generation, null, false);
+                    break;
+                case CONNECTING:
+                case CONNECTED:
+                    next = new Snapshot<>(DRAINING, current.generation, current.connection, true);
+                    break;
+                case DRAINING:
+                    if (current.closeRequested) {
+                        return null;
+                    }
+                    next = new Snapshot<>(DRAINING, current.generation, current.connection, true);
+                    break;
+                default:
+                    return null;
+            }
+            if (transition(current, next)) {
+                return current.phase == CONNECTING || current.phase == CONNECTED ? next : null;
+            }
+        }
+    }
+
+    long getTransitions() {
+        return transitions.get();
+    }
+
+    /** 전이를 시도했다가 이미 다른 쪽이 상태를 바꿔 놓아 물러난 횟수 */
+    long getRaceLosses() {
+        return raceLosses.get();
+    }
+
+    /** "state":…,"generation":…,… 형태로 붙인다 (객체 괄호 없이) */
+    void appendJson(StringBuilder sb) {
+        Snapshot<T> current = state.get();
+        sb.append("\"state\":\"").append(current.phaseName())
+                .append("\",\"generation\":").append(current.generation)
+                .append(",\"transitions\":").append(transitions.get())
+                .append(",\"raceLosses\":").append(raceLosses.get());
+    }
+
+    private boolean transition(Snapshot<T> expected, Snapshot<T> next) {
+        if (!state.compareAndSet(expected, next)) {
+            return false;
+        }
+        transitions.incrementAndGet();
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.workisgood.abcv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * UI 스레드와 분리된 고정 주기 루프. 다음 틱 시각을 "시작 시각 + n * 주기"로 잡기 때문에
+ * 틱 하나가 늦어도 이후 틱이 밀리지 않는다.
+ * 한 주기 이상 늦으면 overrun 으로 세고, 정책에 따라 놓친 틱을 몰아서 돌리거나(CATCH_UP) 건너뛴다(SKIP).
+ * 틱마다 예정 시각 대비 지연(µs)을 jitter 히스토그램에 남긴다.
+ * start 마다 세대 번호를 올리고 루프는 자기 세대가 아니면 끝난다. stop 이 기다리다 포기한 스레드가
+ * 틱에서 늦게 풀려나도 새로 시작한 루프와 겹쳐 돌지 않는다.
+ */
+final class ControlLoop {
+
+    interface Tick {
+        void onTick(long tickIndex);
+    }
+
+    enum MissedTickPolicy {
+        CATCH_UP,
+        SKIP
+    }
+
+    private final String name;
+    private final long periodNanos;
+    private final MissedTickPolicy policy;
+    private final int maxCatchUpTicks;
+    private final Tick tick;
+
+    private final LatencyHistogram jitterMicros = new LatencyHistogram(10_000_000L);
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong skippedTicks = new AtomicLong();
+
+    private volatile boolean running;
+    // 지금 돌아야 하는 루프의 세대. start/stop 마다 올린다
+    private volatile long generation;
+    private Thread thread;
+
+    ControlLoop(String name, long periodNanos, MissedTickPolicy policy,
+                int maxCatchUpTicks, Tick tick) {
+        this.name = name;
+        this.periodNanos = periodNanos;
+        this.policy = policy;
+        this.maxCatchUpTicks = maxCatchUpTicks;
+        this.tick = tick;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        long runGeneration = ++generation;
+        thread = new Thread(() -> runLoop(runGeneration), name);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        generation++;
+        LockSupport.unpark(thread);
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(periodNanos / 1_000_000L * 2 + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    LatencyHistogram getJitterMicros() {
+        return jitterMicros;
+    }
+
+    long getTicks() {
+        return ticks.get();
+    }
+
+    long getOverruns() {
+        return overruns.get();
+    }
+
+    long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+
+    private void runLoop(long runGeneration) {
+        long deadline = System.nanoTime();
+        long tickIndex = 0;
+        while (generation == runGeneration) {
+            long now = System.nanoTime();
+            if (now < deadline) {
+                LockSupport.parkNanos(this, deadline - now);
+                continue;
+            }
+            long missed = (now - deadline) / periodNanos;
+            if (missed > 0) {
+                overruns.incrementAndGet();
+                long skip = policy == MissedTickPolicy.SKIP
+                        ? missed
+                        : Math.max(0, missed - maxCatchUpTicks);
+                if (skip > 0) {
+                    skippedTicks.addAndGet(skip);
+                    tickIndex += skip;
+                    deadline += skip * periodNanos;
+                }
+            }
+            jitterMicros.record((now - deadline) / 1000L);
+            try {
+                tick.onTick(tickIndex);
+            } catch (RuntimeException e) {
+                // 틱 하나의 예외로 루프 전체가 멈추면 안 된다
+                android.util.Log.w("ControlLoop", "Tick failed: " + e);
+            }
+            ticks.incrementAndGet();
+            tickIndex++;
+            deadline += periodNanos;
+        }
+    }
+}
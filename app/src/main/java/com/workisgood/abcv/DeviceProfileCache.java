@@ -0,0 +1,189 @@
+package com.workisgood.abcv;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 붙어 본 차량들의 작은 기록. 시작할 때 검색 없이 바로 붙을 차량 순서를 정하는 데 쓴다.
+ * 차량마다 마지막 성공 시각, 성공/실패 횟수, 연이은 실패 수, 보통 걸리는 연결 시간(지수 평균)을 둔다.
+ *
+ * 순서는 연이은 실패가 적은 차량, 최근에 붙은 차량, 빨리 붙는 차량 순이다.
+ * 페어링 목록을 알려 줬으면 그 안에 있는 차량만 고른다. 풀린 차량에 붙으면 페어링 창이 뜬다.
+ * 저장은 한 줄에 차량 하나인 텍스트로 한다 (SharedPreferences 문자열 하나). 모든 메서드는 this 락을 잡는다.
+ */
+final class DeviceProfileCache {
+
+    // 새 연결 시간 표본의 비중
+    private static final double CONNECT_EWMA_ALPHA = 0.25;
+    private static final String FIELD_SEPARATOR = "|";
+
+    static final class Profile {
+        final String address;
+        String name;
+        long lastSuccessMs;
+        long successes;
+        long failures;
+        int consecutiveFailures;
+        /** 보통 걸리는 연결 시간. 아직 모르면 -1 */
+        long typicalConnectMs = -1;
+        boolean bonded;
+
+        Profile(String address) {
+            this.address = address;
+        }
+    }
+
+    private static final Comparator<Profile> LIKELIEST_FIRST = (a, b) -> {
+        if (a.consecutiveFailures != b.consecutiveFailures) {
+            return Integer.compare(a.consecutiveFailures, b.consecutiveFailures);
+        }
+        if (a.lastSuccessMs != b.lastSuccessMs) {
+            return Long.compare(b.lastSuccessMs, a.lastSuccessMs);
+        }
+        return Long.compare(connectOrder(a), connectOrder(b));
+    };
+
+    private final int maxProfiles;
+    private final LinkedHashMap<String, Profile> profiles = new LinkedHashMap<>();
+    private boolean bondedKnown;
+
+    DeviceProfileCache(int maxProfiles) {
+        this.maxProfiles = maxProfiles;
+    }
+
+    /** encode 로 만든 문자열을 읽는다. 형식이 틀린 줄은 건너뛴다 */
+    synchronized void load(String encoded) {
+        profiles.clear();
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String line : encoded.split("\n")) {
+            String[] fields = line.split("\\|", -1);
+            if (fields.length != 7 || fields[0].isEmpty()) {
+                continue;
+            }
+            try {
+                Profile profile = new Profile(fields[0]);
+                profile.name = fields[1].isEmpty() ? null : fields[1];
+                profile.lastSuccessMs = Long.parseLong(fields[2]);
+                profile.successes = Long.parseLong(fields[3]);
+                profile.failures = Long.parseLong(fields[4]);
+                profile.consecutiveFailures = Integer.parseInt(fields[5]);
+                profile.typicalConnectMs = Long.parseLong(fields[6]);
+                profiles.put(profile.address, profile);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        evict();
+    }
+
+    /** address|name|lastSuccessMs|successes|failures|consecutiveFailures|typicalConnectMs 를 줄마다 하나 */
+    synchronized String encode() {
+        StringBuilder sb = new StringBuilder(profiles.size() * 64);
+        for (Profile profile : profiles.values()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            String name = profile.name == null ? "" : profile.name.replace('|', ' ').replace('\n', ' ');
+            sb.append(profile.address).append(FIELD_SEPARATOR)
+                    .append(name).append(FIELD_SEPARATOR)
+                    .append(profile.lastSuccessMs).append(FIELD_SEPARATOR)
+                    .append(profile.successes).append(FIELD_SEPARATOR)
+                    .append(profile.failures).append(FIELD_SEPARATOR)
+                    .append(profile.consecutiveFailures).append(FIELD_SEPARATOR)
+                    .append(profile.typicalConnectMs);
+        }
+        return sb.toString();
+    }
+
+    /** 기록이 없으면 빈 기록을 만든다. 예전 last_device_address 를 옮겨 올 때 쓴다 */
+    synchronized void remember(String address) {
+        if (address != null && !profiles.containsKey(address)) {
+            profiles.put(address, new Profile(address));
+            evict();
+        }
+    }
+
+    /** 지금 페어링된 주소들. 한 번 알려 주면 candidates 는 이 안에서만 고른다 */
+    synchronized void setBonded(Collection<String> addresses) {
+        Set<String> bonded = new HashSet<>(addresses);
+        for (Profile profile : profiles.values()) {
+            profile.bonded = bonded.contains(profile.address);
+        }
+        bondedKnown = true;
+    }
+
+    synchronized void onConnected(String address, String name, long epochMs, long connectMs) {
+        Profile profile = profiles.get(address);
+        if (profile == null) {
+            profile = new Profile(address);
+            profile.bonded = true;
+            profiles.put(address, profile);
+        }
+        if (name != null) {
+            profile.name = name;
+        }
+        profile.lastSuccessMs = epochMs;
+        profile.successes++;
+        profile.consecutiveFailures = 0;
+        profile.typicalConnectMs = profile.typicalConnectMs < 0 ? connectMs
+                : Math.round(profile.typicalConnectMs + CONNECT_EWMA_ALPHA * (connectMs - profile.typicalConnectMs));
+        evict();
+    }
+
+    /** 기록이 있는 차량만 센다. 처음 보는 차량의 실패는 남기지 않는다 */
+    synchronized void onConnectFailed(String address) {
+        Profile profile = profiles.get(address);
+        if (profile != null) {
+            profile.failures++;
+            profile.consecutiveFailures++;
+        }
+    }
+
+    /** 시작할 때 시도할 주소들. 가장 그럴듯한 차량이 먼저다 */
+    synchronized List<String> candidates(int max) {
+        List<Profile> eligible = new ArrayList<>(profiles.size());
+        for (Profile profile : profiles.values()) {
+            if (!bondedKnown || profile.bonded) {
+                eligible.add(profile);
+            }
+        }
+        eligible.sort(LIKELIEST_FIRST);
+        List<String> addresses = new ArrayList<>(Math.min(max, eligible.size()));
+        for (int i = 0; i < eligible.size() && i < max; i++) {
+            addresses.add(eligible.get(i).address);
+        }
+        return addresses;
+    }
+
+    synchronized long getTypicalConnectMs(String address) {
+        Profile profile = profiles.get(address);
+        return profile == null ? -1 : profile.typicalConnectMs;
+    }
+
+    synchronized int size() {
+        return profiles.size();
+    }
+
+    // 넘치면 마지막 성공이 가장 오래된 차량부터 뺀다
+    private void evict() {
+        while (profiles.size() > maxProfiles) {
+            Profile oldest = null;
+            for (Profile profile : profiles.values()) {
+                if (oldest == null || profile.lastSuccessMs < oldest.lastSuccessMs) {
+                    oldest = profile;
+                }
+            }
+            profiles.remove(oldest.address);
+        }
+    }
+
+    private static long connectOrder(Profile profile) {
+        return profile.typicalConnectMs < 0 ? Long.MAX_VALUE : profile.typicalConnectMs;
+    }
+}
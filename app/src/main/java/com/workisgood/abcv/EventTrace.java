@@ -0,0 +1,219 @@
+package com.workisgood.abcv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 핫 패스(명령 전송, WebSocket 콜백, 서버 메시지)의 사건을 고정 크기 링에 남기는 추적기. logcat 대신 쓴다.
+ * 사건 하나는 시각(nanoTime), 종류, int 인자 세 개다. 문자열을 만들지 않고 미리 잡아 둔 배열에만 쓴다.
+ *
+ * 어느 스레드에서든 락 없이 쓴다. 쓰는 쪽은 커서를 getAndIncrement 로 받아 슬롯을 잡고,
+ * 슬롯의 순번을 -1 로 바꾼 뒤 필드를 쓰고 마지막에 순번을 적는다 (seqlock). 읽는 쪽은 필드 앞뒤로 순번을 읽어
+ * 쓰는 도중이거나 덮어쓰인 슬롯은 건너뛴다. 링이 차면 가장 오래된 사건부터 덮어쓴다.
+ * 꺼져 있으면 record 는 volatile 읽기 하나로 끝난다.
+ */
+final class EventTrace {
+
+    interface Visitor {
+        void visit(long nanos, int type, int a, int b, int c);
+    }
+
+    static final int CMD_SEND = 1;
+    static final int CMD_QUEUE_FULL = 2;
+    static final int WS_OPEN = 3;
+    static final int WS_FAILURE = 4;
+    static final int WS_CLOSED = 5;
+    static final int SERVER_MESSAGE = 6;
+    static final int SERVER_INVALID = 7;
+    static final int UPLINK_MODE = 8;
+    static final int UPLINK_ENCODING = 9;
+    static final int BT_RECONNECT = 10;
+    static final int TRACE_DUMP = 11;
+
+    private static final String[] TYPE_NAMES = {
+            "?", "cmdSend", "cmdQueueFull", "wsOpen", "wsFailure", "wsClosed",
+            "serverMessage", "serverInvalid", "uplinkMode", "uplinkEncoding", "btReconnect", "traceDump"};
+    // 첫 인자가 packAscii 로 담은 명령 글자인 종류
+    private static final boolean[] ASCII_FIRST_ARG = {
+            false, true, true, false, false, false, false, false, false, false, false, false};
+
+    // 슬롯 하나: 순번, 시각, 종류|a, b|c
+    private static final int SLOT_LONGS = 4;
+    private static final int MAX_ASCII = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final long originNanos;
+    private final AtomicLongArray slots;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private volatile boolean enabled;
+
+    /** capacity 는 2 의 거듭제곱으로 올린다. 시각은 originNanos 기준 ms 로 내보낸다 */
+    EventTrace(int capacity, long originNanos, boolean enabled) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.originNanos = originNanos;
+        this.slots = new AtomicLongArray(size * SLOT_LONGS);
+        for (int i = 0; i < size; i++) {
+            slots.set(i * SLOT_LONGS, -1);
+        }
+        this.enabled = enabled;
+    }
+
+    /** 명령 앞 네 글자까지를 int 하나에 담는다. 덤프에서 글자로 풀어 보인다 */
+    static int packAscii(byte[] bytes) {
+        int packed = 0;
+        for (int i = 0; i < MAX_ASCII; i++) {
+            packed = (packed << 8) | (i < bytes.length ? bytes[i] & 0xFF : 0);
+        }
+        return packed;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void record(int type, int a, int b, int c) {
+        if (!enabled) {
+            return;
+        }
+        long seq = cursor.getAndIncrement();
+        int base = ((int) seq & mask) * SLOT_LONGS;
+        slots.set(base, -1);
+        slots.set(base + 1, System.nanoTime());
+        slots.set(base + 2, ((long) type << 32) | (a & 0xFFFFFFFFL));
+        slots.set(base + 3, ((long) b << 32) | (c & 0xFFFFFFFFL));
+        slots.set(base, seq);
+    }
+
+    void record(int type, int a) {
+        record(type, a, 0, 0);
+    }
+
+    /** 지금까지 기록한 사건 수 (덮어쓴 것 포함) */
+    long getRecorded() {
+        return cursor.get();
+    }
+
+    /** 링이 넘쳐서 잃은 사건 수 */
+    long getOverwritten() {
+        return Math.max(0, cursor.get() - capacity);
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /** 오래된 것부터 최근 maxEvents 개를 넘긴다. 쓰는 도중인 슬롯은 건너뛴다 */
+    int forEach(int maxEvents, Visitor visitor) {
+        long end = cursor.get();
+        long start = Math.max(0, end - Math.min(capacity, maxEvents));
+        int visited = 0;
+        for (long seq = start; seq < end; seq++) {
+            int base = ((int) seq & mask) * SLOT_LONGS;
+            if (slots.get(base) != seq) {
+                continue;
+            }
+            long time = slots.get(base + 1);
+            long typeA = slots.get(base + 2);
+            long bc = slots.get(base + 3);
+            if (slots.get(base) != seq) {
+                continue;
+            }
+            visitor.visit(time, (int) (typeA >>> 32), (int) typeA, (int) (bc >>> 32), (int) bc);
+            visited++;
+        }
+        return visited;
+    }
+
+    /** "trace":{…,"events":[[ms,"type",a,b,c],…]} 형태로 최근 maxEvents 개를 붙인다 */
+    void appendJson(StringBuilder sb, int maxEvents) {
+        appendStatsFields(sb);
+        sb.append(",\"events\":[");
+        int[] count = new int[1];
+        forEach(maxEvents, (nanos, type, a, b, c) -> {
+            if (count[0]++ > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(sinceOriginMs(nanos)).append(",\"").append(typeName(type)).append("\",");
+            if (isAscii(type)) {
+                sb.append('"');
+                appendAscii(sb, a);
+                sb.append('"');
+            } else {
+                sb.append(a);
+            }
+            sb.append(',').append(b).append(',').append(c).append(']');
+        });
+        sb.append("]}");
+    }
+
+    /** "trace":{"enabled":…,"recorded":…,"overwritten":…} */
+    void appendStats(StringBuilder sb) {
+        appendStatsFields(sb);
+        sb.append('}');
+    }
+
+    private void appendStatsFields(StringBuilder sb) {
+        sb.append("\"trace\":{\"enabled\":").append(enabled)
+                .append(",\"recorded\":").append(getRecorded())
+                .append(",\"overwritten\":").append(getOverwritten());
+    }
+
+    /** 한 줄에 사건 하나인 텍스트로 파일에 쓴다. 쓴 사건 수를 돌려준다 */
+    int dumpTo(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        StringBuilder sb = new StringBuilder(capacity * 32);
+        int written = forEach(capacity, (nanos, type, a, b, c) -> {
+            sb.append(sinceOriginMs(nanos)).append(' ').append(typeName(type)).append(' ');
+            if (isAscii(type)) {
+                appendAscii(sb, a);
+            } else {
+                sb.append(a);
+            }
+            sb.append(' ').append(b).append(' ').append(c).append('\n');
+        });
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII)) {
+            out.append(sb);
+        }
+        return written;
+    }
+
+    private long sinceOriginMs(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos - originNanos);
+    }
+
+    private static String typeName(int type) {
+        return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : TYPE_NAMES[0];
+    }
+
+    private static boolean isAscii(int type) {
+        return type > 0 && type < ASCII_FIRST_ARG.length && ASCII_FIRST_ARG[type];
+    }
+
+    // 출력할 수 있는 글자만 남긴다. JSON 문자열 안에 그대로 넣어도 된다
+    private static void appendAscii(StringBuilder sb, int packed) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int ch = (packed >>> shift) & 0xFF;
+            if (ch >= 0x20 && ch < 0x7F && ch != '"' && ch != '\\') {
+                sb.append((char) ch);
+            }
+        }
+    }
+}
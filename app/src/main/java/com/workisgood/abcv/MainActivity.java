@@ -14,9 +14,11 @@ import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.SparseArray;
+import android.os.Process;
+import android.os.SystemClock;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.TextView;
@@ -30,14 +32,29 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.JsonTelemetryEncoder;
+import com.workisgood.abcv.protocol.TelemetryAggregator;
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
@@ -45,13 +62,73 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final long COMMAND_INTERVAL_MS = 100L;
-    private static final long RECONNECT_DELAY_MS = 2000L;
-    private static final long WEBSOCKET_RECONNECT_DELAY_MS = 3000L;
+    // 재연결: 첫 시도는 바로, 그 뒤로는 base 부터 두 배씩 max 까지 (jitter 비율만큼 무작위로 줄인다)
+    private static final long RECONNECT_BASE_DELAY_MS = 250L;
+    private static final long RECONNECT_MAX_DELAY_MS = 8000L;
+    private static final long WEBSOCKET_RECONNECT_BASE_DELAY_MS = 500L;
+    private static final long WEBSOCKET_RECONNECT_MAX_DELAY_MS = 15000L;
+    private static final double RECONNECT_JITTER = 0.5;
+    private static final long WEBSOCKET_BATCH_WINDOW_MS = 30L;
+    private static final int WEBSOCKET_BATCH_MAX_MESSAGES = 32;
+    private static final int WEBSOCKET_BATCH_MAX_CHARS = 8 * 1024;
+    private static final int SPOOL_RING_CAPACITY = 256;
+    private static final int SPOOL_FILE_CAPACITY = 4 * 1024 * 1024;
+    private static final TelemetrySpool.OverflowPolicy SPOOL_OVERFLOW_POLICY =
+            TelemetrySpool.OverflowPolicy.DROP_OLDEST;
+    private static final int SPOOL_REPLAY_BATCH = 10;
+    private static final long SPOOL_REPLAY_INTERVAL_MS = 20L;
     private static final int PERMISSION_REQUEST_CODE = 1201;
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int WRITER_QUEUE_CAPACITY = 64;
+    private static final long WRITER_DRAIN_TIMEOUT_MS = 200L;
+    // 연결마다 바이너리 프레임(SppFrame)을 제안한다. 답하지 않는 펌웨어와는 텍스트로 그대로 간다
+    private static final boolean SPP_BINARY_FRAMING = true;
+    private static final long COMMAND_LATENCY_TIMEOUT_MS = 2000L;
+    private static final long METRICS_OVERLAY_INTERVAL_MS = 1000L;
+    private static final long METRICS_UPLINK_INTERVAL_MS = 5000L;
+    // 바뀐 필드만 올리고, 스트림마다 이 주기로 전체 값을 한 번 보낸다
+    private static final long TELEMETRY_KEYFRAME_INTERVAL_MS = 5000L;
+    private static final int TELEMETRY_ANGLE_DEADBAND = 1;
+    private static final int TELEMETRY_SPEED_DEADBAND = 0;
+    // 요약 모드에서는 원본 대신 이 창마다 min/max/평균 한 건만 올린다
+    private static final long TELEMETRY_SUMMARY_WINDOW_MS = 1000L;
+    // OkHttp 송신 큐 기준 감쇄. 큐가 16 MiB 에 닿으면 OkHttp 가 소켓을 닫으므로 훨씬 아래에서 스풀로 돌린다
+    private static final long UPLINK_QUEUE_HIGH_BYTES = 64 * 1024L;
+    private static final long UPLINK_QUEUE_LOW_BYTES = 8 * 1024L;
+    private static final long UPLINK_QUEUE_SPOOL_BYTES = 1024 * 1024L;
+    private static final long UPLINK_LATENCY_HIGH_MS = 500L;
+    private static final long UPLINK_LATENCY_LOW_MS = 100L;
+    private static final long UPLINK_DECIMATION_BASE_MS = 100L;
+    private static final int UPLINK_DECIMATION_MAX_LEVEL = 4;
+    private static final long UPLINK_RATE_SAMPLE_MS = 100L;
+    private static final long CLOCK_PING_INTERVAL_MS = 2000L;
+    // 연결마다 세션 하나. 세그먼트가 차면 다음 파일로 넘어가고, 최근 세션만 남긴다
+    private static final int RECORDING_SEGMENT_BYTES = 4 * 1024 * 1024;
+    private static final long RECORDING_INDEX_INTERVAL_MS = 1000L;
+    private static final int RECORDING_MAX_SESSIONS = 20;
+    // 한 태블릿에서 동시에 잡는 차량 수. 블루투스 칩이 버티는 ACL 링크 수(보통 7)보다 넉넉히 아래로 둔다
+    private static final int MAX_VEHICLE_LINKS = 4;
+    // 연결 하나에 연결 시도, 리더, writer
+    private static final int CONNECTION_MAX_THREADS = 3;
+    private static final long CONNECTION_CLOSE_TIMEOUT_MS = 500L;
+    // 시작할 때 검색 없이 차례로 붙어 보는 차량 수. 없는 차량 하나에 소켓 연결 실패까지 수 초가 걸린다
+    private static final int AUTO_CONNECT_MAX_CANDIDATES = 3;
+    private static final int DEVICE_PROFILE_CAPACITY = 8;
+    // 프로세스 시작부터 첫 프레임까지의 목표. 넘으면 경고를 남기고 지표에 overBudget 으로 올린다
+    private static final long FIRST_FRAME_BUDGET_MS = 500L;
+    // 사건 추적 링. 명령 반복(100 ms × 눌린 버튼)으로 몇 분 치가 남는다. 서버가 trace 메시지로 켜고 끄고 덤프한다
+    private static final int EVENT_TRACE_CAPACITY = 8192;
+    private static final boolean EVENT_TRACE_ENABLED = true;
+    private static final int EVENT_TRACE_UPLOAD_MAX_EVENTS = 1024;
+    private static final int EVENT_TRACE_MAX_DUMPS = 5;
+    // 추적에는 서버 메시지 종류를 이 배열의 번호로 남긴다. 모르는 종류는 0
+    private static final String[] SERVER_MESSAGE_TYPES = {
+            "?", "encoding", "replay", "replayStop", "select", "uplinkMode", "deadband", "trace"};
     private static final UUID SPP_UUID =
             UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     
@@ -66,7 +143,15 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private final SparseArray<Runnable> repeaters = new SparseArray<>();
+
+    // 눌린 입력은 모두 controlState 에 모이고, control-loop 스레드가 고정 주기로 보낸다.
+    // 상태 프레임 모드면 "c:xxxx" 한 줄, 아니면 눌린 버튼마다 기존 글자 명령
+    private final ControlState controlState = new ControlState();
+    private final byte[][] legacyCommands = new byte[Integer.SIZE][];
+    private volatile boolean controlStateMode = false;
+    private final ControlLoop controlLoop = new ControlLoop("control-loop",
+            TimeUnit.MILLISECONDS.toNanos(COMMAND_INTERVAL_MS),
+            ControlLoop.MissedTickPolicy.SKIP, 0, this::onControlTick);
 
     private TextView deviceStatusText;
     private TextView statusArmText;      // box1 - ARM 정보
@@ -74,32 +159,132 @@ public class MainActivity extends AppCompatActivity {
     private TextView statusMotorLeftText;  // box3 - 모터 left 정보
     private TextView statusMotorRightText; // box4 - 모터 right 정보
 
+    private TelemetryDisplay telemetryDisplay;
+    private TextView debugOverlayText;
+
+    private final CommandLatencyTracker latencyTracker = new CommandLatencyTracker(
+            TimeUnit.MILLISECONDS.toNanos(COMMAND_LATENCY_TIMEOUT_MS));
+    private long lastMetricsUplinkMs;
+    private final Runnable metricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reportMetrics();
+            handler.postDelayed(this, METRICS_OVERLAY_INTERVAL_MS);
+        }
+    };
+    // 서버가 uplinkMode 로 고른다. 차량마다 VehicleLink.aggregating 이 따라간다
+    private volatile boolean summaryUplink = false;
+    // 서버가 deadband 로 바꾼다. 새로 붙는 차량에도 적용한다
+    private volatile int telemetryAngleDeadband = TELEMETRY_ANGLE_DEADBAND;
+    private volatile int telemetrySpeedDeadband = TELEMETRY_SPEED_DEADBAND;
+
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothSocket bluetoothSocket;
-    private BluetoothDevice connectedDevice;
-    private OutputStream outputStream;
-    private InputStream inputStream;
-    private Thread readerThread;
+    // 녹화 세그먼트 파일을 미리 여는 스레드. 리더/writer 스레드는 디스크를 기다리지 않는다
+    private final ExecutorService recorderExecutor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "recorder-prep"));
+    // 끊은 링크는 여기서 닫는다. 닫기가 길게는 writer 비우기 + 스코프 대기만큼 걸리므로 링크끼리 나란히 닫는다
+    private final ExecutorService linkCloseExecutor =
+            Executors.newCachedThreadPool(r -> new Thread(r, "link-close"));
+    // 차량마다 링크 하나. 조작 버튼과 주소 없는 원격 명령은 선택된 차량으로 간다
+    private final VehicleLinkManager linkManager = new VehicleLinkManager(MAX_VEHICLE_LINKS, linkCloseExecutor);
+    // 연결마다 ConnectionScope 하나. 스레드/작업 수는 모든 스코프를 합쳐 여기서 센다
+    private final ConnectionScope.Stats ioStats = new ConnectionScope.Stats();
+    private final VehicleLink.Listener vehicleLinkListener = new VehicleLink.Listener() {
+        @Override
+        public void onTelemetry(VehicleLink link, TelemetryParser parser, int type) {
+            handleIncoming(link, parser, type);
+        }
 
-    private String lastDeviceAddress;
-    private boolean reconnectRequested = false;
+        @Override
+        public void onLinkLost(VehicleLink link, IOException e) {
+            handleConnectionLost(link);
+        }
 
-    private OkHttpClient webSocketClient;
-    private WebSocket webSocket;
-    private boolean webSocketReconnectEnabled = true;
+        // ack 는 배치/스풀을 거치지 않는다. 끊긴 동안의 ack 는 의미가 없다
+        @Override
+        public void onAck(VehicleLink link, String json) {
+            sendWebSocketFrame(json);
+        }
+    };
+    private TelemetryReplayer telemetryReplayer;
+    private volatile VehicleLink replayLink;
+
+    // 붙어 본 차량 기록. 시작할 때 어떤 차량부터 붙어 볼지 정한다
+    private final DeviceProfileCache deviceProfiles = new DeviceProfileCache(DEVICE_PROFILE_CAPACITY);
+    // 남은 자동 연결 후보. 메인 스레드에서만 쓴다
+    private final ArrayDeque<String> autoConnectQueue = new ArrayDeque<>();
+    private final long launchNanos = processStartNanos();
+    private final StartupMetrics startupMetrics = new StartupMetrics(launchNanos);
+    private final EventTrace eventTrace = new EventTrace(EVENT_TRACE_CAPACITY, launchNanos, EVENT_TRACE_ENABLED);
+    // 첫 화면에 필요 없는 초기화(설정 읽기, HTTP 클라이언트, 스풀 파일, WebSocket 연결)는 이 스레드에서 돈다
+    private final ExecutorService startupExecutor =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "startup"));
+    private final StartupPipeline startup = new StartupPipeline(launchNanos, startupExecutor,
+            handler::post, FIRST_FRAME_BUDGET_MS);
+    private final ScheduledExecutorService reconnectScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "reconnect"));
+    private final ReconnectEngine webSocketReconnect = new ReconnectEngine("ws", reconnectScheduler,
+            WEBSOCKET_RECONNECT_BASE_DELAY_MS, WEBSOCKET_RECONNECT_MAX_DELAY_MS, RECONNECT_JITTER,
+            new Random(), attempt -> handler.post(this::startWebSocket));
+
+    // startup 스레드가 만들고 다른 스레드가 읽는다
+    private volatile OkHttpClient webSocketClient;
+    // 웹소켓 하나의 수명. OkHttp 콜백, uplink 스레드, 메인 스레드가 같이 보므로 스냅숏으로만 읽고 CAS 로만 바꾼다
+    private final ConnectionState<WebSocket> webSocketState = new ConnectionState<>();
+    private volatile boolean webSocketReconnectEnabled = true;
+    private volatile ScheduledExecutorService uplinkScheduler;
+    private volatile UplinkBatcher uplinkBatcher;
+    private volatile TelemetrySpool telemetrySpool;
+    // 서버가 hello 에 "binary" 로 응답한 연결에서만 true. 기본은 JSON
+    private volatile boolean binaryUplink = false;
+
+    private final UplinkBatcher.Sink webSocketSink = new UplinkBatcher.Sink() {
+        @Override
+        public boolean send(String frame) {
+            return !isUplinkQueueFull() && sendWebSocketFrame(frame);
+        }
 
-    private final ArrayList<BluetoothDevice> discoveredDevices = new ArrayList<>();
-    private final HashSet<String> discoveredAddresses = new HashSet<>();
-    private ArrayAdapter<String> deviceListAdapter;
-    private AlertDialog deviceDialog;
+        @Override
+        public boolean send(byte[] frame, int offset, int length) {
+            return !isUplinkQueueFull() && sendWebSocketFrame(ByteString.of(frame, offset, length));
+        }
+    };
 
-    private final Runnable reconnectRunnable = () -> {
-        if (lastDeviceAddress != null) {
-            connectToAddress(lastDeviceAddress);
+    // 연결이 없거나 스풀에 밀린 프레임이 있으면 스풀 뒤에 붙인다
+    private final UplinkBatcher.Sink spoolingSink = new UplinkBatcher.Sink() {
+        @Override
+        public boolean send(String frame) {
+            telemetrySpool.sendOrSpool(frame, webSocketSink);
+            return true;
+        }
+
+        @Override
+        public boolean send(byte[] frame, int offset, int length) {
+            telemetrySpool.sendOrSpool(frame, offset, length, webSocketSink);
+            return true;
         }
     };
 
-    private final Runnable webSocketReconnectRunnable = this::startWebSocket;
+    private final Runnable spoolReplayRunnable = this::replaySpool;
+
+    private final UplinkRateController uplinkRateController = new UplinkRateController(
+            UPLINK_QUEUE_HIGH_BYTES, UPLINK_QUEUE_LOW_BYTES,
+            UPLINK_LATENCY_HIGH_MS, UPLINK_LATENCY_LOW_MS,
+            UPLINK_DECIMATION_BASE_MS, UPLINK_DECIMATION_MAX_LEVEL);
+    private final Runnable uplinkRateRunnable = this::sampleUplinkQueue;
+
+    // 텔레메트리 시각은 단조 시계로 찍고 서버 시계로 바꿔서 보낸다
+    private final ClockSync clockSync = new ClockSync(System.currentTimeMillis(), System.nanoTime());
+    private final Runnable clockPingRunnable = this::sendClockPing;
+
+    // 보낼 차량이 없는 명령은 busy 로 ack 한다
+    private final RemoteCommandRelay unroutedCommandRelay = new RemoteCommandRelay(
+            command -> false, this::sendWebSocketFrame);
+
+    private final ArrayList<BluetoothDevice> discoveredDevices = new ArrayList<>();
+    private final HashSet<String> discoveredAddresses = new HashSet<>();
+    private ArrayAdapter<String> deviceListAdapter;
+    private AlertDialog deviceDialog;
 
     private final BroadcastReceiver discoveryReceiver = new BroadcastReceiver() {
         @Override
@@ -111,7 +296,7 @@ public class MainActivity extends AppCompatActivity {
                     handleDeviceFound(device);
                 }
             } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
-                if (connectedDevice == null) {
+                if (linkManager.getConnectedCount() == 0) {
                     updateDeviceStatus("No device found");
                     if (deviceListAdapter != null && deviceListAdapter.isEmpty()) {
                         deviceListAdapter.add("No device found");
@@ -121,22 +306,66 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
+    // 메인 스레드에서는 첫 화면과 조작 버튼만 만든다. 나머지는 startup 스레드와 첫 프레임 뒤로 미룬다.
+    // afterFirstFrame 단계는 그보다 먼저 넣은 background 단계가 끝난 뒤에 돈다
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        EdgeToEdge.enable(this);
-        setContentView(R.layout.activity_main);
-        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
-            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
-            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
-            return insets;
+        startup.main("contentView", () -> {
+            EdgeToEdge.enable(this);
+            setContentView(R.layout.activity_main);
+            ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
+                Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
+                v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
+                return insets;
+            });
+        });
+        startup.main("controls", () -> {
+            setupTopBar();
+            setupControlButtons();
+            setupStatusBoxes();
         });
+        watchFirstFrame(findViewById(R.id.main));
+
+        startup.background("preferences", this::loadPreferences);
+        startup.afterFirstFrame("bluetooth", this::setupBluetooth);
+        startup.background("httpClient", this::buildWebSocketClient);
+        startup.background("uplink", this::setupUplink);
+        startup.background("webSocket", this::startWebSocket);
+        startup.whenReady(this::onStartupReady);
+        startup.seal();
+    }
+
+    // 첫 프레임을 그리기 직전에 한 번 불린다
+    private void watchFirstFrame(View root) {
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                long now = System.nanoTime();
+                // 미룬 단계가 이 프레임 그리기를 늦추지 않게 다음 메시지로 넘긴다
+                handler.post(() -> startup.onFirstFrame(now));
+                return true;
+            }
+        });
+    }
 
-        setupTopBar();
-        setupControlButtons();
-        setupStatusBoxes();
-        setupBluetooth();
-        setupWebSocket();
+    private void onStartupReady() {
+        reportFullyDrawn();
+        StringBuilder sb = new StringBuilder(256);
+        for (StartupPipeline.Span span : startup.getSpans()) {
+            sb.append(' ').append(span.name).append('=').append(span.durationMs()).append("ms");
+            if (span.error != null) {
+                sb.append("(").append(span.error).append(')');
+            }
+        }
+        android.util.Log.d("Startup", "First frame " + startup.getFirstFrameMs() + "ms, ready "
+                + startup.getReadyMs() + "ms:" + sb);
+        if (startup.isOverBudget()) {
+            android.util.Log.w("Startup", "First frame over " + FIRST_FRAME_BUDGET_MS + "ms budget");
+        }
+        startupExecutor.shutdown();
     }
 
     private void setupTopBar() {
@@ -148,9 +377,20 @@ public class MainActivity extends AppCompatActivity {
         applyClickEffect(shutdownButton);
 
         searchButton.setOnClickListener(v -> startDiscovery());
+        // 누르면 다음 차량을 고르고, 길게 누르면 상태 프레임 / 기존 글자 명령을 전환한다
+        deviceStatusText.setOnClickListener(v -> selectNextVehicle());
+        deviceStatusText.setOnLongClickListener(v -> {
+            toggleControlStateMode();
+            return true;
+        });
+        // 선택된 차량만 끈다
         shutdownButton.setOnClickListener(v -> {
+            VehicleLink link = linkManager.getSelected();
+            if (link == null) {
+                return;
+            }
             sendCommand("Q");
-            disconnect("Disconnected");
+            disconnect(link, "Disconnected: " + link.name);
         });
     }
 
@@ -178,24 +418,24 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupControlButtons() {
-        bindRepeatingButton(R.id.btn_arm_up, "K", false);
-        bindRepeatingButton(R.id.btn_arm_down, "J", false);
-        bindRepeatingButton(R.id.btn_arm_left, "H", false);
-        bindRepeatingButton(R.id.btn_arm_right, "L", false);
+        bindRepeatingButton(R.id.btn_arm_up, "K", ControlState.ARM_UP, false);
+        bindRepeatingButton(R.id.btn_arm_down, "J", ControlState.ARM_DOWN, false);
+        bindRepeatingButton(R.id.btn_arm_left, "H", ControlState.ARM_LEFT, false);
+        bindRepeatingButton(R.id.btn_arm_right, "L", ControlState.ARM_RIGHT, false);
 
-        bindRepeatingButton(R.id.btn_link1_up, "R", false);
-        bindRepeatingButton(R.id.btn_link1_down, "T", false);
+        bindRepeatingButton(R.id.btn_link1_up, "R", ControlState.LINK1_UP, false);
+        bindRepeatingButton(R.id.btn_link1_down, "T", ControlState.LINK1_DOWN, false);
 
-        bindRepeatingButton(R.id.btn_link2_up, "Y", false);
-        bindRepeatingButton(R.id.btn_link2_down, "U", false);
+        bindRepeatingButton(R.id.btn_link2_up, "Y", ControlState.LINK2_UP, false);
+        bindRepeatingButton(R.id.btn_link2_down, "U", ControlState.LINK2_DOWN, false);
 
-        bindRepeatingButton(R.id.btn_grab, "I", false);
-        bindRepeatingButton(R.id.btn_release, "O", false);
+        bindRepeatingButton(R.id.btn_grab, "I", ControlState.GRIP_GRAB, false);
+        bindRepeatingButton(R.id.btn_release, "O", ControlState.GRIP_RELEASE, false);
 
-        bindRepeatingButton(R.id.btn_car_forward, "W", false);
-        bindRepeatingButton(R.id.btn_car_left, "A", false);
-        bindRepeatingButton(R.id.btn_car_right, "D", false);
-        bindRepeatingButton(R.id.btn_car_backward, "S", false);
+        bindRepeatingButton(R.id.btn_car_forward, "W", ControlState.DRIVE_FORWARD, false);
+        bindRepeatingButton(R.id.btn_car_left, "A", ControlState.DRIVE_LEFT, false);
+        bindRepeatingButton(R.id.btn_car_right, "D", ControlState.DRIVE_RIGHT, false);
+        bindRepeatingButton(R.id.btn_car_backward, "S", ControlState.DRIVE_BACKWARD, false);
     }
 
     private void setupStatusBoxes() {
@@ -203,42 +443,102 @@ public class MainActivity extends AppCompatActivity {
         statusSteerText = findViewById(R.id.tv_status_box2);
         statusMotorLeftText = findViewById(R.id.tv_status_box3);
         statusMotorRightText = findViewById(R.id.tv_status_box4);
+        telemetryDisplay = new TelemetryDisplay(statusArmText, statusSteerText,
+                statusMotorLeftText, statusMotorRightText);
+        debugOverlayText = findViewById(R.id.tv_debug_overlay);
+        if (BuildConfig.DEBUG) {
+            debugOverlayText.setVisibility(View.VISIBLE);
+        }
+        handler.postDelayed(metricsRunnable, METRICS_OVERLAY_INTERVAL_MS);
     }
 
+    // startup 스레드에서 돈다. 처음 여는 SharedPreferences 는 디스크를 읽는다
+    private void loadPreferences() {
+        SharedPreferences prefs = getSharedPreferences("bt_prefs", MODE_PRIVATE);
+        deviceProfiles.load(prefs.getString("device_profiles", null));
+        // 기록이 생기기 전 버전은 마지막 차량 주소만 남겼다
+        if (deviceProfiles.size() == 0) {
+            deviceProfiles.remember(prefs.getString("last_device_address", null));
+        }
+        controlStateMode = prefs.getBoolean("control_state_frames", false);
+    }
+
+    // 첫 프레임 뒤 메인 스레드에서 돈다. 설정은 이미 읽혀 있다
     private void setupBluetooth() {
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        SharedPreferences prefs = getSharedPreferences("bt_prefs", MODE_PRIVATE);
-        lastDeviceAddress = prefs.getString("last_device_address", null);
         registerDiscoveryReceiver();
         if (!hasBluetoothPermissions()) {
             requestBluetoothPermissions();
+            return;
         }
+        autoConnect();
     }
 
-    private void bindRepeatingButton(int buttonId, String command, boolean sendStopOnRelease) {
-        View button = findViewById(buttonId);
-        Runnable repeater = new Runnable() {
-            @Override
-            public void run() {
-                sendCommand(command);
-                handler.postDelayed(this, COMMAND_INTERVAL_MS);
+    // 검색 없이 기록된 차량에 바로 붙는다. 소켓 연결은 연결 스코프에서 돌아서 화면 준비와 겹친다.
+    // 시도할 차량이 없으면 false
+    @SuppressLint("MissingPermission")
+    private boolean autoConnect() {
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled() || linkManager.size() > 0) {
+            return false;
+        }
+        Set<BluetoothDevice> bonded = bluetoothAdapter.getBondedDevices();
+        if (bonded != null) {
+            ArrayList<String> addresses = new ArrayList<>(bonded.size());
+            for (BluetoothDevice device : bonded) {
+                addresses.add(device.getAddress());
             }
-        };
-        repeaters.put(buttonId, repeater);
+            deviceProfiles.setBonded(addresses);
+        }
+        autoConnectQueue.clear();
+        autoConnectQueue.addAll(deviceProfiles.candidates(AUTO_CONNECT_MAX_CANDIDATES));
+        return autoConnectNext();
+    }
+
+    // 앞 후보가 붙지 못했으면 다음 후보로 간다. 한 대라도 붙었으면 멈춘다
+    private boolean autoConnectNext() {
+        String address = autoConnectQueue.poll();
+        if (address == null || linkManager.getConnectedCount() > 0) {
+            autoConnectQueue.clear();
+            return false;
+        }
+        android.util.Log.d("Startup", "Auto-connect " + address
+                + " typical " + deviceProfiles.getTypicalConnectMs(address) + "ms");
+        startupMetrics.markAutoConnect(address, System.nanoTime());
+        connectToAddress(address);
+        return true;
+    }
+
+    private void bindRepeatingButton(int buttonId, String command, int input,
+                                     boolean sendStopOnRelease) {
+        View button = findViewById(buttonId);
+        byte[] commandBytes = command.getBytes(StandardCharsets.US_ASCII);
+        legacyCommands[Integer.numberOfTrailingZeros(input)] = commandBytes;
 
         button.setOnTouchListener((v, event) -> {
             switch (event.getActionMasked()) {
                 case MotionEvent.ACTION_DOWN:
                     animateButton(v, true);
-                    handler.removeCallbacks(repeater);
-                    handler.post(repeater);
+                    if (controlState.press(input)) {
+                        latencyTracker.onCommandSent(
+                                CommandLatencyTracker.groupsForInputs(input), System.nanoTime());
+                        if (controlStateMode) {
+                            sendCommand(ControlState.encodeFrame(controlState.mask()));
+                        } else {
+                            sendCommand(commandBytes);
+                        }
+                    }
                     return true;
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_CANCEL:
                     animateButton(v, false);
-                    handler.removeCallbacks(repeater);
-                    if (sendStopOnRelease) {
-                        sendCommand("S");
+                    if (controlState.release(input)) {
+                        if (controlStateMode) {
+                            latencyTracker.onCommandSent(
+                                    CommandLatencyTracker.groupsForInputs(input), System.nanoTime());
+                            sendCommand(ControlState.encodeFrame(controlState.mask()));
+                        } else if (sendStopOnRelease) {
+                            sendCommand("S");
+                        }
                     }
                     v.performClick();
                     return true;
@@ -248,17 +548,76 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // control-loop 스레드에서 COMMAND_INTERVAL_MS 마다 호출된다
+    private void onControlTick(long tickIndex) {
+        int mask = controlState.mask();
+        if (mask == 0) {
+            return;
+        }
+        if (controlStateMode) {
+            sendCommand(ControlState.encodeFrame(mask));
+            return;
+        }
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            byte[] command = legacyCommands[Integer.numberOfTrailingZeros(bits)];
+            if (command != null) {
+                sendCommand(command);
+            }
+        }
+    }
+
+    private void toggleControlStateMode() {
+        releaseControls();
+        controlStateMode = !controlStateMode;
+        getSharedPreferences("bt_prefs", MODE_PRIVATE).edit()
+                .putBoolean("control_state_frames", controlStateMode)
+                .apply();
+        updateDeviceStatus(controlStateMode ? "Control: state frames" : "Control: legacy");
+    }
+
+    // 눌린 입력을 모두 놓는다. 상태 프레임 모드면 선택된 차량에 정지 프레임을 보낸다
+    private void releaseControls() {
+        if (controlStateMode && controlState.mask() != 0) {
+            sendCommand(ControlState.encodeFrame(0));
+        }
+        controlState.clear();
+    }
+
+    // 눌린 채로 넘어가면 이전 차량이 계속 움직이므로 먼저 놓고 바꾼다
+    private void selectNextVehicle() {
+        releaseControls();
+        VehicleLink link = linkManager.selectNext();
+        updateDeviceStatus(link == null ? "No vehicle" : "Selected: " + link.name);
+    }
+
+    private void selectVehicle(String deviceId) {
+        if (deviceId == null || linkManager.getSelected() == linkManager.get(deviceId)) {
+            return;
+        }
+        releaseControls();
+        if (linkManager.select(deviceId)) {
+            updateDeviceStatus("Selected: " + linkManager.getSelected().name);
+        }
+    }
+
     private void sendCommand(String command) {
-        if (outputStream == null) {
+        sendCommand(command.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // 실제 write 는 bt-writer 스레드가 하고, 여기서는 큐에 넣기만 한다
+    private void sendCommand(byte[] command) {
+        VehicleLink link = linkManager.getSelected();
+        BluetoothWriter writer = link != null ? link.getWriter() : null;
+        if (writer == null) {
             return;
         }
-        try {
-            outputStream.write(command.getBytes(StandardCharsets.UTF_8));
-            outputStream.flush();
-        } catch (IOException e) {
-            handleConnectionLost();
+        if (!link.send(command)) {
+            eventTrace.record(EventTrace.CMD_QUEUE_FULL, EventTrace.packAscii(command),
+                    command.length, writer.getQueueDepth());
+            return;
         }
-        android.util.Log.d("Command", "Send: " + command);
+        eventTrace.record(EventTrace.CMD_SEND, EventTrace.packAscii(command),
+                command.length, writer.getQueueDepth());
     }
 
     private void startDiscovery() {
@@ -276,7 +635,8 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        reconnectRequested = false;
+        // 사용자가 고르기 시작했으면 남은 자동 연결 후보는 버린다
+        autoConnectQueue.clear();
         updateDeviceStatus("Searching...");
         showDeviceDialog();
         refreshDeviceList();
@@ -287,7 +647,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void handleDeviceFound(BluetoothDevice device) {
-        if (connectedDevice != null) {
+        if (linkManager.isFull()) {
             return;
         }
         addDeviceToList(device);
@@ -359,26 +719,67 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // 이미 붙어 있는 차량이면 고르기만 한다. 다른 차량의 링크는 건드리지 않는다.
+    // 메인 스레드에서 부른다. 연결 시도는 그 연결의 스코프에서 돌고, 붙으면 스코프째 링크로 넘어간다
     @SuppressLint("MissingPermission")
     private void connectToDevice(BluetoothDevice device) {
         if (!hasBluetoothPermissions()) {
             requestBluetoothPermissions();
             return;
         }
+        String address = device.getAddress();
+        VehicleLink link = linkManager.get(address);
+        if (link != null && link.isConnected()) {
+            selectVehicle(address);
+            return;
+        }
+        if (link == null) {
+            link = newVehicleLink(address, safeName(device), newBluetoothReconnect(address));
+            if (!linkManager.add(link)) {
+                updateDeviceStatus("Too many vehicles");
+                return;
+            }
+        }
+        ConnectionScope scope = new ConnectionScope("bt-" + address.replace(":", ""),
+                CONNECTION_MAX_THREADS, CONNECTION_CLOSE_TIMEOUT_MS, ioStats);
+        if (!link.beginConnect(scope)) {
+            // 이미 연결 중이다. 재연결 예약과 사용자 선택이 겹친 경우
+            scope.close();
+            return;
+        }
         updateDeviceStatus("Connecting " + safeName(device));
         bluetoothAdapter.cancelDiscovery();
-        closeSocket();
+        VehicleLink connecting = link;
+        scope.execute(() -> connect(connecting, device, scope));
+    }
 
-        new Thread(() -> {
-            try {
-                BluetoothSocket socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
-                socket.connect();
-                onConnected(device, socket);
-            } catch (IOException e) {
-                handler.post(() -> updateDeviceStatus("Connect failed"));
-                scheduleReconnect();
+    // 연결 스코프의 스레드에서 돈다. 실패하면 링크를 connecting 에서 되돌리고 스코프(소켓, 스레드)를 닫는다
+    @SuppressLint("MissingPermission")
+    private void connect(VehicleLink link, BluetoothDevice device, ConnectionScope scope) {
+        try {
+            BluetoothSocket socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
+            if (!scope.register(socket)) {
+                return;
             }
-        }).start();
+            long startNanos = System.nanoTime();
+            socket.connect();
+            onConnected(link, socket, scope, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (IOException e) {
+            if (!link.connectFailed(scope)) {
+                // 끊기로 취소됐다
+                return;
+            }
+            deviceProfiles.onConnectFailed(link.deviceId);
+            saveDeviceProfiles();
+            handler.post(() -> updateDeviceStatus("Connect failed: " + safeName(device)));
+            // 한 번이라도 붙었던 차량만 다시 시도한다. 처음 붙여 보던 차량은 목록에서 빼고 다음 자동 연결 후보로 간다
+            if (link.getAttaches() > 0) {
+                link.reconnect.onLinkLost(System.nanoTime());
+            } else {
+                linkManager.remove(link.deviceId);
+                handler.post(this::autoConnectNext);
+            }
+        }
     }
 
     private void connectToAddress(String address) {
@@ -391,206 +792,371 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void onConnected(BluetoothDevice device, BluetoothSocket socket) throws IOException {
-        connectedDevice = device;
-        bluetoothSocket = socket;
-        outputStream = socket.getOutputStream();
-        inputStream = socket.getInputStream();
-        saveLastDevice(device.getAddress());
-        handler.post(() -> updateDeviceStatus("Connected: " + safeName(device)));
+    // 연결 스레드에서 불린다. 링크는 connecting 상태로 이 스코프를 기다리고 있다
+    private void onConnected(VehicleLink link, BluetoothSocket socket, ConnectionScope scope,
+                             long connectMs) throws IOException {
+        startRecording(link);
+        if (!linkManager.attach(link, scope, socket.getInputStream(), socket.getOutputStream())) {
+            // 붙이는 사이에 끊기를 눌렀다
+            stopRecording(link);
+            return;
+        }
+        long now = System.nanoTime();
+        link.reconnect.onConnected(now);
+        startupMetrics.markConnected(now);
+        handler.post(this::stopReplay);
+        // 루프의 시작/정지는 모두 메인 스레드에서 한다
+        handler.post(this::updateControlLoop);
+        deviceProfiles.onConnected(link.deviceId, link.name, System.currentTimeMillis(), connectMs);
+        saveDeviceProfiles();
+        String status = "Connected: " + link.name + vehicleCountSuffix();
+        handler.post(() -> updateDeviceStatus(status));
         handler.post(() -> {
             if (deviceDialog != null && deviceDialog.isShowing()) {
                 deviceDialog.dismiss();
             }
         });
-        sendBluetoothStatus(true);
-        startReaderThread();
-    }
-
-    private void startReaderThread() {
-        stopReaderThread();
-        readerThread = new Thread(() -> {
-            byte[] buffer = new byte[256];
-            int bytes;
-            StringBuilder builder = new StringBuilder();
-            try {
-                while (!Thread.currentThread().isInterrupted() && inputStream != null) {
-                    bytes = inputStream.read(buffer);
-                    if (bytes == -1) {
-                        break;
-                    }
-                    builder.append(new String(buffer, 0, bytes, StandardCharsets.UTF_8));
-                    int newlineIndex;
-                    while ((newlineIndex = builder.indexOf("\n")) >= 0) {
-                        String line = builder.substring(0, newlineIndex).trim();
-                        builder.delete(0, newlineIndex + 1);
-                        if (!line.isEmpty()) {
-                            handleIncoming(line);
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                handleConnectionLost();
+        sendBluetoothStatus(link, true);
+    }
+
+    private VehicleLink newVehicleLink(String deviceId, String name, ReconnectEngine reconnect) {
+        TelemetryDeltaFilter filter = new TelemetryDeltaFilter(TELEMETRY_KEYFRAME_INTERVAL_MS);
+        filter.setAngleDeadband(telemetryAngleDeadband);
+        filter.setSpeedDeadband(telemetrySpeedDeadband);
+        return new VehicleLink(deviceId, name, filter, new TelemetryAggregator(TELEMETRY_SUMMARY_WINDOW_MS),
+                reconnect, MAX_LINE_LENGTH, WRITER_QUEUE_CAPACITY, WRITER_DRAIN_TIMEOUT_MS,
+                SPP_BINARY_FRAMING, vehicleLinkListener);
+    }
+
+    // 차량마다 재연결 일정을 따로 둔다. 시도는 메인 스레드에서 시작한다
+    private ReconnectEngine newBluetoothReconnect(String deviceId) {
+        return new ReconnectEngine("bt", reconnectScheduler,
+                RECONNECT_BASE_DELAY_MS, RECONNECT_MAX_DELAY_MS, RECONNECT_JITTER, new Random(),
+                attempt -> handler.post(() -> reconnectBluetooth(deviceId, attempt)));
+    }
+
+    private String vehicleCountSuffix() {
+        int count = linkManager.getConnectedCount();
+        return count > 1 ? " (" + count + " cars)" : "";
+    }
+
+    // ── 녹화 & 재생 ──────────────────────────────────────────
+
+    private File recordingsRoot() {
+        return new File(getFilesDir(), "recordings");
+    }
+
+    // 연결 스레드에서 불린다. 첫 세그먼트 파일은 만들 때 recorder-prep 스레드에서 미리 연다.
+    // 차량 여럿이 같은 ms 에 붙을 수 있어서 세션 이름에 주소를 붙인다. 시작 시각이 앞이라 이름순은 그대로 시간순이다
+    private void startRecording(VehicleLink link) {
+        File root = recordingsRoot();
+        TelemetryRecorder.pruneSessions(root, RECORDING_MAX_SESSIONS - 1);
+        long startEpochMs = System.currentTimeMillis();
+        String session = startEpochMs + "-" + link.deviceId.replace(":", "");
+        closeRecorder(link.swapRecorder(new TelemetryRecorder(new File(root, session),
+                RECORDING_SEGMENT_BYTES, RECORDING_INDEX_INTERVAL_MS, startEpochMs, System.nanoTime(),
+                recorderExecutor)));
+    }
+
+    private void stopRecording(VehicleLink link) {
+        closeRecorder(link.swapRecorder(null));
+    }
+
+    private void closeRecorder(TelemetryRecorder recorder) {
+        if (recorder == null) {
+            return;
+        }
+        recorder.close();
+        android.util.Log.d("Recorder", recorder.getDirectory().getName()
+                + " records=" + recorder.getRecords()
+                + " bytes=" + recorder.getBytes()
+                + " segments=" + recorder.getSegments()
+                + " dropped=" + recorder.getDropped());
+    }
+
+    /**
+     * 녹화된 세션을 실제 연결 대신 같은 수신 경로로 흘린다. 블루투스가 연결돼 있으면 섞이지 않게 거절한다.
+     * session 이 비어 있으면 가장 최근 세션, speed 0 이하는 최대 속도다.
+     */
+    private void startReplay(String session, double speed, long fromMs) {
+        if (linkManager.getConnectedCount() > 0) {
+            android.util.Log.w("Replay", "Refused while connected");
+            return;
+        }
+        stopReplay();
+        File dir;
+        if (session == null || session.isEmpty()) {
+            File[] sessions = TelemetryRecorder.listSessions(recordingsRoot());
+            if (sessions.length == 0) {
+                android.util.Log.w("Replay", "No recordings");
+                return;
+            }
+            dir = sessions[sessions.length - 1];
+        } else {
+            dir = new File(recordingsRoot(), session);
+        }
+        RecordingReader reader;
+        try {
+            reader = new RecordingReader(dir);
+        } catch (IOException e) {
+            android.util.Log.w("Replay", "Cannot open " + dir.getName() + ": " + e.getMessage());
+            return;
+        }
+        String name = dir.getName();
+        // 재생은 device "replay" 로 올린다. 변화분/요약 상태도 실제 차량과 섞이지 않게 따로 둔다
+        VehicleLink link = newVehicleLink("replay", name, null);
+        replayLink = link;
+        TelemetryReplayer[] self = new TelemetryReplayer[1];
+        self[0] = new TelemetryReplayer(reader, fromMs * 1000L, speed, new TelemetryReplayer.Listener() {
+            @Override
+            public void onTelemetry(TelemetryParser parser, int type) {
+                handleIncoming(link, parser, type);
+            }
+
+            @Override
+            public void onFinished(IOException error) {
+                TelemetryReplayer replayer = self[0];
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(replayer.getElapsedNanos());
+                android.util.Log.d("Replay", name + " records=" + replayer.getRecords()
+                        + " frames=" + replayer.getFrames() + " elapsed=" + elapsedMs + "ms"
+                        + (error != null ? " error=" + error.getMessage() : ""));
+                sendWebSocketMessageNow("{\"type\":\"replay\",\"data\":{\"session\":\"" + name
+                        + "\",\"state\":\"" + (error != null ? "failed" : "finished")
+                        + "\",\"records\":" + replayer.getRecords()
+                        + ",\"frames\":" + replayer.getFrames()
+                        + ",\"elapsedMs\":" + elapsedMs + "}}");
             }
         });
-        readerThread.start();
+        telemetryReplayer = self[0];
+        updateDeviceStatus("Replay " + name);
+        telemetryReplayer.start();
     }
 
-    private void handleIncoming(String payload) {
-        String trimmed = payload.trim();
-        if (trimmed.isEmpty()) {
-            return;
+    private void stopReplay() {
+        if (telemetryReplayer != null) {
+            telemetryReplayer.stop();
+            telemetryReplayer = null;
+            replayLink = null;
         }
-        handler.post(() -> updateStatusBoxes(trimmed));
-        sendArduinoTelemetry(trimmed);
     }
 
-    // ── UI 표시 ──────────────────────────────────────────────
+    // 차량마다의 리더(또는 재생) 스레드에서 인식된 프레임마다 호출된다
+    private void handleIncoming(VehicleLink link, TelemetryParser parser, int type) {
+        long now = System.nanoTime();
+        if (link.reconnect != null) {
+            link.reconnect.onData(now);
+            if (startupMetrics.markFirstTelemetry(now)) {
+                android.util.Log.d("Startup", "First telemetry " + startupMetrics.getFirstTelemetryMs()
+                        + "ms after launch (connected at " + startupMetrics.getConnectMs() + "ms)");
+            }
+        }
+        // 화면과 조작 지연은 선택된 차량(또는 재생) 것만 본다
+        if (link == linkManager.getSelected() || link == replayLink) {
+            latencyTracker.onTelemetry(parser, type, now);
+            telemetryDisplay.publish(parser, type);
+        }
+        sendArduinoTelemetry(link, parser, type);
+    }
 
-    private void updateStatusBoxes(String payload) {
-        if (payload.length() < 2 || payload.charAt(1) != ':') {
-            return;
+    // ── 성능 지표 ────────────────────────────────────────────
+
+    // 1초마다 디버그 오버레이를 갱신하고, METRICS_UPLINK_INTERVAL_MS 마다 서버로 보낸다
+    private void reportMetrics() {
+        if (debugOverlayText.getVisibility() == View.VISIBLE) {
+            StringBuilder sb = new StringBuilder(160);
+            latencyTracker.appendSummary(sb);
+            LatencyHistogram jitter = controlLoop.getJitterMicros();
+            sb.append("\nloop jitter p99 ").append(jitter.getPercentile(99)).append("us")
+                    .append(" overrun ").append(controlLoop.getOverruns());
+            VehicleLink selected = linkManager.getSelected();
+            BluetoothWriter writer = selected != null ? selected.getWriter() : null;
+            if (writer != null) {
+                sb.append(" | bt q ").append(writer.getQueueDepth())
+                        .append(" write ").append(writer.getAverageWriteNanos() / 1000).append("us");
+            }
+            if (linkManager.size() > 1) {
+                sb.append(" | cars ").append(linkManager.getConnectedCount())
+                        .append(" threads ").append(linkManager.getLinkThreads());
+            }
+            if (telemetrySpool != null) {
+                sb.append(" | spool ").append(telemetrySpool.size());
+            }
+            if (clockSync.isSynced()) {
+                sb.append(" | rtt ").append(clockSync.getSmoothedRttMs()).append("ms");
+            }
+            if (uplinkRateController.getLevel() > 0) {
+                sb.append(" | ws decim ").append(uplinkRateController.getLevel())
+                        .append(" q ").append(uplinkRateController.getQueueBytes() / 1024).append("KB");
+            }
+            if (selected != null && selected.reconnect.getRecoveries() > 0) {
+                sb.append(" | bt back ").append(selected.reconnect.getLastConnectMs())
+                        .append("/").append(selected.reconnect.getLastFirstDataMs()).append("ms");
+            }
+            debugOverlayText.setText(sb);
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastMetricsUplinkMs >= METRICS_UPLINK_INTERVAL_MS) {
+            lastMetricsUplinkMs = now;
+            sendWebSocketMessage(buildMetricsJson(now));
         }
-        char header = payload.charAt(0);
-        String data = payload.substring(2);
-        String[] parts = data.split(":");
+    }
 
-        switch (header) {
-            case 'm':
-                updateMotorDisplay(parts);
-                break;
-            case 's':
-                updateSteeringDisplay(parts);
-                break;
-            case 'a':
-                updateArmDisplay(parts);
-                break;
-            default:
-                android.util.Log.w("Parse", "Unknown header: " + header);
-                break;
+    private String buildMetricsJson(long timestamp) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"timestamp\":").append(timestamp)
+                .append(",\"type\":\"metrics\",\"data\":{");
+        latencyTracker.appendJson(sb);
+        LatencyHistogram jitter = controlLoop.getJitterMicros();
+        sb.append(",\"controlLoop\":{\"ticks\":").append(controlLoop.getTicks())
+                .append(",\"overruns\":").append(controlLoop.getOverruns())
+                .append(",\"skipped\":").append(controlLoop.getSkippedTicks())
+                .append(",\"jitterP50Us\":").append(jitter.getPercentile(50))
+                .append(",\"jitterP99Us\":").append(jitter.getPercentile(99))
+                .append(",\"jitterMaxUs\":").append(jitter.getMax())
+                .append('}');
+        // 차량별 writer, 변화분, 원격 명령, 재연결, 녹화는 links.items 안에 있다
+        sb.append(',');
+        linkManager.appendJson(sb);
+        sb.append(',');
+        ioStats.appendJson(sb);
+        sb.append(',');
+        startupMetrics.appendJson(sb);
+        sb.append(',');
+        startup.appendJson(sb);
+        sb.append(',');
+        eventTrace.appendStats(sb);
+        sb.append(',');
+        uplinkRateController.appendJson(sb);
+        sb.append(',');
+        clockSync.appendJson(sb, timestamp, System.nanoTime());
+        sb.append(",\"reconnect\":{");
+        webSocketReconnect.appendJson(sb);
+        sb.append('}');
+        sb.append(",\"webSocket\":{");
+        webSocketState.appendJson(sb);
+        sb.append('}');
+        if (telemetrySpool != null) {
+            sb.append(",\"spool\":{\"size\":").append(telemetrySpool.size())
+                    .append(",\"spooled\":").append(telemetrySpool.getSpooled())
+                    .append(",\"replayed\":").append(telemetrySpool.getReplayed())
+                    .append(",\"dropped\":").append(telemetrySpool.getDropped())
+                    .append('}');
         }
+        sb.append("}}");
+        return sb.toString();
     }
 
-    private void updateMotorDisplay(String[] parts) {
-        // m:left|right:targetThrottle:activeSpeed:pulseCount:pwmOut
-        if (parts.length < 5) return;
-        String side = parts[0];
-        String display = side.toUpperCase()
-                + "\nTarget:" + parts[1]
-                + "\nSpeed:" + parts[2]
-                + "\nPulse:" + parts[3]
-                + "\nPWM:" + parts[4];
+    // ── JSON 생성 & WebSocket 전송 ──────────────────────────
 
-        if ("left".equalsIgnoreCase(side)) {
-            statusMotorLeftText.setText(display);
-        } else {
-            statusMotorRightText.setText(display);
+    // 그 차량의 리더 스레드에서만 호출된다. 메시지마다 device 를 붙여 한 WebSocket 에 섞어 보낸다
+    private void sendArduinoTelemetry(VehicleLink link, TelemetryParser parser, int type) {
+        long capturedNanos = System.nanoTime();
+        if (summaryUplink != link.aggregating) {
+            if (link.aggregating && link.aggregator.closeWindow(TimeUnit.NANOSECONDS.toMillis(capturedNanos))) {
+                // 요약을 끄면 반쯤 찬 창을 지금까지의 길이로 보내고 원본으로 넘어간다
+                sendSummary(link, capturedNanos);
+            }
+            link.aggregating = summaryUplink;
+            link.aggregator.reset();
+            if (!link.aggregating) {
+                // 원본으로 돌아오면 서버 쪽 마지막 값이 오래됐으니 전체 값부터 보낸다
+                link.deltaFilter.requestKeyframe();
+            }
+        }
+        if (link.aggregating) {
+            aggregateTelemetry(link, parser, type, capturedNanos);
+            return;
+        }
+        // 송신 큐가 밀리면 스트림마다 최신값만 띄엄띄엄 보낸다. 필터 앞에서 버려야 변화분이 다음 레코드에 실린다
+        if (!uplinkRateController.shouldSend(link.uplinkGate,
+                TelemetryDeltaFilter.streamOf(parser, type), capturedNanos)) {
+            return;
+        }
+        // 움직이지 않은 반복 프레임은 여기서 버린다
+        int fieldMask = link.deltaFilter.filter(parser, type,
+                TimeUnit.NANOSECONDS.toMillis(capturedNanos));
+        if (fieldMask == 0) {
+            return;
+        }
+        long now = clockSync.toServerMillis(capturedNanos);
+        if (binaryUplink) {
+            if (uplinkBatcher != null) {
+                uplinkBatcher.addTelemetry(link.deviceId, parser, type, fieldMask, now);
+            }
+            return;
+        }
+        StringBuilder sb = link.jsonBuilder;
+        sb.setLength(0);
+        if (JsonTelemetryEncoder.append(sb, parser, type, fieldMask, now)) {
+            JsonTelemetryEncoder.tagDevice(sb, 0, link.deviceId);
+            sendWebSocketMessage(sb.toString());
+        }
+    }
+
+    // 창이 닫히면 요약 한 건을 보내고, 창을 닫은 샘플은 다음 창의 첫 샘플로 넣는다
+    private void aggregateTelemetry(VehicleLink link, TelemetryParser parser, int type, long capturedNanos) {
+        long nowMs = TimeUnit.NANOSECONDS.toMillis(capturedNanos);
+        if (!link.aggregator.add(parser, type, nowMs)) {
+            return;
         }
+        sendSummary(link, capturedNanos);
+        link.aggregator.add(parser, type, nowMs);
     }
 
-    private void updateSteeringDisplay(String[] parts) {
-        // s:currentAngle:targetAngle
-        if (parts.length < 2) return;
-        statusSteerText.setText("Cur:" + parts[0] + "\nTgt:" + parts[1]);
+    private void sendSummary(VehicleLink link, long capturedNanos) {
+        StringBuilder sb = link.jsonBuilder;
+        sb.setLength(0);
+        if (link.aggregator.appendSummary(sb, clockSync.toServerMillis(capturedNanos))) {
+            JsonTelemetryEncoder.tagDevice(sb, 0, link.deviceId);
+            sendWebSocketMessage(sb.toString());
+        }
     }
 
-    private void updateArmDisplay(String[] parts) {
-        // a:curBottom:tgtBottom:curL1:tgtL1:curL2:tgtL2:curGrip:tgtGrip
-        if (parts.length < 8) return;
-        String display = "Base:" + parts[0] + "/" + parts[1]
-                + " L1:" + parts[2] + "/" + parts[3]
-                + "\nL2:" + parts[4] + "/" + parts[5]
-                + " Grip:" + parts[6] + "/" + parts[7];
-        statusArmText.setText(display);
+    // 링크는 이미 닫혀 있다. 목록에는 남겨 두고 재연결을 건다
+    private void handleConnectionLost(VehicleLink link) {
+        sendBluetoothStatus(link, false);
+        stopRecording(link);
+        handler.post(() -> {
+            updateDeviceStatus("Disconnected: " + link.name);
+            updateControlLoop();
+        });
+        link.reconnect.onLinkLost(System.nanoTime());
     }
 
-    // ── JSON 생성 & WebSocket 전송 ──────────────────────────
+    private void reconnectBluetooth(String deviceId, int attempt) {
+        VehicleLink link = linkManager.get(deviceId);
+        if (link == null) {
+            return;
+        }
+        if (bluetoothAdapter == null) {
+            link.reconnect.cancel();
+            return;
+        }
+        if (link.isConnected()) {
+            return;
+        }
+        eventTrace.record(EventTrace.BT_RECONNECT, attempt, linkManager.indexOf(link), 0);
+        connectToAddress(deviceId);
+    }
 
-    private void sendArduinoTelemetry(String payload) {
-        if (payload.length() < 2 || payload.charAt(1) != ':') {
-            return;
-        }
-        char header = payload.charAt(0);
-        String data = payload.substring(2);
-        String[] parts = data.split(":");
-        String json = null;
-
-        switch (header) {
-            case 'm':
-                json = buildMotorJson(parts);
-                break;
-            case 's':
-                json = buildSteeringJson(parts);
-                break;
-            case 'a':
-                json = buildArmJson(parts);
-                break;
-        }
-        if (json != null) {
-            sendWebSocketMessage(json);
-        }
-    }
-
-    private String buildMotorJson(String[] p) {
-        // m:left|right:targetThrottle:activeSpeed:pulseCount:pwmOut
-        if (p.length < 5) return null;
-        long ts = System.currentTimeMillis();
-        return "{\"timestamp\":" + ts
-                + ",\"type\":\"motor\""
-                + ",\"data\":{\"side\":\"" + p[0] + "\""
-                + ",\"targetThrottle\":" + p[1]
-                + ",\"activeSpeed\":" + p[2]
-                + ",\"pulseCount\":" + p[3]
-                + ",\"pwmOut\":" + p[4]
-                + "}}";
-    }
-
-    private String buildSteeringJson(String[] p) {
-        // s:currentAngle:targetAngle
-        if (p.length < 2) return null;
-        long ts = System.currentTimeMillis();
-        return "{\"timestamp\":" + ts
-                + ",\"type\":\"steering\""
-                + ",\"data\":{\"currentAngle\":" + p[0]
-                + ",\"targetAngle\":" + p[1]
-                + "}}";
-    }
-
-    private String buildArmJson(String[] p) {
-        // a:curBottom:tgtBottom:curL1:tgtL1:curL2:tgtL2:curGrip:tgtGrip
-        if (p.length < 8) return null;
-        long ts = System.currentTimeMillis();
-        return "{\"timestamp\":" + ts
-                + ",\"type\":\"arm\""
-                + ",\"data\":{"
-                + "\"armBottom\":{\"current\":" + p[0] + ",\"target\":" + p[1] + "}"
-                + ",\"linkOne\":{\"current\":" + p[2] + ",\"target\":" + p[3] + "}"
-                + ",\"linkTwo\":{\"current\":" + p[4] + ",\"target\":" + p[5] + "}"
-                + ",\"gripper\":{\"current\":" + p[6] + ",\"target\":" + p[7] + "}"
-                + "}}";
-    }
-
-    private void handleConnectionLost() {
-        sendBluetoothStatus(false);
-        handler.post(() -> updateDeviceStatus("Disconnected"));
-        closeSocket();
-        scheduleReconnect();
-    }
-
-    private void scheduleReconnect() {
-        if (reconnectRequested) {
-            return;
-        }
-        reconnectRequested = true;
-        handler.removeCallbacks(reconnectRunnable);
-        handler.postDelayed(reconnectRunnable, RECONNECT_DELAY_MS);
-    }
-
-    private void disconnect(String reason) {
-        sendBluetoothStatus(false);
-        reconnectRequested = false;
-        handler.removeCallbacks(reconnectRunnable);
-        closeSocket();
+    // 사용자가 끊은 차량은 목록에서 빼고 재연결도 멈춘다
+    private void disconnect(VehicleLink link, String reason) {
+        sendBluetoothStatus(link, false);
+        link.reconnect.cancel();
+        linkManager.remove(link.deviceId);
+        stopRecording(link);
+        updateControlLoop();
+        updateDeviceStatus(reason);
+    }
+
+    private void disconnectAll(String reason) {
+        for (VehicleLink link : linkManager.links()) {
+            sendBluetoothStatus(link, false);
+            link.reconnect.cancel();
+            linkManager.remove(link.deviceId);
+            stopRecording(link);
+        }
+        updateControlLoop();
         updateDeviceStatus(reason);
     }
 
@@ -600,143 +1166,420 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void closeSocket() {
-        stopReaderThread();
-        try {
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        } catch (IOException ignored) {
+    // 메인 스레드에서 부른다. 붙어 있는 차량이 하나도 없을 때만 조작 루프를 멈춘다
+    private void updateControlLoop() {
+        if (linkManager.getConnectedCount() > 0) {
+            controlLoop.start();
+            return;
         }
-        try {
-            if (outputStream != null) {
-                outputStream.close();
-            }
-        } catch (IOException ignored) {
+        if (controlLoop.isRunning()) {
+            controlLoop.stop();
+            LatencyHistogram jitter = controlLoop.getJitterMicros();
+            android.util.Log.d("ControlLoop", "ticks=" + controlLoop.getTicks()
+                    + " overruns=" + controlLoop.getOverruns()
+                    + " skipped=" + controlLoop.getSkippedTicks()
+                    + " jitter p50=" + jitter.getPercentile(50) + "us"
+                    + " p99=" + jitter.getPercentile(99) + "us"
+                    + " max=" + jitter.getMax() + "us");
         }
-        try {
-            if (bluetoothSocket != null) {
-                bluetoothSocket.close();
-            }
-        } catch (IOException ignored) {
-        }
-        inputStream = null;
-        outputStream = null;
-        bluetoothSocket = null;
-        connectedDevice = null;
     }
 
-    private void stopReaderThread() {
-        if (readerThread != null) {
-            readerThread.interrupt();
-            readerThread = null;
-        }
+    // startup 스레드에서 돈다. OkHttp 는 처음 만들 때 TLS/플랫폼 클래스를 읽느라 느리다
+    private void buildWebSocketClient() {
+        webSocketClient = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(10, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
     }
 
-    private void setupWebSocket() {
-        if (webSocketClient == null) {
-            webSocketClient = new OkHttpClient.Builder()
-                    .connectTimeout(10, TimeUnit.SECONDS)
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .writeTimeout(10, TimeUnit.SECONDS)
-                    .retryOnConnectionFailure(true)
-                    .build();
-        }
-        startWebSocket();
+    // startup 스레드에서 돈다. 스풀은 파일을 연다. 배치가 생기기 전의 메시지는 버려진다 (연결도 아직 없다)
+    private void setupUplink() {
+        telemetrySpool = new TelemetrySpool(new File(getCacheDir(), "telemetry.spool"),
+                SPOOL_RING_CAPACITY, SPOOL_FILE_CAPACITY, SPOOL_OVERFLOW_POLICY);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "ws-uplink"));
+        uplinkScheduler = scheduler;
+        uplinkBatcher = new UplinkBatcher(spoolingSink, scheduler,
+                WEBSOCKET_BATCH_WINDOW_MS,
+                WEBSOCKET_BATCH_MAX_MESSAGES,
+                WEBSOCKET_BATCH_MAX_CHARS);
+        scheduler.scheduleWithFixedDelay(uplinkRateRunnable,
+                UPLINK_RATE_SAMPLE_MS, UPLINK_RATE_SAMPLE_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(clockPingRunnable,
+                CLOCK_PING_INTERVAL_MS, CLOCK_PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     private void startWebSocket() {
         if (!webSocketReconnectEnabled) {
             return;
         }
-        if (webSocket != null) {
+        // 이미 연결 중이거나 연결돼 있으면 재연결 예약이 겹친 것이다
+        ConnectionState.Snapshot<WebSocket> connecting = webSocketState.beginConnect(null);
+        if (connecting == null) {
             return;
         }
+        long generation = connecting.generation;
         Request request = new Request.Builder()
                 .url(getWebSocketUrl())
                 .build();
-        webSocket = webSocketClient.newWebSocket(request, new WebSocketListener() {
+        // 콜백은 자기 generation 일 때만 상태를 바꾼다. 이전 소켓의 늦은 onFailure/onClosed 는 물러난다
+        webSocketClient.newWebSocket(request, new WebSocketListener() {
             @Override
             public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response) {
-                android.util.Log.d("WebSocket", "Connected");
+                if (webSocketState.connected(generation, webSocket) == null) {
+                    // 여는 사이에 앱이 닫혔다. 상태에 올리지 못한 소켓은 직접 닫는다
+                    webSocket.cancel();
+                    return;
+                }
+                eventTrace.record(EventTrace.WS_OPEN, (int) generation);
+                webSocketReconnect.onConnected(System.nanoTime());
+                uplinkRateController.reset();
+                // 서버가 상태를 다시 세울 수 있게 다음 레코드는 전체 값으로 보내고, 붙어 있는 차량을 다시 알린다
+                requestKeyframes();
+                sendUplinkHello();
+                for (VehicleLink link : linkManager.links()) {
+                    if (link.isConnected()) {
+                        sendBluetoothStatus(link, true);
+                    }
+                }
+                if (uplinkScheduler != null) {
+                    uplinkScheduler.execute(clockPingRunnable);
+                    uplinkScheduler.execute(spoolReplayRunnable);
+                }
             }
 
             @Override
             public void onMessage(@NonNull WebSocket webSocket, @NonNull String text) {
-                handleServerCommand(text);
+                if (webSocketState.get().generation != generation) {
+                    return;
+                }
+                // pong 의 t3 는 파싱 전에 찍는다
+                handleServerCommand(text, System.nanoTime());
             }
 
             @Override
             public void onFailure(@NonNull WebSocket webSocket,
                                   @NonNull Throwable t,
                                   Response response) {
-                android.util.Log.d("WebSocket", "Failure: " + t.getMessage());
-                cleanupWebSocket();
-                scheduleWebSocketReconnect();
+                eventTrace.record(EventTrace.WS_FAILURE, (int) generation,
+                        response != null ? response.code() : -1, 0);
+                onWebSocketLost(generation);
             }
 
             @Override
             public void onClosed(@NonNull WebSocket webSocket, int code, @NonNull String reason) {
-                android.util.Log.d("WebSocket", "Closed: " + reason);
-                cleanupWebSocket();
-                scheduleWebSocketReconnect();
+                eventTrace.record(EventTrace.WS_CLOSED, (int) generation, code, 0);
+                onWebSocketLost(generation);
             }
         });
     }
 
-    private void scheduleWebSocketReconnect() {
-        if (!webSocketReconnectEnabled) {
+    // OkHttp 스레드에서 불린다. onFailure 와 onClosed 가 겹쳐도 draining 을 잡은 한 번만 정리하고 재연결을 건다
+    private void onWebSocketLost(long generation) {
+        ConnectionState.Snapshot<WebSocket> draining = webSocketState.beginDrain(generation);
+        if (draining == null) {
             return;
         }
-        handler.removeCallbacks(webSocketReconnectRunnable);
-        handler.postDelayed(webSocketReconnectRunnable, WEBSOCKET_RECONNECT_DELAY_MS);
+        binaryUplink = false;
+        summaryUplink = false;
+        if (draining.connection != null) {
+            draining.connection.cancel();
+        }
+        if (webSocketState.finishDrain(generation)) {
+            webSocketReconnect.onLinkLost(System.nanoTime());
+        }
     }
 
-    private void cleanupWebSocket() {
-        if (webSocket != null) {
-            webSocket.cancel();
-            webSocket = null;
-        }
+    // 연결된 웹소켓. 없으면 null. 락 없이 스냅숏 하나만 읽는다
+    private WebSocket connectedWebSocket() {
+        ConnectionState.Snapshot<WebSocket> current = webSocketState.get();
+        return current.phase == ConnectionState.CONNECTED ? current.connection : null;
     }
 
     private void shutdownWebSocket() {
         webSocketReconnectEnabled = false;
-        handler.removeCallbacks(webSocketReconnectRunnable);
-        if (webSocket != null) {
-            webSocket.close(1000, "app closed");
-            webSocket = null;
+        webSocketReconnect.cancel();
+        if (uplinkBatcher != null) {
+            uplinkBatcher.flush();
+        }
+        if (uplinkScheduler != null) {
+            uplinkScheduler.shutdown();
+        }
+        if (telemetrySpool != null) {
+            telemetrySpool.close();
+        }
+        ConnectionState.Snapshot<WebSocket> draining = webSocketState.close();
+        if (draining != null) {
+            if (draining.connection != null) {
+                draining.connection.close(1000, "app closed");
+            }
+            webSocketState.finishDrain(draining.generation);
         }
         if (webSocketClient != null) {
             webSocketClient.dispatcher().executorService().shutdown();
         }
     }
 
-    private void sendBluetoothStatus(boolean connected) {
-        String json = "{\"type\":\"bluetooth\",\"data\":{\"connected\":" + connected + "}}";
-        sendWebSocketMessage(json);
+    private void sendBluetoothStatus(VehicleLink link, boolean connected) {
+        String json = "{\"type\":\"bluetooth\",\"data\":{\"device\":\"" + link.deviceId
+                + "\",\"connected\":" + connected + "}}";
+        sendWebSocketMessageNow(json);
+    }
+
+    private void requestKeyframes() {
+        for (VehicleLink link : linkManager.links()) {
+            link.deltaFilter.requestKeyframe();
+        }
     }
 
+    // 텔레메트리는 배치로 묶어서 보낸다
     private void sendWebSocketMessage(String message) {
-        if (webSocket == null) {
+        if (uplinkBatcher == null) {
             return;
         }
-        boolean sent = webSocket.send(message);
-        if (!sent) {
-            scheduleWebSocketReconnect();
+        uplinkBatcher.add(message);
+    }
+
+    // 상태 이벤트처럼 지연되면 안 되는 메시지는 배치를 건너뛴다
+    private void sendWebSocketMessageNow(String message) {
+        if (uplinkBatcher == null) {
+            sendWebSocketFrame(message);
+            return;
         }
+        uplinkBatcher.sendNow(message);
     }
 
-    private void handleServerCommand(String command) {
+    // 끊긴 동안 쌓인 프레임을 uplink 스레드에서 조금씩 나눠 보낸다
+    private void replaySpool() {
+        if (connectedWebSocket() == null || telemetrySpool == null) {
+            return;
+        }
+        int sent = telemetrySpool.replay(webSocketSink, SPOOL_REPLAY_BATCH);
+        if (sent == SPOOL_REPLAY_BATCH && !telemetrySpool.isEmpty()) {
+            uplinkScheduler.schedule(spoolReplayRunnable,
+                    SPOOL_REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else if (telemetrySpool.isEmpty()) {
+            android.util.Log.d("Spool", "Replay done: spooled=" + telemetrySpool.getSpooled()
+                    + " replayed=" + telemetrySpool.getReplayed()
+                    + " dropped=" + telemetrySpool.getDropped());
+        }
+    }
+
+    private boolean sendWebSocketFrame(String frame) {
+        WebSocket socket = connectedWebSocket();
+        if (socket == null) {
+            return false;
+        }
+        // 보내지 못했으면 OkHttp 가 소켓을 닫고 onFailure/onClosed 에서 재연결이 잡힌다
+        boolean sent = socket.send(frame);
+        if (sent) {
+            long now = System.nanoTime();
+            webSocketReconnect.onData(now);
+            // 업링크는 ASCII JSON 이라 글자 수가 UTF-8 바이트 수와 같다
+            uplinkRateController.onFrameQueued(frame.length(), now);
+        }
+        return sent;
+    }
+
+    private boolean sendWebSocketFrame(ByteString frame) {
+        WebSocket socket = connectedWebSocket();
+        if (socket == null) {
+            return false;
+        }
+        // 보내지 못했으면 OkHttp 가 소켓을 닫고 onFailure/onClosed 에서 재연결이 잡힌다
+        boolean sent = socket.send(frame);
+        if (sent) {
+            long now = System.nanoTime();
+            webSocketReconnect.onData(now);
+            uplinkRateController.onFrameQueued(frame.size(), now);
+        }
+        return sent;
+    }
+
+    // 큐가 너무 쌓였으면 텔레메트리는 메모리 대신 스풀에 둔다. 빠지면 sampleUplinkQueue 가 다시 보낸다
+    private boolean isUplinkQueueFull() {
+        WebSocket socket = connectedWebSocket();
+        return socket != null && socket.queueSize() > UPLINK_QUEUE_SPOOL_BYTES;
+    }
+
+    // uplink 스레드에서 주기적으로 송신 큐를 재고, 스풀에 밀린 프레임이 있으면 이어서 보낸다
+    private void sampleUplinkQueue() {
+        WebSocket socket = connectedWebSocket();
+        if (socket == null) {
+            return;
+        }
+        long queueSize = socket.queueSize();
+        uplinkRateController.sample(queueSize, System.nanoTime());
+        if (queueSize <= UPLINK_QUEUE_LOW_BYTES && telemetrySpool != null && !telemetrySpool.isEmpty()) {
+            replaySpool();
+        }
+    }
+
+    // uplink 스레드에서 주기적으로 서버 시계와의 차이를 잰다. 배치/스풀을 거치면 측정이 틀어진다
+    private void sendClockPing() {
+        if (connectedWebSocket() == null) {
+            return;
+        }
+        sendWebSocketFrame(clockSync.buildPing(System.nanoTime()));
+    }
+
+    // 연결마다 지원 인코딩을 알리고, 서버가 고르기 전까지는 JSON 으로 보낸다
+    private void sendUplinkHello() {
+        binaryUplink = false;
+        summaryUplink = false;
+        // modes: summary 를 고르면 원본 대신 창 단위 요약만 올린다
+        // clockSync: 텔레메트리 timestamp 는 ping/pong 으로 맞춘 서버 시계 기준 수집 시각이다
+        // multiVehicle: 텔레메트리, bluetooth, ack 에 device 가 붙고, command 는 device 로 차량을 고른다
+        sendWebSocketFrame("{\"type\":\"hello\",\"data\":{\"encodings\":[\"json\",\"binary\"]"
+                + ",\"modes\":[\"raw\",\"summary\"],\"clockSync\":true,\"multiVehicle\":true}}");
+    }
+
+    // OkHttp 수신 스레드에서 불린다
+    private void handleServerCommand(String command, long receivedNanos) {
         if (command == null || command.trim().isEmpty()) {
             return;
         }
-        android.util.Log.d("WebSocket", "Command received: " + command);
+        try {
+            JSONObject message = new JSONObject(command);
+            String type = message.optString("type");
+            if ("command".equals(type)) {
+                relayServerCommand(message.optJSONObject("data"));
+                return;
+            }
+            if ("pong".equals(type)) {
+                JSONObject data = message.optJSONObject("data");
+                if (data != null) {
+                    clockSync.onPong(data.optLong("t0"), data.optLong("t1"), data.optLong("t2"),
+                            receivedNanos);
+                }
+                return;
+            }
+            eventTrace.record(EventTrace.SERVER_MESSAGE, serverMessageCode(type), command.length(), 0);
+            if ("encoding".equals(type)) {
+                JSONObject data = message.optJSONObject("data");
+                String encoding = data != null ? data.optString("value") : "";
+                switchUplinkEncoding("binary".equals(encoding));
+            } else if ("replay".equals(type)) {
+                // {"type":"replay","data":{"session":"1700000000000","speed":1.0,"fromMs":0}}
+                JSONObject data = message.optJSONObject("data");
+                String session = data != null ? data.optString("session") : "";
+                double speed = data != null ? data.optDouble("speed", 1.0) : 1.0;
+                long fromMs = data != null ? data.optLong("fromMs") : 0;
+                handler.post(() -> startReplay(session, speed, fromMs));
+            } else if ("replayStop".equals(type)) {
+                handler.post(this::stopReplay);
+            } else if ("select".equals(type)) {
+                // {"type":"select","data":{"device":"00:11:22:33:44:55"}} 조작 버튼이 이 차량으로 간다
+                JSONObject data = message.optJSONObject("data");
+                String device = data != null ? data.optString("device", null) : null;
+                handler.post(() -> selectVehicle(device));
+            } else if ("uplinkMode".equals(type)) {
+                // {"type":"uplinkMode","data":{"value":"summary"}} "raw" 면 원본 텔레메트리로 돌아간다
+                JSONObject data = message.optJSONObject("data");
+                summaryUplink = data != null && "summary".equals(data.optString("value"));
+                eventTrace.record(EventTrace.UPLINK_MODE, summaryUplink ? 1 : 0);
+            } else if ("deadband".equals(type)) {
+                // {"type":"deadband","data":{"angle":2,"speed":1}} 빠진 값은 그대로 둔다
+                JSONObject data = message.optJSONObject("data");
+                if (data != null && data.has("angle")) {
+                    telemetryAngleDeadband = data.optInt("angle");
+                }
+                if (data != null && data.has("speed")) {
+                    telemetrySpeedDeadband = data.optInt("speed");
+                }
+                for (VehicleLink link : linkManager.links()) {
+                    link.deltaFilter.setAngleDeadband(telemetryAngleDeadband);
+                    link.deltaFilter.setSpeedDeadband(telemetrySpeedDeadband);
+                }
+            } else if ("trace".equals(type)) {
+                // {"type":"trace","data":{"enabled":true,"dump":true}} dump 면 링을 파일로 남기고 최근 사건을 올린다
+                JSONObject data = message.optJSONObject("data");
+                if (data != null && data.has("enabled")) {
+                    eventTrace.setEnabled(data.optBoolean("enabled"));
+                }
+                if (data != null && data.optBoolean("dump") && uplinkScheduler != null) {
+                    uplinkScheduler.execute(this::dumpEventTrace);
+                }
+            }
+        } catch (JSONException e) {
+            eventTrace.record(EventTrace.SERVER_INVALID, command.length());
+        }
     }
 
-    private void saveLastDevice(String address) {
-        lastDeviceAddress = address;
-        SharedPreferences prefs = getSharedPreferences("bt_prefs", MODE_PRIVATE);
-        prefs.edit().putString("last_device_address", address).apply();
+    private static int serverMessageCode(String type) {
+        for (int i = 1; i < SERVER_MESSAGE_TYPES.length; i++) {
+            if (SERVER_MESSAGE_TYPES[i].equals(type)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // uplink 스레드에서 돈다. 최근 덤프 몇 개만 남긴다
+    private void dumpEventTrace() {
+        File dir = new File(getFilesDir(), "traces");
+        long epochMs = System.currentTimeMillis();
+        int written = -1;
+        try {
+            written = eventTrace.dumpTo(new File(dir, epochMs + ".trace"));
+        } catch (IOException e) {
+            android.util.Log.w("Trace", "Dump failed: " + e.getMessage());
+        }
+        File[] dumps = dir.listFiles((d, name) -> name.endsWith(".trace"));
+        if (dumps != null && dumps.length > EVENT_TRACE_MAX_DUMPS) {
+            Arrays.sort(dumps);
+            for (int i = 0; i < dumps.length - EVENT_TRACE_MAX_DUMPS; i++) {
+                dumps[i].delete();
+            }
+        }
+        eventTrace.record(EventTrace.TRACE_DUMP, written);
+        StringBuilder sb = new StringBuilder(EVENT_TRACE_UPLOAD_MAX_EVENTS * 32);
+        sb.append("{\"type\":\"trace\",\"data\":{\"file\":\"").append(epochMs).append(".trace\",\"dumped\":")
+                .append(written).append(',');
+        eventTrace.appendJson(sb, EVENT_TRACE_UPLOAD_MAX_EVENTS);
+        sb.append("}}");
+        sendWebSocketMessageNow(sb.toString());
+    }
+
+    // {"type":"command","data":{"device":…,"seq":n,"cmd":"W"|"c:0005","expiresAt":ms}} → 검사 후 그 차량의 bt-writer 큐로 바로 넣는다.
+    // device 가 없으면 선택된 차량이다. seq 는 차량마다 따로 센다
+    private void relayServerCommand(JSONObject data) {
+        long nowNanos = System.nanoTime();
+        // expiresAt 은 서버 시계 기준이다
+        long nowMs = clockSync.toServerMillis(nowNanos);
+        String device = data != null ? data.optString("device", null) : null;
+        VehicleLink link = device != null ? linkManager.get(device) : linkManager.getSelected();
+        RemoteCommandRelay relay = link != null ? link.relay : unroutedCommandRelay;
+        if (data == null) {
+            relay.submit(0, null, 0, nowMs, nowNanos);
+            return;
+        }
+        relay.submit(data.optLong("seq"), data.optString("cmd", null),
+                data.optLong("expiresAt"), nowMs, nowNanos);
+    }
+
+    private void switchUplinkEncoding(boolean binary) {
+        if (uplinkBatcher != null) {
+            uplinkBatcher.flush();
+        }
+        binaryUplink = binary;
+        requestKeyframes();
+        eventTrace.record(EventTrace.UPLINK_ENCODING, binary ? 1 : 0);
+    }
+
+    // 연결 스레드에서도 불린다. apply 는 디스크 쓰기를 뒤로 미룬다
+    private void saveDeviceProfiles() {
+        getSharedPreferences("bt_prefs", MODE_PRIVATE).edit()
+                .putString("device_profiles", deviceProfiles.encode())
+                .apply();
+    }
+
+    // 프로세스가 시작된 시각을 System.nanoTime 기준으로 옮긴다. 액티비티 생성 전의 시간도 실행 시간에 넣는다
+    private static long processStartNanos() {
+        long sinceStartMs = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(Math.max(0, sinceStartMs));
     }
 
     private String safeName(BluetoothDevice device) {
@@ -788,7 +1631,10 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == PERMISSION_REQUEST_CODE) {
             if (hasBluetoothPermissions()) {
-                startDiscovery();
+                // 처음 권한을 받은 실행이라도 기록된 차량이 있으면 검색 없이 붙는다
+                if (!autoConnect()) {
+                    startDiscovery();
+                }
             } else {
                 updateDeviceStatus("Permission denied");
             }
@@ -805,7 +1651,22 @@ public class MainActivity extends AppCompatActivity {
         if (deviceDialog != null) {
             deviceDialog.dismiss();
         }
-        disconnect("Disconnected");
-        shutdownWebSocket();
+        startup.cancel();
+        disconnectAll("Disconnected");
+        // 이미 넣은 닫기는 끝까지 돈다
+        linkCloseExecutor.shutdown();
+        recorderExecutor.shutdown();
+        stopReplay();
+        // 도는 중인 초기화 단계 뒤에 줄을 세워 닫는다. 반쯤 만든 WebSocket/스풀 필드를 보지 않고
+        // 메인 스레드도 기다리지 않는다. 초기화가 이미 끝나 실행기가 내려갔으면 여기서 바로 닫는다
+        try {
+            startupExecutor.execute(this::shutdownWebSocket);
+            startupExecutor.shutdown();
+        } catch (RejectedExecutionException e) {
+            shutdownWebSocket();
+        }
+        reconnectScheduler.shutdownNow();
+        telemetryDisplay.cancel();
+        handler.removeCallbacks(metricsRunnable);
     }
 }
\ No newline at end of file
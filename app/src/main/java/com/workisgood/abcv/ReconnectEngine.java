@@ -0,0 +1,211 @@
+package com.workisgood.abcv;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 끊긴 링크(블루투스, WebSocket)를 다시 잇는 재시도 일정과 복구 시간 측정.
+ * 끊기면 첫 시도는 바로 하고, 그 뒤로는 baseDelayMs 부터 두 배씩 maxDelayMs 까지 늘린 지연에
+ * jitter 비율만큼 무작위로 줄인 값을 기다린다. 성공(onConnected)이나 cancel 이 오면 일정을 멈춘다.
+ * 끊긴 시점부터 연결까지, 그리고 첫 데이터(onData)까지의 시간을 ms 히스토그램에 남긴다.
+ *
+ * 시도 자체는 Action 이 비동기로 시작하고, 결과는 onConnected / onLinkLost 로 알려 준다.
+ * 시도가 실패한 것도, 연결된 뒤 다시 끊긴 것도 모두 onLinkLost 다.
+ */
+final class ReconnectEngine {
+
+    interface Action {
+        /** scheduler 스레드에서 불린다. attempt 는 끊긴 뒤 1부터 센다. */
+        void attempt(int attempt);
+    }
+
+    private static final long MAX_RECOVERY_MS = 10 * 60 * 1000L;
+
+    private final String name;
+    private final ScheduledExecutorService scheduler;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double jitter;
+    private final Random random;
+    private final Action action;
+
+    private final LatencyHistogram connectMillis = new LatencyHistogram(MAX_RECOVERY_MS);
+    private final LatencyHistogram firstDataMillis = new LatencyHistogram(MAX_RECOVERY_MS);
+
+    // 재연결 주기 상태. 모두 this 락 아래에서만 바꾼다
+    private boolean active;
+    private boolean attemptScheduled;
+    private int attempt;
+    private long lostAtNanos;
+    private ScheduledFuture<?> pending;
+    private int generation;
+    private long attempts;
+    private long recoveries;
+    private long lastConnectMs = -1;
+    private long lastFirstDataMs = -1;
+
+    // 재연결된 뒤 첫 데이터를 기다리는 중. 데이터 경로는 락 없이 이것만 본다
+    private volatile boolean awaitingData;
+
+    ReconnectEngine(String name, ScheduledExecutorService scheduler,
+                    long baseDelayMs, long maxDelayMs, double jitter, Random random, Action action) {
+        this.name = name;
+        this.scheduler = scheduler;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.jitter = jitter;
+        this.random = random;
+        this.action = action;
+    }
+
+    /**
+     * attempt 번째 시도 전 기다릴 시간. 1번째는 0,
+     * 그 뒤로는 min(maxDelayMs, baseDelayMs * 2^(attempt-2)) 에서 최대 jitter 비율만큼 뺀다.
+     * randomUnit 은 [0, 1) 범위의 난수다.
+     */
+    static long backoffDelayMs(int attempt, long baseDelayMs, long maxDelayMs,
+                               double jitter, double randomUnit) {
+        if (attempt <= 1) {
+            return 0;
+        }
+        int shift = Math.min(attempt - 2, 30);
+        long delay = Math.min(maxDelayMs, baseDelayMs << shift);
+        if (delay < 0) {
+            delay = maxDelayMs;
+        }
+        return delay - (long) (delay * jitter * randomUnit);
+    }
+
+    /** 링크가 끊겼거나 시도가 실패했다. 이미 다음 시도가 잡혀 있으면 아무것도 하지 않는다. */
+    synchronized void onLinkLost(long nowNanos) {
+        if (attemptScheduled) {
+            return;
+        }
+        if (!active) {
+            active = true;
+            attempt = 0;
+            lostAtNanos = nowNanos;
+            awaitingData = false;
+        }
+        attempt++;
+        long delay = backoffDelayMs(attempt, baseDelayMs, maxDelayMs, jitter, random.nextDouble());
+        int scheduledGeneration = generation;
+        int scheduledAttempt = attempt;
+        try {
+            pending = scheduler.schedule(() -> runAttempt(scheduledGeneration, scheduledAttempt),
+                    delay, TimeUnit.MILLISECONDS);
+            attemptScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // 종료 중이면 다시 잇지 않는다
+            active = false;
+        }
+    }
+
+    /** 링크가 다시 열렸다. 재연결 주기 중이었으면 복구 시간을 기록하고 첫 데이터를 기다린다. */
+    synchronized void onConnected(long nowNanos) {
+        cancelPending();
+        if (!active) {
+            return;
+        }
+        active = false;
+        recoveries++;
+        lastConnectMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - lostAtNanos);
+        connectMillis.record(lastConnectMs);
+        awaitingData = true;
+    }
+
+    /** 링크로 데이터가 들어왔다. 재연결 뒤 첫 데이터일 때만 락을 잡는다. */
+    void onData(long nowNanos) {
+        if (!awaitingData) {
+            return;
+        }
+        synchronized (this) {
+            if (!awaitingData) {
+                return;
+            }
+            awaitingData = false;
+            lastFirstDataMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - lostAtNanos);
+            firstDataMillis.record(lastFirstDataMs);
+        }
+    }
+
+    /** 사용자가 끊었거나 화면이 닫혔다. 잡혀 있는 시도를 취소하고 주기를 끝낸다. */
+    synchronized void cancel() {
+        cancelPending();
+        active = false;
+        awaitingData = false;
+    }
+
+    synchronized boolean isReconnecting() {
+        return active;
+    }
+
+    synchronized int getAttempt() {
+        return active ? attempt : 0;
+    }
+
+    synchronized long getAttempts() {
+        return attempts;
+    }
+
+    synchronized long getRecoveries() {
+        return recoveries;
+    }
+
+    /** 마지막 복구에서 끊김 → 연결까지 걸린 ms. 아직 없으면 -1 */
+    synchronized long getLastConnectMs() {
+        return lastConnectMs;
+    }
+
+    /** 마지막 복구에서 끊김 → 첫 데이터까지 걸린 ms. 아직 없으면 -1 */
+    synchronized long getLastFirstDataMs() {
+        return lastFirstDataMs;
+    }
+
+    LatencyHistogram getConnectMillis() {
+        return connectMillis;
+    }
+
+    LatencyHistogram getFirstDataMillis() {
+        return firstDataMillis;
+    }
+
+    /** "bt":{...} 형태로 붙인다. 값은 ms */
+    synchronized void appendJson(StringBuilder sb) {
+        sb.append('"').append(name).append("\":{")
+                .append("\"reconnecting\":").append(active)
+                .append(",\"attempts\":").append(attempts)
+                .append(",\"recoveries\":").append(recoveries)
+                .append(",\"connectP50Ms\":").append(connectMillis.getPercentile(50))
+                .append(",\"connectP99Ms\":").append(connectMillis.getPercentile(99))
+                .append(",\"firstDataP50Ms\":").append(firstDataMillis.getPercentile(50))
+                .append(",\"firstDataP99Ms\":").append(firstDataMillis.getPercentile(99))
+                .append(",\"lastConnectMs\":").append(lastConnectMs)
+                .append(",\"lastFirstDataMs\":").append(lastFirstDataMs)
+                .append('}');
+    }
+
+    private void runAttempt(int scheduledGeneration, int scheduledAttempt) {
+        synchronized (this) {
+            if (scheduledGeneration != generation || !active) {
+                return;
+            }
+            attemptScheduled = false;
+            pending = null;
+            attempts++;
+        }
+        action.attempt(scheduledAttempt);
+    }
+
+    private void cancelPending() {
+        generation++;
+        attemptScheduled = false;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+}
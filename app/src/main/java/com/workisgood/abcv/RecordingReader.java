@@ -0,0 +1,202 @@
+package com.workisgood.abcv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * TelemetryRecorder 가 남긴 세션 하나를 처음부터, 또는 seek 한 시점부터 순서대로 읽는다.
+ * 세그먼트는 읽기 전용 메모리 맵으로 연다. 레코드 시각은 세션 시작 기준 µs 다.
+ * 기록 중이던 세그먼트도 읽을 수 있으며, 아직 안 쓴 0 영역에서 끝난 것으로 본다.
+ */
+final class RecordingReader implements Closeable {
+
+    private final File directory;
+    private final int segmentCount;
+    private final long startEpochMs;
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer mapped;
+    private int segmentNo = -1;
+    private int position;
+    private long timeMicros;
+
+    // 마지막으로 읽은 레코드
+    private byte kind;
+    private long recordMicros;
+    private byte[] payload = new byte[128];
+    private int payloadLength;
+    private boolean peeked;
+
+    RecordingReader(File directory) throws IOException {
+        this.directory = directory;
+        int count = 0;
+        while (TelemetryRecorder.segmentFile(directory, count).isFile()) {
+            count++;
+        }
+        if (count == 0) {
+            throw new IOException("No recording in " + directory);
+        }
+        segmentCount = count;
+        openSegment(0);
+        startEpochMs = mapped.getLong(8);
+        position = TelemetryRecorder.HEADER_SIZE;
+    }
+
+    /** 세션을 시작한 순간의 기기 벽시계 */
+    long getStartEpochMs() {
+        return startEpochMs;
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * timeMicros 이후 첫 레코드 바로 앞으로 옮긴다.
+     * 시작 시각이 timeMicros 이하인 마지막 세그먼트를 고르고, 그 안의 희소 인덱스로 가장 가까운
+     * 시각 레코드까지 뛴 다음 거기서부터만 훑는다.
+     */
+    void seek(long timeMicros) throws IOException {
+        int segment = 0;
+        for (int i = 1; i < segmentCount; i++) {
+            openSegment(i);
+            if (indexCount() == 0 || indexTime(0) > timeMicros) {
+                break;
+            }
+            segment = i;
+        }
+        openSegment(segment);
+        position = TelemetryRecorder.HEADER_SIZE;
+        int entries = indexCount();
+        for (int i = entries - 1; i >= 0; i--) {
+            if (indexTime(i) <= timeMicros) {
+                position = mapped.getInt(TelemetryRecorder.INDEX_OFFSET
+                        + i * TelemetryRecorder.INDEX_ENTRY_SIZE + 8);
+                break;
+            }
+        }
+        peeked = false;
+        while (next()) {
+            if (recordMicros >= timeMicros) {
+                peeked = true;
+                return;
+            }
+        }
+    }
+
+    /** 다음 텔레메트리/명령 레코드로 간다. 끝이면 false */
+    boolean next() throws IOException {
+        if (peeked) {
+            peeked = false;
+            return true;
+        }
+        while (true) {
+            if (mapped == null) {
+                return false;
+            }
+            byte k = position < mapped.capacity() ? mapped.get(position) : 0;
+            if (k == 0) {
+                if (segmentNo + 1 >= segmentCount) {
+                    return false;
+                }
+                openSegment(segmentNo + 1);
+                position = TelemetryRecorder.HEADER_SIZE;
+                continue;
+            }
+            position++;
+            if (k == TelemetryRecorder.KIND_TIME) {
+                timeMicros = readUnsigned();
+                continue;
+            }
+            if (k != TelemetryRecorder.KIND_TELEMETRY && k != TelemetryRecorder.KIND_COMMAND) {
+                throw new IOException("Corrupt record at " + segmentNo + ":" + (position - 1));
+            }
+            timeMicros += readUnsigned();
+            int length = (int) readUnsigned();
+            if (length < 0 || position + length > mapped.capacity()) {
+                throw new IOException("Corrupt record at " + segmentNo + ":" + (position - 1));
+            }
+            if (length > payload.length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            mapped.position(position);
+            mapped.get(payload, 0, length);
+            position += length;
+            kind = k;
+            recordMicros = timeMicros;
+            payloadLength = length;
+            return true;
+        }
+    }
+
+    /** TelemetryRecorder.KIND_TELEMETRY 또는 KIND_COMMAND */
+    byte kind() {
+        return kind;
+    }
+
+    long timeMicros() {
+        return recordMicros;
+    }
+
+    /** 다음 next 에서 덮어써진다 */
+    byte[] payload() {
+        return payload;
+    }
+
+    int payloadLength() {
+        return payloadLength;
+    }
+
+    @Override
+    public void close() {
+        mapped = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+            raf = null;
+        }
+    }
+
+    private int indexCount() {
+        return Math.min(mapped.getInt(TelemetryRecorder.INDEX_COUNT_OFFSET), TelemetryRecorder.INDEX_CAPACITY);
+    }
+
+    private long indexTime(int entry) {
+        return mapped.getLong(TelemetryRecorder.INDEX_OFFSET + entry * TelemetryRecorder.INDEX_ENTRY_SIZE);
+    }
+
+    private void openSegment(int segment) throws IOException {
+        if (segment == segmentNo && mapped != null) {
+            return;
+        }
+        close();
+        raf = new RandomAccessFile(TelemetryRecorder.segmentFile(directory, segment), "r");
+        mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        if (mapped.capacity() < TelemetryRecorder.HEADER_SIZE
+                || mapped.getInt(0) != TelemetryRecorder.MAGIC
+                || mapped.get(4) != TelemetryRecorder.VERSION) {
+            close();
+            throw new IOException("Not a recording segment: " + segment);
+        }
+        segmentNo = segment;
+    }
+
+    private long readUnsigned() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = mapped.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
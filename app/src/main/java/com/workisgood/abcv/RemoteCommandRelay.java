@@ -0,0 +1,269 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.ControlState;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 서버가 WebSocket 으로 보낸 명령을 검사해서 블루투스 writer 큐에 바로 넣는다.
+ * 메인 스레드를 거치지 않고 WebSocket 수신 스레드 → bt-writer 스레드 두 홉으로 끝난다.
+ *
+ * 명령마다 서버가 붙인 seq 로 중복을 거르고(최근 WINDOW 개를 비트마스크로 기억),
+ * expiresAtMs 가 지난 명령은 버린다. 결과는 ack 로 돌려주며, 보낸 명령은 실제로 소켓에
+ * 쓰인 뒤 수신 시각(rxAt)과 write 완료 시각(writeAt)을 함께 ack 한다. 시각은 서버 시계 ms 다 (ClockSync).
+ * seq 1 은 서버가 번호를 새로 시작한 것으로 보고 중복 창을 비운다.
+ * seq 는 큐에 넣었거나 만료로 버렸을 때만 기억한다. busy 나 dropped 로 돌려보낸 명령은 같은 seq 로 다시 보낼 수 있다.
+ * 차량마다 하나씩 두며, device 가 있으면 ack 에 "device" 로 넣는다.
+ */
+final class RemoteCommandRelay {
+
+    interface Output {
+        /** 블로킹 없이 큐에 넣는다. 받은 배열을 그대로 BluetoothWriter.Listener.onWritten 으로 돌려줘야 한다. */
+        boolean enqueue(byte[] command);
+    }
+
+    interface AckSink {
+        void sendAck(String json);
+    }
+
+    static final String STATUS_WRITTEN = "written";
+    static final String STATUS_DUPLICATE = "duplicate";
+    static final String STATUS_EXPIRED = "expired";
+    static final String STATUS_INVALID = "invalid";
+    static final String STATUS_BUSY = "busy";
+    static final String STATUS_DROPPED = "dropped";
+
+    private static final String LETTERS = "KJHLRTYUIOWADSQ";
+    private static final int WINDOW = 64;
+    private static final int MAX_PENDING = 16;
+    private static final long MAX_WRITE_MICROS = 10_000_000L;
+
+    private final Output output;
+    private final AckSink ackSink;
+    private final String device;
+
+    // 중복 판정: highestSeq 와 그보다 작은 WINDOW-1 개의 수신 여부 (bit i = highestSeq - i)
+    private long highestSeq;
+    private long seenWindow;
+
+    // 쓰기를 기다리는 명령. onWritten 은 배열 참조로 찾는다
+    private final byte[][] pendingCommands = new byte[MAX_PENDING][];
+    private final long[] pendingSeq = new long[MAX_PENDING];
+    private final long[] pendingRxNanos = new long[MAX_PENDING];
+    private final long[] pendingRxMillis = new long[MAX_PENDING];
+    private volatile int pendingCount;
+
+    private final LatencyHistogram rxToWriteMicros = new LatencyHistogram(MAX_WRITE_MICROS);
+    private long received;
+    private long written;
+    private long duplicates;
+    private long expired;
+    private long invalid;
+    private long busy;
+    private long dropped;
+
+    private final StringBuilder ack = new StringBuilder(128);
+
+    RemoteCommandRelay(Output output, AckSink ackSink) {
+        this(output, ackSink, null);
+    }
+
+    RemoteCommandRelay(Output output, AckSink ackSink, String device) {
+        this.output = output;
+        this.ackSink = ackSink;
+        this.device = device;
+    }
+
+    /**
+     * 서버 명령 하나를 처리하고 상태를 돌려준다. 거절한 명령은 여기서 바로 ack 한다.
+     * command 는 글자 명령 하나(W, A, ...)나 상태 프레임 "c:xxxx" 다.
+     * expiresAtMs 가 0 이하면 만료 검사를 하지 않는다. nowMs 는 서버 시계 기준 현재 시각이다.
+     */
+    synchronized String submit(long seq, String command, long expiresAtMs,
+                               long nowMs, long nowNanos) {
+        received++;
+        byte[] frame = encode(command);
+        String status;
+        if (seq <= 0 || frame == null) {
+            invalid++;
+            status = STATUS_INVALID;
+        } else if (isSeen(seq)) {
+            duplicates++;
+            status = STATUS_DUPLICATE;
+        } else if (expiresAtMs > 0 && nowMs > expiresAtMs) {
+            markSeen(seq);
+            expired++;
+            status = STATUS_EXPIRED;
+        } else if (pendingCount == MAX_PENDING) {
+            busy++;
+            status = STATUS_BUSY;
+        } else {
+            int slot = pendingCount;
+            pendingCommands[slot] = frame;
+            pendingSeq[slot] = seq;
+            pendingRxNanos[slot] = nowNanos;
+            pendingRxMillis[slot] = nowMs;
+            pendingCount = slot + 1;
+            if (output.enqueue(frame)) {
+                markSeen(seq);
+                return STATUS_WRITTEN;
+            }
+            pendingCommands[slot] = null;
+            pendingCount = slot;
+            busy++;
+            status = STATUS_BUSY;
+        }
+        sendAck(seq, status, nowMs, -1);
+        return status;
+    }
+
+    /** BluetoothWriter.Listener.onWritten 에서 부른다. 다른 명령이면 락 없이 바로 돌아간다. */
+    void onWritten(byte[] command, long writtenAtNanos) {
+        if (pendingCount == 0) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < pendingCount; i++) {
+                if (pendingCommands[i] != command) {
+                    continue;
+                }
+                long elapsedNanos = writtenAtNanos - pendingRxNanos[i];
+                rxToWriteMicros.record(elapsedNanos / 1000L);
+                written++;
+                long rxMillis = pendingRxMillis[i];
+                sendAck(pendingSeq[i], STATUS_WRITTEN, rxMillis, rxMillis + elapsedNanos / 1_000_000L);
+                removePending(i);
+                return;
+            }
+        }
+    }
+
+    /** 연결이 끊겨 쓰이지 못한 명령을 dropped 로 ack 하고 비운다. */
+    synchronized void dropPending() {
+        while (pendingCount > 0) {
+            dropped++;
+            forgetSeen(pendingSeq[0]);
+            sendAck(pendingSeq[0], STATUS_DROPPED, pendingRxMillis[0], -1);
+            removePending(0);
+        }
+    }
+
+    LatencyHistogram getRxToWriteMicros() {
+        return rxToWriteMicros;
+    }
+
+    synchronized long getWritten() {
+        return written;
+    }
+
+    synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    synchronized long getExpired() {
+        return expired;
+    }
+
+    /** "remoteCommands":{...} 형태로 붙인다. 지연은 µs */
+    synchronized void appendJson(StringBuilder sb) {
+        sb.append("\"remoteCommands\":{\"received\":").append(received)
+                .append(",\"written\":").append(written)
+                .append(",\"duplicates\":").append(duplicates)
+                .append(",\"expired\":").append(expired)
+                .append(",\"invalid\":").append(invalid)
+                .append(",\"busy\":").append(busy)
+                .append(",\"dropped\":").append(dropped)
+                .append(",\"rxToWriteP50Us\":").append(rxToWriteMicros.getPercentile(50))
+                .append(",\"rxToWriteP99Us\":").append(rxToWriteMicros.getPercentile(99))
+                .append('}');
+    }
+
+    // 이미 처리한 seq 인지. 창보다 오래된 번호는 처리했는지 알 수 없으므로 처리한 것으로 본다
+    private boolean isSeen(long seq) {
+        if (seq == 1 && highestSeq > 1) {
+            return false;
+        }
+        if (seq > highestSeq) {
+            return false;
+        }
+        long offset = highestSeq - seq;
+        return offset >= WINDOW || (seenWindow & (1L << offset)) != 0;
+    }
+
+    private void markSeen(long seq) {
+        if (seq == 1 && highestSeq > 1) {
+            highestSeq = 0;
+            seenWindow = 0;
+        }
+        if (seq > highestSeq) {
+            long shift = seq - highestSeq;
+            seenWindow = shift >= WINDOW ? 0 : seenWindow << shift;
+            seenWindow |= 1L;
+            highestSeq = seq;
+            return;
+        }
+        seenWindow |= 1L << (highestSeq - seq);
+    }
+
+    private void forgetSeen(long seq) {
+        long offset = highestSeq - seq;
+        if (offset >= 0 && offset < WINDOW) {
+            seenWindow &= ~(1L << offset);
+        }
+    }
+
+    private void removePending(int index) {
+        int last = pendingCount - 1;
+        for (int i = index; i < last; i++) {
+            pendingCommands[i] = pendingCommands[i + 1];
+            pendingSeq[i] = pendingSeq[i + 1];
+            pendingRxNanos[i] = pendingRxNanos[i + 1];
+            pendingRxMillis[i] = pendingRxMillis[i + 1];
+        }
+        pendingCommands[last] = null;
+        pendingCount = last;
+    }
+
+    private void sendAck(long seq, String status, long rxMillis, long writeMillis) {
+        StringBuilder sb = ack;
+        sb.setLength(0);
+        sb.append("{\"type\":\"ack\",\"data\":{");
+        if (device != null) {
+            sb.append("\"device\":\"").append(device).append("\",");
+        }
+        sb.append("\"seq\":").append(seq)
+                .append(",\"status\":\"").append(status).append('"')
+                .append(",\"rxAt\":").append(rxMillis);
+        if (writeMillis >= 0) {
+            sb.append(",\"writeAt\":").append(writeMillis);
+        }
+        sb.append("}}");
+        ackSink.sendAck(sb.toString());
+    }
+
+    // 매번 새 배열을 만든다. onWritten 에서 참조로 찾기 때문에 같은 글자끼리도 공유하면 안 된다
+    private static byte[] encode(String command) {
+        if (command == null) {
+            return null;
+        }
+        if (command.length() == 1 && LETTERS.indexOf(command.charAt(0)) >= 0) {
+            return command.getBytes(StandardCharsets.US_ASCII);
+        }
+        if (command.length() == ControlState.FRAME_LENGTH - 1
+                && command.charAt(0) == 'c' && command.charAt(1) == ':') {
+            int mask = 0;
+            for (int i = 2; i < command.length(); i++) {
+                int digit = Character.digit(command.charAt(i), 16);
+                if (digit < 0) {
+                    return null;
+                }
+                mask = (mask << 4) | digit;
+            }
+            if ((mask & ~((ControlState.GRIP_RELEASE << 1) - 1)) != 0) {
+                return null;
+            }
+            return ControlState.encodeFrame(mask);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.workisgood.abcv;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 앱 실행부터 첫 텔레메트리까지의 시간. 실행 시각은 프로세스 시작 기준 System.nanoTime 값이다.
+ * 자동 연결 시작, 첫 블루투스 연결, 첫 텔레메트리는 각각 처음 한 번만 남는다.
+ * 첫 텔레메트리 표시는 리더 스레드의 프레임마다 불리므로 이미 찍혔으면 volatile 읽기 하나로 끝난다.
+ */
+final class StartupMetrics {
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final long launchNanos;
+    private final AtomicReference<String> autoConnectAddress = new AtomicReference<>();
+    private final AtomicLong autoConnectNanos = new AtomicLong(UNSET);
+    private final AtomicLong connectedNanos = new AtomicLong(UNSET);
+    private final AtomicLong firstTelemetryNanos = new AtomicLong(UNSET);
+
+    StartupMetrics(long launchNanos) {
+        this.launchNanos = launchNanos;
+    }
+
+    /** 검색 없이 저장된 주소로 첫 시도를 시작했다 */
+    void markAutoConnect(String address, long nanos) {
+        if (autoConnectNanos.compareAndSet(UNSET, nanos)) {
+            autoConnectAddress.set(address);
+        }
+    }
+
+    void markConnected(long nanos) {
+        connectedNanos.compareAndSet(UNSET, nanos);
+    }
+
+    /** 처음 불렸을 때만 true */
+    boolean markFirstTelemetry(long nanos) {
+        return firstTelemetryNanos.get() == UNSET && firstTelemetryNanos.compareAndSet(UNSET, nanos);
+    }
+
+    String getAutoConnectAddress() {
+        return autoConnectAddress.get();
+    }
+
+    /** 실행부터 첫 연결까지. 아직이면 -1 */
+    long getConnectMs() {
+        return sinceLaunchMs(connectedNanos.get());
+    }
+
+    /** 실행부터 첫 텔레메트리까지. 아직이면 -1 */
+    long getFirstTelemetryMs() {
+        return sinceLaunchMs(firstTelemetryNanos.get());
+    }
+
+    /** "startup":{…} 형태로 붙인다 */
+    void appendJson(StringBuilder sb) {
+        String address = autoConnectAddress.get();
+        sb.append("\"startup\":{\"autoConnect\":");
+        if (address == null) {
+            sb.append("null");
+        } else {
+            sb.append('"').append(address).append('"');
+        }
+        sb.append(",\"autoConnectMs\":").append(sinceLaunchMs(autoConnectNanos.get()))
+                .append(",\"connectMs\":").append(getConnectMs())
+                .append(",\"firstTelemetryMs\":").append(getFirstTelemetryMs())
+                .append('}');
+    }
+
+    private long sinceLaunchMs(long nanos) {
+        return nanos == UNSET ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos - launchNanos);
+    }
+}
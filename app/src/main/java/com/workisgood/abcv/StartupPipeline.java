@@ -0,0 +1,269 @@
+package com.workisgood.abcv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 콜드 스타트를 이름 붙은 단계로 나눠 돌리고, 단계마다 걸린 시간(span)을 남긴다.
+ * <ul>
+ *   <li>main: 첫 화면에 꼭 필요한 일. 부른 자리(메인 스레드)에서 바로 돈다</li>
+ *   <li>background: background 실행기에서 넣은 순서대로 돈다. 실행기는 스레드 하나여야 순서가 지켜진다</li>
+ *   <li>afterFirstFrame: 첫 프레임이 그려지고, 그보다 먼저 넣은 background 단계가 모두 끝난 뒤 메인 스레드에서 돈다</li>
+ * </ul>
+ * seal 한 뒤 모든 단계가 끝나면 준비 완료로 보고 whenReady 콜백을 메인 스레드에서 부른다.
+ * 실패한 단계는 span 에 오류를 남기고 다음 단계로 넘어간다. cancel 하면 아직 시작하지 않은 단계는 건너뛴다.
+ *
+ * 시각은 모두 originNanos(프로세스 시작) 기준이다. 첫 프레임이 firstFrameBudgetMs 를 넘으면 overBudget 으로 표시한다.
+ */
+final class StartupPipeline {
+
+    interface Stage {
+        void run() throws Exception;
+    }
+
+    static final class Span {
+        final String name;
+        final boolean onMain;
+        final long startNanos;
+        final long endNanos;
+        /** 실패했으면 예외 메시지, 건너뛰었으면 "cancelled". 성공하면 null */
+        final String error;
+
+        Span(String name, boolean onMain, long startNanos, long endNanos, String error) {
+            this.name = name;
+            this.onMain = onMain;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.error = error;
+        }
+
+        long durationMs() {
+            return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+        }
+    }
+
+    // 첫 프레임과 앞선 background 단계를 기다리는 메인 단계
+    private static final class Deferred {
+        final String name;
+        final Stage stage;
+        final int backgroundBefore;
+
+        Deferred(String name, Stage stage, int backgroundBefore) {
+            this.name = name;
+            this.stage = stage;
+            this.backgroundBefore = backgroundBefore;
+        }
+    }
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final long originNanos;
+    private final Executor background;
+    private final Executor main;
+    private final long firstFrameBudgetNanos;
+
+    // 아래는 모두 this 락 아래에서만 바꾼다
+    private final List<Span> spans = new ArrayList<>();
+    private final List<Deferred> deferred = new ArrayList<>();
+    private final List<Runnable> readyListeners = new ArrayList<>();
+    private int backgroundAdded;
+    private int backgroundDone;
+    private int pending;
+    private boolean sealed;
+    private long firstFrameNanos = UNSET;
+    private long readyNanos = UNSET;
+
+    private volatile boolean cancelled;
+
+    StartupPipeline(long originNanos, Executor background, Executor main, long firstFrameBudgetMs) {
+        this.originNanos = originNanos;
+        this.background = background;
+        this.main = main;
+        this.firstFrameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(firstFrameBudgetMs);
+    }
+
+    /** 메인 스레드에서 바로 돌리고 시간을 잰다 */
+    void main(String name, Runnable stage) {
+        runStage(name, true, () -> stage.run());
+    }
+
+    void background(String name, Stage stage) {
+        synchronized (this) {
+            backgroundAdded++;
+            pending++;
+        }
+        background.execute(() -> {
+            runStage(name, false, stage);
+            List<Deferred> runnable;
+            synchronized (this) {
+                backgroundDone++;
+                runnable = takeRunnable();
+            }
+            post(runnable);
+            finishOne();
+        });
+    }
+
+    void afterFirstFrame(String name, Stage stage) {
+        List<Deferred> runnable;
+        synchronized (this) {
+            pending++;
+            deferred.add(new Deferred(name, stage, backgroundAdded));
+            runnable = takeRunnable();
+        }
+        post(runnable);
+    }
+
+    /** 준비 완료 때 메인 스레드에서 부른다. 이미 준비됐으면 바로 넘긴다 */
+    void whenReady(Runnable listener) {
+        synchronized (this) {
+            if (readyNanos == UNSET) {
+                readyListeners.add(listener);
+                return;
+            }
+        }
+        main.execute(listener);
+    }
+
+    /** 단계를 다 넣었다. 이 뒤로 남은 단계가 0 이 되면 준비 완료다 */
+    void seal() {
+        synchronized (this) {
+            sealed = true;
+        }
+        finishIfDone();
+    }
+
+    /** 메인 스레드에서 첫 프레임을 그리기 직전에 부른다. 두 번째부터는 무시한다 */
+    void onFirstFrame(long nanos) {
+        List<Deferred> runnable;
+        synchronized (this) {
+            if (firstFrameNanos != UNSET) {
+                return;
+            }
+            firstFrameNanos = nanos;
+            runnable = takeRunnable();
+        }
+        post(runnable);
+    }
+
+    /** 아직 시작하지 않은 단계를 건너뛴다. 도는 중인 단계는 끝까지 간다 */
+    void cancel() {
+        cancelled = true;
+    }
+
+    synchronized boolean isReady() {
+        return readyNanos != UNSET;
+    }
+
+    /** 프로세스 시작부터 첫 프레임까지. 아직이면 -1 */
+    synchronized long getFirstFrameMs() {
+        return sinceOriginMs(firstFrameNanos);
+    }
+
+    /** 프로세스 시작부터 모든 단계가 끝날 때까지. 아직이면 -1 */
+    synchronized long getReadyMs() {
+        return sinceOriginMs(readyNanos);
+    }
+
+    synchronized boolean isOverBudget() {
+        return firstFrameNanos != UNSET && firstFrameNanos - originNanos > firstFrameBudgetNanos;
+    }
+
+    synchronized List<Span> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /** "coldStart":{…} 형태로 붙인다 */
+    synchronized void appendJson(StringBuilder sb) {
+        sb.append("\"coldStart\":{\"firstFrameMs\":").append(sinceOriginMs(firstFrameNanos))
+                .append(",\"readyMs\":").append(sinceOriginMs(readyNanos))
+                .append(",\"overBudget\":").append(isOverBudget())
+                .append(",\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"name\":\"").append(span.name)
+                    .append("\",\"thread\":\"").append(span.onMain ? "main" : "background")
+                    .append("\",\"startMs\":").append(sinceOriginMs(span.startNanos))
+                    .append(",\"ms\":").append(span.durationMs());
+            if (span.error != null) {
+                sb.append(",\"error\":true");
+            }
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+
+    private void runStage(String name, boolean onMain, Stage stage) {
+        long start = System.nanoTime();
+        String error = null;
+        if (cancelled) {
+            error = "cancelled";
+        } else {
+            try {
+                stage.run();
+            } catch (Exception e) {
+                error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+        }
+        Span span = new Span(name, onMain, start, System.nanoTime(), error);
+        synchronized (this) {
+            spans.add(span);
+        }
+    }
+
+    // 첫 프레임이 지났고 앞선 background 단계가 끝난 메인 단계를 넣은 순서대로 꺼낸다
+    private List<Deferred> takeRunnable() {
+        List<Deferred> runnable = null;
+        while (firstFrameNanos != UNSET && !deferred.isEmpty()
+                && deferred.get(0).backgroundBefore <= backgroundDone) {
+            if (runnable == null) {
+                runnable = new ArrayList<>();
+            }
+            runnable.add(deferred.remove(0));
+        }
+        return runnable;
+    }
+
+    private void post(List<Deferred> runnable) {
+        if (runnable == null) {
+            return;
+        }
+        for (Deferred stage : runnable) {
+            main.execute(() -> {
+                runStage(stage.name, true, stage.stage);
+                finishOne();
+            });
+        }
+    }
+
+    private void finishOne() {
+        synchronized (this) {
+            pending--;
+        }
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (!sealed || pending > 0 || readyNanos != UNSET) {
+                return;
+            }
+            readyNanos = System.nanoTime();
+            listeners = new ArrayList<>(readyListeners);
+            readyListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            main.execute(listener);
+        }
+    }
+
+    private long sinceOriginMs(long nanos) {
+        return nanos == UNSET ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos - originNanos);
+    }
+}
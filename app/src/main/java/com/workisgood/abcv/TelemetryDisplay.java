@@ -0,0 +1,199 @@
+package com.workisgood.abcv;
+
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import com.workisgood.abcv.protocol.ArmTelemetry;
+import com.workisgood.abcv.protocol.MotorTelemetry;
+import com.workisgood.abcv.protocol.SteeringTelemetry;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+/**
+ * 상태 박스 4개에 텔레메트리를 그린다.
+ * 리더 스레드는 publish 로 박스별 슬롯에 최신 값을 덮어쓰기만 하고,
+ * 메인 스레드는 디스플레이 프레임마다 한 번 바뀐 박스만 setText 한다.
+ * 프레임 콜백은 한 번에 하나만 걸려 있으므로 아두이노가 아무리 빨라도 메인 큐가 쌓이지 않는다.
+ * cancel 은 되돌릴 수 없다. 링크가 닫히는 동안 리더가 늦게 publish 해도 없어진 뷰에 그리지 않는다.
+ */
+final class TelemetryDisplay implements Choreographer.FrameCallback {
+
+    private static final int BOX_MOTOR_LEFT = 1;
+    private static final int BOX_MOTOR_RIGHT = 1 << 1;
+    private static final int BOX_STEERING = 1 << 2;
+    private static final int BOX_ARM = 1 << 3;
+
+    private final Choreographer choreographer;
+    private final TextView armText;
+    private final TextView steerText;
+    private final TextView motorLeftText;
+    private final TextView motorRightText;
+
+    private final Object lock = new Object();
+    private final MotorTelemetry pendingMotorLeft = new MotorTelemetry();
+    private final MotorTelemetry pendingMotorRight = new MotorTelemetry();
+    private final SteeringTelemetry pendingSteering = new SteeringTelemetry();
+    private final ArmTelemetry pendingArm = new ArmTelemetry();
+    private int dirty;
+    private boolean frameScheduled;
+    private boolean cancelled;
+
+    // 아래는 메인 스레드 전용
+    private final MotorTelemetry shownMotorLeft = new MotorTelemetry();
+    private final MotorTelemetry shownMotorRight = new MotorTelemetry();
+    private final SteeringTelemetry shownSteering = new SteeringTelemetry();
+    private final ArmTelemetry shownArm = new ArmTelemetry();
+    private int shown;
+    private final StringBuilder text = new StringBuilder(64);
+    private final char[] motorLeftChars = new char[128];
+    private final char[] motorRightChars = new char[128];
+    private final char[] steerChars = new char[128];
+    private final char[] armChars = new char[128];
+
+    private long framesRendered;
+    private long boxesUpdated;
+
+    /** 메인 스레드에서 만들어야 한다 (Choreographer 는 스레드별 인스턴스다). */
+    TelemetryDisplay(TextView armText, TextView steerText,
+                     TextView motorLeftText, TextView motorRightText) {
+        this.choreographer = Choreographer.getInstance();
+        this.armText = armText;
+        this.steerText = steerText;
+        this.motorLeftText = motorLeftText;
+        this.motorRightText = motorRightText;
+    }
+
+    /** 아무 스레드에서나 호출할 수 있다. */
+    void publish(TelemetryParser parser, int type) {
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            switch (type) {
+                case TelemetryParser.TYPE_MOTOR:
+                    if (parser.motor.side == MotorTelemetry.SIDE_LEFT) {
+                        pendingMotorLeft.copyFrom(parser.motor);
+                        dirty |= BOX_MOTOR_LEFT;
+                    } else {
+                        pendingMotorRight.copyFrom(parser.motor);
+                        dirty |= BOX_MOTOR_RIGHT;
+                    }
+                    break;
+                case TelemetryParser.TYPE_STEERING:
+                    pendingSteering.copyFrom(parser.steering);
+                    dirty |= BOX_STEERING;
+                    break;
+                case TelemetryParser.TYPE_ARM:
+                    pendingArm.copyFrom(parser.arm);
+                    dirty |= BOX_ARM;
+                    break;
+                default:
+                    return;
+            }
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    /** 메인 스레드에서 부른다. 이후의 publish 는 버린다. */
+    void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            frameScheduled = false;
+            dirty = 0;
+        }
+        choreographer.removeFrameCallback(this);
+    }
+
+    long getFramesRendered() {
+        return framesRendered;
+    }
+
+    long getBoxesUpdated() {
+        return boxesUpdated;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        int changed = 0;
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            frameScheduled = false;
+            int boxes = dirty;
+            dirty = 0;
+            if ((boxes & BOX_MOTOR_LEFT) != 0 && isChanged(BOX_MOTOR_LEFT,
+                    !pendingMotorLeft.sameAs(shownMotorLeft))) {
+                shownMotorLeft.copyFrom(pendingMotorLeft);
+                changed |= BOX_MOTOR_LEFT;
+            }
+            if ((boxes & BOX_MOTOR_RIGHT) != 0 && isChanged(BOX_MOTOR_RIGHT,
+                    !pendingMotorRight.sameAs(shownMotorRight))) {
+                shownMotorRight.copyFrom(pendingMotorRight);
+                changed |= BOX_MOTOR_RIGHT;
+            }
+            if ((boxes & BOX_STEERING) != 0 && isChanged(BOX_STEERING,
+                    !pendingSteering.sameAs(shownSteering))) {
+                shownSteering.copyFrom(pendingSteering);
+                changed |= BOX_STEERING;
+            }
+            if ((boxes & BOX_ARM) != 0 && isChanged(BOX_ARM, !pendingArm.sameAs(shownArm))) {
+                shownArm.copyFrom(pendingArm);
+                changed |= BOX_ARM;
+            }
+        }
+        if (changed == 0) {
+            return;
+        }
+        shown |= changed;
+        framesRendered++;
+        if ((changed & BOX_MOTOR_LEFT) != 0) {
+            renderMotor(shownMotorLeft, "LEFT");
+            apply(motorLeftText, motorLeftChars);
+        }
+        if ((changed & BOX_MOTOR_RIGHT) != 0) {
+            renderMotor(shownMotorRight, "RIGHT");
+            apply(motorRightText, motorRightChars);
+        }
+        if ((changed & BOX_STEERING) != 0) {
+            text.setLength(0);
+            text.append("Cur:").append(shownSteering.currentAngle)
+                    .append("\nTgt:").append(shownSteering.targetAngle);
+            apply(steerText, steerChars);
+        }
+        if ((changed & BOX_ARM) != 0) {
+            ArmTelemetry a = shownArm;
+            text.setLength(0);
+            text.append("Base:").append(a.curBottom).append('/').append(a.tgtBottom)
+                    .append(" L1:").append(a.curLinkOne).append('/').append(a.tgtLinkOne)
+                    .append("\nL2:").append(a.curLinkTwo).append('/').append(a.tgtLinkTwo)
+                    .append(" Grip:").append(a.curGrip).append('/').append(a.tgtGrip);
+            apply(armText, armChars);
+        }
+    }
+
+    // 한 번도 안 그린 박스는 값이 기본값과 같아도 그린다
+    private boolean isChanged(int box, boolean valueChanged) {
+        return valueChanged || (shown & box) == 0;
+    }
+
+    private void renderMotor(MotorTelemetry m, String label) {
+        text.setLength(0);
+        text.append(label)
+                .append("\nTarget:").append(m.targetThrottle)
+                .append("\nSpeed:").append(m.activeSpeed)
+                .append("\nPulse:").append(m.pulseCount)
+                .append("\nPWM:").append(m.pwmOut);
+    }
+
+    // setText(char[]) 는 배열을 복사하지 않고 감싸기만 해서 String 을 만들지 않는다
+    private void apply(TextView view, char[] chars) {
+        int length = Math.min(text.length(), chars.length);
+        text.getChars(0, length, chars, 0);
+        view.setText(chars, 0, length);
+        boxesUpdated++;
+    }
+}
@@ -0,0 +1,167 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.SppFrame;
+import com.workisgood.abcv.protocol.SppFramer;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 연결 하나의 수신 스트림을 읽어 텔레메트리로 바꾸는 리더 루프. 자기 스레드(start())나
+ * 연결의 실행기(start(Executor)) 위에서 돈다.
+ * read → SppFramer(텍스트 라인 + 바이너리 프레임) → TelemetryParser 를 거쳐 인식된 프레임만 리스너에 넘긴다.
+ * 차량이 hello 에 답해 바이너리로 넘어오면 isBinaryPeer 가 true 가 된다. 그 전까지, 또는 답이 없으면 텍스트 그대로다.
+ * 리스너는 리더 스레드에서 불리며, 넘겨받은 parser 의 레코드는 다음 라인에서 덮어써진다.
+ */
+final class TelemetryReader {
+
+    interface Listener {
+        void onTelemetry(TelemetryParser parser, int type);
+
+        /**
+         * onTelemetry 직전에 인식된 라인의 원본 바이트(\n 제외)나 바이너리 프레임 전체를 넘긴다.
+         * 둘은 SppFrame.startsFrame 으로 가른다. 배열은 다음 라인에서 재사용된다.
+         */
+        default void onFrame(byte[] line, int offset, int length) {
+        }
+
+        /** 스트림이 끝났거나(EOF) 읽기에 실패했을 때. stop 으로 멈춘 경우에는 불리지 않는다. */
+        void onReadFailed(IOException e);
+    }
+
+    private static final int READ_BUFFER_SIZE = 256;
+
+    private final InputStream inputStream;
+    private final Listener listener;
+    private final SppFramer framer;
+    private final TelemetryParser parser = new TelemetryParser();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean running = true;
+    private volatile long bytesRead;
+    private volatile long lines;
+    private volatile long frames;
+
+    TelemetryReader(InputStream inputStream, int maxLineLength, Listener listener) {
+        this.inputStream = inputStream;
+        this.listener = listener;
+        this.framer = new SppFramer(maxLineLength);
+    }
+
+    void start() {
+        new Thread(this::run, "bt-reader").start();
+    }
+
+    /** 실행기의 스레드 하나를 스트림이 끝날 때까지 차지한다 */
+    void start(Executor executor) {
+        executor.execute(this::run);
+    }
+
+    /**
+     * 더 읽지 않도록 표시만 한다. 블로킹 read 는 interrupt 로도 풀리지 않으므로
+     * 스트림(소켓)은 호출자가 닫아야 하고, 그래야 루프가 끝난다.
+     */
+    void stop() {
+        running = false;
+    }
+
+    boolean isRunning() {
+        return running && finished.getCount() > 0;
+    }
+
+    /** 루프가 끝날 때까지 기다린다. 끝났으면 true */
+    boolean awaitFinished(long timeoutMs) throws InterruptedException {
+        return finished.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getLines() {
+        return lines;
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    long getDroppedLines() {
+        return framer.getDroppedLines();
+    }
+
+    long getRejectedLines() {
+        return parser.getRejectedLines();
+    }
+
+    /** 차량이 바이너리 프레임을 보내기 시작했으면 true */
+    boolean isBinaryPeer() {
+        return framer.isBinaryPeer();
+    }
+
+    long getBinaryFrames() {
+        return framer.getBinaryFrames();
+    }
+
+    long getCrcErrors() {
+        return framer.getCrcErrors();
+    }
+
+    private void run() {
+        try {
+            runLoop();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void deliver(int type, byte[] raw, int offset, int length) {
+        if (type != TelemetryParser.TYPE_NONE) {
+            frames++;
+            listener.onFrame(raw, offset, length);
+            listener.onTelemetry(parser, type);
+        }
+    }
+
+    private void runLoop() {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        SppFramer.Listener frameListener = new SppFramer.Listener() {
+            @Override
+            public void onLine(byte[] line, int offset, int length) {
+                lines++;
+                deliver(parser.parse(line, offset, length), line, offset, length);
+            }
+
+            @Override
+            public void onBinaryFrame(byte[] frame, int offset, int length) {
+                // hello 답은 협상 표시일 뿐 텔레메트리가 아니다
+                if (SppFrame.type(frame, offset) != SppFrame.TYPE_HELLO) {
+                    deliver(parser.parseFrame(frame, offset, length), frame, offset, length);
+                }
+            }
+        };
+        try {
+            while (running) {
+                int n = inputStream.read(buffer);
+                if (n == -1) {
+                    if (running) {
+                        running = false;
+                        listener.onReadFailed(new IOException("End of stream"));
+                    }
+                    return;
+                }
+                bytesRead += n;
+                framer.feed(buffer, 0, n, frameListener);
+            }
+        } catch (IOException e) {
+            if (running) {
+                running = false;
+                listener.onReadFailed(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.workisgood.abcv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 한 세션(블루투스 연결 하나) 동안 인식된 텔레메트리 라인과 실제로 쓰인 명령을 바이너리 로그로 남긴다.
+ * 로그는 세션 디렉터리 안의 고정 크기 세그먼트 파일(seg-00000.rec, ...)로 나뉘고,
+ * 각 세그먼트는 메모리 맵으로 쓴다. 다 차면 다음 세그먼트로 넘어간다.
+ * 파일 만들기(mkdirs, setLength, map)는 preparer 실행기에서 미리 해 둔다. 첫 세그먼트는 만들 때,
+ * 다음 세그먼트는 지금 세그먼트가 PREPARE_AT_PERCENT 만큼 차면 준비하고, 넘어갈 때 바꿔 끼우기만 한다.
+ * 준비가 늦었으면 그 자리에서 열고 blockingOpens 로 센다. 쓰이지 않은 준비 파일은 close 때 지운다.
+ *
+ * <pre>
+ * segment := header(HEADER_SIZE) record*  (나머지는 0 으로 남는다)
+ * header  := "AVCR" version(1B) 0(3B) sessionStartEpochMs(8B) segmentNo(4B) indexCount(4B)
+ *            index[INDEX_CAPACITY] := timeMicros(8B) offset(4B)
+ * record  := kind(1B) ...
+ *   KIND_TIME      : timeMicros(uvarint, 세션 시작 기준 절대값)
+ *   KIND_TELEMETRY : deltaMicros(uvarint, 직전 레코드 대비) length(uvarint) 라인 바이트(\n 제외) 또는 SppFrame 프레임 전체
+ *   KIND_COMMAND   : deltaMicros(uvarint) length(uvarint) 명령 바이트
+ * </pre>
+ * 세그먼트 처음과 indexIntervalMs 마다 KIND_TIME 레코드를 넣고 그 위치를 헤더의 희소 인덱스에 적는다.
+ * RecordingReader 는 인덱스로 가까운 시각 레코드까지 바로 뛰어서 긴 세션에서도 원하는 시점부터 읽는다.
+ * 라인을 그대로 남기므로 재생할 때도 같은 TelemetryParser 를 다시 거친다.
+ */
+final class TelemetryRecorder {
+
+    static final byte KIND_TIME = 1;
+    static final byte KIND_TELEMETRY = 2;
+    static final byte KIND_COMMAND = 3;
+
+    static final int MAGIC = 0x41564352; // "AVCR"
+    static final byte VERSION = 1;
+    static final int INDEX_CAPACITY = 339;
+    static final int INDEX_ENTRY_SIZE = 12;
+    // magic 4 + version 1 + 패딩 3 + 시작 시각 8 + 세그먼트 번호 4 + 인덱스 개수 4 = 24, 인덱스까지 4092
+    static final int INDEX_COUNT_OFFSET = 20;
+    static final int INDEX_OFFSET = 24;
+    static final int HEADER_SIZE = 4096;
+    static final String SEGMENT_FORMAT = "seg-%05d.rec";
+
+    // kind 1 + 시간 10 + 길이 5
+    private static final int RECORD_OVERHEAD = 16;
+    private static final int MAX_PAYLOAD = 1024;
+    private static final int PREPARE_AT_PERCENT = 75;
+
+    // 미리 열어 둔 세그먼트 파일
+    private static final class Segment {
+        final int no;
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer mapped;
+
+        Segment(int no, File file, RandomAccessFile raf, MappedByteBuffer mapped) {
+            this.no = no;
+            this.file = file;
+            this.raf = raf;
+            this.mapped = mapped;
+        }
+    }
+
+    private final File directory;
+    private final int segmentCapacity;
+    private final long indexIntervalMicros;
+    private final long startEpochMs;
+    private final long startNanos;
+    private final Executor preparer;
+
+    private Segment prepared;
+    private boolean preparing;
+    private boolean prepareFailed;
+    private RandomAccessFile raf;
+    private MappedByteBuffer mapped;
+    private boolean unavailable;
+    private int segmentNo = -1;
+    private int position;
+    private int indexCount;
+    private long lastTimeMicros;
+    private long lastIndexMicros;
+
+    private long records;
+    private long closedSegmentBytes;
+    private long dropped;
+    private long blockingOpens;
+
+    /**
+     * startEpochMs, startNanos 는 세션 시작 순간의 벽시계와 nanoTime. 레코드 시각은 startNanos 기준 µs 다.
+     * preparer 는 세그먼트 파일을 미리 여는 실행기다. 리더/writer 스레드가 아니어야 한다.
+     */
+    TelemetryRecorder(File directory, int segmentCapacity, long indexIntervalMs,
+                      long startEpochMs, long startNanos, Executor preparer) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.indexIntervalMicros = indexIntervalMs * 1000L;
+        this.startEpochMs = startEpochMs;
+        this.startNanos = startNanos;
+        this.preparer = preparer;
+        synchronized (this) {
+            prepareNext(0);
+        }
+    }
+
+    static File segmentFile(File directory, int segmentNo) {
+        return new File(directory, String.format(Locale.US, SEGMENT_FORMAT, segmentNo));
+    }
+
+    /** root 아래의 세션 디렉터리를 오래된 것부터. 세션 이름은 시작 epoch ms 라서 이름순이 시간순이다 */
+    static File[] listSessions(File root) {
+        File[] sessions = root.listFiles(File::isDirectory);
+        if (sessions == null) {
+            return new File[0];
+        }
+        Arrays.sort(sessions, (a, b) -> a.getName().compareTo(b.getName()));
+        return sessions;
+    }
+
+    /** 최근 keep 개만 남기고 오래된 세션을 지운다 */
+    static void pruneSessions(File root, int keep) {
+        File[] sessions = listSessions(root);
+        for (int i = 0; i < sessions.length - keep; i++) {
+            File[] files = sessions[i].listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            sessions[i].delete();
+        }
+    }
+
+    /** 리더 스레드에서 인식된 라인마다 부른다 */
+    synchronized void recordTelemetry(byte[] line, int offset, int length, long nowNanos) {
+        append(KIND_TELEMETRY, line, offset, length, nowNanos);
+    }
+
+    /** 블루투스로 실제로 쓰인 명령마다 부른다 */
+    synchronized void recordCommand(byte[] command, long nowNanos) {
+        append(KIND_COMMAND, command, 0, command.length, nowNanos);
+    }
+
+    synchronized void close() {
+        closeSegment();
+        discard(prepared);
+        prepared = null;
+        // 닫힌 뒤 들어오는 기록은 버린다
+        unavailable = true;
+        removeIfUnused();
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    synchronized long getRecords() {
+        return records;
+    }
+
+    /** 헤더를 포함해 세그먼트에 실제로 쓴 바이트 */
+    synchronized long getBytes() {
+        return closedSegmentBytes + (segmentNo >= 0 ? position : 0);
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    synchronized int getSegments() {
+        return segmentNo + 1;
+    }
+
+    /** 준비된 파일이 없어서 기록하는 스레드에서 세그먼트를 연 횟수 */
+    synchronized long getBlockingOpens() {
+        return blockingOpens;
+    }
+
+    private void append(byte kind, byte[] data, int offset, int length, long nowNanos) {
+        if (length > MAX_PAYLOAD) {
+            dropped++;
+            return;
+        }
+        long timeMicros = Math.max(lastTimeMicros, (nowNanos - startNanos) / 1000L);
+        int need = RECORD_OVERHEAD + length;
+        if (mapped == null || position + need + RECORD_OVERHEAD > segmentCapacity) {
+            if (!openSegment(segmentNo + 1, timeMicros)) {
+                dropped++;
+                return;
+            }
+        } else if (timeMicros - lastIndexMicros >= indexIntervalMicros) {
+            writeTimeRecord(timeMicros);
+        }
+        mapped.put(position++, kind);
+        writeUnsigned(timeMicros - lastTimeMicros);
+        writeUnsigned(length);
+        mapped.position(position);
+        mapped.put(data, offset, length);
+        position += length;
+        lastTimeMicros = timeMicros;
+        records++;
+        if (position >= (long) segmentCapacity * PREPARE_AT_PERCENT / 100) {
+            prepareNext(segmentNo + 1);
+        }
+    }
+
+    // 시각 레코드를 쓰고 인덱스에 올린다. 인덱스가 다 차면 레코드만 쓴다 (그만큼 앞에서부터 더 훑는다)
+    private void writeTimeRecord(long timeMicros) {
+        if (indexCount < INDEX_CAPACITY) {
+            int entry = INDEX_OFFSET + indexCount * INDEX_ENTRY_SIZE;
+            mapped.putLong(entry, timeMicros);
+            mapped.putInt(entry + 8, position);
+            indexCount++;
+            mapped.putInt(INDEX_COUNT_OFFSET, indexCount);
+        }
+        mapped.put(position++, KIND_TIME);
+        writeUnsigned(timeMicros);
+        lastTimeMicros = timeMicros;
+        lastIndexMicros = timeMicros;
+    }
+
+    private boolean openSegment(int next, long timeMicros) {
+        if (unavailable || segmentCapacity <= HEADER_SIZE + RECORD_OVERHEAD * 2) {
+            return false;
+        }
+        closeSegment();
+        if (segmentNo >= 0) {
+            closedSegmentBytes += position;
+            position = 0;
+        }
+        Segment segment = prepared;
+        prepared = null;
+        if (segment == null || segment.no != next) {
+            discard(segment);
+            blockingOpens++;
+            try {
+                segment = mapSegment(next);
+            } catch (IOException e) {
+                unavailable = true;
+                return false;
+            }
+        }
+        raf = segment.raf;
+        mapped = segment.mapped;
+        segmentNo = next;
+        mapped.putInt(0, MAGIC);
+        mapped.put(4, VERSION);
+        mapped.putLong(8, startEpochMs);
+        mapped.putInt(16, segmentNo);
+        mapped.putInt(INDEX_COUNT_OFFSET, 0);
+        position = HEADER_SIZE;
+        indexCount = 0;
+        writeTimeRecord(timeMicros);
+        return true;
+    }
+
+    // next 세그먼트를 preparer 에서 연다. 이미 준비됐거나 준비 중이면 아무것도 하지 않는다
+    private void prepareNext(int next) {
+        if (preparing || prepareFailed || unavailable || (prepared != null && prepared.no == next)
+                || segmentCapacity <= HEADER_SIZE + RECORD_OVERHEAD * 2) {
+            return;
+        }
+        preparing = true;
+        try {
+            preparer.execute(() -> prepare(next));
+        } catch (RejectedExecutionException e) {
+            // 실행기가 이미 내려갔다 (액티비티 종료 중). 이후 세그먼트는 넘어갈 때 그 자리에서 연다
+            preparing = false;
+            prepareFailed = true;
+        }
+    }
+
+    // preparer 스레드에서 돈다. 파일 작업은 락 밖에서 하고 결과만 락 안에서 넘긴다
+    private void prepare(int next) {
+        Segment segment;
+        try {
+            segment = mapSegment(next);
+        } catch (IOException e) {
+            segment = null;
+        }
+        synchronized (this) {
+            preparing = false;
+            if (segment == null) {
+                // 넘어갈 때 그 자리에서 다시 열어 본다
+                prepareFailed = true;
+            } else if (next <= segmentNo) {
+                // 기다리다 못해 그 자리에서 연 세그먼트다. 같은 파일이므로 닫기만 한다
+                closeQuietly(segment.raf);
+            } else if (unavailable) {
+                discard(segment);
+                removeIfUnused();
+            } else {
+                discard(prepared);
+                prepared = segment;
+            }
+        }
+    }
+
+    private Segment mapSegment(int no) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = segmentFile(directory, no);
+        RandomAccessFile segmentRaf = new RandomAccessFile(file, "rw");
+        try {
+            segmentRaf.setLength(segmentCapacity);
+            return new Segment(no, file, segmentRaf,
+                    segmentRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentCapacity));
+        } catch (IOException e) {
+            segmentRaf.close();
+            throw e;
+        }
+    }
+
+    // 한 번도 기록하지 않고 닫힌 세션은 빈 디렉터리를 남기지 않는다 (재생 목록에 빈 세션이 끼지 않게)
+    private void removeIfUnused() {
+        if (unavailable && segmentNo < 0 && !preparing) {
+            directory.delete();
+        }
+    }
+
+    // 쓰지 않은 준비 파일을 닫고 지운다
+    private static void discard(Segment segment) {
+        if (segment == null) {
+            return;
+        }
+        closeQuietly(segment.raf);
+        segment.file.delete();
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void closeSegment() {
+        mapped = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+            raf = null;
+        }
+    }
+
+    private void writeUnsigned(long value) {
+        while ((value & ~0x7FL) != 0) {
+            mapped.put(position++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mapped.put(position++, (byte) value);
+    }
+}
@@ -0,0 +1,134 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.SppFrame;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 녹화된 세션을 리더 스레드 대신 흘려 보낸다. 라인을 다시 TelemetryParser 로 파싱해서
+ * TelemetryReader 와 같은 모양으로 넘기므로, 받는 쪽은 실제 연결과 같은 표시/업링크 경로를 탄다.
+ * speed 가 1 이면 기록된 간격 그대로, 2 면 두 배 빠르게, 0 이하면 기다리지 않고 최대한 빨리 보낸다.
+ * 녹화된 명령은 onCommand 로 알려 주기만 하고 차량으로 보내지 않는다.
+ */
+final class TelemetryReplayer {
+
+    interface Listener {
+        /** replay 스레드에서 불린다. parser 의 레코드는 다음 라인에서 덮어써진다. */
+        void onTelemetry(TelemetryParser parser, int type);
+
+        default void onCommand(byte[] command, int length, long timeMicros) {
+        }
+
+        /** 끝까지 읽었거나 실패했을 때 한 번. stop 으로 멈춘 경우에는 불리지 않는다. error 는 정상 종료면 null */
+        void onFinished(IOException error);
+    }
+
+    private final RecordingReader reader;
+    private final long fromMicros;
+    private final double speed;
+    private final Listener listener;
+    private final TelemetryParser parser = new TelemetryParser();
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile long records;
+    private volatile long frames;
+    private volatile long elapsedNanos;
+
+    TelemetryReplayer(RecordingReader reader, long fromMicros, double speed, Listener listener) {
+        this.reader = reader;
+        this.fromMicros = fromMicros;
+        this.speed = speed;
+        this.listener = listener;
+        this.thread = new Thread(this::runLoop, "replay");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    boolean isRunning() {
+        return running && thread.isAlive();
+    }
+
+    /** 끝날 때까지 기다린다. 시간 안에 끝나면 true */
+    boolean join(long timeoutMs) throws InterruptedException {
+        thread.join(timeoutMs);
+        return !thread.isAlive();
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    long getRejectedLines() {
+        return parser.getRejectedLines();
+    }
+
+    /** 첫 레코드부터 마지막 레코드까지 걸린 실제 시간 */
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    private void runLoop() {
+        IOException error = null;
+        try {
+            if (fromMicros > 0) {
+                reader.seek(fromMicros);
+            }
+            long startNanos = System.nanoTime();
+            long firstMicros = -1;
+            while (running && reader.next()) {
+                long t = reader.timeMicros();
+                if (firstMicros < 0) {
+                    firstMicros = t;
+                }
+                if (speed > 0) {
+                    long due = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(t - firstMicros) / speed);
+                    long wait;
+                    while (running && (wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (!running) {
+                        break;
+                    }
+                }
+                records++;
+                byte[] payload = reader.payload();
+                int length = reader.payloadLength();
+                if (reader.kind() == TelemetryRecorder.KIND_COMMAND) {
+                    listener.onCommand(payload, length, t);
+                    continue;
+                }
+                // 바이너리 모드로 녹화한 구간은 프레임째 들어 있다
+                int type = SppFrame.startsFrame(payload, 0, length)
+                        ? parser.parseFrame(payload, 0, length) : parser.parse(payload, 0, length);
+                if (type != TelemetryParser.TYPE_NONE) {
+                    frames++;
+                    listener.onTelemetry(parser, type);
+                }
+                elapsedNanos = System.nanoTime() - startNanos;
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            reader.close();
+        }
+        if (running) {
+            running = false;
+            listener.onFinished(error);
+        }
+    }
+}
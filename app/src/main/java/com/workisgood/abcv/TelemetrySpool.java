@@ -0,0 +1,292 @@
+package com.workisgood.abcv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WebSocket 이 끊긴 동안 보내지 못한 업링크 프레임을 보관했다가 재연결 후 순서대로 다시 보낸다.
+ * 먼저 메모리 링에 쌓고, 링이 차면 메모리 맵 파일로 넘긴다.
+ * 링에는 파일이 비어 있을 때만 넣으므로 링의 항목은 항상 파일의 항목보다 오래된 것이다.
+ * 파일 영역은 원형이다. 읽기/쓰기 위치가 끝에서 0 으로 돌아가고, 끝에 레코드가 안 들어가면 wrap 표시를 남기고 앞으로 간다.
+ * 오래된 것을 버릴 때는 읽기 위치만 옮기므로 파일이 가득 찬 뒤에도 프레임마다 그 레코드만큼만 쓴다.
+ * 파일 기록은 매핑된 메모리 쓰기라서 호출 스레드가 디스크 I/O 로 막히지 않는다.
+ */
+final class TelemetrySpool {
+
+    enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
+    // kind(1) + length(4)
+    private static final int RECORD_HEADER = 5;
+    private static final byte KIND_TEXT = 0;
+    private static final byte KIND_BINARY = 1;
+    // 여기서부터 파일 끝까지는 비어 있다. 다음 레코드는 0 에 있다
+    private static final byte KIND_WRAP = 2;
+
+    private final File file;
+    private final int fileCapacity;
+    private final OverflowPolicy policy;
+
+    private final byte[][] ring;
+    private final boolean[] ringBinary;
+    private int ringHead;
+    private int ringSize;
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer mapped;
+    private boolean fileUnavailable;
+    private int fileRead;
+    private int fileWrite;
+    // wrap 으로 비워 둔 끝부분까지 포함해서 차지한 바이트 수. 읽기 == 쓰기 위치일 때 빈 것과 찬 것을 가른다
+    private int fileUsed;
+    private int fileCount;
+    private long fileBytesWritten;
+
+    private long spooled;
+    private long replayed;
+    private long dropped;
+
+    TelemetrySpool(File file, int ringCapacity, int fileCapacity, OverflowPolicy policy) {
+        this.file = file;
+        this.fileCapacity = fileCapacity;
+        this.policy = policy;
+        ring = new byte[ringCapacity][];
+        ringBinary = new boolean[ringCapacity];
+    }
+
+    /** 쌓인 프레임이 없으면 바로 보내고, 있거나 전송이 실패하면 뒤에 쌓는다. */
+    synchronized void sendOrSpool(String frame, UplinkBatcher.Sink sink) {
+        if (isEmptyLocked() && sink.send(frame)) {
+            return;
+        }
+        offer(false, frame.getBytes(StandardCharsets.UTF_8));
+    }
+
+    synchronized void sendOrSpool(byte[] frame, int offset, int length, UplinkBatcher.Sink sink) {
+        if (isEmptyLocked() && sink.send(frame, offset, length)) {
+            return;
+        }
+        byte[] copy = new byte[length];
+        System.arraycopy(frame, offset, copy, 0, length);
+        offer(true, copy);
+    }
+
+    /** 오래된 것부터 최대 maxFrames 개를 보낸다. 전송이 실패하면 그 자리에서 멈춘다. */
+    synchronized int replay(UplinkBatcher.Sink sink, int maxFrames) {
+        int sent = 0;
+        while (sent < maxFrames && !isEmptyLocked()) {
+            boolean ok;
+            if (ringSize > 0) {
+                byte[] head = ring[ringHead];
+                ok = ringBinary[ringHead]
+                        ? sink.send(head, 0, head.length)
+                        : sink.send(new String(head, StandardCharsets.UTF_8));
+                if (ok) {
+                    removeRingHead();
+                }
+            } else {
+                int length = mapped.getInt(fileRead + 1);
+                byte[] payload = new byte[length];
+                mapped.position(fileRead + RECORD_HEADER);
+                mapped.get(payload, 0, length);
+                ok = mapped.get(fileRead) == KIND_BINARY
+                        ? sink.send(payload, 0, length)
+                        : sink.send(new String(payload, StandardCharsets.UTF_8));
+                if (ok) {
+                    removeFileHead();
+                }
+            }
+            if (!ok) {
+                break;
+            }
+            replayed++;
+            sent++;
+        }
+        return sent;
+    }
+
+    synchronized boolean isEmpty() {
+        return isEmptyLocked();
+    }
+
+    synchronized int size() {
+        return ringSize + fileCount;
+    }
+
+    synchronized long getSpooled() {
+        return spooled;
+    }
+
+    synchronized long getReplayed() {
+        return replayed;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /** 파일에 쓴 바이트 수 (레코드와 wrap 표시) */
+    synchronized long getFileBytesWritten() {
+        return fileBytesWritten;
+    }
+
+    synchronized void close() {
+        mapped = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+            raf = null;
+        }
+        ringSize = 0;
+        fileCount = 0;
+        fileRead = 0;
+        fileWrite = 0;
+        fileUsed = 0;
+    }
+
+    private boolean isEmptyLocked() {
+        return ringSize == 0 && fileCount == 0;
+    }
+
+    private void offer(boolean binary, byte[] data) {
+        spooled++;
+        if (fileCount == 0 && ringSize < ring.length) {
+            addRingTail(binary, data);
+            return;
+        }
+        if (!ensureMapped() || RECORD_HEADER + data.length > fileCapacity) {
+            // 파일을 못 쓰면 링만으로 정책을 적용한다
+            if (policy == OverflowPolicy.DROP_OLDEST && ringSize > 0 && fileCount == 0) {
+                removeRingHead();
+                dropped++;
+                addRingTail(binary, data);
+            } else {
+                dropped++;
+            }
+            return;
+        }
+        int need = RECORD_HEADER + data.length;
+        while (contiguousFree() < need) {
+            if (fileWrite >= fileRead && fileUsed < fileCapacity && fileRead > 0) {
+                // 끝에 자리가 모자라면 남은 부분을 비워 두고 앞으로 돌아간다
+                wrapWrite();
+            } else if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped++;
+                return;
+            } else {
+                dropOldest();
+            }
+        }
+        mapped.put(fileWrite, binary ? KIND_BINARY : KIND_TEXT);
+        mapped.putInt(fileWrite + 1, data.length);
+        mapped.position(fileWrite + RECORD_HEADER);
+        mapped.put(data, 0, data.length);
+        fileWrite += need;
+        if (fileWrite == fileCapacity) {
+            fileWrite = 0;
+        }
+        fileUsed += need;
+        fileCount++;
+        fileBytesWritten += need;
+    }
+
+    // 쓰기 위치에서 덮어쓰지 않고 이어서 쓸 수 있는 바이트 수
+    private int contiguousFree() {
+        if (fileUsed == 0) {
+            return fileCapacity - fileWrite;
+        }
+        if (fileWrite < fileRead) {
+            return fileRead - fileWrite;
+        }
+        return fileWrite == fileRead ? 0 : fileCapacity - fileWrite;
+    }
+
+    private void wrapWrite() {
+        mapped.put(fileWrite, KIND_WRAP);
+        fileBytesWritten++;
+        fileUsed += fileCapacity - fileWrite;
+        fileWrite = 0;
+    }
+
+    private void dropOldest() {
+        dropped++;
+        if (ringSize > 0) {
+            removeRingHead();
+            if (fileCount > 0) {
+                // 파일 머리를 링 꼬리로 옮겨야 링이 파일보다 앞선다는 순서가 유지된다
+                int length = mapped.getInt(fileRead + 1);
+                byte[] payload = new byte[length];
+                mapped.position(fileRead + RECORD_HEADER);
+                mapped.get(payload, 0, length);
+                addRingTail(mapped.get(fileRead) == KIND_BINARY, payload);
+                removeFileHead();
+            }
+        } else {
+            removeFileHead();
+        }
+    }
+
+    private void addRingTail(boolean binary, byte[] data) {
+        int index = (ringHead + ringSize) % ring.length;
+        ring[index] = data;
+        ringBinary[index] = binary;
+        ringSize++;
+    }
+
+    private void removeRingHead() {
+        ring[ringHead] = null;
+        ringHead = (ringHead + 1) % ring.length;
+        ringSize--;
+    }
+
+    private void removeFileHead() {
+        int length = RECORD_HEADER + mapped.getInt(fileRead + 1);
+        fileRead += length;
+        fileUsed -= length;
+        fileCount--;
+        if (fileCount == 0) {
+            fileRead = 0;
+            fileWrite = 0;
+            fileUsed = 0;
+            return;
+        }
+        // 다음 레코드가 앞에 있으면 wrap 으로 비운 끝부분을 건너뛴다
+        if (fileRead == fileCapacity || mapped.get(fileRead) == KIND_WRAP) {
+            fileUsed -= fileCapacity - fileRead;
+            fileRead = 0;
+        }
+    }
+
+    private boolean ensureMapped() {
+        if (mapped != null) {
+            return true;
+        }
+        if (fileUnavailable || fileCapacity <= 0) {
+            return false;
+        }
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(fileCapacity);
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileCapacity);
+            return true;
+        } catch (IOException e) {
+            fileUnavailable = true;
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+                raf = null;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.BinaryTelemetryEncoder;
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 텔레메트리 JSON 메시지를 모아서 하나의 배열 프레임([{...},{...}])으로 보낸다.
+ * 첫 메시지가 들어온 뒤 windowMs 가 지나거나 메시지 수/바이트 상한에 닿으면 flush 한다.
+ * 급한 메시지는 sendNow 로 배치를 건너뛰되, 순서가 뒤집히지 않게 쌓인 배치를 먼저 내보낸다.
+ * 바이너리 인코딩이 협상된 연결에서는 텔레메트리를 addTelemetry 로 넣어 바이너리 프레임으로 묶는다.
+ * JSON 과 바이너리는 한 프레임에 섞이지 않으며, 종류가 바뀌면 쌓인 쪽을 먼저 내보낸다.
+ */
+final class UplinkBatcher {
+
+    interface Sink {
+        boolean send(String frame);
+
+        boolean send(byte[] frame, int offset, int length);
+    }
+
+    private final Sink sink;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMs;
+    private final int maxMessages;
+    private final int maxChars;
+    private final Runnable flushTask = this::flush;
+
+    private final StringBuilder batch = new StringBuilder(1024);
+    private int batchCount;
+    private final BinaryTelemetryEncoder binaryBatch = new BinaryTelemetryEncoder(512);
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long framesSent;
+    private long messagesSent;
+
+    UplinkBatcher(Sink sink, ScheduledExecutorService scheduler,
+                  long windowMs, int maxMessages, int maxChars) {
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.windowMs = windowMs;
+        this.maxMessages = maxMessages;
+        this.maxChars = maxChars;
+    }
+
+    synchronized void add(String message) {
+        if (!binaryBatch.isEmpty()) {
+            flushLocked();
+        }
+        if (batchCount > 0 && batch.length() + message.length() + 2 > maxChars) {
+            flushLocked();
+        }
+        batch.append(batchCount == 0 ? '[' : ',').append(message);
+        batchCount++;
+        if (batchCount >= maxMessages || batch.length() + 1 >= maxChars) {
+            flushLocked();
+        } else if (batchCount == 1) {
+            scheduleFlush();
+        }
+    }
+
+    synchronized void addTelemetry(TelemetryParser parser, int type, long timestampMs) {
+        addTelemetry(parser, type, TelemetryDeltaFilter.fullMask(type), timestampMs);
+    }
+
+    /** fieldMask 는 TelemetryDeltaFilter.filter 의 결과. 전체 필드가 아니면 변화분 레코드로 들어간다 */
+    synchronized void addTelemetry(TelemetryParser parser, int type, int fieldMask, long timestampMs) {
+        addTelemetry(null, parser, type, fieldMask, timestampMs);
+    }
+
+    /** device 는 차량 id. 한 프레임에 여러 차량의 레코드가 섞일 수 있고, 바뀔 때마다 device 레코드가 들어간다 */
+    synchronized void addTelemetry(String device, TelemetryParser parser, int type, int fieldMask,
+                                   long timestampMs) {
+        if (batchCount > 0) {
+            flushLocked();
+        }
+        binaryBatch.setDevice(device);
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                binaryBatch.writeMotor(parser.motor, fieldMask, timestampMs);
+                break;
+            case TelemetryParser.TYPE_STEERING:
+                binaryBatch.writeSteering(parser.steering, fieldMask, timestampMs);
+                break;
+            case TelemetryParser.TYPE_ARM:
+                binaryBatch.writeArm(parser.arm, fieldMask, timestampMs);
+                break;
+            default:
+                return;
+        }
+        if (binaryBatch.count() >= maxMessages || binaryBatch.size() >= maxChars) {
+            flushLocked();
+        } else if (binaryBatch.count() == 1) {
+            scheduleFlush();
+        }
+    }
+
+    synchronized boolean sendNow(String message) {
+        flushLocked();
+        messagesSent++;
+        framesSent++;
+        return sink.send(message);
+    }
+
+    synchronized void flush() {
+        flushLocked();
+    }
+
+    synchronized void clear() {
+        cancelScheduledFlush();
+        batch.setLength(0);
+        batchCount = 0;
+        binaryBatch.reset();
+    }
+
+    synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    synchronized long getMessagesSent() {
+        return messagesSent;
+    }
+
+    private void flushLocked() {
+        cancelScheduledFlush();
+        if (!binaryBatch.isEmpty()) {
+            messagesSent += binaryBatch.count();
+            framesSent++;
+            sink.send(binaryBatch.buffer(), 0, binaryBatch.size());
+            binaryBatch.reset();
+        }
+        if (batchCount == 0) {
+            return;
+        }
+        String frame = batch.append(']').toString();
+        messagesSent += batchCount;
+        framesSent++;
+        batch.setLength(0);
+        batchCount = 0;
+        sink.send(frame);
+    }
+
+    private void scheduleFlush() {
+        try {
+            scheduledFlush = scheduler.schedule(flushTask, windowMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 종료 중이면 기다리지 않고 바로 내보낸다
+            flushLocked();
+        }
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
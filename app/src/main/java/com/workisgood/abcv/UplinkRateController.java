@@ -0,0 +1,183 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OkHttp WebSocket 송신 큐를 보고 텔레메트리 업링크 빈도를 조절한다.
+ * 보낸 프레임마다 누적 바이트 위치와 시각을 기억해 두고, sample 때 queueSize() 로
+ * 얼마나 빠져나갔는지 계산해서 큐에 남은 가장 오래된 프레임의 대기 시간과 프레임별 송신 지연을 구한다.
+ *
+ * 큐 바이트나 대기 시간이 high 를 넘으면 감쇄 단계(level)를 하나씩 올리고,
+ * low 아래로 내려가면 하나씩, 큐가 완전히 비어 있으면 한 번에 0 으로 되돌린다.
+ * level 이 L 이면 스트림마다 baseIntervalMs * 2^(L-1) 안에 들어온 레코드는 버리고 그 뒤 첫 레코드(최신값)만 보낸다.
+ * 팔은 우선순위가 낮아서 한 단계 더 세게 줄인다. 차량이 여럿이면 차량마다 StreamGate 를 따로 두고,
+ * 단계는 같은 WebSocket 을 쓰므로 모두 함께 따른다.
+ * 상태 이벤트, ack, 메트릭은 여기를 거치지 않으므로 줄어들지 않는다.
+ */
+final class UplinkRateController {
+
+    // 단계를 올릴 때는 빠르게, 내릴 때는 천천히
+    private static final long STEP_UP_INTERVAL_MS = 250L;
+    private static final long STEP_DOWN_INTERVAL_MS = 1000L;
+    private static final int TRACKED_FRAMES = 256;
+    private static final long MAX_SEND_MS = 60_000L;
+    private static final int STREAM_COUNT = 4;
+
+    private final long highQueueBytes;
+    private final long lowQueueBytes;
+    private final long highLatencyMs;
+    private final long lowLatencyMs;
+    private final long baseIntervalNanos;
+    private final int maxLevel;
+
+    // 아직 큐에서 빠지지 않은 프레임들의 끝 위치(누적 바이트)와 보낸 시각. this 락 아래에서만 쓴다
+    private final long[] frameEnd = new long[TRACKED_FRAMES];
+    private final long[] frameQueuedNanos = new long[TRACKED_FRAMES];
+    private int frameHead;
+    private int frameCount;
+    private long queuedTotal;
+    private long lastChangeNanos;
+    private long queueBytes;
+    private long maxQueueBytes;
+    private long oldestWaitMs;
+    private long levelChanges;
+
+    private final LatencyHistogram sendMillis = new LatencyHistogram(MAX_SEND_MS);
+
+    /** 차량 하나의 스트림별 마지막 통과 시각. 그 차량의 리더 스레드에서만 쓴다 */
+    static final class StreamGate {
+        private final long[] lastPassedNanos = new long[STREAM_COUNT];
+        private final boolean[] passedOnce = new boolean[STREAM_COUNT];
+    }
+
+    // 감쇄는 리더 스레드에서 락 없이 본다
+    private volatile int level;
+    private final StreamGate defaultGate = new StreamGate();
+    private final AtomicLong decimated = new AtomicLong();
+
+    UplinkRateController(long highQueueBytes, long lowQueueBytes,
+                         long highLatencyMs, long lowLatencyMs,
+                         long baseIntervalMs, int maxLevel) {
+        this.highQueueBytes = highQueueBytes;
+        this.lowQueueBytes = lowQueueBytes;
+        this.highLatencyMs = highLatencyMs;
+        this.lowLatencyMs = lowLatencyMs;
+        this.baseIntervalNanos = TimeUnit.MILLISECONDS.toNanos(baseIntervalMs);
+        this.maxLevel = maxLevel;
+    }
+
+    /** 프레임 하나가 WebSocket 큐에 들어갔다. bytes 는 큐가 세는 크기(UTF-8/바이너리 길이)다. */
+    synchronized void onFrameQueued(long bytes, long nowNanos) {
+        queuedTotal += bytes;
+        if (frameCount == TRACKED_FRAMES) {
+            // 추적 칸이 모자라면 가장 최근 프레임 끝을 늘려 붙인다. 대기 시간은 앞쪽 프레임 기준이라 그대로다
+            frameEnd[(frameHead + frameCount - 1) % TRACKED_FRAMES] = queuedTotal;
+            return;
+        }
+        int slot = (frameHead + frameCount) % TRACKED_FRAMES;
+        frameEnd[slot] = queuedTotal;
+        frameQueuedNanos[slot] = nowNanos;
+        frameCount++;
+    }
+
+    /** 주기적으로 WebSocket.queueSize() 를 넘겨 준다. 빠져나간 프레임의 송신 지연을 기록하고 단계를 조정한다. */
+    synchronized void sample(long queueSize, long nowNanos) {
+        long drained = queuedTotal - queueSize;
+        while (frameCount > 0 && frameEnd[frameHead] <= drained) {
+            sendMillis.record(TimeUnit.NANOSECONDS.toMillis(nowNanos - frameQueuedNanos[frameHead]));
+            frameHead = (frameHead + 1) % TRACKED_FRAMES;
+            frameCount--;
+        }
+        queueBytes = queueSize;
+        maxQueueBytes = Math.max(maxQueueBytes, queueSize);
+        oldestWaitMs = frameCount == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(nowNanos - frameQueuedNanos[frameHead]);
+
+        long sinceChangeMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - lastChangeNanos);
+        if (queueSize > highQueueBytes || oldestWaitMs > highLatencyMs) {
+            if (level < maxLevel && (level == 0 || sinceChangeMs >= STEP_UP_INTERVAL_MS)) {
+                setLevel(level + 1, nowNanos);
+            }
+        } else if (level > 0 && sinceChangeMs >= STEP_DOWN_INTERVAL_MS) {
+            if (queueSize == 0) {
+                setLevel(0, nowNanos);
+            } else if (queueSize <= lowQueueBytes && oldestWaitMs <= lowLatencyMs) {
+                setLevel(level - 1, nowNanos);
+            }
+        }
+    }
+
+    /** 새 소켓이 열렸다. 이전 소켓의 큐 추적을 비운다. 단계는 그대로 두고 다음 sample 이 조정한다. */
+    synchronized void reset() {
+        frameHead = 0;
+        frameCount = 0;
+        queuedTotal = 0;
+        queueBytes = 0;
+        oldestWaitMs = 0;
+    }
+
+    /** 리더 스레드에서만 부른다. 이 스트림의 레코드를 지금 보내도 되면 true */
+    boolean shouldSend(int stream, long nowNanos) {
+        return shouldSend(defaultGate, stream, nowNanos);
+    }
+
+    /** gate 를 가진 차량의 리더 스레드에서만 부른다 */
+    boolean shouldSend(StreamGate gate, int stream, long nowNanos) {
+        int current = level;
+        if (current == 0 || stream < 0) {
+            return true;
+        }
+        int shift = current - 1 + (stream == TelemetryDeltaFilter.STREAM_ARM ? 1 : 0);
+        long interval = baseIntervalNanos << shift;
+        if (gate.passedOnce[stream] && nowNanos - gate.lastPassedNanos[stream] < interval) {
+            decimated.incrementAndGet();
+            return false;
+        }
+        gate.passedOnce[stream] = true;
+        gate.lastPassedNanos[stream] = nowNanos;
+        return true;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    long getDecimated() {
+        return decimated.get();
+    }
+
+    synchronized long getQueueBytes() {
+        return queueBytes;
+    }
+
+    synchronized long getOldestWaitMs() {
+        return oldestWaitMs;
+    }
+
+    LatencyHistogram getSendMillis() {
+        return sendMillis;
+    }
+
+    /** "uplinkRate":{...} 형태로 붙인다 */
+    synchronized void appendJson(StringBuilder sb) {
+        sb.append("\"uplinkRate\":{\"level\":").append(level)
+                .append(",\"maxLevel\":").append(maxLevel)
+                .append(",\"levelChanges\":").append(levelChanges)
+                .append(",\"decimated\":").append(decimated.get())
+                .append(",\"queueBytes\":").append(queueBytes)
+                .append(",\"maxQueueBytes\":").append(maxQueueBytes)
+                .append(",\"oldestWaitMs\":").append(oldestWaitMs)
+                .append(",\"sendP50Ms\":").append(sendMillis.getPercentile(50))
+                .append(",\"sendP99Ms\":").append(sendMillis.getPercentile(99))
+                .append('}');
+    }
+
+    private void setLevel(int newLevel, long nowNanos) {
+        level = newLevel;
+        lastChangeNanos = nowNanos;
+        levelChanges++;
+    }
+}
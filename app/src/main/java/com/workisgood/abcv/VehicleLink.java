@@ -0,0 +1,346 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.SppFrame;
+import com.workisgood.abcv.protocol.TelemetryAggregator;
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 차량 한 대와의 SPP 링크. 연결마다 리더/writer 루프 한 쌍을 그 연결의 ConnectionScope 에서 돌리고,
+ * 끊겼다 다시 붙어도 차량별 상태(변화분 필터, 요약 창, 업링크 감쇄, 원격 명령 seq, 재연결 일정)는 그대로 이어진다.
+ *
+ * 연결 수명은 ConnectionState 로 CAS 전이한다. 호출자는 beginConnect(scope) 로 connecting 을 잡은 다음
+ * 스코프 안에서 소켓을 만들고 연결해서(소켓은 스코프에 register) attach 로 넘기고, 실패하면 connectFailed 를 부른다.
+ * 연결 상태, writer, 스코프는 불변 스냅숏 하나에 같이 있어서 send 같은 핫 패스는 락 없이 읽는다.
+ * 끊는 쪽이 여럿 겹쳐도(읽기 실패, 쓰기 실패, close) draining 으로 넘긴 하나만 정리하고 나머지는 물러난다.
+ *
+ * 리스너는 리더 또는 writer 스레드에서 불린다. onLinkLost 는 연결 한 번에 많아야 한 번이고,
+ * close 로 닫은 경우에는 불리지 않는다.
+ */
+final class VehicleLink {
+
+    interface Listener {
+        /** 리더 스레드에서 불린다. parser 의 레코드는 다음 라인에서 덮어써진다. */
+        void onTelemetry(VehicleLink link, TelemetryParser parser, int type);
+
+        /** 읽기나 쓰기가 실패해서 링크를 닫은 뒤에 불린다. */
+        void onLinkLost(VehicleLink link, IOException e);
+
+        /** 원격 명령 ack. 이 차량의 device 가 들어 있다. */
+        void onAck(VehicleLink link, String json);
+    }
+
+    // 연결마다 처음 보내는 바이너리 프레임 제안. 모르는 펌웨어는 명령 글자가 아니라서 무시한다
+    private static final byte[] BINARY_HELLO = SppFrame.hello(SppFrame.VERSION);
+
+    final String deviceId;
+    final String name;
+    final TelemetryDeltaFilter deltaFilter;
+    final TelemetryAggregator aggregator;
+    final UplinkRateController.StreamGate uplinkGate = new UplinkRateController.StreamGate();
+    final RemoteCommandRelay relay;
+    final ReconnectEngine reconnect;
+    // 아래 둘은 이 링크의 리더 스레드만 쓴다. 요약 모드 전환을 보고 있는 값과 업링크 JSON 버퍼
+    boolean aggregating;
+    final StringBuilder jsonBuilder = new StringBuilder(256);
+
+    private final int maxLineLength;
+    private final int writerQueueCapacity;
+    private final long writerDrainTimeoutMs;
+    private final boolean binaryFraming;
+    private final Listener listener;
+
+    /** 연결 하나의 자원. connecting 동안은 scope 만 있다 */
+    static final class Connection {
+        final ConnectionScope scope;
+        final TelemetryReader reader;
+        final BluetoothWriter writer;
+
+        Connection(ConnectionScope scope, TelemetryReader reader, BluetoothWriter writer) {
+            this.scope = scope;
+            this.reader = reader;
+            this.writer = writer;
+        }
+    }
+
+    private final ConnectionState<Connection> state = new ConnectionState<>();
+    private volatile TelemetryRecorder recorder;
+
+    private final AtomicLong attaches = new AtomicLong();
+    private final AtomicLong losses = new AtomicLong();
+
+    VehicleLink(String deviceId, String name, TelemetryDeltaFilter deltaFilter,
+                TelemetryAggregator aggregator, ReconnectEngine reconnect,
+                int maxLineLength, int writerQueueCapacity, long writerDrainTimeoutMs,
+                boolean binaryFraming, Listener listener) {
+        this.deviceId = deviceId;
+        this.name = name;
+        this.deltaFilter = deltaFilter;
+        this.aggregator = aggregator;
+        this.reconnect = reconnect;
+        this.maxLineLength = maxLineLength;
+        this.writerQueueCapacity = writerQueueCapacity;
+        this.writerDrainTimeoutMs = writerDrainTimeoutMs;
+        this.binaryFraming = binaryFraming;
+        this.listener = listener;
+        this.relay = new RemoteCommandRelay(this::send, json -> listener.onAck(this, json), deviceId);
+    }
+
+    /**
+     * idle → connecting. 이 스코프에서 연결을 시도해도 되면 true.
+     * 이미 연결 중이거나 연결돼 있거나 목록에서 빠진 링크면 false 이고, 스코프는 호출자가 닫는다
+     */
+    boolean beginConnect(ConnectionScope scope) {
+        return state.beginConnect(new Connection(scope, null, null)) != null;
+    }
+
+    /**
+     * 연결된 스트림으로 writer 와 리더를 scope 에서 시작한다. beginConnect 한 그 스코프여야 한다.
+     * 그 사이에 close 로 취소됐으면 아무것도 붙이지 않고(스코프는 닫힌다) false
+     */
+    boolean attach(ConnectionScope scope, InputStream in, OutputStream out) {
+        ConnectionState.Snapshot<Connection> connecting = state.get();
+        if (connecting.phase != ConnectionState.CONNECTING || connecting.connection.scope != scope
+                || !scope.register(in) || !scope.register(out)) {
+            scope.close();
+            return false;
+        }
+        // 아두이노가 리셋됐을 수 있으니 처음 값은 전부 보낸다
+        deltaFilter.requestKeyframe();
+        // 끊기 전에 열린 요약 창은 끊긴 시간까지 늘어나고 펄스 기준값도 믿을 수 없으니 버린다 (droppedWindows).
+        // 리더를 시작하기 전이라 리더 스레드와 겹치지 않는다
+        aggregator.reset();
+        BluetoothWriter[] self = new BluetoothWriter[1];
+        self[0] = new BluetoothWriter(out, writerQueueCapacity, new BluetoothWriter.Listener() {
+            @Override
+            public void onWriteFailed(IOException e) {
+                lost(self[0], e);
+            }
+
+            @Override
+            public void onWritten(byte[] command, long writtenAtNanos) {
+                relay.onWritten(command, writtenAtNanos);
+                TelemetryRecorder r = recorder;
+                if (r != null) {
+                    r.recordCommand(command, writtenAtNanos);
+                }
+            }
+        });
+        TelemetryReader[] readerSelf = new TelemetryReader[1];
+        readerSelf[0] = new TelemetryReader(in, maxLineLength, new TelemetryReader.Listener() {
+            @Override
+            public void onFrame(byte[] line, int offset, int length) {
+                TelemetryRecorder r = recorder;
+                if (r != null) {
+                    r.recordTelemetry(line, offset, length, System.nanoTime());
+                }
+            }
+
+            @Override
+            public void onTelemetry(TelemetryParser parser, int type) {
+                listener.onTelemetry(VehicleLink.this, parser, type);
+            }
+
+            @Override
+            public void onReadFailed(IOException e) {
+                lost(readerSelf[0], e);
+            }
+        });
+        // 리더/writer 는 connected 로 올라간 뒤에만 시작한다. 진 쪽은 시작하지 않은 채로 버린다
+        ConnectionState.Snapshot<Connection> connected =
+                state.connected(connecting.generation, new Connection(scope, readerSelf[0], self[0]));
+        if (connected == null) {
+            scope.close();
+            return false;
+        }
+        attaches.incrementAndGet();
+        if (binaryFraming) {
+            // 답이 오면 리더가 알아서 프레임으로 읽고, 안 오면 텍스트 그대로 간다
+            self[0].enqueue(BINARY_HELLO);
+        }
+        try {
+            self[0].start(scope);
+            readerSelf[0].start(scope);
+        } catch (RejectedExecutionException e) {
+            // 시작하기 전에 다른 쪽이 스코프를 닫았다. 정리는 그쪽 몫이다
+            return false;
+        }
+        return true;
+    }
+
+    /** 이 스코프의 연결 시도가 실패했다. connecting 을 idle 로 되돌렸으면 true, 그 사이에 취소됐으면 false */
+    boolean connectFailed(ConnectionScope scope) {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        if (current.phase != ConnectionState.CONNECTING || current.connection.scope != scope) {
+            scope.close();
+            return false;
+        }
+        ConnectionState.Snapshot<Connection> draining = state.beginDrain(current.generation);
+        if (draining == null) {
+            scope.close();
+            return false;
+        }
+        drain(draining.connection);
+        return state.finishDrain(draining.generation);
+    }
+
+    /**
+     * 링크를 끝낸다. 이후로는 다시 연결하지 않는다. 연결 중이거나 연결돼 있었으면 정리하고 true.
+     * 호출한 쪽이 끊은 것이므로 onLinkLost 는 부르지 않는다. 다른 쪽이 이미 정리 중이면 기다리지 않는다
+     */
+    boolean close() {
+        ConnectionState.Snapshot<Connection> draining = state.close();
+        if (draining == null) {
+            return false;
+        }
+        drain(draining.connection);
+        state.finishDrain(draining.generation);
+        return true;
+    }
+
+    boolean isConnected() {
+        return state.isConnected();
+    }
+
+    /** 블로킹 없이 writer 큐에 넣는다. 연결이 없거나 큐가 가득 차면 false */
+    boolean send(byte[] command) {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        return current.phase == ConnectionState.CONNECTED && current.connection.writer.enqueue(command);
+    }
+
+    ConnectionState.Snapshot<Connection> getState() {
+        return state.get();
+    }
+
+    BluetoothWriter getWriter() {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        return current.phase == ConnectionState.CONNECTED ? current.connection.writer : null;
+    }
+
+    TelemetryReader getReader() {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        return current.phase == ConnectionState.CONNECTED ? current.connection.reader : null;
+    }
+
+    /** 새 녹화기로 바꾸고 이전 것을 돌려준다. 닫는 것은 호출자 몫이다 */
+    TelemetryRecorder swapRecorder(TelemetryRecorder next) {
+        TelemetryRecorder previous = recorder;
+        recorder = next;
+        return previous;
+    }
+
+    TelemetryRecorder getRecorder() {
+        return recorder;
+    }
+
+    /** 지금 연결(시도 포함)의 스코프가 가진 스레드 수. 끊겨 있으면 0 */
+    int getLiveThreads() {
+        ConnectionScope scope = getScope();
+        return scope != null ? scope.getLiveThreads() : 0;
+    }
+
+    ConnectionScope getScope() {
+        Connection connection = state.get().connection;
+        return connection != null ? connection.scope : null;
+    }
+
+    long getAttaches() {
+        return attaches.get();
+    }
+
+    long getLosses() {
+        return losses.get();
+    }
+
+    /** {"device":…,"connected":…,…} 형태로 붙인다 */
+    void appendJson(StringBuilder sb) {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        boolean connected = current.phase == ConnectionState.CONNECTED;
+        sb.append("{\"device\":\"").append(deviceId).append('"')
+                .append(",\"connected\":").append(connected)
+                .append(',');
+        state.appendJson(sb);
+        sb.append(",\"attaches\":").append(attaches.get())
+                .append(",\"losses\":").append(losses.get());
+        if (connected) {
+            TelemetryReader reader = current.connection.reader;
+            sb.append(",\"bytesRead\":").append(reader.getBytesRead())
+                    .append(",\"frames\":").append(reader.getFrames())
+                    .append(",\"rejected\":").append(reader.getRejectedLines())
+                    .append(",\"framing\":\"").append(reader.isBinaryPeer() ? "binary" : "text")
+                    .append("\",\"binaryFrames\":").append(reader.getBinaryFrames())
+                    .append(",\"crcErrors\":").append(reader.getCrcErrors())
+                    .append(',');
+            current.connection.scope.appendJson(sb);
+            BluetoothWriter w = current.connection.writer;
+            sb.append(",\"btWriter\":{\"queueDepth\":").append(w.getQueueDepth())
+                    .append(",\"rejected\":").append(w.getRejectedCommands())
+                    .append(",\"writes\":").append(w.getWrites())
+                    .append(",\"avgWriteUs\":").append(w.getAverageWriteNanos() / 1000)
+                    .append(",\"maxWriteUs\":").append(w.getMaxWriteNanos() / 1000)
+                    .append('}');
+        }
+        sb.append(",\"uplinkDelta\":{\"records\":").append(deltaFilter.getRecords())
+                .append(",\"suppressed\":").append(deltaFilter.getSuppressed())
+                .append(",\"deltas\":").append(deltaFilter.getDeltas())
+                .append(",\"keyframes\":").append(deltaFilter.getKeyframes())
+                .append("},\"summary\":{\"windows\":").append(aggregator.getWindows())
+                .append(",\"droppedWindows\":").append(aggregator.getDroppedWindows())
+                .append(",\"pulseResets\":").append(aggregator.getPulseResets())
+                .append("},");
+        relay.appendJson(sb);
+        if (reconnect != null) {
+            sb.append(',');
+            reconnect.appendJson(sb);
+        }
+        TelemetryRecorder r = recorder;
+        if (r != null) {
+            sb.append(",\"recorder\":{\"session\":\"").append(r.getDirectory().getName())
+                    .append("\",\"records\":").append(r.getRecords())
+                    .append(",\"bytes\":").append(r.getBytes())
+                    .append(",\"segments\":").append(r.getSegments())
+                    .append(",\"dropped\":").append(r.getDropped())
+                    .append('}');
+        }
+        sb.append('}');
+    }
+
+    // 지금 연결의 리더/writer 가 실패했을 때만 닫고 알린다. 이전 연결에서 온 실패나,
+    // 리더와 writer 가 같이 실패해서 정리를 먼저 잡힌 쪽은 물러난다
+    private void lost(Object source, IOException e) {
+        ConnectionState.Snapshot<Connection> current = state.get();
+        if (current.phase != ConnectionState.CONNECTED
+                || (current.connection.reader != source && current.connection.writer != source)) {
+            return;
+        }
+        ConnectionState.Snapshot<Connection> draining = state.beginDrain(current.generation);
+        if (draining == null) {
+            return;
+        }
+        losses.incrementAndGet();
+        drain(draining.connection);
+        // 정리하는 사이에 close 됐으면 closed 로 끝나고 알리지 않는다
+        if (state.finishDrain(draining.generation)) {
+            listener.onLinkLost(this, e);
+        }
+    }
+
+    // draining 을 잡은 쪽만 부른다. writer 에 남은 명령을 내보낸 뒤 스코프를 닫는다.
+    // 소켓이 닫히면서 막혀 있던 read 가 풀려 리더도 끝난다
+    private void drain(Connection connection) {
+        if (connection.reader != null) {
+            connection.reader.stop();
+        }
+        if (connection.writer != null) {
+            connection.writer.stop(writerDrainTimeoutMs);
+        }
+        relay.dropPending();
+        connection.scope.close();
+    }
+}
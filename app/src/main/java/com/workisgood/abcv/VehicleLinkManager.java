@@ -0,0 +1,214 @@
+package com.workisgood.abcv;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 동시에 붙어 있는 차량 링크들. 링크는 device id(블루투스 주소)로 찾고, 조작 명령은 선택된 차량 하나로만 간다.
+ * 목록은 거의 바뀌지 않고 리더 스레드마다 자주 훑으므로 복사-후-쓰기 리스트에 둔다.
+ *
+ * attach 마다 전후의 JVM 스레드 수, 힙 사용량, 걸린 시간을 재서 링크를 하나 늘릴 때 드는 비용을 남긴다.
+ * 힙은 GC 시점에 따라 흔들리므로 여러 번의 평균으로 본다.
+ *
+ * 뺀 링크는 closer 실행기에서 닫는다. close 는 writer 를 비우고 스코프를 기다리느라 수백 ms 걸릴 수 있어서
+ * 부른 스레드(보통 UI 스레드)와 이 락을 그동안 붙잡지 않는다.
+ */
+final class VehicleLinkManager {
+
+    private final int maxLinks;
+    private final Executor closer;
+    private final CopyOnWriteArrayList<VehicleLink> links = new CopyOnWriteArrayList<>();
+    private volatile VehicleLink selected;
+
+    // attach 측정값. this 락 아래에서만 쓴다
+    private long measuredAttaches;
+    private long lastAttachThreads;
+    private long totalAttachThreads;
+    private long lastAttachHeapBytes;
+    private long totalAttachHeapBytes;
+    private long lastAttachMicros;
+    private int maxConnected;
+
+    VehicleLinkManager(int maxLinks, Executor closer) {
+        this.maxLinks = maxLinks;
+        this.closer = closer;
+    }
+
+    /** 새 링크를 등록한다. 같은 device 가 이미 있거나 꽉 찼으면 false. 선택된 차량이 없으면 이 차량을 고른다 */
+    synchronized boolean add(VehicleLink link) {
+        if (links.size() >= maxLinks || get(link.deviceId) != null) {
+            return false;
+        }
+        links.add(link);
+        if (selected == null) {
+            selected = link;
+        }
+        return true;
+    }
+
+    /**
+     * 목록에서 빼고 closer 에서 닫는다(다시 연결하지 않는다). 닫기를 기다리지 않고 돌아온다.
+     * 선택된 차량이었으면 다음 차량을 고른다
+     */
+    VehicleLink remove(String deviceId) {
+        VehicleLink link;
+        synchronized (this) {
+            link = get(deviceId);
+            if (link == null) {
+                return null;
+            }
+            links.remove(link);
+            if (selected == link) {
+                selected = links.isEmpty() ? null : links.get(0);
+            }
+        }
+        closer.execute(link::close);
+        return link;
+    }
+
+    /** 목록에서의 자리. 없으면 -1 */
+    int indexOf(VehicleLink link) {
+        return links.indexOf(link);
+    }
+
+    VehicleLink get(String deviceId) {
+        for (VehicleLink link : links) {
+            if (link.deviceId.equals(deviceId)) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    /** 지금 목록의 스냅숏. 순회 중에 링크가 늘거나 줄어도 안전하다 */
+    Iterable<VehicleLink> links() {
+        return links;
+    }
+
+    int size() {
+        return links.size();
+    }
+
+    boolean isFull() {
+        return links.size() >= maxLinks;
+    }
+
+    int getConnectedCount() {
+        int connected = 0;
+        for (VehicleLink link : links) {
+            if (link.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    VehicleLink getSelected() {
+        return selected;
+    }
+
+    /** 목록에 있는 device 면 고르고 true */
+    synchronized boolean select(String deviceId) {
+        VehicleLink link = get(deviceId);
+        if (link == null) {
+            return false;
+        }
+        selected = link;
+        return true;
+    }
+
+    /** 목록 순서대로 다음 차량을 고른다. 없으면 null */
+    synchronized VehicleLink selectNext() {
+        if (links.isEmpty()) {
+            return null;
+        }
+        int index = links.indexOf(selected);
+        selected = links.get((index + 1) % links.size());
+        return selected;
+    }
+
+    /** 선택된 차량으로 보낸다. 선택된 차량이 없거나 끊겨 있으면 false */
+    boolean sendToSelected(byte[] command) {
+        VehicleLink link = selected;
+        return link != null && link.send(command);
+    }
+
+    /** link.attach 를 하면서 늘어난 스레드와 힙을 잰다. 스코프가 이미 닫혔으면 false */
+    boolean attach(VehicleLink link, ConnectionScope scope, InputStream in, OutputStream out) {
+        Runtime runtime = Runtime.getRuntime();
+        int threadsBefore = Thread.activeCount();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        boolean attached = link.attach(scope, in, out);
+        long elapsed = System.nanoTime() - start;
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        int threadsAfter = Thread.activeCount();
+        synchronized (this) {
+            measuredAttaches++;
+            lastAttachThreads = threadsAfter - threadsBefore;
+            totalAttachThreads += lastAttachThreads;
+            lastAttachHeapBytes = heapAfter - heapBefore;
+            totalAttachHeapBytes += lastAttachHeapBytes;
+            lastAttachMicros = TimeUnit.NANOSECONDS.toMicros(elapsed);
+            maxConnected = Math.max(maxConnected, getConnectedCount());
+        }
+        return attached;
+    }
+
+    /** 모든 링크의 연결 스코프가 가진 스레드 수 */
+    int getLinkThreads() {
+        int threads = 0;
+        for (VehicleLink link : links) {
+            threads += link.getLiveThreads();
+        }
+        return threads;
+    }
+
+    synchronized long getLastAttachThreads() {
+        return lastAttachThreads;
+    }
+
+    /** attach 한 번에 늘어난 평균 스레드 수 */
+    synchronized double getAverageAttachThreads() {
+        return measuredAttaches == 0 ? 0 : (double) totalAttachThreads / measuredAttaches;
+    }
+
+    /** "links":{...} 형태로 붙인다. items 는 링크마다 VehicleLink.appendJson */
+    void appendJson(StringBuilder sb) {
+        VehicleLink current = selected;
+        sb.append("\"links\":{\"count\":").append(links.size())
+                .append(",\"connected\":").append(getConnectedCount())
+                .append(",\"selected\":");
+        if (current != null) {
+            sb.append('"').append(current.deviceId).append('"');
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"jvmThreads\":").append(Thread.activeCount())
+                .append(",\"linkThreads\":").append(getLinkThreads());
+        synchronized (this) {
+            sb.append(",\"maxConnected\":").append(maxConnected)
+                    .append(",\"attaches\":").append(measuredAttaches)
+                    .append(",\"attachThreads\":").append(lastAttachThreads)
+                    .append(",\"attachThreadsAvg\":")
+                    .append(measuredAttaches == 0 ? 0 : Math.round(100.0 * totalAttachThreads / measuredAttaches) / 100.0)
+                    .append(",\"attachHeapBytes\":").append(lastAttachHeapBytes)
+                    .append(",\"attachHeapBytesAvg\":")
+                    .append(measuredAttaches == 0 ? 0 : totalAttachHeapBytes / measuredAttaches)
+                    .append(",\"attachUs\":").append(lastAttachMicros);
+        }
+        sb.append(",\"items\":[");
+        boolean first = true;
+        for (VehicleLink link : links) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            link.appendJson(sb);
+        }
+        sb.append("]}");
+    }
+}
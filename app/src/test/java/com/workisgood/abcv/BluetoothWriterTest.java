@@ -0,0 +1,137 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BluetoothWriterTest {
+
+    private static final byte[] W = {'W'};
+    private static final byte[] A = {'A'};
+
+    /** 첫 write 에서 latch 가 풀릴 때까지 막히는 스트림 */
+    private static final class StallingStream extends OutputStream {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger writeCalls = new AtomicInteger();
+
+        @Override
+        public void write(int b) {
+            written.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            writeCalls.incrementAndGet();
+            firstWriteStarted.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            written.write(b, off, len);
+        }
+    }
+
+    @Test
+    public void coalescesQueuedCommandsIntoOneWrite() throws InterruptedException {
+        StallingStream stream = new StallingStream();
+        BluetoothWriter writer = new BluetoothWriter(stream, 16, e -> fail("unexpected failure"));
+        writer.start();
+
+        assertTrue(writer.enqueue(W));
+        assertTrue(stream.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        // 첫 write 가 막혀 있는 동안 쌓인 명령은 다음 write 한 번으로 나가야 한다
+        assertTrue(writer.enqueue(A));
+        assertTrue(writer.enqueue(W));
+        assertTrue(writer.enqueue(A));
+        assertEquals(3, writer.getQueueDepth());
+
+        stream.release.countDown();
+        writer.stop(2000L);
+
+        assertEquals("WAWA", new String(stream.written.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(2, stream.writeCalls.get());
+        assertEquals(2, writer.getWrites());
+        assertEquals(4, writer.getBytesWritten());
+        assertTrue(writer.getMaxWriteNanos() > 0);
+    }
+
+    @Test
+    public void rejectsWhenQueueFullOrStopped() throws InterruptedException {
+        StallingStream stream = new StallingStream();
+        BluetoothWriter writer = new BluetoothWriter(stream, 2, e -> { });
+        writer.start();
+        assertTrue(writer.enqueue(W));
+        assertTrue(stream.firstWriteStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(writer.enqueue(A));
+        assertTrue(writer.enqueue(A));
+        assertFalse(writer.enqueue(A));
+        assertEquals(1, writer.getRejectedCommands());
+
+        stream.release.countDown();
+        writer.stop(2000L);
+        assertFalse(writer.enqueue(W));
+        assertEquals("WAA", new String(stream.written.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void reportsWriteFailureOnce() throws InterruptedException {
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("socket closed");
+            }
+        };
+        BluetoothWriter writer = new BluetoothWriter(broken, 4, e -> {
+            failures.incrementAndGet();
+            failed.countDown();
+        });
+        writer.start();
+        writer.enqueue(W);
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertFalse(writer.enqueue(W));
+        writer.stop(1000L);
+        assertEquals(1, failures.get());
+    }
+
+    @Test
+    public void reportsEachWrittenCommand() throws InterruptedException {
+        List<byte[]> written = new CopyOnWriteArrayList<>();
+        BluetoothWriter writer = new BluetoothWriter(new ByteArrayOutputStream(), 16,
+                new BluetoothWriter.Listener() {
+                    @Override
+                    public void onWriteFailed(IOException e) {
+                        fail("unexpected failure");
+                    }
+
+                    @Override
+                    public void onWritten(byte[] command, long writtenAtNanos) {
+                        written.add(command);
+                    }
+                });
+        byte[] first = {'W'};
+        byte[] second = {'W'};
+        writer.start();
+        assertTrue(writer.enqueue(first));
+        assertTrue(writer.enqueue(second));
+        writer.stop(2000L);
+
+        assertEquals(2, written.size());
+        assertSame(first, written.get(0));
+        assertSame(second, written.get(1));
+    }
+}
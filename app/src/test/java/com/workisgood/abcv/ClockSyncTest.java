@@ -0,0 +1,84 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long SERVER_EPOCH = 1_700_000_000_000L;
+
+    // 단조 시계 0ms 일 때 벽시계는 SERVER_EPOCH - 3000 (기기 시계가 3초 늦다)
+    private final ClockSync clock = new ClockSync(SERVER_EPOCH - 3000, 0);
+
+    @Test
+    public void usesWallClockUntilFirstPong() {
+        assertFalse(clock.isSynced());
+        assertEquals(SERVER_EPOCH - 3000 + 250, clock.toServerMillis(250 * MS));
+        assertEquals(-1, clock.getBestRttMs());
+    }
+
+    @Test
+    public void symmetricExchangeGivesExactOffset() {
+        // 서버 시계 = 단조 ms + SERVER_EPOCH. 편도 20ms, 서버 처리 2ms
+        long t0 = 1000;
+        long t1 = SERVER_EPOCH + 1020;
+        long t2 = SERVER_EPOCH + 1022;
+        long t3 = 1042;
+
+        assertTrue(clock.onPong(t0, t1, t2, t3 * MS));
+
+        assertTrue(clock.isSynced());
+        assertEquals(SERVER_EPOCH, clock.getOffsetMs());
+        assertEquals(40, clock.getBestRttMs());
+        assertEquals(SERVER_EPOCH + 5000, clock.toServerMillis(5000 * MS));
+    }
+
+    @Test
+    public void keepsOffsetOfLowestRttSample() {
+        clock.onPong(1000, SERVER_EPOCH + 1010, SERVER_EPOCH + 1010, 1020 * MS);
+        // 업링크 큐에 300ms 묶였던 표본: 비대칭이라 offset 이 150ms 틀어진다
+        clock.onPong(2000, SERVER_EPOCH + 2310, SERVER_EPOCH + 2310, 2320 * MS);
+
+        assertEquals(SERVER_EPOCH, clock.getOffsetMs());
+        assertEquals(20, clock.getBestRttMs());
+        assertTrue(clock.getSmoothedRttMs() > 20);
+        assertEquals(2, clock.getRttMillis().getCount());
+    }
+
+    @Test
+    public void oldSamplesAgeOut() {
+        clock.onPong(1000, SERVER_EPOCH + 1005, SERVER_EPOCH + 1005, 1010 * MS);
+        for (int i = 1; i <= 8; i++) {
+            long t0 = 1000 + i * 2000;
+            clock.onPong(t0, SERVER_EPOCH + 100 + t0 + 30, SERVER_EPOCH + 100 + t0 + 30, (t0 + 60) * MS);
+        }
+
+        // 처음의 짧은 표본은 창 밖으로 밀려났고 서버 시계가 100ms 옮겨 간 것을 따라간다
+        assertEquals(SERVER_EPOCH + 100, clock.getOffsetMs());
+        assertEquals(60, clock.getBestRttMs());
+    }
+
+    @Test
+    public void rejectsInconsistentPongs() {
+        // pong 이 ping 보다 먼저 도착할 수는 없다
+        assertFalse(clock.onPong(2000, SERVER_EPOCH, SERVER_EPOCH, 1000 * MS));
+        // 서버가 보낸 시각이 받은 시각보다 앞선다
+        assertFalse(clock.onPong(1000, SERVER_EPOCH + 10, SERVER_EPOCH, 1020 * MS));
+        // 서버 처리 시간이 왕복보다 길다
+        assertFalse(clock.onPong(1000, SERVER_EPOCH, SERVER_EPOCH + 100, 1020 * MS));
+        assertFalse(clock.isSynced());
+
+        StringBuilder sb = new StringBuilder();
+        clock.appendJson(sb, SERVER_EPOCH - 3000, 0);
+        assertEquals("\"clock\":{\"synced\":false,\"pongs\":0,\"rejected\":3,\"rttMs\":-1,\"bestRttMs\":-1"
+                + ",\"rttP99Ms\":0,\"wallSkewMs\":0}", sb.toString());
+    }
+
+    @Test
+    public void pingsCarryMonotonicMillisAndIncreasingSeq() {
+        assertEquals("{\"type\":\"ping\",\"data\":{\"seq\":1,\"t0\":1500}}", clock.buildPing(1500 * MS));
+        assertTrue(clock.buildPing(1600 * MS).contains("\"seq\":2"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CommandLatencyTrackerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final int DRIVE = 1 << CommandLatencyTracker.GROUP_DRIVE;
+    private static final int STEER = 1 << CommandLatencyTracker.GROUP_STEER;
+
+    private final TelemetryParser parser = new TelemetryParser();
+    private final CommandLatencyTracker tracker = new CommandLatencyTracker(500 * MS);
+
+    private void telemetry(String line, long nowNanos) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        tracker.onTelemetry(parser, parser.parse(bytes, 0, bytes.length), nowNanos);
+    }
+
+    @Test
+    public void mapsInputsToGroups() {
+        assertEquals(DRIVE, CommandLatencyTracker.groupsForInputs(ControlState.DRIVE_FORWARD));
+        assertEquals(STEER, CommandLatencyTracker.groupsForInputs(ControlState.DRIVE_LEFT));
+        assertEquals(1 << CommandLatencyTracker.GROUP_ARM,
+                CommandLatencyTracker.groupsForInputs(ControlState.GRIP_GRAB));
+    }
+
+    @Test
+    public void recordsTimeUntilTargetChanges() {
+        telemetry("m:left:0:0:0:0", 0);
+        tracker.onCommandSent(DRIVE, 10 * MS);
+        // 목표값이 그대로인 프레임은 무시한다
+        telemetry("m:left:0:0:0:0", 20 * MS);
+        telemetry("s:90:100", 25 * MS);
+        telemetry("m:left:50:0:0:0", 45 * MS);
+        // 측정이 끝난 뒤의 프레임은 다시 기록되지 않는다
+        telemetry("m:left:80:0:0:0", 60 * MS);
+
+        LatencyHistogram drive = tracker.getHistogram(CommandLatencyTracker.GROUP_DRIVE);
+        assertEquals(1, drive.getCount());
+        long micros = drive.getMax();
+        assertTrue("latency " + micros, micros >= 34_000 && micros <= 35_000);
+        assertEquals(0, tracker.getHistogram(CommandLatencyTracker.GROUP_STEER).getCount());
+    }
+
+    @Test
+    public void repeatedCommandsDoNotRestartProbe() {
+        telemetry("s:90:90", 0);
+        tracker.onCommandSent(STEER, 10 * MS);
+        tracker.onCommandSent(STEER, 40 * MS);
+        telemetry("s:90:95", 50 * MS);
+        assertEquals(40_000, tracker.getHistogram(CommandLatencyTracker.GROUP_STEER).getMax(), 2_500);
+    }
+
+    @Test
+    public void countsTimeouts() {
+        telemetry("s:90:90", 0);
+        tracker.onCommandSent(STEER, 10 * MS);
+        telemetry("s:90:95", 600 * MS);
+        assertEquals(1, tracker.getTimeouts(CommandLatencyTracker.GROUP_STEER));
+        assertEquals(0, tracker.getHistogram(CommandLatencyTracker.GROUP_STEER).getCount());
+
+        StringBuilder sb = new StringBuilder();
+        tracker.appendJson(sb);
+        assertTrue(sb.toString().contains("\"steer\":{\"count\":0"));
+        assertTrue(sb.toString().contains("\"timeouts\":1"));
+    }
+}
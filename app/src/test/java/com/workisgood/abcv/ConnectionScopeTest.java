@@ -0,0 +1,180 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ConnectionScopeTest {
+
+    /** RFCOMM 소켓처럼 interrupt 로는 풀리지 않고, close 해야만 IOException 으로 풀리는 스트림 */
+    private static final class BlockingSocketStream extends InputStream {
+        private final CountDownLatch closed = new CountDownLatch(1);
+        final CountDownLatch reading = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            reading.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    closed.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("socket closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private final ConnectionScope.Stats stats = new ConnectionScope.Stats();
+
+    private ConnectionScope newScope(long closeTimeoutMs) {
+        return new ConnectionScope("test", 3, closeTimeoutMs, stats);
+    }
+
+    @Test
+    public void closeUnblocksReadByClosingSocket() throws Exception {
+        ConnectionScope scope = newScope(1000);
+        BlockingSocketStream socket = new BlockingSocketStream();
+        scope.register(socket);
+        AtomicBoolean failed = new AtomicBoolean();
+        scope.execute(() -> {
+            try {
+                socket.read();
+            } catch (IOException e) {
+                failed.set(true);
+            }
+        });
+        assertTrue(socket.reading.await(1, TimeUnit.SECONDS));
+        assertEquals(1, scope.getLiveThreads());
+        assertEquals(1, scope.getActiveTasks());
+
+        scope.close();
+
+        assertTrue(failed.get());
+        assertEquals(0, scope.getLiveThreads());
+        assertEquals(1, scope.getTasksCompleted());
+        assertEquals(0, stats.getLiveThreads());
+        assertEquals(0, stats.getOpenScopes());
+        assertEquals(0, stats.getOrphanedThreads());
+    }
+
+    @Test
+    public void threadStuckWithoutRegisteredSocketIsCountedOrphaned() throws Exception {
+        ConnectionScope scope = newScope(50);
+        BlockingSocketStream socket = new BlockingSocketStream();
+        scope.execute(() -> {
+            try {
+                socket.read();
+            } catch (IOException ignored) {
+            }
+        });
+        assertTrue(socket.reading.await(1, TimeUnit.SECONDS));
+
+        scope.close();
+        assertEquals(1, stats.getOrphanedThreads());
+        assertEquals(1, stats.getLiveThreads());
+
+        socket.close();
+        assertTrue(scope.awaitTermination(1000));
+        assertEquals(0, stats.getLiveThreads());
+    }
+
+    @Test
+    public void countsTasksAndRejectsAfterClose() throws Exception {
+        ConnectionScope scope = newScope(1000);
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            scope.execute(done::countDown);
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        scope.close();
+
+        assertEquals(3, scope.getTasksSubmitted());
+        assertEquals(3, scope.getTasksCompleted());
+        assertEquals(3, stats.getTasks());
+        try {
+            scope.execute(() -> { });
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, stats.getRejectedTasks());
+
+        BlockingSocketStream late = new BlockingSocketStream();
+        assertFalse(scope.register(late));
+        assertEquals(0, late.closed.getCount());
+    }
+
+    @Test
+    public void rejectsTasksBeyondMaxThreads() throws Exception {
+        ConnectionScope scope = new ConnectionScope("test", 1, 1000, stats);
+        BlockingSocketStream socket = new BlockingSocketStream();
+        scope.register(socket);
+        scope.execute(() -> {
+            try {
+                socket.read();
+            } catch (IOException ignored) {
+            }
+        });
+        try {
+            scope.execute(() -> { });
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, scope.getTasksSubmitted());
+        scope.close();
+        assertEquals(0, scope.getLiveThreads());
+    }
+
+    @Test
+    public void closeFromOwnThreadDoesNotWaitForItself() throws Exception {
+        ConnectionScope scope = newScope(5000);
+        CountDownLatch closed = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scope.execute(() -> {
+            scope.close();
+            closed.countDown();
+        });
+        assertTrue(closed.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(scope.awaitTermination(1000));
+        assertEquals(0, stats.getOrphanedThreads());
+    }
+
+    @Test
+    public void reconnectStormLeavesNoThreads() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            ConnectionScope scope = newScope(1000);
+            BlockingSocketStream socket = new BlockingSocketStream();
+            scope.register(socket);
+            scope.execute(() -> {
+                try {
+                    socket.read();
+                } catch (IOException ignored) {
+                }
+            });
+            scope.close();
+        }
+        assertEquals(50, stats.getScopes());
+        assertEquals(0, stats.getOpenScopes());
+        assertEquals(0, stats.getLiveThreads());
+        assertEquals(0, stats.getOrphanedThreads());
+        assertTrue(stats.getPeakThreads() <= 3);
+    }
+}
@@ -0,0 +1,132 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConnectionStateTest {
+
+    private final ConnectionState<String> state = new ConnectionState<>();
+
+    @Test
+    public void walksThroughLifecycle() {
+        assertEquals(ConnectionState.IDLE, state.get().phase);
+
+        ConnectionState.Snapshot<String> connecting = state.beginConnect("scope");
+        assertNotNull(connecting);
+        assertEquals(ConnectionState.CONNECTING, connecting.phase);
+        assertEquals(1, connecting.generation);
+        assertEquals("scope", connecting.connection);
+
+        ConnectionState.Snapshot<String> connected = state.connected(1, "socket");
+        assertNotNull(connected);
+        assertTrue(state.isConnected());
+        assertSame(connected, state.get());
+
+        ConnectionState.Snapshot<String> draining = state.beginDrain(1);
+        assertEquals(ConnectionState.DRAINING, draining.phase);
+        assertEquals("socket", draining.connection);
+        assertTrue(state.finishDrain(1));
+        assertEquals(ConnectionState.IDLE, state.get().phase);
+        assertNull(state.get().connection);
+
+        assertEquals(2, state.beginConnect(null).generation);
+        assertEquals(5, state.getTransitions());
+        assertEquals(0, state.getRaceLosses());
+    }
+
+    @Test
+    public void losersBackOff() {
+        state.beginConnect("a");
+        assertNull(state.beginConnect("b"));
+        assertNull(state.connected(2, "socket"));
+        state.connected(1, "socket");
+
+        assertNotNull(state.beginDrain(1));
+        // onFailure 와 onClosed 가 겹친 경우: 두 번째는 정리하지 않는다
+        assertNull(state.beginDrain(1));
+        state.finishDrain(1);
+        // 이전 연결의 늦은 실패는 다음 연결을 건드리지 않는다
+        state.beginConnect("c");
+        assertNull(state.beginDrain(1));
+        assertEquals(ConnectionState.CONNECTING, state.get().phase);
+        assertEquals(4, state.getRaceLosses());
+    }
+
+    @Test
+    public void closeWhileConnectedHandsOverDrain() {
+        state.beginConnect("a");
+        state.connected(1, "socket");
+
+        ConnectionState.Snapshot<String> draining = state.close();
+        assertNotNull(draining);
+        assertEquals("socket", draining.connection);
+        assertNull(state.close());
+        assertFalse(state.finishDrain(1));
+        assertEquals(ConnectionState.CLOSED, state.get().phase);
+        assertNull(state.beginConnect("b"));
+    }
+
+    @Test
+    public void closeDuringDrainEndsClosed() {
+        state.beginConnect("a");
+        state.connected(1, "socket");
+        state.beginDrain(1);
+
+        assertNull(state.close());
+        assertTrue(state.get().closeRequested);
+        // 정리하던 쪽이 끝내면 idle 이 아니라 closed 로 간다
+        assertFalse(state.finishDrain(1));
+        assertEquals(ConnectionState.CLOSED, state.get().phase);
+    }
+
+    @Test
+    public void closeWhileIdleNeedsNoDrain() {
+        assertNull(state.close());
+        assertEquals(ConnectionState.CLOSED, state.get().phase);
+        assertNull(state.close());
+    }
+
+    @Test
+    public void exactlyOneRacerWinsDrain() throws Exception {
+        for (int round = 1; round <= 200; round++) {
+            state.beginConnect("a");
+            state.connected(round, "socket");
+            long generation = round;
+            AtomicInteger winners = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] racers = new Thread[4];
+            for (int i = 0; i < racers.length; i++) {
+                racers[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (state.beginDrain(generation) != null) {
+                        winners.incrementAndGet();
+                        state.finishDrain(generation);
+                    }
+                });
+                racers[i].start();
+            }
+            start.countDown();
+            for (Thread racer : racers) {
+                racer.join();
+            }
+            assertEquals(1, winners.get());
+            assertEquals(ConnectionState.IDLE, state.get().phase);
+        }
+    }
+
+    @Test
+    public void appendsStateJson() {
+        state.beginConnect("a");
+        StringBuilder sb = new StringBuilder();
+        state.appendJson(sb);
+        assertEquals("\"state\":\"connecting\",\"generation\":1,\"transitions\":1,\"raceLosses\":0", sb.toString());
+    }
+}
@@ -0,0 +1,124 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ControlLoopTest {
+
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void ticksAtFixedRate() throws InterruptedException {
+        List<Long> indexes = new ArrayList<>();
+        ControlLoop loop = new ControlLoop("test-loop", PERIOD_NANOS,
+                ControlLoop.MissedTickPolicy.SKIP, 0, index -> {
+                    synchronized (indexes) {
+                        indexes.add(index);
+                    }
+                });
+        loop.start();
+        Thread.sleep(205);
+        loop.stop();
+
+        long ticks = loop.getTicks();
+        assertTrue("ticks=" + ticks, ticks >= 15 && ticks <= 23);
+        synchronized (indexes) {
+            for (int i = 1; i < indexes.size(); i++) {
+                assertTrue(indexes.get(i) > indexes.get(i - 1));
+            }
+        }
+        assertEquals(ticks, loop.getJitterMicros().getCount());
+    }
+
+    @Test
+    public void skipPolicyDropsMissedTicks() throws InterruptedException {
+        ControlLoop loop = new ControlLoop("test-loop", PERIOD_NANOS,
+                ControlLoop.MissedTickPolicy.SKIP, 0, index -> {
+                    if (index == 2) {
+                        sleepQuietly(45);
+                    }
+                });
+        loop.start();
+        Thread.sleep(150);
+        loop.stop();
+        assertTrue(loop.getOverruns() >= 1);
+        assertTrue("skipped=" + loop.getSkippedTicks(), loop.getSkippedTicks() >= 3);
+    }
+
+    @Test
+    public void catchUpPolicyRunsMissedTicksUpToLimit() throws InterruptedException {
+        List<Long> indexes = new ArrayList<>();
+        ControlLoop loop = new ControlLoop("test-loop", PERIOD_NANOS,
+                ControlLoop.MissedTickPolicy.CATCH_UP, 2, index -> {
+                    synchronized (indexes) {
+                        indexes.add(index);
+                    }
+                    if (index == 2) {
+                        sleepQuietly(55);
+                    }
+                });
+        loop.start();
+        Thread.sleep(150);
+        loop.stop();
+        // 4주기 넘게 밀렸지만 현재 틱 + 2틱만 몰아서 돌리고 나머지는 건너뛴다
+        assertTrue(loop.getOverruns() >= 1);
+        assertTrue("skipped=" + loop.getSkippedTicks(), loop.getSkippedTicks() >= 2);
+        synchronized (indexes) {
+            assertTrue(indexes.get(3) >= 5L);
+            assertEquals(indexes.get(3) + 1, (long) indexes.get(4));
+        }
+    }
+
+    @Test
+    public void restartDoesNotRevivePreviousLoop() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Set<Thread> tickThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        AtomicBoolean first = new AtomicBoolean(true);
+        ControlLoop loop = new ControlLoop("test-loop", PERIOD_NANOS,
+                ControlLoop.MissedTickPolicy.SKIP, 0, index -> {
+                    tickThreads.add(Thread.currentThread());
+                    if (first.getAndSet(false)) {
+                        blocked.countDown();
+                        awaitQuietly(release);
+                    }
+                });
+        loop.start();
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        // 첫 틱이 막힌 채로 stop 이 기다리다 포기하고, 곧바로 다시 시작한다
+        loop.stop();
+        loop.start();
+        release.countDown();
+        Thread.sleep(100);
+        tickThreads.clear();
+        Thread.sleep(100);
+        loop.stop();
+        assertEquals(1, tickThreads.size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
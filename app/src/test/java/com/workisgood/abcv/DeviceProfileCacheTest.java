@@ -0,0 +1,87 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class DeviceProfileCacheTest {
+
+    private final DeviceProfileCache cache = new DeviceProfileCache(3);
+
+    @Test
+    public void mostRecentSuccessComesFirst() {
+        cache.onConnected("A", "car-a", 1000, 900);
+        cache.onConnected("B", "car-b", 3000, 1500);
+        cache.onConnected("C", "car-c", 2000, 700);
+
+        assertEquals(Arrays.asList("B", "C", "A"), cache.candidates(5));
+        assertEquals(Arrays.asList("B", "C"), cache.candidates(2));
+    }
+
+    @Test
+    public void failingCarDropsBehindUntilItConnects() {
+        cache.onConnected("A", "car-a", 1000, 900);
+        cache.onConnected("B", "car-b", 3000, 900);
+        cache.onConnectFailed("B");
+        assertEquals(Arrays.asList("A", "B"), cache.candidates(5));
+
+        cache.onConnected("B", null, 4000, 900);
+        assertEquals(Arrays.asList("B", "A"), cache.candidates(5));
+    }
+
+    @Test
+    public void typicalConnectTimeIsSmoothed() {
+        cache.onConnected("A", "car-a", 1000, 800);
+        assertEquals(800, cache.getTypicalConnectMs("A"));
+        cache.onConnected("A", "car-a", 2000, 1600);
+        assertEquals(1000, cache.getTypicalConnectMs("A"));
+        assertEquals(-1, cache.getTypicalConnectMs("B"));
+
+        // 성공 시각이 같으면 빨리 붙는 차량이 먼저다
+        cache.remember("B");
+        cache.remember("C");
+        cache.onConnected("C", "car-c", 0, 300);
+        assertEquals(Arrays.asList("A", "C", "B"), cache.candidates(5));
+    }
+
+    @Test
+    public void onlyBondedCarsAreCandidates() {
+        cache.onConnected("A", "car-a", 1000, 900);
+        cache.onConnected("B", "car-b", 2000, 900);
+        cache.setBonded(Collections.singletonList("A"));
+
+        assertEquals(Collections.singletonList("A"), cache.candidates(5));
+    }
+
+    @Test
+    public void evictsOldestSuccess() {
+        cache.onConnected("A", "car-a", 1000, 900);
+        cache.onConnected("B", "car-b", 2000, 900);
+        cache.onConnected("C", "car-c", 3000, 900);
+        cache.onConnected("D", "car-d", 4000, 900);
+
+        assertEquals(3, cache.size());
+        assertEquals(Arrays.asList("D", "C", "B"), cache.candidates(5));
+    }
+
+    @Test
+    public void roundTripsThroughEncodedString() {
+        cache.onConnected("00:11:22:33:44:55", "car|one", 1000, 900);
+        cache.onConnectFailed("00:11:22:33:44:55");
+        cache.onConnected("66:77:88:99:AA:BB", null, 2000, 1200);
+
+        DeviceProfileCache loaded = new DeviceProfileCache(3);
+        loaded.load(cache.encode() + "\nbroken|line\nX|x|nope|0|0|0|0");
+
+        assertEquals(2, loaded.size());
+        assertEquals(cache.encode(), loaded.encode());
+        assertTrue(loaded.encode().startsWith("00:11:22:33:44:55|car one|1000|1|1|1|900\n"));
+        assertEquals(Arrays.asList("66:77:88:99:AA:BB", "00:11:22:33:44:55"), loaded.candidates(5));
+
+        loaded.load(null);
+        assertEquals(0, loaded.size());
+    }
+}
@@ -0,0 +1,148 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EventTraceTest {
+
+    private static List<int[]> events(EventTrace trace, int max) {
+        List<int[]> events = new ArrayList<>();
+        trace.forEach(max, (nanos, type, a, b, c) -> events.add(new int[]{type, a, b, c}));
+        return events;
+    }
+
+    @Test
+    public void keepsEventsInOrder() {
+        EventTrace trace = new EventTrace(16, System.nanoTime(), true);
+        trace.record(EventTrace.WS_OPEN, 1);
+        trace.record(EventTrace.WS_CLOSED, 1, 1000, 0);
+
+        List<int[]> events = events(trace, 16);
+        assertEquals(2, events.size());
+        assertArrayEquals(new int[]{EventTrace.WS_OPEN, 1, 0, 0}, events.get(0));
+        assertArrayEquals(new int[]{EventTrace.WS_CLOSED, 1, 1000, 0}, events.get(1));
+        assertEquals(2, trace.getRecorded());
+        assertEquals(0, trace.getOverwritten());
+    }
+
+    @Test
+    public void disabledTraceRecordsNothing() {
+        EventTrace trace = new EventTrace(16, 0, false);
+        trace.record(EventTrace.CMD_SEND, 1, 2, 3);
+        assertEquals(0, trace.getRecorded());
+
+        trace.setEnabled(true);
+        trace.record(EventTrace.CMD_SEND, 1, 2, 3);
+        assertEquals(1, trace.getRecorded());
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() {
+        EventTrace trace = new EventTrace(6, 0, true);
+        assertEquals(8, trace.getCapacity());
+        for (int i = 0; i < 20; i++) {
+            trace.record(EventTrace.BT_RECONNECT, i);
+        }
+
+        List<int[]> events = events(trace, 100);
+        assertEquals(8, events.size());
+        assertEquals(12, events.get(0)[1]);
+        assertEquals(19, events.get(7)[1]);
+        assertEquals(12, trace.getOverwritten());
+        assertEquals(3, events(trace, 3).size());
+        assertEquals(17, events(trace, 3).get(0)[1]);
+    }
+
+    @Test
+    public void rendersCommandLettersInJson() {
+        long origin = System.nanoTime();
+        EventTrace trace = new EventTrace(16, origin, true);
+        trace.record(EventTrace.CMD_SEND, EventTrace.packAscii("c:0005\n".getBytes(StandardCharsets.US_ASCII)), 7, 2);
+        trace.record(EventTrace.CMD_QUEUE_FULL, EventTrace.packAscii("W".getBytes(StandardCharsets.US_ASCII)), 1, 64);
+
+        StringBuilder sb = new StringBuilder();
+        trace.appendJson(sb, 10);
+        String json = sb.toString();
+        assertTrue(json, json.startsWith("\"trace\":{\"enabled\":true,\"recorded\":2,\"overwritten\":0,\"events\":[["));
+        assertTrue(json, json.contains(",\"cmdSend\",\"c:00\",7,2]"));
+        assertTrue(json, json.endsWith(",\"cmdQueueFull\",\"W\",1,64]]}"));
+
+        sb.setLength(0);
+        trace.appendStats(sb);
+        assertEquals("\"trace\":{\"enabled\":true,\"recorded\":2,\"overwritten\":0}", sb.toString());
+    }
+
+    @Test
+    public void dumpsOneLinePerEvent() throws Exception {
+        EventTrace trace = new EventTrace(16, System.nanoTime(), true);
+        trace.record(EventTrace.CMD_SEND, EventTrace.packAscii("A".getBytes(StandardCharsets.US_ASCII)), 1, 0);
+        trace.record(EventTrace.SERVER_INVALID, 42);
+        File root = Files.createTempDirectory("traces").toFile();
+        File file = new File(root, "traces/1.trace");
+
+        assertEquals(2, trace.dumpTo(file));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+        file.delete();
+        file.getParentFile().delete();
+        root.delete();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith(" cmdSend A 1 0"));
+        assertTrue(lines.get(1), lines.get(1).endsWith(" serverInvalid 42 0 0"));
+    }
+
+    @Test
+    public void concurrentWritersNeverExposeTornRecords() throws Exception {
+        EventTrace trace = new EventTrace(1024, 0, true);
+        int writers = 4;
+        int perWriter = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger torn = new AtomicInteger();
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads[w] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++) {
+                    // c 로 a, b 가 같은 기록에서 왔는지 확인한다
+                    trace.record(EventTrace.CMD_SEND, writer, i, writer * 31 + i);
+                }
+            });
+            threads[w].start();
+        }
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                trace.forEach(1024, (nanos, type, a, b, c) -> {
+                    if (type != EventTrace.CMD_SEND || c != a * 31 + b) {
+                        torn.incrementAndGet();
+                    }
+                });
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(0, torn.get());
+        assertEquals((long) writers * perWriter, trace.getRecorded());
+        assertEquals(1024, events(trace, 1024).size());
+    }
+}
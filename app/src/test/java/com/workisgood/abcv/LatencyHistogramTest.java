@@ -0,0 +1,52 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        for (long v = 0; v < 1_000_000L; v += (v < 1000 ? 1 : 997)) {
+            int index = LatencyHistogram.bucketIndex(v);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue("value " + v + " above its bucket bound " + upper, v <= upper);
+            if (index > 0) {
+                assertTrue(v > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+            // 상대 오차 6.25% 이내
+            assertTrue(upper - v <= Math.max(1, v / 16));
+        }
+    }
+
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(1_000_000L);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.getMean());
+        long p50 = histogram.getPercentile(50);
+        assertTrue("p50=" + p50, p50 >= 500 && p50 <= 532);
+        long p99 = histogram.getPercentile(99);
+        assertTrue("p99=" + p99, p99 >= 990 && p99 <= 1000);
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram(100L);
+        histogram.record(-5);
+        histogram.record(5_000);
+        assertEquals(2, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(100, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,142 @@
+package com.workisgood.abcv;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReconnectEngineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void backoffIsImmediateThenDoublesUpToMax() {
+        assertEquals(0, ReconnectEngine.backoffDelayMs(1, 100, 1000, 0.0, 0.5));
+        assertEquals(100, ReconnectEngine.backoffDelayMs(2, 100, 1000, 0.0, 0.5));
+        assertEquals(200, ReconnectEngine.backoffDelayMs(3, 100, 1000, 0.0, 0.5));
+        assertEquals(800, ReconnectEngine.backoffDelayMs(5, 100, 1000, 0.0, 0.5));
+        assertEquals(1000, ReconnectEngine.backoffDelayMs(6, 100, 1000, 0.0, 0.5));
+        assertEquals(1000, ReconnectEngine.backoffDelayMs(100, 100, 1000, 0.0, 0.5));
+    }
+
+    @Test
+    public void jitterOnlyShortensDelay() {
+        assertEquals(400, ReconnectEngine.backoffDelayMs(4, 100, 1000, 0.5, 0.0));
+        assertEquals(300, ReconnectEngine.backoffDelayMs(4, 100, 1000, 0.5, 0.5));
+        long shortest = ReconnectEngine.backoffDelayMs(4, 100, 1000, 0.5, 0.999999);
+        assertTrue("delay " + shortest, shortest > 200 && shortest <= 201);
+    }
+
+    @Test
+    public void retriesUntilConnectedWithGrowingDelays() throws InterruptedException {
+        List<Integer> attempts = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        ReconnectEngine[] engine = new ReconnectEngine[1];
+        engine[0] = new ReconnectEngine("bt", scheduler, 20, 1000, 0.0, new Random(1),
+                attempt -> {
+                    attempts.add(attempt);
+                    times.add(System.nanoTime());
+                    if (attempt < 4) {
+                        engine[0].onLinkLost(System.nanoTime());
+                    } else {
+                        engine[0].onConnected(System.nanoTime());
+                        done.countDown();
+                    }
+                });
+        long lost = System.nanoTime();
+
+        engine[0].onLinkLost(lost);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(4, attempts.size());
+        assertEquals(Integer.valueOf(1), attempts.get(0));
+        assertEquals(Integer.valueOf(4), attempts.get(3));
+        assertTrue("first attempt waited", times.get(0) - lost < 15 * MS);
+        assertTrue(times.get(1) - times.get(0) >= 20 * MS);
+        assertTrue(times.get(2) - times.get(1) >= 40 * MS);
+        assertTrue(times.get(3) - times.get(2) >= 80 * MS);
+        assertFalse(engine[0].isReconnecting());
+        assertEquals(4, engine[0].getAttempts());
+        assertEquals(1, engine[0].getRecoveries());
+        assertTrue(engine[0].getLastConnectMs() >= 140);
+    }
+
+    @Test
+    public void duplicateLossWhileWaitingSchedulesOnce() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        ReconnectEngine engine = new ReconnectEngine("bt", scheduler, 50, 1000, 0.0, new Random(1),
+                attempt -> calls.incrementAndGet());
+
+        engine.onLinkLost(0);
+        Thread.sleep(20);
+        assertEquals(1, calls.get());
+
+        // 리더와 writer 가 같은 실패를 동시에 알려도 다음 시도는 한 번만 잡힌다
+        engine.onLinkLost(0);
+        engine.onLinkLost(0);
+        Thread.sleep(100);
+
+        assertEquals(2, calls.get());
+        assertEquals(2, engine.getAttempt());
+    }
+
+    @Test
+    public void cancelDropsPendingAttempt() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        ReconnectEngine engine = new ReconnectEngine("ws", scheduler, 30, 1000, 0.0, new Random(1),
+                attempt -> calls.incrementAndGet());
+        engine.onLinkLost(0);
+        Thread.sleep(20);
+        assertEquals(1, calls.get());
+
+        // 두 번째 시도는 30ms 뒤로 잡혀 있다
+        engine.onLinkLost(0);
+        engine.cancel();
+        Thread.sleep(80);
+
+        assertEquals(1, calls.get());
+        assertFalse(engine.isReconnecting());
+    }
+
+    @Test
+    public void measuresTimeToConnectAndFirstData() throws InterruptedException {
+        CountDownLatch attempted = new CountDownLatch(1);
+        ReconnectEngine engine = new ReconnectEngine("bt", scheduler, 50, 1000, 0.0, new Random(1),
+                attempt -> attempted.countDown());
+
+        // 연결돼 있는 동안의 데이터는 측정하지 않는다
+        engine.onData(0);
+        engine.onLinkLost(1000 * MS);
+        assertTrue(attempted.await(1, TimeUnit.SECONDS));
+        engine.onConnected(1150 * MS);
+        engine.onData(1400 * MS);
+        engine.onData(1500 * MS);
+
+        assertEquals(150, engine.getLastConnectMs());
+        assertEquals(400, engine.getLastFirstDataMs());
+        assertEquals(1, engine.getConnectMillis().getCount());
+        assertEquals(1, engine.getFirstDataMillis().getCount());
+
+        StringBuilder sb = new StringBuilder();
+        engine.appendJson(sb);
+        assertTrue(sb.toString(), sb.toString().startsWith("\"bt\":{\"reconnecting\":false,\"attempts\":1"));
+        assertTrue(sb.toString(), sb.toString().contains("\"lastFirstDataMs\":400"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.ControlState;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RemoteCommandRelayTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final List<byte[]> enqueued = new ArrayList<>();
+    private final List<String> acks = new ArrayList<>();
+    private boolean queueFull;
+    private final RemoteCommandRelay relay = new RemoteCommandRelay(
+            command -> {
+                if (queueFull) {
+                    return false;
+                }
+                enqueued.add(command);
+                return true;
+            },
+            acks::add);
+
+    @Test
+    public void forwardsCommandAndAcksAfterWrite() {
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(1, "W", 0, 1000, 50 * MS));
+        assertEquals(1, enqueued.size());
+        assertEquals("W", new String(enqueued.get(0), StandardCharsets.US_ASCII));
+        // 쓰이기 전에는 ack 하지 않는다
+        assertTrue(acks.isEmpty());
+
+        relay.onWritten(enqueued.get(0), 53 * MS);
+
+        assertEquals(1, acks.size());
+        assertEquals("{\"type\":\"ack\",\"data\":{\"seq\":1,\"status\":\"written\",\"rxAt\":1000,\"writeAt\":1003}}",
+                acks.get(0));
+        assertEquals(1, relay.getWritten());
+        assertEquals(3000, relay.getRxToWriteMicros().getMax(), 200);
+    }
+
+    @Test
+    public void matchesWritesByArrayIdentity() {
+        relay.submit(1, "A", 0, 0, 0);
+        relay.submit(2, "A", 0, 0, 0);
+        assertNotSame(enqueued.get(0), enqueued.get(1));
+
+        // 같은 글자라도 다른 명령(예: 로컬 버튼)의 write 는 ack 하지 않는다
+        relay.onWritten("A".getBytes(StandardCharsets.US_ASCII), MS);
+        assertTrue(acks.isEmpty());
+
+        relay.onWritten(enqueued.get(1), MS);
+        relay.onWritten(enqueued.get(0), 2 * MS);
+        assertTrue(acks.get(0).contains("\"seq\":2"));
+        assertTrue(acks.get(1).contains("\"seq\":1"));
+    }
+
+    @Test
+    public void dropsDuplicatesWithinWindowAndOutOfOrderIsAccepted() {
+        relay.submit(5, "W", 0, 0, 0);
+        relay.submit(3, "W", 0, 0, 0);
+
+        assertEquals(RemoteCommandRelay.STATUS_DUPLICATE, relay.submit(5, "W", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_DUPLICATE, relay.submit(3, "W", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(4, "W", 0, 0, 0));
+        assertEquals(3, enqueued.size());
+        assertEquals(2, relay.getDuplicates());
+        assertTrue(acks.get(0).contains("\"status\":\"duplicate\""));
+
+        // 창(64)보다 오래된 번호는 처리 여부를 모르므로 거절한다
+        relay.submit(200, "W", 0, 0, 0);
+        assertEquals(RemoteCommandRelay.STATUS_DUPLICATE, relay.submit(100, "W", 0, 0, 0));
+    }
+
+    @Test
+    public void seqOneRestartsSequence() {
+        relay.submit(40, "W", 0, 0, 0);
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(1, "W", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(2, "W", 0, 0, 0));
+    }
+
+    @Test
+    public void rejectsExpiredAndInvalidCommands() {
+        assertEquals(RemoteCommandRelay.STATUS_EXPIRED, relay.submit(1, "W", 999, 1000, 0));
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(2, "W", 1000, 1000, 0));
+        assertEquals(RemoteCommandRelay.STATUS_INVALID, relay.submit(3, "X", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_INVALID, relay.submit(4, "WW", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_INVALID, relay.submit(5, null, 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_INVALID, relay.submit(0, "W", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_INVALID, relay.submit(6, "c:8000", 0, 0, 0));
+        assertEquals(1, relay.getExpired());
+        assertEquals(1, enqueued.size());
+        assertEquals(6, acks.size());
+        assertTrue(acks.get(0).contains("\"status\":\"expired\""));
+    }
+
+    @Test
+    public void encodesStateFrames() {
+        int mask = ControlState.DRIVE_FORWARD | ControlState.GRIP_GRAB;
+        relay.submit(1, String.format("c:%04x", mask), 0, 0, 0);
+
+        assertArrayEquals(ControlState.encodeFrame(mask), enqueued.get(0));
+    }
+
+    @Test
+    public void fullQueueAndDisconnectAreAcked() {
+        queueFull = true;
+        assertEquals(RemoteCommandRelay.STATUS_BUSY, relay.submit(1, "W", 0, 0, 0));
+        queueFull = false;
+        relay.submit(2, "S", 0, 0, 0);
+
+        relay.dropPending();
+        relay.onWritten(enqueued.get(0), MS);
+
+        assertEquals(2, acks.size());
+        assertTrue(acks.get(0).contains("\"status\":\"busy\""));
+        assertTrue(acks.get(1).contains("\"seq\":2,\"status\":\"dropped\""));
+    }
+
+    @Test
+    public void busyAndDroppedSeqCanBeRetried() {
+        queueFull = true;
+        assertEquals(RemoteCommandRelay.STATUS_BUSY, relay.submit(5, "W", 0, 0, 0));
+        queueFull = false;
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(5, "W", 0, 0, 0));
+        assertEquals(RemoteCommandRelay.STATUS_DUPLICATE, relay.submit(5, "W", 0, 0, 0));
+
+        relay.submit(6, "S", 0, 0, 0);
+        relay.dropPending();
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, relay.submit(6, "S", 0, 0, 0));
+        assertEquals(1, relay.getDuplicates());
+    }
+
+    @Test
+    public void acksCarryDeviceWhenGiven() {
+        RemoteCommandRelay tagged = new RemoteCommandRelay(command -> false, acks::add, "AA:BB");
+        assertEquals(RemoteCommandRelay.STATUS_BUSY, tagged.submit(1, "W", 0, 10, 0));
+        assertEquals("{\"type\":\"ack\",\"data\":{\"device\":\"AA:BB\",\"seq\":1,\"status\":\"busy\",\"rxAt\":10}}",
+                acks.get(0));
+    }
+}
@@ -0,0 +1,44 @@
+package com.workisgood.abcv;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupMetricsTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void keepsOnlyFirstMarks() {
+        StartupMetrics metrics = new StartupMetrics(1000 * MS);
+        assertEquals(-1, metrics.getFirstTelemetryMs());
+
+        metrics.markAutoConnect("A", 1050 * MS);
+        metrics.markAutoConnect("B", 1090 * MS);
+        metrics.markConnected(1800 * MS);
+        metrics.markConnected(2500 * MS);
+        assertTrue(metrics.markFirstTelemetry(1900 * MS));
+        assertFalse(metrics.markFirstTelemetry(1950 * MS));
+
+        assertEquals("A", metrics.getAutoConnectAddress());
+        assertEquals(800, metrics.getConnectMs());
+        assertEquals(900, metrics.getFirstTelemetryMs());
+    }
+
+    @Test
+    public void appendsStartupJson() {
+        StartupMetrics metrics = new StartupMetrics(0);
+        StringBuilder sb = new StringBuilder();
+        metrics.appendJson(sb);
+        assertEquals("\"startup\":{\"autoConnect\":null,\"autoConnectMs\":-1,\"connectMs\":-1,\"firstTelemetryMs\":-1}",
+                sb.toString());
+
+        metrics.markAutoConnect("A", 20 * MS);
+        metrics.markConnected(700 * MS);
+        metrics.markFirstTelemetry(750 * MS);
+        sb.setLength(0);
+        metrics.appendJson(sb);
+        assertEquals("\"startup\":{\"autoConnect\":\"A\",\"autoConnectMs\":20,\"connectMs\":700,\"firstTelemetryMs\":750}",
+                sb.toString());
+    }
+}
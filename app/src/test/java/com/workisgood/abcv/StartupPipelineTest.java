@@ -0,0 +1,150 @@
+package com.workisgood.abcv;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StartupPipelineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final ExecutorService background = Executors.newSingleThreadExecutor();
+    // 메인 스레드 흉내. 테스트 스레드가 꺼내서 돌린다
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+    private final List<String> order = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        background.shutdownNow();
+    }
+
+    private StartupPipeline newPipeline(long originNanos, long budgetMs) {
+        return new StartupPipeline(originNanos, background, mainQueue::add, budgetMs);
+    }
+
+    // 메인 큐를 비우며 조건을 기다린다
+    private void pumpUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Runnable task = mainQueue.poll(5, TimeUnit.MILLISECONDS);
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void deferredStageWaitsForFirstFrameAndEarlierBackground() throws Exception {
+        StartupPipeline pipeline = newPipeline(System.nanoTime(), 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        boolean[] ready = new boolean[1];
+
+        pipeline.main("contentView", () -> order.add("contentView"));
+        pipeline.background("preferences", () -> {
+            release.await();
+            order.add("preferences");
+        });
+        pipeline.afterFirstFrame("bluetooth", () -> order.add("bluetooth"));
+        pipeline.background("httpClient", () -> order.add("httpClient"));
+        pipeline.whenReady(() -> ready[0] = true);
+        pipeline.seal();
+
+        // 첫 프레임이 지나도 설정을 읽기 전에는 돌지 않는다
+        pipeline.onFirstFrame(System.nanoTime());
+        Thread.sleep(20);
+        assertTrue(mainQueue.isEmpty());
+        assertFalse(pipeline.isReady());
+
+        release.countDown();
+        pumpUntil(() -> ready[0]);
+
+        assertEquals("contentView", order.get(0));
+        assertEquals("preferences", order.get(1));
+        assertTrue(order.indexOf("bluetooth") > order.indexOf("preferences"));
+        assertEquals(4, order.size());
+        assertTrue(pipeline.isReady());
+        assertTrue(pipeline.getReadyMs() >= pipeline.getFirstFrameMs());
+        assertEquals(4, pipeline.getSpans().size());
+    }
+
+    @Test
+    public void notReadyUntilSealed() throws Exception {
+        StartupPipeline pipeline = newPipeline(System.nanoTime(), 10_000);
+        pipeline.background("preferences", () -> order.add("preferences"));
+        pumpUntil(() -> order.size() == 1);
+        Thread.sleep(10);
+        assertFalse(pipeline.isReady());
+
+        pipeline.seal();
+        assertTrue(pipeline.isReady());
+        boolean[] ready = new boolean[1];
+        pipeline.whenReady(() -> ready[0] = true);
+        pumpUntil(() -> ready[0]);
+    }
+
+    @Test
+    public void failedStageIsRecordedAndLaterStagesRun() throws Exception {
+        StartupPipeline pipeline = newPipeline(System.nanoTime(), 10_000);
+        pipeline.background("uplink", () -> {
+            throw new java.io.IOException("disk full");
+        });
+        pipeline.background("webSocket", () -> order.add("webSocket"));
+        pipeline.seal();
+        pumpUntil(pipeline::isReady);
+
+        List<StartupPipeline.Span> spans = pipeline.getSpans();
+        assertEquals("IOException: disk full", spans.get(0).error);
+        assertNull(spans.get(1).error);
+        assertEquals(1, order.size());
+    }
+
+    @Test
+    public void cancelSkipsStagesNotYetStarted() throws Exception {
+        StartupPipeline pipeline = newPipeline(System.nanoTime(), 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pipeline.background("preferences", () -> {
+            started.countDown();
+            release.await();
+            order.add("preferences");
+        });
+        pipeline.background("webSocket", () -> order.add("webSocket"));
+        pipeline.seal();
+        started.await();
+
+        pipeline.cancel();
+        release.countDown();
+        pumpUntil(pipeline::isReady);
+
+        assertEquals(1, order.size());
+        assertEquals("cancelled", pipeline.getSpans().get(1).error);
+    }
+
+    @Test
+    public void reportsFirstFrameBudgetAndSpans() throws Exception {
+        long origin = System.nanoTime() - 800 * MS;
+        StartupPipeline pipeline = newPipeline(origin, 500);
+        pipeline.main("contentView", () -> { });
+        pipeline.onFirstFrame(origin + 600 * MS);
+        pipeline.seal();
+
+        assertTrue(pipeline.isOverBudget());
+        assertEquals(600, pipeline.getFirstFrameMs());
+        StringBuilder sb = new StringBuilder();
+        pipeline.appendJson(sb);
+        String json = sb.toString();
+        assertTrue(json, json.startsWith("\"coldStart\":{\"firstFrameMs\":600,\"readyMs\":"));
+        assertTrue(json, json.contains(",\"overBudget\":true,\"spans\":[{\"name\":\"contentView\",\"thread\":\"main\",\"startMs\":"));
+        assertTrue(json, json.endsWith("}]}"));
+    }
+}
@@ -0,0 +1,219 @@
+package com.workisgood.abcv;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TelemetryRecorderTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long START_NANOS = 5_000 * MS;
+
+    private final File root = createRoot();
+    private final File session = new File(root, "1700000000000");
+
+    private static File createRoot() {
+        try {
+            return Files.createTempDirectory("recordings").toFile();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TelemetryRecorder.pruneSessions(root, 0);
+        root.delete();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private TelemetryRecorder newRecorder(int segmentCapacity) {
+        return new TelemetryRecorder(session, segmentCapacity, 1000, 1_700_000_000_000L, START_NANOS, Runnable::run);
+    }
+
+    @Test
+    public void readsBackTelemetryAndCommandsInOrder() throws IOException {
+        TelemetryRecorder recorder = newRecorder(64 * 1024);
+        byte[] line = ascii("xxs:90:85xx");
+        recorder.recordTelemetry(line, 2, 7, START_NANOS + 10 * MS);
+        recorder.recordCommand(ascii("W"), START_NANOS + 12 * MS);
+        recorder.recordTelemetry(ascii("m:left:10:5:900:80"), 0, 18, START_NANOS + 1500 * MS);
+        recorder.close();
+        // 닫힌 뒤의 기록은 버린다
+        recorder.recordCommand(ascii("S"), START_NANOS + 2000 * MS);
+
+        assertEquals(3, recorder.getRecords());
+        assertEquals(1, recorder.getSegments());
+
+        try (RecordingReader reader = new RecordingReader(session)) {
+            assertEquals(1_700_000_000_000L, reader.getStartEpochMs());
+            assertTrue(reader.next());
+            assertEquals(TelemetryRecorder.KIND_TELEMETRY, reader.kind());
+            assertEquals(10_000, reader.timeMicros());
+            assertEquals("s:90:85", new String(reader.payload(), 0, reader.payloadLength(), StandardCharsets.US_ASCII));
+            assertTrue(reader.next());
+            assertEquals(TelemetryRecorder.KIND_COMMAND, reader.kind());
+            assertEquals(12_000, reader.timeMicros());
+            assertTrue(reader.next());
+            assertEquals(1_500_000, reader.timeMicros());
+            assertEquals(18, reader.payloadLength());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void rotatesSegmentsAndReadsAcrossThem() throws IOException {
+        // 헤더 4096 + 레코드 몇십 개만 들어가는 작은 세그먼트
+        TelemetryRecorder recorder = newRecorder(TelemetryRecorder.HEADER_SIZE + 512);
+        byte[] line = ascii("a:90:90:45:45:120:120:10:10");
+        for (int i = 0; i < 200; i++) {
+            recorder.recordTelemetry(line, 0, line.length, START_NANOS + i * 10 * MS);
+        }
+        recorder.close();
+
+        assertTrue("segments " + recorder.getSegments(), recorder.getSegments() > 5);
+        assertEquals(0, recorder.getDropped());
+        int count = 0;
+        long last = -1;
+        try (RecordingReader reader = new RecordingReader(session)) {
+            assertEquals(recorder.getSegments(), reader.getSegmentCount());
+            while (reader.next()) {
+                assertEquals(count * 10_000L, reader.timeMicros());
+                assertTrue(reader.timeMicros() > last);
+                last = reader.timeMicros();
+                count++;
+            }
+        }
+        assertEquals(200, count);
+    }
+
+    @Test
+    public void seekUsesIndexWithinAndAcrossSegments() throws IOException {
+        TelemetryRecorder recorder = newRecorder(TelemetryRecorder.HEADER_SIZE + 4096);
+        for (int i = 0; i < 1000; i++) {
+            byte[] line = ascii("s:" + i + ":0");
+            recorder.recordTelemetry(line, 0, line.length, START_NANOS + i * 20 * MS);
+        }
+        recorder.close();
+        assertTrue(recorder.getSegments() > 2);
+
+        try (RecordingReader reader = new RecordingReader(session)) {
+            reader.seek(12_345_000L);
+            assertTrue(reader.next());
+            // 12.345s 이후 첫 레코드는 12.36s 에 기록한 618 번
+            assertEquals(12_360_000L, reader.timeMicros());
+            assertEquals("s:618:0",
+                    new String(reader.payload(), 0, reader.payloadLength(), StandardCharsets.US_ASCII));
+            assertTrue(reader.next());
+            assertEquals(12_380_000L, reader.timeMicros());
+
+            reader.seek(0);
+            assertTrue(reader.next());
+            assertEquals(0, reader.timeMicros());
+
+            reader.seek(100_000_000L);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void listsAndPrunesSessionsOldestFirst() throws IOException {
+        for (String name : new String[] {"1700000000300", "1700000000100", "1700000000200"}) {
+            TelemetryRecorder recorder = new TelemetryRecorder(new File(root, name), 64 * 1024, 1000, 0, 0,
+                    Runnable::run);
+            recorder.recordCommand(ascii("W"), 0);
+            recorder.close();
+        }
+
+        File[] sessions = TelemetryRecorder.listSessions(root);
+        assertEquals(3, sessions.length);
+        assertEquals("1700000000100", sessions[0].getName());
+
+        TelemetryRecorder.pruneSessions(root, 2);
+        sessions = TelemetryRecorder.listSessions(root);
+        assertEquals(2, sessions.length);
+        assertEquals("1700000000200", sessions[0].getName());
+        assertEquals("1700000000300", sessions[1].getName());
+    }
+
+    @Test
+    public void rotationUsesPreparedSegments() throws IOException {
+        TelemetryRecorder recorder = newRecorder(TelemetryRecorder.HEADER_SIZE + 512);
+        byte[] line = ascii("a:90:90:45:45:120:120:10:10");
+        for (int i = 0; i < 200; i++) {
+            recorder.recordTelemetry(line, 0, line.length, START_NANOS + i * 10 * MS);
+        }
+        recorder.close();
+
+        // 모든 세그먼트가 미리 열려 있었고, 쓰이지 않은 다음 세그먼트는 지워졌다
+        assertTrue(recorder.getSegments() > 5);
+        assertEquals(0, recorder.getBlockingOpens());
+        assertEquals(recorder.getSegments(), session.list().length);
+    }
+
+    @Test
+    public void opensInPlaceWhenPreparerIsBehind() throws IOException {
+        List<Runnable> queued = new ArrayList<>();
+        TelemetryRecorder recorder = new TelemetryRecorder(session, 64 * 1024, 1000, 0, START_NANOS, queued::add);
+        assertFalse(session.exists());
+
+        recorder.recordCommand(ascii("W"), START_NANOS);
+        assertEquals(1, recorder.getBlockingOpens());
+        assertEquals(1, recorder.getRecords());
+
+        // 늦게 끝난 준비는 이미 연 세그먼트를 덮지 않고 지운다
+        queued.get(0).run();
+        recorder.close();
+        assertEquals(1, session.list().length);
+        try (RecordingReader reader = new RecordingReader(session)) {
+            assertTrue(reader.next());
+            assertEquals(TelemetryRecorder.KIND_COMMAND, reader.kind());
+        }
+    }
+
+    @Test
+    public void shutDownPreparerFallsBackToInPlaceOpens() throws IOException {
+        ExecutorService preparer = Executors.newSingleThreadExecutor();
+        preparer.shutdown();
+        TelemetryRecorder recorder = new TelemetryRecorder(session, TelemetryRecorder.HEADER_SIZE + 512, 1000, 0,
+                START_NANOS, preparer);
+        byte[] line = ascii("a:90:90:45:45:120:120:10:10");
+        for (int i = 0; i < 200; i++) {
+            recorder.recordTelemetry(line, 0, line.length, START_NANOS + i * 10 * MS);
+        }
+        recorder.close();
+
+        assertEquals(200, recorder.getRecords());
+        assertEquals(0, recorder.getDropped());
+        assertEquals(recorder.getSegments(), recorder.getBlockingOpens());
+        try (RecordingReader reader = new RecordingReader(session)) {
+            assertEquals(recorder.getSegments(), reader.getSegmentCount());
+        }
+    }
+
+    @Test
+    public void unusedSessionLeavesNoDirectory() {
+        TelemetryRecorder recorder = newRecorder(64 * 1024);
+        assertTrue(session.isDirectory());
+        recorder.close();
+        assertFalse(session.exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void emptySessionCannotBeOpened() throws IOException {
+        new RecordingReader(session);
+    }
+}
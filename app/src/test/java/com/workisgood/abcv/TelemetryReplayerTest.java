@@ -0,0 +1,125 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TelemetryReplayerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final File root = createRoot();
+    private final File session = new File(root, "1");
+
+    private final List<String> telemetry = new ArrayList<>();
+    private final List<String> commands = new ArrayList<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final TelemetryReplayer.Listener listener = new TelemetryReplayer.Listener() {
+        @Override
+        public void onTelemetry(TelemetryParser parser, int type) {
+            telemetry.add(type == TelemetryParser.TYPE_STEERING
+                    ? "s" + parser.steering.currentAngle : "type" + type);
+        }
+
+        @Override
+        public void onCommand(byte[] command, int length, long timeMicros) {
+            commands.add(new String(command, 0, length, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void onFinished(IOException error) {
+            assertNull(error);
+            finished.countDown();
+        }
+    };
+
+    private static File createRoot() {
+        try {
+            return Files.createTempDirectory("replay").toFile();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TelemetryRecorder.pruneSessions(root, 0);
+        root.delete();
+    }
+
+    // 10ms 간격 조향 라인 count 개, 중간에 명령 하나와 인식되지 않는 라인 하나
+    private void record(int count) {
+        TelemetryRecorder recorder = new TelemetryRecorder(session, 64 * 1024, 100, 0, 0, Runnable::run);
+        for (int i = 0; i < count; i++) {
+            byte[] line = ("s:" + i + ":0").getBytes(StandardCharsets.US_ASCII);
+            recorder.recordTelemetry(line, 0, line.length, i * 10 * MS);
+            if (i == count / 2) {
+                recorder.recordCommand("A".getBytes(StandardCharsets.US_ASCII), i * 10 * MS);
+                byte[] bad = "s:xx".getBytes(StandardCharsets.US_ASCII);
+                recorder.recordTelemetry(bad, 0, bad.length, i * 10 * MS);
+            }
+        }
+        recorder.close();
+    }
+
+    @Test
+    public void replaysThroughParserAsFastAsPossible() throws Exception {
+        record(500);
+        TelemetryReplayer replayer = new TelemetryReplayer(new RecordingReader(session), 0, 0, listener);
+
+        replayer.start();
+
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        assertEquals(500, telemetry.size());
+        assertEquals("s0", telemetry.get(0));
+        assertEquals("s499", telemetry.get(499));
+        assertEquals(1, commands.size());
+        assertEquals(502, replayer.getRecords());
+        assertEquals(500, replayer.getFrames());
+        assertEquals(1, replayer.getRejectedLines());
+        // 기록은 5초 분량이다
+        assertTrue(replayer.getElapsedNanos() < 1000 * MS);
+    }
+
+    @Test
+    public void realTimeReplayKeepsRecordedSpacingFromSeekPoint() throws Exception {
+        record(40);
+        // 0.2초부터 나머지 0.19초를 1배속으로
+        TelemetryReplayer replayer = new TelemetryReplayer(new RecordingReader(session), 200_000, 1.0, listener);
+        long start = System.nanoTime();
+
+        replayer.start();
+
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        long elapsedMs = (System.nanoTime() - start) / MS;
+        assertEquals("s20", telemetry.get(0));
+        assertEquals(20, telemetry.size());
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 185);
+    }
+
+    @Test
+    public void stopEndsReplayWithoutFinishedCallback() throws Exception {
+        record(100);
+        TelemetryReplayer replayer = new TelemetryReplayer(new RecordingReader(session), 0, 1.0, listener);
+
+        replayer.start();
+        Thread.sleep(50);
+        replayer.stop();
+
+        assertTrue(replayer.join(1000));
+        assertEquals(1, finished.getCount());
+        assertTrue(telemetry.size() < 100);
+    }
+}
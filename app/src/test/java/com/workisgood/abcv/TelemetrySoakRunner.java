@@ -0,0 +1,258 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.JsonTelemetryEncoder;
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+import com.workisgood.abcv.protocol.TelemetryParser;
+import com.workisgood.abcv.simulator.VirtualVehicle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 가상 차량을 상대로 앱과 같은 수신/업링크/명령 경로를 JVM 에서 돌린다.
+ * VirtualVehicle → TelemetryReader → CommandLatencyTracker + 변화분 필터 + JSON 인코딩 → UplinkBatcher → TelemetrySpool → 카운터 싱크,
+ * 그리고 ControlLoop → BluetoothWriter → VirtualVehicle 로 글자 명령을 흘린다.
+ * 1초마다 처리량과 수신 버퍼 적체를 샘플링해 지속 처리량(lines/sec)과 적체 증가량을 보고한다.
+ *
+ * 단독 실행: TelemetrySoakRunner [초] [motorHz] [steeringHz] [armHz]
+ */
+final class TelemetrySoakRunner {
+
+    // MainActivity 와 같은 값
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int WRITER_QUEUE_CAPACITY = 64;
+    private static final long COMMAND_INTERVAL_MS = 50L;
+    private static final long TELEMETRY_KEYFRAME_INTERVAL_MS = 5000L;
+    private static final int TELEMETRY_ANGLE_DEADBAND = 1;
+    private static final long WEBSOCKET_BATCH_WINDOW_MS = 30L;
+    private static final int WEBSOCKET_BATCH_MAX_MESSAGES = 32;
+    private static final int WEBSOCKET_BATCH_MAX_CHARS = 8 * 1024;
+
+    private static final long SAMPLE_INTERVAL_MS = 1000L;
+    // 이 간격마다 눌린 버튼을 바꾼다
+    private static final int PRESS_CHANGE_TICKS = 6;
+    private static final int[] INPUTS = {
+            ControlState.DRIVE_FORWARD, ControlState.DRIVE_BACKWARD,
+            ControlState.DRIVE_LEFT, ControlState.DRIVE_RIGHT, ControlState.GRIP_GRAB};
+    private static final byte[][] LETTERS = {
+            {'W'}, {'S'}, {'A'}, {'D'}, {'I'}};
+
+    static final class Result {
+        long durationMs;
+        long linesRead;
+        long framesRead;
+        long linesEmitted;
+        long garbageLines;
+        long rejectedLines;
+        long droppedLines;
+        double averageLinesPerSec;
+        double minLinesPerSec;
+        int backlogStartBytes;
+        int backlogEndBytes;
+        int maxBacklogBytes;
+        long lagEndMs;
+        long uplinkMessages;
+        long uplinkSuppressed;
+        long uplinkFrames;
+        long uplinkBytes;
+        long commandsSent;
+        long commandsReceived;
+        LatencyHistogram driveLatencyMicros;
+
+        /** 마지막 샘플과 첫 샘플의 적체 차이. 앱이 따라가면 0 근처에 머문다. */
+        int backlogGrowthBytes() {
+            return backlogEndBytes - backlogStartBytes;
+        }
+
+        String summary() {
+            return "soak " + durationMs + "ms"
+                    + " | lines/sec avg " + Math.round(averageLinesPerSec)
+                    + " min " + Math.round(minLinesPerSec)
+                    + " | read " + linesRead + " frames " + framesRead + "/" + linesEmitted
+                    + " rejected " + rejectedLines + " (garbage " + garbageLines + ")"
+                    + " dropped " + droppedLines
+                    + " | backlog " + backlogStartBytes + " -> " + backlogEndBytes
+                    + "B max " + maxBacklogBytes + "B lag " + lagEndMs + "ms"
+                    + " | uplink " + uplinkMessages + " msgs (" + uplinkSuppressed + " suppressed) / "
+                    + uplinkFrames + " frames / " + uplinkBytes + "B"
+                    + " | cmds " + commandsSent + " -> " + commandsReceived
+                    + " drive p50 " + driveLatencyMicros.getPercentile(50) + "us"
+                    + " p99 " + driveLatencyMicros.getPercentile(99) + "us";
+        }
+    }
+
+    private TelemetrySoakRunner() {
+    }
+
+    static Result run(VirtualVehicle.Config config, long durationMs) throws IOException, InterruptedException {
+        VirtualVehicle vehicle = new VirtualVehicle(config);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ws-uplink");
+            t.setDaemon(true);
+            return t;
+        });
+        File spoolFile = File.createTempFile("soak-spool", ".bin");
+        TelemetrySpool spool = new TelemetrySpool(spoolFile, 256, 1024 * 1024,
+                TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        AtomicLong uplinkBytes = new AtomicLong();
+        UplinkBatcher.Sink countingSink = new UplinkBatcher.Sink() {
+            @Override
+            public boolean send(String frame) {
+                uplinkBytes.addAndGet(frame.length());
+                return true;
+            }
+
+            @Override
+            public boolean send(byte[] frame, int offset, int length) {
+                uplinkBytes.addAndGet(length);
+                return true;
+            }
+        };
+        UplinkBatcher batcher = new UplinkBatcher(new UplinkBatcher.Sink() {
+            @Override
+            public boolean send(String frame) {
+                spool.sendOrSpool(frame, countingSink);
+                return true;
+            }
+
+            @Override
+            public boolean send(byte[] frame, int offset, int length) {
+                spool.sendOrSpool(frame, offset, length, countingSink);
+                return true;
+            }
+        }, scheduler, WEBSOCKET_BATCH_WINDOW_MS, WEBSOCKET_BATCH_MAX_MESSAGES, WEBSOCKET_BATCH_MAX_CHARS);
+        CommandLatencyTracker latencyTracker = new CommandLatencyTracker(TimeUnit.SECONDS.toNanos(2));
+
+        TelemetryDeltaFilter deltaFilter = new TelemetryDeltaFilter(TELEMETRY_KEYFRAME_INTERVAL_MS);
+        deltaFilter.setAngleDeadband(TELEMETRY_ANGLE_DEADBAND);
+        StringBuilder json = new StringBuilder(256);
+        CountDownLatch readerDone = new CountDownLatch(1);
+        TelemetryReader reader = new TelemetryReader(vehicle.getInputStream(), MAX_LINE_LENGTH,
+                new TelemetryReader.Listener() {
+                    @Override
+                    public void onTelemetry(TelemetryParser parser, int type) {
+                        latencyTracker.onTelemetry(parser, type, System.nanoTime());
+                        long now = System.currentTimeMillis();
+                        int fieldMask = deltaFilter.filter(parser, type, now);
+                        if (fieldMask == 0) {
+                            return;
+                        }
+                        json.setLength(0);
+                        if (JsonTelemetryEncoder.append(json, parser, type, fieldMask, now)) {
+                            batcher.add(json.toString());
+                        }
+                    }
+
+                    @Override
+                    public void onReadFailed(IOException e) {
+                        readerDone.countDown();
+                    }
+                });
+
+        BluetoothWriter writer = new BluetoothWriter(vehicle.getOutputStream(), WRITER_QUEUE_CAPACITY, e -> {
+        });
+        ControlState controlState = new ControlState();
+        Random random = new Random(1L);
+        AtomicLong commandsSent = new AtomicLong();
+        ControlLoop controlLoop = new ControlLoop("control-loop",
+                TimeUnit.MILLISECONDS.toNanos(COMMAND_INTERVAL_MS), ControlLoop.MissedTickPolicy.SKIP, 0,
+                tick -> {
+                    if (tick % PRESS_CHANGE_TICKS == 0) {
+                        controlState.clear();
+                        int input = random.nextInt(INPUTS.length + 1);
+                        if (input < INPUTS.length && controlState.press(INPUTS[input])) {
+                            latencyTracker.onCommandSent(
+                                    CommandLatencyTracker.groupsForInputs(INPUTS[input]), System.nanoTime());
+                        }
+                    }
+                    int mask = controlState.mask();
+                    for (int i = 0; i < INPUTS.length; i++) {
+                        if ((mask & INPUTS[i]) != 0 && writer.enqueue(LETTERS[i])) {
+                            commandsSent.incrementAndGet();
+                        }
+                    }
+                });
+
+        Result result = new Result();
+        vehicle.start();
+        reader.start();
+        writer.start();
+        controlLoop.start();
+        long start = System.nanoTime();
+        long lastLines = 0;
+        long lastSample = start;
+        double minRate = Double.MAX_VALUE;
+        result.backlogStartBytes = -1;
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(Math.min(SAMPLE_INTERVAL_MS,
+                        Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+                long now = System.nanoTime();
+                long lines = reader.getLines();
+                if (now - lastSample >= TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS) / 2) {
+                    double rate = (lines - lastLines) * 1e9 / (now - lastSample);
+                    minRate = Math.min(minRate, rate);
+                }
+                lastLines = lines;
+                lastSample = now;
+                int backlog = vehicle.getBacklogBytes();
+                if (result.backlogStartBytes < 0) {
+                    result.backlogStartBytes = backlog;
+                }
+                result.backlogEndBytes = backlog;
+            }
+            result.durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            result.lagEndMs = TimeUnit.NANOSECONDS.toMillis(vehicle.getLagNanos());
+            result.maxBacklogBytes = vehicle.getMaxBacklogBytes();
+        } finally {
+            controlLoop.stop();
+            writer.stop(200);
+            // 송신을 닫으면 리더가 남은 바이트를 다 읽고 EOF 로 끝난다
+            vehicle.close();
+            readerDone.await(5, TimeUnit.SECONDS);
+            reader.stop();
+            batcher.flush();
+            scheduler.shutdownNow();
+            spool.close();
+            spoolFile.delete();
+        }
+
+        result.linesRead = reader.getLines();
+        result.framesRead = reader.getFrames();
+        result.linesEmitted = vehicle.getLinesEmitted();
+        result.garbageLines = vehicle.getGarbageLines();
+        result.rejectedLines = reader.getRejectedLines();
+        result.droppedLines = reader.getDroppedLines();
+        result.averageLinesPerSec = result.durationMs == 0 ? 0 : result.linesRead * 1000.0 / result.durationMs;
+        result.minLinesPerSec = minRate == Double.MAX_VALUE ? result.averageLinesPerSec : minRate;
+        result.uplinkMessages = batcher.getMessagesSent();
+        result.uplinkSuppressed = deltaFilter.getSuppressed();
+        result.uplinkFrames = batcher.getFramesSent();
+        result.uplinkBytes = uplinkBytes.get();
+        result.commandsSent = commandsSent.get();
+        result.commandsReceived = vehicle.getCommandsReceived();
+        result.driveLatencyMicros = latencyTracker.getHistogram(CommandLatencyTracker.GROUP_DRIVE);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 60;
+        VirtualVehicle.Config config = new VirtualVehicle.Config()
+                .motorHz(args.length > 1 ? Integer.parseInt(args[1]) : 200)
+                .steeringHz(args.length > 2 ? Integer.parseInt(args[2]) : 100)
+                .armHz(args.length > 3 ? Integer.parseInt(args[3]) : 100)
+                .garbageProbability(0.01)
+                .partialLineProbability(0.2)
+                .stall(0.0005, 300);
+        Result result = run(config, TimeUnit.SECONDS.toMillis(seconds));
+        System.out.println(result.summary());
+    }
+}
@@ -0,0 +1,43 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.simulator.VirtualVehicle;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TelemetrySoakTest {
+
+    // ./gradlew :app:testDebugUnitTest -PsoakSeconds=600 으로 길게 돌릴 수 있다
+    private static long soakMillis() {
+        return TimeUnit.SECONDS.toMillis(Long.getLong("soak.seconds", 2L));
+    }
+
+    @Test
+    public void pipelineKeepsUpWithNoisyVehicle() throws Exception {
+        VirtualVehicle.Config config = new VirtualVehicle.Config()
+                .motorHz(200).steeringHz(100).armHz(100)
+                .garbageProbability(0.02)
+                .partialLineProbability(0.2)
+                .stall(0.001, 100)
+                .seed(7L);
+
+        TelemetrySoakRunner.Result result = TelemetrySoakRunner.run(config, soakMillis());
+        System.out.println(result.summary());
+
+        // 모든 정상 라인이 프레임으로, 모든 깨진 라인이 거부로 집계돼야 한다
+        assertEquals(result.linesEmitted, result.framesRead);
+        assertEquals(result.garbageLines, result.rejectedLines);
+        assertEquals(0, result.droppedLines);
+        // 움직이지 않은 반복 프레임만 업링크에서 빠진다
+        assertEquals(result.framesRead, result.uplinkMessages + result.uplinkSuppressed);
+        assertTrue(result.uplinkFrames < result.uplinkMessages);
+        // 600 lines/sec 를 내보내므로 리더가 따라가면 적체는 수신 버퍼 한 번 분량을 넘지 않는다
+        assertTrue(result.summary(), result.averageLinesPerSec > 300);
+        assertTrue(result.summary(), result.backlogGrowthBytes() < 4096);
+        assertTrue(result.commandsReceived > 0);
+        assertEquals(result.commandsSent, result.commandsReceived);
+    }
+}
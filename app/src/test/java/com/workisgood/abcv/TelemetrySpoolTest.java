@@ -0,0 +1,172 @@
+package com.workisgood.abcv;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetrySpoolTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private boolean online;
+    private File file;
+    private TelemetrySpool spool;
+
+    private final UplinkBatcher.Sink sink = new UplinkBatcher.Sink() {
+        @Override
+        public boolean send(String frame) {
+            if (online) {
+                sent.add(frame);
+            }
+            return online;
+        }
+
+        @Override
+        public boolean send(byte[] frame, int offset, int length) {
+            if (online) {
+                sent.add("bin:" + new String(frame, offset, length, StandardCharsets.US_ASCII));
+            }
+            return online;
+        }
+    };
+
+    private TelemetrySpool newSpool(int ringCapacity, int fileCapacity,
+                                    TelemetrySpool.OverflowPolicy policy) throws IOException {
+        file = File.createTempFile("spool", ".bin");
+        spool = new TelemetrySpool(file, ringCapacity, fileCapacity, policy);
+        return spool;
+    }
+
+    @After
+    public void tearDown() {
+        if (spool != null) {
+            spool.close();
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void sendsDirectlyWhenOnlineAndEmpty() throws IOException {
+        newSpool(4, 1024, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        online = true;
+        spool.sendOrSpool("f1", sink);
+        assertEquals(1, sent.size());
+        assertTrue(spool.isEmpty());
+        assertEquals(0, spool.getSpooled());
+    }
+
+    @Test
+    public void replaysRingAndFileInOrder() throws IOException {
+        newSpool(2, 1024, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            spool.sendOrSpool("f" + i, sink);
+        }
+        spool.sendOrSpool(new byte[] {'b', '6'}, 0, 2, sink);
+        assertEquals(6, spool.size());
+
+        online = true;
+        // 밀린 게 있으면 새 프레임도 뒤에 붙어서 순서를 지킨다
+        spool.sendOrSpool("f7", sink);
+        assertEquals(3, spool.replay(sink, 3));
+        assertEquals(4, spool.replay(sink, 100));
+        assertTrue(spool.isEmpty());
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            expected.add("f" + i);
+        }
+        expected.add("bin:b6");
+        expected.add("f7");
+        assertEquals(expected, sent);
+        assertEquals(7, spool.getSpooled());
+        assertEquals(7, spool.getReplayed());
+        assertEquals(0, spool.getDropped());
+    }
+
+    @Test
+    public void dropOldestKeepsNewestFrames() throws IOException {
+        // 레코드 하나가 헤더 5 + 본문 2 = 7바이트라 파일에는 3개까지 들어간다
+        newSpool(2, 21, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 8; i++) {
+            spool.sendOrSpool("f" + i, sink);
+        }
+        assertEquals(5, spool.size());
+        assertEquals(3, spool.getDropped());
+
+        online = true;
+        spool.replay(sink, 100);
+        assertEquals("f4", sent.get(0));
+        assertEquals("f8", sent.get(sent.size() - 1));
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void dropNewestKeepsOldestFrames() throws IOException {
+        newSpool(2, 21, TelemetrySpool.OverflowPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 8; i++) {
+            spool.sendOrSpool("f" + i, sink);
+        }
+        assertEquals(5, spool.size());
+        assertEquals(3, spool.getDropped());
+
+        online = true;
+        spool.replay(sink, 100);
+        assertEquals("f1", sent.get(0));
+        assertEquals("f5", sent.get(sent.size() - 1));
+    }
+
+    @Test
+    public void dropOldestWrapsWithoutMovingSpooledBytes() throws IOException {
+        newSpool(2, 4096, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        int frame = 0;
+        while (spool.getDropped() == 0) {
+            spool.sendOrSpool("f" + (frame++ % 10), sink);
+        }
+        // 가득 찬 뒤에는 프레임마다 그 레코드(7바이트)와 많아야 wrap 표시 하나만 쓴다
+        for (int i = 0; i < 5000; i++) {
+            long before = spool.getFileBytesWritten();
+            spool.sendOrSpool("f" + (frame++ % 10), sink);
+            assertTrue(spool.getFileBytesWritten() - before <= 7 + 1);
+        }
+    }
+
+    @Test
+    public void wrapKeepsOrderWithMixedSizes() throws IOException {
+        newSpool(1, 40, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        List<String> offered = new ArrayList<>();
+        StringBuilder frame = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            frame.setLength(0);
+            frame.append(i);
+            for (int pad = 0; pad < i % 7; pad++) {
+                frame.append('.');
+            }
+            offered.add(frame.toString());
+            spool.sendOrSpool(frame.toString(), sink);
+        }
+        int kept = spool.size();
+        assertEquals(200 - kept, spool.getDropped());
+
+        online = true;
+        spool.replay(sink, 1000);
+        assertEquals(offered.subList(200 - kept, 200), sent);
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void stopsReplayWhenLinkDropsAgain() throws IOException {
+        newSpool(1, 1024, TelemetrySpool.OverflowPolicy.DROP_OLDEST);
+        spool.sendOrSpool("f1", sink);
+        spool.sendOrSpool("f2", sink);
+        assertEquals(0, spool.replay(sink, 10));
+        assertEquals(2, spool.size());
+    }
+}
@@ -0,0 +1,107 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.BinaryTelemetryEncoder;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class UplinkBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+    private final List<byte[]> binaryFrames = new CopyOnWriteArrayList<>();
+    private final UplinkBatcher.Sink sink = new UplinkBatcher.Sink() {
+        @Override
+        public boolean send(String frame) {
+            frames.add(frame);
+            return true;
+        }
+
+        @Override
+        public boolean send(byte[] frame, int offset, int length) {
+            binaryFrames.add(Arrays.copyOfRange(frame, offset, offset + length));
+            return true;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void flushesWhenMessageCapReached() {
+        UplinkBatcher batcher = new UplinkBatcher(sink, scheduler, 10_000L, 3, 1024);
+        batcher.add("{\"a\":1}");
+        batcher.add("{\"a\":2}");
+        assertTrue(frames.isEmpty());
+        batcher.add("{\"a\":3}");
+        assertEquals(1, frames.size());
+        assertEquals("[{\"a\":1},{\"a\":2},{\"a\":3}]", frames.get(0));
+        assertEquals(3, batcher.getMessagesSent());
+        assertEquals(1, batcher.getFramesSent());
+    }
+
+    @Test
+    public void flushesBeforeExceedingCharCap() {
+        UplinkBatcher batcher = new UplinkBatcher(sink, scheduler, 10_000L, 100, 16);
+        batcher.add("{\"a\":11}");
+        batcher.add("{\"a\":22}");
+        assertEquals(1, frames.size());
+        assertEquals("[{\"a\":11}]", frames.get(0));
+        batcher.flush();
+        assertEquals("[{\"a\":22}]", frames.get(1));
+    }
+
+    @Test
+    public void flushesAfterTimeWindow() throws InterruptedException {
+        UplinkBatcher batcher = new UplinkBatcher(sink, scheduler, 20L, 100, 1024);
+        batcher.add("{\"a\":1}");
+        batcher.add("{\"a\":2}");
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(1, frames.size());
+        assertEquals("[{\"a\":1},{\"a\":2}]", frames.get(0));
+    }
+
+    @Test
+    public void sendNowBypassesBatchButKeepsOrder() {
+        UplinkBatcher batcher = new UplinkBatcher(sink, scheduler, 10_000L, 100, 1024);
+        batcher.add("{\"a\":1}");
+        batcher.sendNow("{\"status\":true}");
+        assertEquals(2, frames.size());
+        assertEquals("[{\"a\":1}]", frames.get(0));
+        assertEquals("{\"status\":true}", frames.get(1));
+    }
+
+    @Test
+    public void switchingEncodingFlushesPendingBatch() {
+        UplinkBatcher batcher = new UplinkBatcher(sink, scheduler, 10_000L, 100, 1024);
+        TelemetryParser parser = new TelemetryParser();
+        byte[] line = "s:10:12".getBytes(StandardCharsets.US_ASCII);
+        int type = parser.parse(line, 0, line.length);
+
+        batcher.add("{\"a\":1}");
+        batcher.addTelemetry(parser, type, 1000L);
+        batcher.addTelemetry(parser, type, 1010L);
+        assertEquals(1, frames.size());
+        assertTrue(binaryFrames.isEmpty());
+
+        batcher.add("{\"a\":2}");
+        assertEquals(1, binaryFrames.size());
+        assertEquals(BinaryTelemetryEncoder.FRAME_MAGIC, binaryFrames.get(0)[0]);
+        assertEquals(3, batcher.getMessagesSent());
+    }
+}
@@ -0,0 +1,136 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UplinkRateControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    // high 10000B / low 1000B, 대기 high 500ms / low 100ms, 기본 간격 100ms, 최대 3단계
+    private final UplinkRateController controller =
+            new UplinkRateController(10_000, 1_000, 500, 100, 100, 3);
+
+    @Test
+    public void sendsEverythingWhileQueueIsEmpty() {
+        controller.onFrameQueued(500, 0);
+        controller.sample(0, 10 * MS);
+
+        assertEquals(0, controller.getLevel());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(controller.shouldSend(TelemetryDeltaFilter.STREAM_STEERING, i * MS));
+        }
+        assertEquals(0, controller.getDecimated());
+        assertEquals(1, controller.getSendMillis().getCount());
+        assertEquals(10, controller.getSendMillis().getMax());
+    }
+
+    @Test
+    public void queueGrowthRaisesLevelStepByStep() {
+        controller.onFrameQueued(20_000, 0);
+        controller.sample(20_000, 10 * MS);
+        assertEquals(1, controller.getLevel());
+
+        // 단계를 올린 직후에는 바로 또 올리지 않는다
+        controller.sample(20_000, 100 * MS);
+        assertEquals(1, controller.getLevel());
+        controller.sample(20_000, 300 * MS);
+        assertEquals(2, controller.getLevel());
+        controller.sample(20_000, 600 * MS);
+        controller.sample(20_000, 900 * MS);
+        assertEquals(3, controller.getLevel());
+    }
+
+    @Test
+    public void oldFrameInQueueRaisesLevelEvenWhenSmall() {
+        controller.onFrameQueued(200, 0);
+        controller.sample(200, 400 * MS);
+        assertEquals(0, controller.getLevel());
+
+        controller.sample(200, 600 * MS);
+        assertEquals(1, controller.getLevel());
+        assertEquals(600, controller.getOldestWaitMs());
+    }
+
+    @Test
+    public void decimatesPerStreamAndArmHarder() {
+        controller.onFrameQueued(20_000, 0);
+        controller.sample(20_000, 0);
+        assertEquals(1, controller.getLevel());
+
+        int steering = 0;
+        int arm = 0;
+        // 1초 동안 10ms 마다 들어오는 레코드
+        for (long t = 0; t < 1000; t += 10) {
+            if (controller.shouldSend(TelemetryDeltaFilter.STREAM_STEERING, t * MS)) {
+                steering++;
+            }
+            if (controller.shouldSend(TelemetryDeltaFilter.STREAM_ARM, t * MS)) {
+                arm++;
+            }
+        }
+        assertEquals(10, steering);
+        assertEquals(5, arm);
+        assertEquals(200 - 15, controller.getDecimated());
+        // 알 수 없는 스트림은 그대로 보낸다
+        assertTrue(controller.shouldSend(-1, 0));
+    }
+
+    @Test
+    public void drainedQueueRestoresFullRate() {
+        controller.onFrameQueued(20_000, 0);
+        controller.sample(20_000, 0);
+        controller.sample(20_000, 300 * MS);
+        assertEquals(2, controller.getLevel());
+
+        // 조금 남아 있을 때는 마지막 변경 1초 뒤에 한 단계씩만 내린다
+        controller.onFrameQueued(100, 1200 * MS);
+        controller.sample(100, 1250 * MS);
+        assertEquals(2, controller.getLevel());
+        controller.sample(100, 1300 * MS);
+        assertEquals(1, controller.getLevel());
+
+        controller.onFrameQueued(100, 1500 * MS);
+        controller.onFrameQueued(100, 1500 * MS);
+        controller.sample(0, 2500 * MS);
+        assertEquals(0, controller.getLevel());
+        assertEquals(0, controller.getQueueBytes());
+        assertEquals(0, controller.getOldestWaitMs());
+    }
+
+    @Test
+    public void resetForgetsPreviousSocketQueue() {
+        controller.onFrameQueued(5_000, 0);
+        controller.reset();
+        controller.onFrameQueued(100, 10 * MS);
+        controller.sample(0, 20 * MS);
+
+        assertEquals(1, controller.getSendMillis().getCount());
+        assertEquals(10, controller.getSendMillis().getMax());
+
+        StringBuilder sb = new StringBuilder();
+        controller.appendJson(sb);
+        assertTrue(sb.toString(), sb.toString().startsWith("\"uplinkRate\":{\"level\":0,\"maxLevel\":3"));
+    }
+
+    @Test
+    public void vehiclesAreDecimatedIndependently() {
+        controller.onFrameQueued(20_000, 0);
+        controller.sample(20_000, 10 * MS);
+        assertEquals(1, controller.getLevel());
+        UplinkRateController.StreamGate first = new UplinkRateController.StreamGate();
+        UplinkRateController.StreamGate second = new UplinkRateController.StreamGate();
+        int stream = TelemetryDeltaFilter.STREAM_STEERING;
+
+        assertTrue(controller.shouldSend(first, stream, 20 * MS));
+        // 다른 차량의 같은 스트림은 첫 차량이 방금 보냈어도 통과한다
+        assertTrue(controller.shouldSend(second, stream, 21 * MS));
+        assertFalse(controller.shouldSend(first, stream, 60 * MS));
+        assertFalse(controller.shouldSend(second, stream, 61 * MS));
+        assertTrue(controller.shouldSend(first, stream, 120 * MS));
+        assertEquals(2, controller.getDecimated());
+    }
+}
@@ -0,0 +1,375 @@
+package com.workisgood.abcv;
+
+import com.workisgood.abcv.protocol.TelemetryAggregator;
+import com.workisgood.abcv.protocol.TelemetryDeltaFilter;
+import com.workisgood.abcv.protocol.TelemetryParser;
+import com.workisgood.abcv.simulator.VirtualVehicle;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class VehicleLinkManagerTest {
+
+    /** 차량 쪽 SPP 포트 흉내. toApp 으로 라인을 흘리면 링크의 리더가 읽고, 앱이 쓴 명령은 fromApp 에 쌓인다 */
+    private static final class FakePort {
+        final PipedOutputStream toApp = new PipedOutputStream();
+        final PipedInputStream appIn;
+        final ByteArrayOutputStream fromApp = new ByteArrayOutputStream();
+
+        FakePort() throws IOException {
+            appIn = new PipedInputStream(toApp, 1024);
+        }
+
+        void sendLine(String line) throws IOException {
+            toApp.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+            toApp.flush();
+        }
+
+        String received() {
+            synchronized (fromApp) {
+                return new String(fromApp.toByteArray(), StandardCharsets.US_ASCII);
+            }
+        }
+    }
+
+    private final List<String> telemetry = new CopyOnWriteArrayList<>();
+    private final List<String> lost = new CopyOnWriteArrayList<>();
+    private final List<String> acks = new CopyOnWriteArrayList<>();
+    private final VehicleLink.Listener listener = new VehicleLink.Listener() {
+        @Override
+        public void onTelemetry(VehicleLink link, TelemetryParser parser, int type) {
+            telemetry.add(link.deviceId + ":" + type);
+        }
+
+        @Override
+        public void onLinkLost(VehicleLink link, IOException e) {
+            lost.add(link.deviceId);
+        }
+
+        @Override
+        public void onAck(VehicleLink link, String json) {
+            acks.add(json);
+        }
+    };
+    private final VehicleLinkManager manager = new VehicleLinkManager(3, Runnable::run);
+    private final ConnectionScope.Stats ioStats = new ConnectionScope.Stats();
+    private final List<FakePort> ports = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (VehicleLink link : manager.links()) {
+            manager.remove(link.deviceId);
+        }
+    }
+
+    private VehicleLink newLink(String deviceId) {
+        return newLink(deviceId, false);
+    }
+
+    private VehicleLink newLink(String deviceId, boolean binaryFraming) {
+        return new VehicleLink(deviceId, deviceId, new TelemetryDeltaFilter(1000),
+                new TelemetryAggregator(1000), null, 128, 16, 200, binaryFraming, listener);
+    }
+
+    // 가상 차량을 소켓 삼아 붙인다. 링크를 지우면 스코프가 차량도 닫는다
+    private VehicleLink connectVehicle(String deviceId, VirtualVehicle vehicle) {
+        VehicleLink link = newLink(deviceId, true);
+        assertTrue(manager.add(link));
+        ConnectionScope scope = new ConnectionScope("bt-" + deviceId, 3, 1000, ioStats);
+        scope.register(vehicle);
+        vehicle.start();
+        assertTrue(link.beginConnect(scope));
+        assertTrue(manager.attach(link, scope, vehicle.getInputStream(), vehicle.getOutputStream()));
+        return link;
+    }
+
+    private VehicleLink connect(String deviceId) throws IOException {
+        VehicleLink link = manager.get(deviceId);
+        if (link == null) {
+            link = newLink(deviceId);
+            assertTrue(manager.add(link));
+        }
+        FakePort port = new FakePort();
+        ports.add(port);
+        // 차량 쪽 출력을 소켓 삼아 맡긴다. 닫히면 리더의 read 가 끝난다
+        ConnectionScope scope = new ConnectionScope("bt-" + deviceId, 3, 1000, ioStats);
+        scope.register(port.toApp);
+        assertTrue(link.beginConnect(scope));
+        assertTrue(manager.attach(link, scope, port.appIn, port.fromApp));
+        return link;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void eachLinkAddsReaderAndWriterThread() throws Exception {
+        connect("A");
+        connect("B");
+        connect("C");
+
+        assertEquals(3, manager.getConnectedCount());
+        assertEquals(6, manager.getLinkThreads());
+        assertEquals(2, manager.getLastAttachThreads());
+        assertEquals(2.0, manager.getAverageAttachThreads(), 0.01);
+
+        manager.remove("B");
+        waitUntil(() -> manager.getLinkThreads() == 4);
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void removeEndsReaderAndWriterBeforeReturning() throws Exception {
+        VehicleLink link = connect("A");
+        ConnectionScope scope = link.getScope();
+        TelemetryReader reader = link.getReader();
+        assertEquals(2, scope.getActiveTasks());
+
+        manager.remove("A");
+
+        // 리더는 read 에 막혀 있었지만 소켓이 닫히면서 풀렸다. remove 가 돌아올 때는 이미 끝나 있다
+        assertTrue(scope.isClosed());
+        assertEquals(0, scope.getLiveThreads());
+        assertEquals(0, scope.getActiveTasks());
+        assertFalse(reader.isRunning());
+        assertEquals(0, ioStats.getOpenScopes());
+        assertEquals(0, ioStats.getLiveThreads());
+        assertEquals(0, ioStats.getOrphanedThreads());
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void removeHandsCloseToCloserWithoutWaiting() throws Exception {
+        List<Runnable> closes = new ArrayList<>();
+        VehicleLinkManager deferred = new VehicleLinkManager(3, closes::add);
+        VehicleLink link = newLink("A");
+        assertTrue(deferred.add(link));
+        assertTrue(deferred.add(newLink("B")));
+        ConnectionScope scope = new ConnectionScope("bt-A", 3, 1000, ioStats);
+        assertTrue(link.beginConnect(scope));
+
+        assertSame(link, deferred.remove("A"));
+        // 목록과 선택은 바로 바뀌고, 닫기는 closer 가 돌릴 때까지 미뤄진다
+        assertNull(deferred.get("A"));
+        assertEquals("B", deferred.getSelected().deviceId);
+        assertEquals(1, closes.size());
+        assertFalse(scope.isClosed());
+
+        closes.get(0).run();
+        assertEquals(ConnectionState.CLOSED, link.getState().phase);
+        assertTrue(scope.isClosed());
+        deferred.remove("B");
+        closes.get(1).run();
+    }
+
+    @Test
+    public void reattachDropsOpenSummaryWindow() throws Exception {
+        VehicleLink link = newLink("A");
+        assertTrue(manager.add(link));
+        TelemetryParser parser = new TelemetryParser();
+        byte[] line = "m:left:0:0:900:0".getBytes(StandardCharsets.US_ASCII);
+        link.aggregator.add(parser, parser.parse(line, 0, line.length), 0);
+        assertTrue(link.aggregator.isWindowOpen());
+
+        connect("A");
+        assertFalse(link.aggregator.isWindowOpen());
+        assertEquals(1, link.aggregator.getDroppedWindows());
+    }
+
+    @Test
+    public void attachRejectsClosedScope() throws Exception {
+        VehicleLink link = newLink("A");
+        manager.add(link);
+        FakePort port = new FakePort();
+        ConnectionScope scope = new ConnectionScope("bt-A", 3, 1000, ioStats);
+        assertTrue(link.beginConnect(scope));
+        scope.close();
+
+        assertFalse(manager.attach(link, scope, port.appIn, port.fromApp));
+        assertFalse(link.isConnected());
+        assertEquals(0, link.getAttaches());
+        assertEquals(0, ioStats.getLiveThreads());
+    }
+
+    @Test
+    public void secondConnectAttemptBacksOff() throws Exception {
+        VehicleLink link = newLink("A");
+        manager.add(link);
+        ConnectionScope first = new ConnectionScope("bt-A", 3, 1000, ioStats);
+        ConnectionScope second = new ConnectionScope("bt-A", 3, 1000, ioStats);
+
+        assertTrue(link.beginConnect(first));
+        assertFalse(link.beginConnect(second));
+        assertEquals(ConnectionState.CONNECTING, link.getState().phase);
+        assertSame(first, link.getScope());
+
+        assertTrue(link.connectFailed(first));
+        assertEquals(ConnectionState.IDLE, link.getState().phase);
+        assertTrue(first.isClosed());
+        // 다른 스코프의 실패 보고는 상태를 건드리지 않는다
+        assertTrue(link.beginConnect(second));
+        assertFalse(link.connectFailed(first));
+        assertEquals(ConnectionState.CONNECTING, link.getState().phase);
+        second.close();
+    }
+
+    @Test
+    public void removeDuringConnectCancelsAttach() throws Exception {
+        VehicleLink link = newLink("A");
+        manager.add(link);
+        FakePort port = new FakePort();
+        ConnectionScope scope = new ConnectionScope("bt-A", 3, 1000, ioStats);
+        assertTrue(link.beginConnect(scope));
+
+        manager.remove("A");
+        assertEquals(ConnectionState.CLOSED, link.getState().phase);
+        assertTrue(scope.isClosed());
+
+        // 늦게 끝난 연결 시도는 물러난다. 닫힌 링크는 다시 연결하지 않는다
+        assertFalse(manager.attach(link, scope, port.appIn, port.fromApp));
+        assertFalse(link.connectFailed(scope));
+        assertFalse(link.beginConnect(new ConnectionScope("bt-A", 3, 1000, ioStats)));
+        assertEquals(0, link.getAttaches());
+    }
+
+    @Test
+    public void telemetryIsTaggedWithItsLink() throws Exception {
+        connect("A");
+        connect("B");
+
+        ports.get(1).sendLine("s:90:90");
+        ports.get(0).sendLine("m:left:1:1:1:1");
+        waitUntil(() -> telemetry.size() == 2);
+
+        assertTrue(telemetry.contains("B:" + TelemetryParser.TYPE_STEERING));
+        assertTrue(telemetry.contains("A:" + TelemetryParser.TYPE_MOTOR));
+    }
+
+    @Test
+    public void commandsGoOnlyToSelectedLink() throws Exception {
+        connect("A");
+        connect("B");
+        // 처음 붙은 차량이 선택된다
+        assertEquals("A", manager.getSelected().deviceId);
+
+        assertTrue(manager.select("B"));
+        assertTrue(manager.sendToSelected(new byte[] {'W'}));
+        waitUntil(() -> ports.get(1).received().equals("W"));
+        assertEquals("", ports.get(0).received());
+
+        assertEquals("A", manager.selectNext().deviceId);
+        assertFalse(manager.select("Z"));
+    }
+
+    @Test
+    public void remoteCommandsAckWithDevice() throws Exception {
+        VehicleLink link = connect("A");
+        assertEquals(RemoteCommandRelay.STATUS_WRITTEN, link.relay.submit(1, "W", 0, 5, System.nanoTime()));
+        waitUntil(() -> acks.size() == 1);
+        assertTrue(acks.get(0).startsWith("{\"type\":\"ack\",\"data\":{\"device\":\"A\",\"seq\":1,\"status\":\"written\""));
+    }
+
+    @Test
+    public void lostLinkStaysListedAndCanReattach() throws Exception {
+        VehicleLink link = connect("A");
+        ports.get(0).toApp.close();
+        waitUntil(() -> lost.size() == 1);
+
+        assertFalse(link.isConnected());
+        assertEquals(ConnectionState.IDLE, link.getState().phase);
+        assertSame(link, manager.get("A"));
+        assertFalse(manager.sendToSelected(new byte[] {'W'}));
+        waitUntil(() -> manager.getLinkThreads() == 0);
+
+        connect("A");
+        assertTrue(link.isConnected());
+        assertEquals(2, link.getAttaches());
+        assertEquals(1, link.getLosses());
+        assertEquals(1, lost.size());
+    }
+
+    @Test
+    public void rejectsDuplicateAndExtraLinks() {
+        assertTrue(manager.add(newLink("A")));
+        assertFalse(manager.add(newLink("A")));
+        assertTrue(manager.add(newLink("B")));
+        assertTrue(manager.add(newLink("C")));
+        assertTrue(manager.isFull());
+        assertFalse(manager.add(newLink("D")));
+
+        manager.remove("A");
+        assertEquals("B", manager.getSelected().deviceId);
+        assertTrue(manager.add(newLink("D")));
+    }
+
+    @Test
+    public void appendsPerLinkMetrics() throws Exception {
+        connect("A");
+        manager.add(newLink("B"));
+        StringBuilder sb = new StringBuilder();
+        manager.appendJson(sb);
+        String json = sb.toString();
+
+        assertTrue(json.startsWith("\"links\":{\"count\":2,\"connected\":1,\"selected\":\"A\""));
+        assertTrue(json.contains("\"linkThreads\":2"));
+        assertTrue(json.contains("{\"device\":\"A\",\"connected\":true"));
+        assertTrue(json.contains("\"io\":{\"threads\":2,\"tasks\":2,\"completed\":0}"));
+        assertTrue(json.contains("{\"device\":\"B\",\"connected\":false"));
+        assertTrue(json.endsWith("]}"));
+    }
+
+    @Test
+    public void negotiatesBinaryFramingWithCapableVehicle() throws Exception {
+        VirtualVehicle vehicle = new VirtualVehicle(new VirtualVehicle.Config()
+                .motorHz(200).steeringHz(100).armHz(100)
+                .garbageProbability(0.05)
+                .binaryFraming(true));
+        VehicleLink link = connectVehicle("A", vehicle);
+
+        waitUntil(() -> link.getReader().getBinaryFrames() > 20);
+        assertTrue(vehicle.isBinaryMode());
+        assertTrue(link.getReader().isBinaryPeer());
+        // 바이너리로 넘어간 뒤에도 글자 명령은 그대로 들어간다
+        assertTrue(link.send("W".getBytes(StandardCharsets.US_ASCII)));
+        waitUntil(() -> vehicle.getCommandsReceived() == 1);
+
+        StringBuilder sb = new StringBuilder();
+        link.appendJson(sb);
+        assertTrue(sb.toString().contains("\"framing\":\"binary\""));
+        int telemetryBefore = telemetry.size();
+        waitUntil(() -> telemetry.size() > telemetryBefore);
+    }
+
+    @Test
+    public void legacyVehicleStaysOnTextFraming() throws Exception {
+        VirtualVehicle vehicle = new VirtualVehicle(new VirtualVehicle.Config()
+                .motorHz(200).steeringHz(100).armHz(100));
+        VehicleLink link = connectVehicle("A", vehicle);
+
+        waitUntil(() -> telemetry.size() > 20);
+        assertFalse(vehicle.isBinaryMode());
+        assertFalse(link.getReader().isBinaryPeer());
+        // 모르는 hello 는 명령으로 세지 않는다
+        assertEquals(0, vehicle.getCommandsReceived());
+
+        StringBuilder sb = new StringBuilder();
+        link.appendJson(sb);
+        assertTrue(sb.toString().contains("\"framing\":\"text\""));
+    }
+}
@@ -0,0 +1,24 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :protocol:jmh  → build/results/jmh/results.txt
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    // 한 줄/프레임당 할당 바이트(gc.alloc.rate.norm)를 같이 본다
+    profilers.set(listOf("gc"))
+    resultFormat.set("TEXT")
+}
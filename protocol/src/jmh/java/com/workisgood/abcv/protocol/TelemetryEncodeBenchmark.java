@@ -0,0 +1,88 @@
+package com.workisgood.abcv.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * m/s/a 프레임 한 개를 업링크 형식으로 인코딩하는 처리량.
+ * JSON 은 앱처럼 재사용 StringBuilder 에 붙인 뒤 String 으로 만들고,
+ * 바이너리는 배치 인코더에 한 레코드를 쓰고 되돌리는 비용만 잰다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TelemetryEncodeBenchmark {
+
+    private final TelemetryParser parser = new TelemetryParser();
+    private final MotorTelemetry motor = new MotorTelemetry();
+    private final SteeringTelemetry steering = new SteeringTelemetry();
+    private final ArmTelemetry arm = new ArmTelemetry();
+    private final StringBuilder json = new StringBuilder(256);
+    private final BinaryTelemetryEncoder binary = new BinaryTelemetryEncoder(256);
+    private long timestampMs = 1_700_000_000_000L;
+
+    @Setup
+    public void setup() {
+        parse("m:left:-80:64:1234567:200");
+        motor.copyFrom(parser.motor);
+        parse("s:92:85");
+        steering.copyFrom(parser.steering);
+        parse("a:90:95:80:85:70:75:30:40");
+        arm.copyFrom(parser.arm);
+    }
+
+    private void parse(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public String jsonMotor() {
+        json.setLength(0);
+        JsonTelemetryEncoder.appendMotor(json, motor, timestampMs++);
+        return json.toString();
+    }
+
+    @Benchmark
+    public String jsonSteering() {
+        json.setLength(0);
+        JsonTelemetryEncoder.appendSteering(json, steering, timestampMs++);
+        return json.toString();
+    }
+
+    @Benchmark
+    public String jsonArm() {
+        json.setLength(0);
+        JsonTelemetryEncoder.appendArm(json, arm, timestampMs++);
+        return json.toString();
+    }
+
+    @Benchmark
+    public int binaryMotor() {
+        binary.reset();
+        binary.writeMotor(motor, timestampMs++);
+        return binary.size();
+    }
+
+    @Benchmark
+    public int binarySteering() {
+        binary.reset();
+        binary.writeSteering(steering, timestampMs++);
+        return binary.size();
+    }
+
+    @Benchmark
+    public int binaryArm() {
+        binary.reset();
+        binary.writeArm(arm, timestampMs++);
+        return binary.size();
+    }
+}
@@ -0,0 +1,71 @@
+package com.workisgood.abcv.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 블루투스 수신 경로(LineFramer → TelemetryParser)의 처리량.
+ * 한 호출이 LINES 줄을 처리하므로 점수는 초당 라인 수이고, gc 프로파일러의 gc.alloc.rate.norm 은 라인당 할당 바이트다.
+ * 수신 스트림은 실제 read 처럼 CHUNK 바이트씩 잘라 넣어 라인이 read 경계에 걸치는 경우도 포함한다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TelemetryParseBenchmark {
+
+    private static final int LINES = 1024;
+    private static final int CHUNK = 64;
+
+    private byte[] stream;
+    private LineFramer framer;
+    private TelemetryParser parser;
+    private LineFramer.LineListener listener;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        StringBuilder sb = new StringBuilder(LINES * 32);
+        for (int i = 0; i < LINES; i++) {
+            switch (i % 4) {
+                case 0:
+                    sb.append("m:left:").append(i % 200 - 100).append(':').append(i % 97)
+                            .append(':').append(100_000 + i).append(':').append(i % 256).append('\n');
+                    break;
+                case 1:
+                    sb.append("m:right:").append(i % 200 - 100).append(':').append(i % 89)
+                            .append(':').append(200_000 + i).append(':').append(i % 256).append('\n');
+                    break;
+                case 2:
+                    sb.append("s:").append(i % 180).append(':').append(90).append('\n');
+                    break;
+                default:
+                    sb.append("a:").append(i % 180).append(":90:").append(i % 170).append(":80:")
+                            .append(i % 160).append(":70:").append(i % 60).append(":30\n");
+                    break;
+            }
+        }
+        stream = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        framer = new LineFramer(128);
+        parser = new TelemetryParser();
+        blackhole = bh;
+        listener = (buf, offset, length) -> blackhole.consume(parser.parse(buf, offset, length));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void frameAndParse() {
+        for (int off = 0; off < stream.length; off += CHUNK) {
+            framer.feed(stream, off, Math.min(CHUNK, stream.length - off), listener);
+        }
+    }
+}
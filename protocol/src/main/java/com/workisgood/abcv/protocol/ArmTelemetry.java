@@ -0,0 +1,36 @@
+package com.workisgood.abcv.protocol;
+
+/** a:curBottom:tgtBottom:curL1:tgtL1:curL2:tgtL2:curGrip:tgtGrip */
+public final class ArmTelemetry {
+
+    public int curBottom;
+    public int tgtBottom;
+    public int curLinkOne;
+    public int tgtLinkOne;
+    public int curLinkTwo;
+    public int tgtLinkTwo;
+    public int curGrip;
+    public int tgtGrip;
+
+    public void copyFrom(ArmTelemetry other) {
+        curBottom = other.curBottom;
+        tgtBottom = other.tgtBottom;
+        curLinkOne = other.curLinkOne;
+        tgtLinkOne = other.tgtLinkOne;
+        curLinkTwo = other.curLinkTwo;
+        tgtLinkTwo = other.tgtLinkTwo;
+        curGrip = other.curGrip;
+        tgtGrip = other.tgtGrip;
+    }
+
+    public boolean sameAs(ArmTelemetry other) {
+        return curBottom == other.curBottom
+                && tgtBottom == other.tgtBottom
+                && curLinkOne == other.curLinkOne
+                && tgtLinkOne == other.tgtLinkOne
+                && curLinkTwo == other.curLinkTwo
+                && tgtLinkTwo == other.tgtLinkTwo
+                && curGrip == other.curGrip
+                && tgtGrip == other.tgtGrip;
+    }
+}
@@ -0,0 +1,172 @@
+package com.workisgood.abcv.protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 바이너리 업링크 프레임 인코더. 서버가 "binary" 인코딩을 고른 연결에서만 쓴다.
+ *
+ * <pre>
+ * frame  := 0xB1 baseTimestamp(uvarint, epoch ms) record*
+ * record := tag(1B) deltaMs(svarint, 직전 레코드 대비) fields
+ *   0x01 motor left  / 0x02 motor right : targetThrottle activeSpeed pulseCount pwmOut
+ *   0x03 steering                       : currentAngle targetAngle
+ *   0x04 arm                            : curBottom tgtBottom curL1 tgtL1 curL2 tgtL2 curGrip tgtGrip
+ *   0x11 ~ 0x14 (위 태그 | 0x10) 변화분    : fieldMask(uvarint) 비트가 켜진 필드만 위 순서대로
+ * device := 0x20 length(uvarint) 차량 id(ASCII)   뒤따르는 레코드가 이 차량 것이다 (시각 없음)
+ * </pre>
+ * 차량 id 는 setDevice 로 정하며, 프레임마다 첫 레코드 앞과 차량이 바뀔 때만 device 레코드가 들어간다.
+ * 한 번도 정하지 않았으면 device 레코드 없이 예전 형식 그대로다.
+ * 모든 필드는 zigzag varint(svarint)다. 프레임 하나가 독립적으로 디코딩되도록
+ * 첫 레코드의 기준 시각은 헤더에 절대값으로 들어간다.
+ * 변화분 레코드의 빠진 필드는 서버가 마지막으로 받은 값을 그대로 쓴다 (TelemetryDeltaFilter 참고).
+ */
+public final class BinaryTelemetryEncoder {
+
+    public static final byte FRAME_MAGIC = (byte) 0xB1;
+    public static final byte TAG_MOTOR_LEFT = 0x01;
+    public static final byte TAG_MOTOR_RIGHT = 0x02;
+    public static final byte TAG_STEERING = 0x03;
+    public static final byte TAG_ARM = 0x04;
+    public static final byte TAG_DELTA = 0x10;
+    public static final byte TAG_DEVICE = 0x20;
+
+    // 태그 1 + 시간 10 + 마스크 2 + 필드 8 x 10
+    private static final int MAX_RECORD_SIZE = 93;
+
+    private byte[] buf;
+    private int size;
+    private int count;
+    private long lastTimestamp;
+    private String device;
+    private byte[] deviceBytes;
+    private String frameDevice;
+
+    public BinaryTelemetryEncoder(int initialCapacity) {
+        buf = new byte[Math.max(initialCapacity, MAX_RECORD_SIZE + 11)];
+    }
+
+    public void reset() {
+        size = 0;
+        count = 0;
+        frameDevice = null;
+    }
+
+    /** 다음 레코드부터 붙일 차량 id. 같은 String 이면 다시 바꾸지 않으므로 차량마다 한 인스턴스를 넘긴다 */
+    public void setDevice(String device) {
+        if (device != this.device) {
+            this.device = device;
+            deviceBytes = device != null ? device.getBytes(StandardCharsets.US_ASCII) : null;
+        }
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public void writeMotor(MotorTelemetry m, long timestampMs) {
+        writeMotor(m, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_MOTOR), timestampMs);
+    }
+
+    public void writeSteering(SteeringTelemetry s, long timestampMs) {
+        writeSteering(s, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_STEERING), timestampMs);
+    }
+
+    public void writeArm(ArmTelemetry a, long timestampMs) {
+        writeArm(a, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_ARM), timestampMs);
+    }
+
+    /** fieldMask 가 전체 필드면 일반 레코드, 아니면 변화분 레코드로 쓴다 */
+    public void writeMotor(MotorTelemetry m, int fieldMask, long timestampMs) {
+        begin(m.side == MotorTelemetry.SIDE_LEFT ? TAG_MOTOR_LEFT : TAG_MOTOR_RIGHT,
+                fieldMask, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_MOTOR), timestampMs);
+        writeField(fieldMask, TelemetryDeltaFilter.MOTOR_TARGET_THROTTLE, m.targetThrottle);
+        writeField(fieldMask, TelemetryDeltaFilter.MOTOR_ACTIVE_SPEED, m.activeSpeed);
+        writeField(fieldMask, TelemetryDeltaFilter.MOTOR_PULSE_COUNT, m.pulseCount);
+        writeField(fieldMask, TelemetryDeltaFilter.MOTOR_PWM_OUT, m.pwmOut);
+    }
+
+    public void writeSteering(SteeringTelemetry s, int fieldMask, long timestampMs) {
+        begin(TAG_STEERING, fieldMask, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_STEERING),
+                timestampMs);
+        writeField(fieldMask, TelemetryDeltaFilter.STEERING_CURRENT, s.currentAngle);
+        writeField(fieldMask, TelemetryDeltaFilter.STEERING_TARGET, s.targetAngle);
+    }
+
+    public void writeArm(ArmTelemetry a, int fieldMask, long timestampMs) {
+        begin(TAG_ARM, fieldMask, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_ARM), timestampMs);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_CUR_BOTTOM, a.curBottom);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_TGT_BOTTOM, a.tgtBottom);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_CUR_LINK_ONE, a.curLinkOne);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_TGT_LINK_ONE, a.tgtLinkOne);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_CUR_LINK_TWO, a.curLinkTwo);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_TGT_LINK_TWO, a.tgtLinkTwo);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_CUR_GRIP, a.curGrip);
+        writeField(fieldMask, TelemetryDeltaFilter.ARM_TGT_GRIP, a.tgtGrip);
+    }
+
+    private void begin(byte tag, int fieldMask, int fullMask, long timestampMs) {
+        boolean delta = fieldMask != fullMask;
+        begin(delta ? (byte) (tag | TAG_DELTA) : tag, timestampMs);
+        if (delta) {
+            writeUnsigned(fieldMask);
+        }
+    }
+
+    private void writeField(int fieldMask, int field, long value) {
+        if ((fieldMask & (1 << field)) != 0) {
+            writeSigned(value);
+        }
+    }
+
+    private void begin(byte tag, long timestampMs) {
+        ensureCapacity(size + MAX_RECORD_SIZE + 11 + (deviceBytes != null ? deviceBytes.length + 6 : 0));
+        if (count == 0) {
+            buf[size++] = FRAME_MAGIC;
+            writeUnsigned(timestampMs);
+            lastTimestamp = timestampMs;
+        }
+        if (device != frameDevice && deviceBytes != null) {
+            buf[size++] = TAG_DEVICE;
+            writeUnsigned(deviceBytes.length);
+            System.arraycopy(deviceBytes, 0, buf, size, deviceBytes.length);
+            size += deviceBytes.length;
+            frameDevice = device;
+        }
+        buf[size++] = tag;
+        writeSigned(timestampMs - lastTimestamp);
+        lastTimestamp = timestampMs;
+        count++;
+    }
+
+    private void writeSigned(long value) {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    private void writeUnsigned(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buf.length) {
+            byte[] grown = new byte[Math.max(required, buf.length * 2)];
+            System.arraycopy(buf, 0, grown, 0, size);
+            buf = grown;
+        }
+    }
+}
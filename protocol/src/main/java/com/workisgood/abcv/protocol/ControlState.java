@@ -0,0 +1,67 @@
+package com.workisgood.abcv.protocol;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 눌려 있는 모든 조작 입력을 비트마스크 하나로 들고 있는다.
+ * 상태 프레임 모드에서는 버튼마다 글자를 따로 반복 전송하는 대신
+ * 이 마스크를 "c:xxxx\n"(16진수 4자리) 프레임 하나로 보낸다.
+ */
+public final class ControlState {
+
+    public static final int DRIVE_FORWARD = 1;
+    public static final int DRIVE_BACKWARD = 1 << 1;
+    public static final int DRIVE_LEFT = 1 << 2;
+    public static final int DRIVE_RIGHT = 1 << 3;
+    public static final int ARM_UP = 1 << 4;
+    public static final int ARM_DOWN = 1 << 5;
+    public static final int ARM_LEFT = 1 << 6;
+    public static final int ARM_RIGHT = 1 << 7;
+    public static final int LINK1_UP = 1 << 8;
+    public static final int LINK1_DOWN = 1 << 9;
+    public static final int LINK2_UP = 1 << 10;
+    public static final int LINK2_DOWN = 1 << 11;
+    public static final int GRIP_GRAB = 1 << 12;
+    public static final int GRIP_RELEASE = 1 << 13;
+
+    public static final int FRAME_LENGTH = 7;
+
+    private static final byte[] HEX = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private final AtomicInteger mask = new AtomicInteger();
+
+    /** @return 마스크가 바뀌었으면 true */
+    public boolean press(int input) {
+        int prev = mask.getAndUpdate(m -> m | input);
+        return (prev & input) == 0;
+    }
+
+    /** @return 마스크가 바뀌었으면 true */
+    public boolean release(int input) {
+        int prev = mask.getAndUpdate(m -> m & ~input);
+        return (prev & input) != 0;
+    }
+
+    public void clear() {
+        mask.set(0);
+    }
+
+    public int mask() {
+        return mask.get();
+    }
+
+    /** writer 큐가 참조를 들고 가므로 프레임마다 새 배열을 만든다. */
+    public static byte[] encodeFrame(int mask) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        frame[0] = 'c';
+        frame[1] = ':';
+        frame[2] = HEX[(mask >> 12) & 0xF];
+        frame[3] = HEX[(mask >> 8) & 0xF];
+        frame[4] = HEX[(mask >> 4) & 0xF];
+        frame[5] = HEX[mask & 0xF];
+        frame[6] = '\n';
+        return frame;
+    }
+}
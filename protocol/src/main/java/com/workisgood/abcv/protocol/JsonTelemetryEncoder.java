@@ -0,0 +1,167 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * 텔레메트리 레코드를 서버가 받는 JSON 메시지 한 개로 붙인다.
+ * {"timestamp":…,"type":"motor|steering|arm","data":{…}} 형태이며, 호출자가 넘긴 StringBuilder 에
+ * 이어 붙이기만 하므로 빌더를 재사용하면 메시지마다 중간 객체가 생기지 않는다.
+ * 변화분 메시지는 "delta":true 가 붙고 data 에는 바뀐 필드만 들어간다 (모터는 side 를 항상 넣는다).
+ * 빠진 필드는 서버가 마지막으로 받은 값을 그대로 쓴다.
+ * 차량이 여럿이면 tagDevice 로 메시지 맨 앞에 "device":"…" 를 넣는다.
+ */
+public final class JsonTelemetryEncoder {
+
+    private JsonTelemetryEncoder() {
+    }
+
+    /** parser 가 방금 채운 레코드를 붙인다. 알 수 없는 type 이면 아무것도 붙이지 않고 false */
+    public static boolean append(StringBuilder sb, TelemetryParser parser, int type, long timestampMs) {
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                appendMotor(sb, parser.motor, timestampMs);
+                return true;
+            case TelemetryParser.TYPE_STEERING:
+                appendSteering(sb, parser.steering, timestampMs);
+                return true;
+            case TelemetryParser.TYPE_ARM:
+                appendArm(sb, parser.arm, timestampMs);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** fieldMask 가 전체 필드면 append 와 같고, 아니면 바뀐 필드만 담은 변화분 메시지를 붙인다 */
+    public static boolean append(StringBuilder sb, TelemetryParser parser, int type,
+                                 int fieldMask, long timestampMs) {
+        if (fieldMask == TelemetryDeltaFilter.fullMask(type)) {
+            return append(sb, parser, type, timestampMs);
+        }
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                appendMotorDelta(sb, parser.motor, fieldMask, timestampMs);
+                return true;
+            case TelemetryParser.TYPE_STEERING:
+                appendSteeringDelta(sb, parser.steering, fieldMask, timestampMs);
+                return true;
+            case TelemetryParser.TYPE_ARM:
+                appendArmDelta(sb, parser.arm, fieldMask, timestampMs);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static void appendMotor(StringBuilder sb, MotorTelemetry m, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"motor\"")
+                .append(",\"data\":{\"side\":\"").append(m.sideName()).append('"')
+                .append(",\"targetThrottle\":").append(m.targetThrottle)
+                .append(",\"activeSpeed\":").append(m.activeSpeed)
+                .append(",\"pulseCount\":").append(m.pulseCount)
+                .append(",\"pwmOut\":").append(m.pwmOut)
+                .append("}}");
+    }
+
+    public static void appendSteering(StringBuilder sb, SteeringTelemetry s, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"steering\"")
+                .append(",\"data\":{\"currentAngle\":").append(s.currentAngle)
+                .append(",\"targetAngle\":").append(s.targetAngle)
+                .append("}}");
+    }
+
+    public static void appendArm(StringBuilder sb, ArmTelemetry a, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"arm\"")
+                .append(",\"data\":{")
+                .append("\"armBottom\":{\"current\":").append(a.curBottom)
+                .append(",\"target\":").append(a.tgtBottom).append('}')
+                .append(",\"linkOne\":{\"current\":").append(a.curLinkOne)
+                .append(",\"target\":").append(a.tgtLinkOne).append('}')
+                .append(",\"linkTwo\":{\"current\":").append(a.curLinkTwo)
+                .append(",\"target\":").append(a.tgtLinkTwo).append('}')
+                .append(",\"gripper\":{\"current\":").append(a.curGrip)
+                .append(",\"target\":").append(a.tgtGrip).append('}')
+                .append("}}");
+    }
+
+    public static void appendMotorDelta(StringBuilder sb, MotorTelemetry m, int fieldMask, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"motor\",\"delta\":true")
+                .append(",\"data\":{\"side\":\"").append(m.sideName()).append('"');
+        appendField(sb, fieldMask, TelemetryDeltaFilter.MOTOR_TARGET_THROTTLE, ",\"targetThrottle\":", m.targetThrottle);
+        appendField(sb, fieldMask, TelemetryDeltaFilter.MOTOR_ACTIVE_SPEED, ",\"activeSpeed\":", m.activeSpeed);
+        appendField(sb, fieldMask, TelemetryDeltaFilter.MOTOR_PULSE_COUNT, ",\"pulseCount\":", m.pulseCount);
+        appendField(sb, fieldMask, TelemetryDeltaFilter.MOTOR_PWM_OUT, ",\"pwmOut\":", m.pwmOut);
+        sb.append("}}");
+    }
+
+    public static void appendSteeringDelta(StringBuilder sb, SteeringTelemetry s, int fieldMask, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"steering\",\"delta\":true")
+                .append(",\"data\":{");
+        int start = sb.length();
+        appendField(sb, fieldMask, TelemetryDeltaFilter.STEERING_CURRENT, ",\"currentAngle\":", s.currentAngle);
+        appendField(sb, fieldMask, TelemetryDeltaFilter.STEERING_TARGET, ",\"targetAngle\":", s.targetAngle);
+        dropLeadingComma(sb, start);
+        sb.append("}}");
+    }
+
+    public static void appendArmDelta(StringBuilder sb, ArmTelemetry a, int fieldMask, long timestampMs) {
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"arm\",\"delta\":true")
+                .append(",\"data\":{");
+        int start = sb.length();
+        appendJoint(sb, fieldMask, TelemetryDeltaFilter.ARM_CUR_BOTTOM, "armBottom", a.curBottom, a.tgtBottom);
+        appendJoint(sb, fieldMask, TelemetryDeltaFilter.ARM_CUR_LINK_ONE, "linkOne", a.curLinkOne, a.tgtLinkOne);
+        appendJoint(sb, fieldMask, TelemetryDeltaFilter.ARM_CUR_LINK_TWO, "linkTwo", a.curLinkTwo, a.tgtLinkTwo);
+        appendJoint(sb, fieldMask, TelemetryDeltaFilter.ARM_CUR_GRIP, "gripper", a.curGrip, a.tgtGrip);
+        dropLeadingComma(sb, start);
+        sb.append("}}");
+    }
+
+    /**
+     * messageStart 부터 붙은 메시지 하나의 맨 앞에 "device":"…" 를 넣는다. 요약 메시지에도 쓴다.
+     * device 는 따옴표나 역슬래시가 없는 ASCII(블루투스 주소 등)여야 한다. null 이면 아무것도 하지 않는다.
+     */
+    public static void tagDevice(StringBuilder sb, int messageStart, String device) {
+        if (device == null || sb.length() <= messageStart || sb.charAt(messageStart) != '{') {
+            return;
+        }
+        // 뒤에서부터 넣어서 중간 문자열을 만들지 않는다
+        int at = messageStart + 1;
+        sb.insert(at, "\",").insert(at, device).insert(at, "\"device\":\"");
+    }
+
+    private static void appendField(StringBuilder sb, int fieldMask, int field, String key, long value) {
+        if ((fieldMask & (1 << field)) != 0) {
+            sb.append(key).append(value);
+        }
+    }
+
+    // 관절마다 current 가 field, target 이 field + 1 번 비트다
+    private static void appendJoint(StringBuilder sb, int fieldMask, int field, String name,
+                                    int current, int target) {
+        int bits = (fieldMask >> field) & 0x3;
+        if (bits == 0) {
+            return;
+        }
+        sb.append(",\"").append(name).append("\":{");
+        if ((bits & 0x1) != 0) {
+            sb.append("\"current\":").append(current);
+        }
+        if (bits == 0x3) {
+            sb.append(',');
+        }
+        if ((bits & 0x2) != 0) {
+            sb.append("\"target\":").append(target);
+        }
+        sb.append('}');
+    }
+
+    private static void dropLeadingComma(StringBuilder sb, int start) {
+        if (sb.length() > start && sb.charAt(start) == ',') {
+            sb.deleteCharAt(start);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * 블루투스 수신 바이트를 '\n' 단위 라인으로 자른다.
+ * read 버퍼 안에서 끝나는 라인은 복사 없이 그대로 넘기고,
+ * 다음 read 로 이어지는 꼬리만 내부 버퍼에 모아 둔다.
+ * maxLineLength 보다 긴 라인은 read 경계가 어디에 걸리든 똑같이 버리고 droppedLines 로 센다.
+ */
+public final class LineFramer {
+
+    public interface LineListener {
+        /** buf 는 콜백이 끝나면 재사용되므로 보관하면 안 된다. */
+        void onLine(byte[] buf, int offset, int length);
+    }
+
+    private final byte[] pending;
+    private int pendingLength;
+    private boolean overflowed;
+    private long droppedLines;
+
+    public LineFramer(int maxLineLength) {
+        pending = new byte[maxLineLength];
+    }
+
+    public void feed(byte[] buf, int offset, int length, LineListener listener) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (buf[i] != '\n') {
+                continue;
+            }
+            if (pendingLength == 0 && !overflowed) {
+                if (i - start > pending.length) {
+                    droppedLines++;
+                } else {
+                    listener.onLine(buf, start, i - start);
+                }
+            } else {
+                append(buf, start, i - start);
+                if (!overflowed) {
+                    listener.onLine(pending, 0, pendingLength);
+                }
+                pendingLength = 0;
+                overflowed = false;
+            }
+            start = i + 1;
+        }
+        if (start < end) {
+            append(buf, start, end - start);
+        }
+    }
+
+    public void reset() {
+        pendingLength = 0;
+        overflowed = false;
+    }
+
+    public long getDroppedLines() {
+        return droppedLines;
+    }
+
+    private void append(byte[] buf, int offset, int length) {
+        if (overflowed) {
+            return;
+        }
+        if (pendingLength + length > pending.length) {
+            // 너무 긴 라인은 다음 '\n' 까지 통째로 버린다
+            overflowed = true;
+            pendingLength = 0;
+            droppedLines++;
+            return;
+        }
+        System.arraycopy(buf, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+}
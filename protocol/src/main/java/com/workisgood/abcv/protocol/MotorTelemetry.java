@@ -0,0 +1,34 @@
+package com.workisgood.abcv.protocol;
+
+/** m:left|right:targetThrottle:activeSpeed:pulseCount:pwmOut */
+public final class MotorTelemetry {
+
+    public static final int SIDE_LEFT = 0;
+    public static final int SIDE_RIGHT = 1;
+
+    public int side;
+    public int targetThrottle;
+    public int activeSpeed;
+    public long pulseCount;
+    public int pwmOut;
+
+    public void copyFrom(MotorTelemetry other) {
+        side = other.side;
+        targetThrottle = other.targetThrottle;
+        activeSpeed = other.activeSpeed;
+        pulseCount = other.pulseCount;
+        pwmOut = other.pwmOut;
+    }
+
+    public boolean sameAs(MotorTelemetry other) {
+        return side == other.side
+                && targetThrottle == other.targetThrottle
+                && activeSpeed == other.activeSpeed
+                && pulseCount == other.pulseCount
+                && pwmOut == other.pwmOut;
+    }
+
+    public String sideName() {
+        return side == SIDE_LEFT ? "left" : "right";
+    }
+}
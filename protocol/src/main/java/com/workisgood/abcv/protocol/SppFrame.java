@@ -0,0 +1,176 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * SPP 바이너리 프레임 형식과 인코더. 텍스트 라인(m:/s:/a:) 대신 쓰는 선택 모드다.
+ *
+ * <pre>
+ * 0xA5 | len | type | payload[len] | crc16 (big endian)
+ * </pre>
+ * crc 는 len 부터 payload 끝까지의 CRC-16/CCITT-FALSE(다항식 0x1021, 초기값 0xFFFF)다.
+ * 숫자는 모두 big endian 부호 있는 정수다.
+ * <ul>
+ *   <li>TYPE_MOTOR(1): side u8, targetThrottle i16, activeSpeed i16, pulseCount i32, pwmOut i16</li>
+ *   <li>TYPE_STEERING(2): currentAngle i16, targetAngle i16</li>
+ *   <li>TYPE_ARM(3): bottom, linkOne, linkTwo, grip 순으로 current i16, target i16</li>
+ *   <li>TYPE_HELLO(0x7F): version u8. 앱이 먼저 보내고, 바이너리를 아는 차량은 같은 프레임으로 답한 뒤 텔레메트리를 프레임으로 바꾼다</li>
+ * </ul>
+ * 텍스트 프로토콜은 ASCII 라서 0xA5 가 나오지 않는다. 그래서 한 스트림에서 라인과 프레임을 섞어 읽을 수 있다 (SppFramer).
+ * 텔레메트리 타입 번호는 TelemetryParser.TYPE_* 와 같다.
+ */
+public final class SppFrame {
+
+    public static final int SYNC = 0xA5;
+    public static final int TYPE_MOTOR = TelemetryParser.TYPE_MOTOR;
+    public static final int TYPE_STEERING = TelemetryParser.TYPE_STEERING;
+    public static final int TYPE_ARM = TelemetryParser.TYPE_ARM;
+    public static final int TYPE_HELLO = 0x7F;
+    public static final int VERSION = 1;
+
+    /** sync, len, type */
+    public static final int HEADER_LENGTH = 3;
+    public static final int CRC_LENGTH = 2;
+    public static final int MAX_PAYLOAD = 32;
+    public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + MAX_PAYLOAD + CRC_LENGTH;
+
+    public static final int MOTOR_PAYLOAD = 11;
+    public static final int STEERING_PAYLOAD = 4;
+    public static final int ARM_PAYLOAD = 16;
+    public static final int HELLO_PAYLOAD = 1;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private SppFrame() {
+    }
+
+    public static int crc16(byte[] buf, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ buf[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /** 완성된 프레임 전체(sync 부터 crc 까지)의 타입. 형식이 맞는지는 보지 않는다 */
+    public static int type(byte[] frame, int offset) {
+        return frame[offset + 2] & 0xFF;
+    }
+
+    public static int payloadLength(byte[] frame, int offset) {
+        return frame[offset + 1] & 0xFF;
+    }
+
+    /** buf[offset] 이 sync 로 시작하는지. 녹화처럼 라인과 프레임이 섞인 곳에서 가를 때 쓴다 */
+    public static boolean startsFrame(byte[] buf, int offset, int length) {
+        return length > 0 && (buf[offset] & 0xFF) == SYNC;
+    }
+
+    /** 길이와 crc 까지 맞는 프레임 하나인지 */
+    public static boolean isValid(byte[] frame, int offset, int length) {
+        if (length < HEADER_LENGTH + CRC_LENGTH || (frame[offset] & 0xFF) != SYNC) {
+            return false;
+        }
+        int payload = payloadLength(frame, offset);
+        if (payload > MAX_PAYLOAD || length != HEADER_LENGTH + payload + CRC_LENGTH) {
+            return false;
+        }
+        int crcAt = offset + HEADER_LENGTH + payload;
+        int crc = ((frame[crcAt] & 0xFF) << 8) | (frame[crcAt + 1] & 0xFF);
+        return crc == crc16(frame, offset + 1, HEADER_LENGTH - 1 + payload);
+    }
+
+    /** 검증된 hello 프레임의 버전. hello 가 아니면 -1 */
+    public static int helloVersion(byte[] frame, int offset, int length) {
+        if (length != HEADER_LENGTH + HELLO_PAYLOAD + CRC_LENGTH || type(frame, offset) != TYPE_HELLO) {
+            return -1;
+        }
+        return frame[offset + HEADER_LENGTH] & 0xFF;
+    }
+
+    /** hello 프레임 하나를 새 배열로 만든다. 연결마다 한 번 보낸다 */
+    public static byte[] hello(int version) {
+        byte[] frame = new byte[HEADER_LENGTH + HELLO_PAYLOAD + CRC_LENGTH];
+        int p = begin(frame, 0, TYPE_HELLO, HELLO_PAYLOAD);
+        frame[p] = (byte) version;
+        finish(frame, 0, HELLO_PAYLOAD);
+        return frame;
+    }
+
+    /** out[offset] 부터 모터 프레임을 쓰고 길이를 돌려준다 */
+    public static int writeMotor(byte[] out, int offset, MotorTelemetry motor) {
+        int p = begin(out, offset, TYPE_MOTOR, MOTOR_PAYLOAD);
+        out[p++] = (byte) motor.side;
+        p = putShort(out, p, motor.targetThrottle);
+        p = putShort(out, p, motor.activeSpeed);
+        p = putInt(out, p, motor.pulseCount);
+        putShort(out, p, motor.pwmOut);
+        return finish(out, offset, MOTOR_PAYLOAD);
+    }
+
+    public static int writeSteering(byte[] out, int offset, SteeringTelemetry steering) {
+        int p = begin(out, offset, TYPE_STEERING, STEERING_PAYLOAD);
+        p = putShort(out, p, steering.currentAngle);
+        putShort(out, p, steering.targetAngle);
+        return finish(out, offset, STEERING_PAYLOAD);
+    }
+
+    public static int writeArm(byte[] out, int offset, ArmTelemetry arm) {
+        int p = begin(out, offset, TYPE_ARM, ARM_PAYLOAD);
+        p = putShort(out, p, arm.curBottom);
+        p = putShort(out, p, arm.tgtBottom);
+        p = putShort(out, p, arm.curLinkOne);
+        p = putShort(out, p, arm.tgtLinkOne);
+        p = putShort(out, p, arm.curLinkTwo);
+        p = putShort(out, p, arm.tgtLinkTwo);
+        p = putShort(out, p, arm.curGrip);
+        putShort(out, p, arm.tgtGrip);
+        return finish(out, offset, ARM_PAYLOAD);
+    }
+
+    static int getShort(byte[] buf, int offset) {
+        return (short) (((buf[offset] & 0xFF) << 8) | (buf[offset + 1] & 0xFF));
+    }
+
+    static int getInt(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF) << 24) | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8) | (buf[offset + 3] & 0xFF);
+    }
+
+    private static int begin(byte[] out, int offset, int type, int payloadLength) {
+        out[offset] = (byte) SYNC;
+        out[offset + 1] = (byte) payloadLength;
+        out[offset + 2] = (byte) type;
+        return offset + HEADER_LENGTH;
+    }
+
+    private static int finish(byte[] out, int offset, int payloadLength) {
+        int crcAt = offset + HEADER_LENGTH + payloadLength;
+        int crc = crc16(out, offset + 1, HEADER_LENGTH - 1 + payloadLength);
+        out[crcAt] = (byte) (crc >>> 8);
+        out[crcAt + 1] = (byte) crc;
+        return HEADER_LENGTH + payloadLength + CRC_LENGTH;
+    }
+
+    private static int putShort(byte[] out, int p, int value) {
+        out[p] = (byte) (value >> 8);
+        out[p + 1] = (byte) value;
+        return p + 2;
+    }
+
+    private static int putInt(byte[] out, int p, long value) {
+        out[p] = (byte) (value >> 24);
+        out[p + 1] = (byte) (value >> 16);
+        out[p + 2] = (byte) (value >> 8);
+        out[p + 3] = (byte) value;
+        return p + 4;
+    }
+}
@@ -0,0 +1,119 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * SPP 수신 바이트에서 텍스트 라인과 바이너리 프레임(SppFrame)을 함께 잘라낸다.
+ * sync(0xA5) 밖의 바이트는 LineFramer 로 넘기므로, 바이너리를 모르는 차량이나
+ * 리셋돼서 텍스트로 돌아온 차량도 같은 리더로 읽는다.
+ *
+ * 프레임은 길이와 crc 가 맞을 때만 넘긴다. 길이가 MAX_PAYLOAD 를 넘거나 crc 가 틀리면
+ * 그 프레임의 sync 하나만 버리고 뒤따르던 바이트를 다시 훑어 다음 sync 를 찾는다.
+ * 깨진 프레임이 뒤 프레임을 삼켰어도 그 프레임은 잃지 않는다. 한 스레드에서만 쓴다.
+ */
+public final class SppFramer {
+
+    public interface Listener extends LineFramer.LineListener {
+        /** crc 까지 맞은 프레임 하나(sync 부터 crc 까지). buf 는 콜백이 끝나면 재사용된다. */
+        void onBinaryFrame(byte[] buf, int offset, int length);
+    }
+
+    private final LineFramer lineFramer;
+    private final byte[] frame = new byte[SppFrame.MAX_FRAME_LENGTH];
+    // 모으고 있는 프레임의 길이. 0 이면 프레임 밖이다
+    private int frameLength;
+    private int expectedLength;
+
+    private boolean binaryPeer;
+    private long binaryFrames;
+    private long crcErrors;
+    private long resyncBytes;
+
+    public SppFramer(int maxLineLength) {
+        lineFramer = new LineFramer(maxLineLength);
+    }
+
+    public void feed(byte[] buf, int offset, int length, Listener listener) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (frameLength == 0) {
+                // 프레임 밖: 다음 sync 전까지는 텍스트다
+                int sync = i;
+                while (sync < end && (buf[sync] & 0xFF) != SppFrame.SYNC) {
+                    sync++;
+                }
+                if (sync > i) {
+                    lineFramer.feed(buf, i, sync - i, listener);
+                }
+                if (sync == end) {
+                    return;
+                }
+                frame[0] = buf[sync];
+                frameLength = 1;
+                expectedLength = 0;
+                i = sync + 1;
+                continue;
+            }
+            frame[frameLength++] = buf[i++];
+            if (frameLength == 2) {
+                int payload = frame[1] & 0xFF;
+                if (payload > SppFrame.MAX_PAYLOAD) {
+                    resync(listener);
+                    continue;
+                }
+                expectedLength = SppFrame.HEADER_LENGTH + payload + SppFrame.CRC_LENGTH;
+            }
+            if (frameLength == expectedLength) {
+                if (SppFrame.isValid(frame, 0, frameLength)) {
+                    frameLength = 0;
+                    binaryFrames++;
+                    binaryPeer = true;
+                    listener.onBinaryFrame(frame, 0, expectedLength);
+                } else {
+                    resync(listener);
+                }
+            }
+        }
+    }
+
+    /** 모으던 프레임과 라인 꼬리를 버린다. binaryPeer 는 그대로다 */
+    public void reset() {
+        frameLength = 0;
+        lineFramer.reset();
+    }
+
+    /** 맞는 프레임을 한 번이라도 받았으면 true. 상대가 바이너리 모드로 넘어왔다는 뜻이다 */
+    public boolean isBinaryPeer() {
+        return binaryPeer;
+    }
+
+    public long getBinaryFrames() {
+        return binaryFrames;
+    }
+
+    /** 길이나 crc 가 틀려 버린 프레임 수 */
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    /** 프레임을 찾느라 다시 훑은 바이트 수 */
+    public long getResyncBytes() {
+        return resyncBytes;
+    }
+
+    public long getDroppedLines() {
+        return lineFramer.getDroppedLines();
+    }
+
+    // 깨진 프레임의 sync 만 버리고 나머지는 처음부터 다시 넣는다. 손상 때만 복사한다
+    private void resync(Listener listener) {
+        crcErrors++;
+        int rest = frameLength - 1;
+        resyncBytes += rest;
+        frameLength = 0;
+        if (rest > 0) {
+            byte[] replay = new byte[rest];
+            System.arraycopy(frame, 1, replay, 0, rest);
+            feed(replay, 0, rest, listener);
+        }
+    }
+}
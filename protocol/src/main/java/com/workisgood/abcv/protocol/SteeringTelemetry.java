@@ -0,0 +1,17 @@
+package com.workisgood.abcv.protocol;
+
+/** s:currentAngle:targetAngle */
+public final class SteeringTelemetry {
+
+    public int currentAngle;
+    public int targetAngle;
+
+    public void copyFrom(SteeringTelemetry other) {
+        currentAngle = other.currentAngle;
+        targetAngle = other.targetAngle;
+    }
+
+    public boolean sameAs(SteeringTelemetry other) {
+        return currentAngle == other.currentAngle && targetAngle == other.targetAngle;
+    }
+}
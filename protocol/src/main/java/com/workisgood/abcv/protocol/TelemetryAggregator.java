@@ -0,0 +1,247 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * 텔레메트리를 고정 길이 창(windowMs)마다 필드별 min/max/평균으로 모으고, 모터는 창 동안의
+ * 펄스 증가량으로 바퀴 속도(pulses/s)를 구한다. 값은 미리 잡아 둔 배열에만 쌓이므로 샘플마다 할당이 없다.
+ * 스트림과 필드 번호는 TelemetryDeltaFilter 와 같다.
+ *
+ * 창은 첫 샘플에서 시작하고, windowMs 가 지난 뒤 들어온 첫 샘플에서 닫힌다 (그 샘플은 다음 창에 들어간다).
+ * add 가 true 를 돌려주면 방금 닫힌 창을 appendSummary 로 꺼낸 다음 다시 add 한다. 한 스레드에서만 쓴다.
+ * closeWindow 는 창을 그 시각까지로 줄여 닫는다 (모드를 바꿀 때 반쯤 찬 창을 내보낸다).
+ * reset 으로 버린 열린 창은 droppedWindows 로 센다.
+ * 펄스 누적값이 줄어들면 아두이노가 카운터를 다시 시작한 것으로 보고 0 부터 이어서 잰다 (pulseResets).
+ *
+ * <pre>
+ * {"timestamp":창 끝,"type":"summary","data":{"windowMs":실제 창 길이,
+ *   "motor":{"left":{"samples":n,"targetThrottle":[min,max,mean],"activeSpeed":[…],"pwmOut":[…],
+ *                    "pulseCount":마지막 값,"pulsesPerSec":…},"right":{…}},
+ *   "steering":{"samples":n,"currentAngle":[…],"targetAngle":[…]},
+ *   "arm":{"samples":n,"armBottom":{"current":[…],"target":[…]},"linkOne":…,"linkTwo":…,"gripper":…}}}
+ * </pre>
+ * 창 동안 샘플이 없던 스트림은 빠진다.
+ */
+public final class TelemetryAggregator {
+
+    private static final int STREAM_COUNT = 4;
+    private static final int MAX_FIELDS = 8;
+    private static final String[] ARM_JOINTS = {"armBottom", "linkOne", "linkTwo", "gripper"};
+
+    private final long windowMs;
+
+    private final long[] values = new long[MAX_FIELDS];
+    private final long[][] min = new long[STREAM_COUNT][MAX_FIELDS];
+    private final long[][] max = new long[STREAM_COUNT][MAX_FIELDS];
+    private final long[][] sum = new long[STREAM_COUNT][MAX_FIELDS];
+    private final long[][] last = new long[STREAM_COUNT][MAX_FIELDS];
+    private final int[] samples = new int[STREAM_COUNT];
+    // 모터 펄스: 창 시작 시점의 누적값. 이전 창의 마지막 값, 없으면 창의 첫 샘플
+    private final long[] pulseBase = new long[STREAM_COUNT];
+    private final boolean[] pulseBaseKnown = new boolean[STREAM_COUNT];
+
+    private boolean windowOpen;
+    private long windowStartMs;
+    private long windowEndMs;
+    // 다른 스레드가 지표로 읽는다. 쓰는 건 한 스레드뿐이다
+    private volatile long windows;
+    private volatile long droppedWindows;
+    private volatile long pulseResets;
+
+    public TelemetryAggregator(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * 샘플 하나를 현재 창에 더한다. 창이 끝났으면 더하지 않고 true 를 돌려준다.
+     * 그때는 appendSummary 로 창을 꺼내고 같은 샘플로 다시 부른다.
+     */
+    public boolean add(TelemetryParser parser, int type, long nowMs) {
+        if (windowOpen && nowMs - windowStartMs >= windowMs) {
+            windowEndMs = nowMs;
+            return true;
+        }
+        int stream = TelemetryDeltaFilter.readFields(parser, type, values);
+        if (stream < 0) {
+            return false;
+        }
+        if (!windowOpen) {
+            windowOpen = true;
+            windowStartMs = nowMs;
+        }
+        int fieldCount = TelemetryDeltaFilter.fieldCount(stream);
+        long[] mn = min[stream];
+        long[] mx = max[stream];
+        long[] sm = sum[stream];
+        if (samples[stream] == 0) {
+            for (int i = 0; i < fieldCount; i++) {
+                mn[i] = values[i];
+                mx[i] = values[i];
+                sm[i] = 0;
+            }
+            if (isMotor(stream)) {
+                long pulse = values[TelemetryDeltaFilter.MOTOR_PULSE_COUNT];
+                if (!pulseBaseKnown[stream]) {
+                    pulseBase[stream] = pulse;
+                    pulseBaseKnown[stream] = true;
+                } else if (pulse < pulseBase[stream]) {
+                    // 창 사이에 카운터가 다시 시작했다
+                    pulseBase[stream] = 0;
+                    pulseResets++;
+                }
+            }
+        } else if (isMotor(stream)) {
+            long previous = last[stream][TelemetryDeltaFilter.MOTOR_PULSE_COUNT];
+            if (values[TelemetryDeltaFilter.MOTOR_PULSE_COUNT] < previous) {
+                // 창 안에서 카운터가 다시 시작했다. 그때까지 센 만큼을 기준값에서 빼 두면 마지막 값 - 기준값이 합이 된다
+                pulseBase[stream] -= previous;
+                pulseResets++;
+            }
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            long v = values[i];
+            if (v < mn[i]) {
+                mn[i] = v;
+            }
+            if (v > mx[i]) {
+                mx[i] = v;
+            }
+            sm[i] += v;
+        }
+        System.arraycopy(values, 0, last[stream], 0, fieldCount);
+        samples[stream]++;
+        return false;
+    }
+
+    /** 열린 창과 펄스 기준값을 버린다. 요약 모드를 바꿀 때와 링크가 다시 붙을 때 부른다. */
+    public void reset() {
+        if (windowOpen) {
+            droppedWindows++;
+        }
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            samples[stream] = 0;
+            pulseBaseKnown[stream] = false;
+        }
+        windowOpen = false;
+    }
+
+    /** 열린 창을 nowMs 까지로 닫는다. 이어서 appendSummary 로 꺼낸다. 열린 창이 없으면 false */
+    public boolean closeWindow(long nowMs) {
+        if (!windowOpen) {
+            return false;
+        }
+        // 샘플 하나뿐인 창도 길이 0 으로 나누지 않게 1ms 로 본다
+        windowEndMs = Math.max(nowMs, windowStartMs + 1);
+        return true;
+    }
+
+    public boolean isWindowOpen() {
+        return windowOpen;
+    }
+
+    public long getWindowStartMs() {
+        return windowStartMs;
+    }
+
+    public long getWindows() {
+        return windows;
+    }
+
+    /** 요약으로 내보내지 못하고 reset 으로 버린 창 수 */
+    public long getDroppedWindows() {
+        return droppedWindows;
+    }
+
+    public long getPulseResets() {
+        return pulseResets;
+    }
+
+    public int getSamples(int stream) {
+        return samples[stream];
+    }
+
+    /**
+     * 현재 창을 요약 메시지로 붙이고 다음 창을 비운다. timestampMs 는 메시지에 찍을 시각이다.
+     * 열린 창이 없으면 아무것도 붙이지 않고 false
+     */
+    public boolean appendSummary(StringBuilder sb, long timestampMs) {
+        if (!windowOpen) {
+            return false;
+        }
+        long durationMs = windowEndMs > windowStartMs ? windowEndMs - windowStartMs : windowMs;
+        sb.append("{\"timestamp\":").append(timestampMs)
+                .append(",\"type\":\"summary\",\"data\":{\"windowMs\":").append(durationMs);
+        int left = samples[TelemetryDeltaFilter.STREAM_MOTOR_LEFT];
+        int right = samples[TelemetryDeltaFilter.STREAM_MOTOR_RIGHT];
+        if (left > 0 || right > 0) {
+            sb.append(",\"motor\":{");
+            if (left > 0) {
+                appendMotor(sb, "left", TelemetryDeltaFilter.STREAM_MOTOR_LEFT, durationMs);
+            }
+            if (right > 0) {
+                if (left > 0) {
+                    sb.append(',');
+                }
+                appendMotor(sb, "right", TelemetryDeltaFilter.STREAM_MOTOR_RIGHT, durationMs);
+            }
+            sb.append('}');
+        }
+        int stream = TelemetryDeltaFilter.STREAM_STEERING;
+        if (samples[stream] > 0) {
+            sb.append(",\"steering\":{\"samples\":").append(samples[stream]);
+            appendStat(sb, ",\"currentAngle\":", stream, TelemetryDeltaFilter.STEERING_CURRENT);
+            appendStat(sb, ",\"targetAngle\":", stream, TelemetryDeltaFilter.STEERING_TARGET);
+            sb.append('}');
+        }
+        stream = TelemetryDeltaFilter.STREAM_ARM;
+        if (samples[stream] > 0) {
+            sb.append(",\"arm\":{\"samples\":").append(samples[stream]);
+            for (int joint = 0; joint < ARM_JOINTS.length; joint++) {
+                sb.append(",\"").append(ARM_JOINTS[joint]).append("\":{");
+                appendStat(sb, "\"current\":", stream, joint * 2);
+                appendStat(sb, ",\"target\":", stream, joint * 2 + 1);
+                sb.append('}');
+            }
+            sb.append('}');
+        }
+        sb.append("}}");
+        nextWindow();
+        return true;
+    }
+
+    private void appendMotor(StringBuilder sb, String side, int stream, long durationMs) {
+        long pulses = last[stream][TelemetryDeltaFilter.MOTOR_PULSE_COUNT] - pulseBase[stream];
+        sb.append('"').append(side).append("\":{\"samples\":").append(samples[stream]);
+        appendStat(sb, ",\"targetThrottle\":", stream, TelemetryDeltaFilter.MOTOR_TARGET_THROTTLE);
+        appendStat(sb, ",\"activeSpeed\":", stream, TelemetryDeltaFilter.MOTOR_ACTIVE_SPEED);
+        appendStat(sb, ",\"pwmOut\":", stream, TelemetryDeltaFilter.MOTOR_PWM_OUT);
+        sb.append(",\"pulseCount\":").append(last[stream][TelemetryDeltaFilter.MOTOR_PULSE_COUNT])
+                .append(",\"pulsesPerSec\":").append(round2(pulses * 1000.0 / durationMs))
+                .append('}');
+    }
+
+    private void appendStat(StringBuilder sb, String key, int stream, int field) {
+        sb.append(key).append('[').append(min[stream][field])
+                .append(',').append(max[stream][field])
+                .append(',').append(round2((double) sum[stream][field] / samples[stream]))
+                .append(']');
+    }
+
+    private void nextWindow() {
+        for (int stream = 0; stream < STREAM_COUNT; stream++) {
+            if (isMotor(stream) && samples[stream] > 0) {
+                pulseBase[stream] = last[stream][TelemetryDeltaFilter.MOTOR_PULSE_COUNT];
+            }
+            samples[stream] = 0;
+        }
+        windowOpen = false;
+        windowEndMs = 0;
+        windows++;
+    }
+
+    private static boolean isMotor(int stream) {
+        return stream == TelemetryDeltaFilter.STREAM_MOTOR_LEFT || stream == TelemetryDeltaFilter.STREAM_MOTOR_RIGHT;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
@@ -0,0 +1,213 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * 업링크 직전에 바뀌지 않은 텔레메트리를 걸러 낸다.
+ * 스트림(왼쪽/오른쪽 모터, 조향, 팔)마다 마지막으로 올려 보낸 필드 값을 기억하고,
+ * 그 값과의 차이가 필드별 데드밴드보다 큰 필드만 비트마스크로 돌려준다. 0 이면 보내지 않는다.
+ * 비교 기준은 마지막으로 "보낸" 값이라서 데드밴드 안에서 천천히 움직여도 누적되면 결국 나간다.
+ *
+ * 스트림마다 keyframeIntervalMs 가 지나면, 또는 requestKeyframe 이후 첫 레코드는
+ * 모든 필드를 보내(fullMask) 서버가 상태를 다시 세울 수 있게 한다.
+ * filter 는 한 스레드(리더)에서만 부르고, requestKeyframe / setDeadband 는 아무 스레드에서나 불러도 된다.
+ */
+public final class TelemetryDeltaFilter {
+
+    public static final int STREAM_MOTOR_LEFT = 0;
+    public static final int STREAM_MOTOR_RIGHT = 1;
+    public static final int STREAM_STEERING = 2;
+    public static final int STREAM_ARM = 3;
+    private static final int STREAM_COUNT = 4;
+
+    // 필드 번호 = 마스크 비트 번호. BinaryTelemetryEncoder 의 필드 순서와 같다
+    public static final int MOTOR_TARGET_THROTTLE = 0;
+    public static final int MOTOR_ACTIVE_SPEED = 1;
+    public static final int MOTOR_PULSE_COUNT = 2;
+    public static final int MOTOR_PWM_OUT = 3;
+    public static final int STEERING_CURRENT = 0;
+    public static final int STEERING_TARGET = 1;
+    public static final int ARM_CUR_BOTTOM = 0;
+    public static final int ARM_TGT_BOTTOM = 1;
+    public static final int ARM_CUR_LINK_ONE = 2;
+    public static final int ARM_TGT_LINK_ONE = 3;
+    public static final int ARM_CUR_LINK_TWO = 4;
+    public static final int ARM_TGT_LINK_TWO = 5;
+    public static final int ARM_CUR_GRIP = 6;
+    public static final int ARM_TGT_GRIP = 7;
+
+    private static final int[] FIELD_COUNTS = {4, 4, 2, 8};
+
+    private final long keyframeIntervalMs;
+    private final long[][] sent = new long[STREAM_COUNT][];
+    private final int[][] deadbands = new int[STREAM_COUNT][];
+    private final long[] lastKeyframeMs = new long[STREAM_COUNT];
+    private final boolean[] needKeyframe = new boolean[STREAM_COUNT];
+    private final long[] values = new long[8];
+
+    private volatile boolean keyframeRequested;
+    private volatile long records;
+    private volatile long suppressed;
+    private volatile long deltas;
+    private volatile long keyframes;
+
+    public TelemetryDeltaFilter(long keyframeIntervalMs) {
+        this.keyframeIntervalMs = keyframeIntervalMs;
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            sent[i] = new long[FIELD_COUNTS[i]];
+            deadbands[i] = new int[FIELD_COUNTS[i]];
+            needKeyframe[i] = true;
+        }
+    }
+
+    /** 해당 type 의 모든 필드 비트 */
+    public static int fullMask(int type) {
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                return (1 << FIELD_COUNTS[STREAM_MOTOR_LEFT]) - 1;
+            case TelemetryParser.TYPE_STEERING:
+                return (1 << FIELD_COUNTS[STREAM_STEERING]) - 1;
+            case TelemetryParser.TYPE_ARM:
+                return (1 << FIELD_COUNTS[STREAM_ARM]) - 1;
+            default:
+                return 0;
+        }
+    }
+
+    /** parser 가 방금 채운 레코드의 스트림 번호. 알 수 없는 type 이면 -1 */
+    public static int streamOf(TelemetryParser parser, int type) {
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                return parser.motor.side == MotorTelemetry.SIDE_LEFT ? STREAM_MOTOR_LEFT : STREAM_MOTOR_RIGHT;
+            case TelemetryParser.TYPE_STEERING:
+                return STREAM_STEERING;
+            case TelemetryParser.TYPE_ARM:
+                return STREAM_ARM;
+            default:
+                return -1;
+        }
+    }
+
+    /** 스트림의 필드 개수 */
+    public static int fieldCount(int stream) {
+        return FIELD_COUNTS[stream];
+    }
+
+    /**
+     * parser 가 방금 채운 레코드의 필드를 필드 번호 순서대로 values 에 옮기고 스트림 번호를 돌려준다.
+     * values 는 8 칸 이상이어야 한다. 알 수 없는 type 이면 -1
+     */
+    public static int readFields(TelemetryParser parser, int type, long[] values) {
+        switch (type) {
+            case TelemetryParser.TYPE_MOTOR:
+                MotorTelemetry m = parser.motor;
+                values[MOTOR_TARGET_THROTTLE] = m.targetThrottle;
+                values[MOTOR_ACTIVE_SPEED] = m.activeSpeed;
+                values[MOTOR_PULSE_COUNT] = m.pulseCount;
+                values[MOTOR_PWM_OUT] = m.pwmOut;
+                break;
+            case TelemetryParser.TYPE_STEERING:
+                values[STEERING_CURRENT] = parser.steering.currentAngle;
+                values[STEERING_TARGET] = parser.steering.targetAngle;
+                break;
+            case TelemetryParser.TYPE_ARM:
+                ArmTelemetry a = parser.arm;
+                values[ARM_CUR_BOTTOM] = a.curBottom;
+                values[ARM_TGT_BOTTOM] = a.tgtBottom;
+                values[ARM_CUR_LINK_ONE] = a.curLinkOne;
+                values[ARM_TGT_LINK_ONE] = a.tgtLinkOne;
+                values[ARM_CUR_LINK_TWO] = a.curLinkTwo;
+                values[ARM_TGT_LINK_TWO] = a.tgtLinkTwo;
+                values[ARM_CUR_GRIP] = a.curGrip;
+                values[ARM_TGT_GRIP] = a.tgtGrip;
+                break;
+            default:
+                return -1;
+        }
+        return streamOf(parser, type);
+    }
+
+    /** |새 값 - 마지막으로 보낸 값| 이 band 이하인 변화는 무시한다. 0 이면 모든 변화를 보낸다. */
+    public void setDeadband(int stream, int field, int band) {
+        deadbands[stream][field] = Math.max(0, band);
+    }
+
+    /** 조향과 팔의 각도 필드 전부 */
+    public void setAngleDeadband(int band) {
+        for (int field = 0; field < FIELD_COUNTS[STREAM_STEERING]; field++) {
+            setDeadband(STREAM_STEERING, field, band);
+        }
+        for (int field = 0; field < FIELD_COUNTS[STREAM_ARM]; field++) {
+            setDeadband(STREAM_ARM, field, band);
+        }
+    }
+
+    /** 양쪽 모터의 targetThrottle, activeSpeed, pwmOut */
+    public void setSpeedDeadband(int band) {
+        for (int stream = STREAM_MOTOR_LEFT; stream <= STREAM_MOTOR_RIGHT; stream++) {
+            setDeadband(stream, MOTOR_TARGET_THROTTLE, band);
+            setDeadband(stream, MOTOR_ACTIVE_SPEED, band);
+            setDeadband(stream, MOTOR_PWM_OUT, band);
+        }
+    }
+
+    /** 다음 레코드부터 스트림마다 한 번씩 전체 필드를 보낸다. 재연결, 인코딩 전환 때 부른다. */
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * parser 가 방금 채운 레코드에서 보낼 필드 마스크를 구하고, 그 필드들을 보낸 값으로 기억한다.
+     * 키프레임이면 fullMask(type), 보낼 것이 없으면 0 이다.
+     */
+    public int filter(TelemetryParser parser, int type, long nowMs) {
+        int stream = readFields(parser, type, values);
+        if (stream < 0) {
+            return 0;
+        }
+        int fieldCount = FIELD_COUNTS[stream];
+        records++;
+        if (keyframeRequested) {
+            keyframeRequested = false;
+            for (int i = 0; i < STREAM_COUNT; i++) {
+                needKeyframe[i] = true;
+            }
+        }
+        long[] last = sent[stream];
+        if (needKeyframe[stream] || nowMs - lastKeyframeMs[stream] >= keyframeIntervalMs) {
+            needKeyframe[stream] = false;
+            lastKeyframeMs[stream] = nowMs;
+            System.arraycopy(values, 0, last, 0, fieldCount);
+            keyframes++;
+            return (1 << fieldCount) - 1;
+        }
+        int[] bands = deadbands[stream];
+        int mask = 0;
+        for (int field = 0; field < fieldCount; field++) {
+            if (Math.abs(values[field] - last[field]) > bands[field]) {
+                last[field] = values[field];
+                mask |= 1 << field;
+            }
+        }
+        if (mask == 0) {
+            suppressed++;
+        } else {
+            deltas++;
+        }
+        return mask;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    public long getDeltas() {
+        return deltas;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+}
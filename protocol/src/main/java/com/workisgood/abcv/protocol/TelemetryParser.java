@@ -0,0 +1,242 @@
+package com.workisgood.abcv.protocol;
+
+/**
+ * 아두이노 텔레메트리 라인(m:/s:/a:)이나 바이너리 프레임(SppFrame)을 한 번만 파싱해서 재사용 레코드에 채운다.
+ * 라인마다 객체를 만들지 않으므로 결과 레코드는 다음 parse 호출 전까지만 유효하다.
+ */
+public final class TelemetryParser {
+
+    public static final int TYPE_NONE = 0;
+    public static final int TYPE_MOTOR = 1;
+    public static final int TYPE_STEERING = 2;
+    public static final int TYPE_ARM = 3;
+
+    public final MotorTelemetry motor = new MotorTelemetry();
+    public final SteeringTelemetry steering = new SteeringTelemetry();
+    public final ArmTelemetry arm = new ArmTelemetry();
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private boolean valid;
+    private long rejectedLines;
+
+    /** @return TYPE_* 값. 형식이 맞지 않으면 TYPE_NONE */
+    public int parse(byte[] line, int offset, int length) {
+        int start = offset;
+        int stop = offset + length;
+        while (start < stop && line[start] <= ' ') {
+            start++;
+        }
+        while (stop > start && line[stop - 1] <= ' ') {
+            stop--;
+        }
+        if (stop - start < 2 || line[start + 1] != ':') {
+            if (stop > start) {
+                rejectedLines++;
+            }
+            return TYPE_NONE;
+        }
+        buf = line;
+        pos = start + 2;
+        end = stop;
+        valid = true;
+
+        int type;
+        switch (line[start]) {
+            case 'm':
+                type = parseMotor() ? TYPE_MOTOR : TYPE_NONE;
+                break;
+            case 's':
+                type = parseSteering() ? TYPE_STEERING : TYPE_NONE;
+                break;
+            case 'a':
+                type = parseArm() ? TYPE_ARM : TYPE_NONE;
+                break;
+            default:
+                type = TYPE_NONE;
+                break;
+        }
+        buf = null;
+        if (type == TYPE_NONE) {
+            rejectedLines++;
+        }
+        return type;
+    }
+
+    /**
+     * SppFramer 가 검증한 바이너리 프레임(sync 부터 crc 까지)을 같은 레코드에 채운다. crc 는 다시 보지 않는다.
+     *
+     * @return TYPE_* 값. 텔레메트리 프레임이 아니거나 payload 길이가 맞지 않으면 TYPE_NONE
+     */
+    public int parseFrame(byte[] frame, int offset, int length) {
+        if (length < SppFrame.HEADER_LENGTH + SppFrame.CRC_LENGTH
+                || length != SppFrame.HEADER_LENGTH + SppFrame.payloadLength(frame, offset) + SppFrame.CRC_LENGTH) {
+            rejectedLines++;
+            return TYPE_NONE;
+        }
+        int payload = SppFrame.payloadLength(frame, offset);
+        int p = offset + SppFrame.HEADER_LENGTH;
+        switch (SppFrame.type(frame, offset)) {
+            case SppFrame.TYPE_MOTOR:
+                if (payload != SppFrame.MOTOR_PAYLOAD || frame[p] > MotorTelemetry.SIDE_RIGHT || frame[p] < 0) {
+                    break;
+                }
+                motor.side = frame[p];
+                motor.targetThrottle = SppFrame.getShort(frame, p + 1);
+                motor.activeSpeed = SppFrame.getShort(frame, p + 3);
+                motor.pulseCount = SppFrame.getInt(frame, p + 5);
+                motor.pwmOut = SppFrame.getShort(frame, p + 9);
+                return TYPE_MOTOR;
+            case SppFrame.TYPE_STEERING:
+                if (payload != SppFrame.STEERING_PAYLOAD) {
+                    break;
+                }
+                steering.currentAngle = SppFrame.getShort(frame, p);
+                steering.targetAngle = SppFrame.getShort(frame, p + 2);
+                return TYPE_STEERING;
+            case SppFrame.TYPE_ARM:
+                if (payload != SppFrame.ARM_PAYLOAD) {
+                    break;
+                }
+                arm.curBottom = SppFrame.getShort(frame, p);
+                arm.tgtBottom = SppFrame.getShort(frame, p + 2);
+                arm.curLinkOne = SppFrame.getShort(frame, p + 4);
+                arm.tgtLinkOne = SppFrame.getShort(frame, p + 6);
+                arm.curLinkTwo = SppFrame.getShort(frame, p + 8);
+                arm.tgtLinkTwo = SppFrame.getShort(frame, p + 10);
+                arm.curGrip = SppFrame.getShort(frame, p + 12);
+                arm.tgtGrip = SppFrame.getShort(frame, p + 14);
+                return TYPE_ARM;
+            default:
+                break;
+        }
+        rejectedLines++;
+        return TYPE_NONE;
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    private boolean parseMotor() {
+        // m:left|right:targetThrottle:activeSpeed:pulseCount:pwmOut
+        int side = nextSide();
+        int targetThrottle = (int) nextLong();
+        int activeSpeed = (int) nextLong();
+        long pulseCount = nextLong();
+        int pwmOut = (int) nextLong();
+        if (!valid) {
+            return false;
+        }
+        motor.side = side;
+        motor.targetThrottle = targetThrottle;
+        motor.activeSpeed = activeSpeed;
+        motor.pulseCount = pulseCount;
+        motor.pwmOut = pwmOut;
+        return true;
+    }
+
+    private boolean parseSteering() {
+        // s:currentAngle:targetAngle
+        int current = (int) nextLong();
+        int target = (int) nextLong();
+        if (!valid) {
+            return false;
+        }
+        steering.currentAngle = current;
+        steering.targetAngle = target;
+        return true;
+    }
+
+    private boolean parseArm() {
+        // a:curBottom:tgtBottom:curL1:tgtL1:curL2:tgtL2:curGrip:tgtGrip
+        int curBottom = (int) nextLong();
+        int tgtBottom = (int) nextLong();
+        int curLinkOne = (int) nextLong();
+        int tgtLinkOne = (int) nextLong();
+        int curLinkTwo = (int) nextLong();
+        int tgtLinkTwo = (int) nextLong();
+        int curGrip = (int) nextLong();
+        int tgtGrip = (int) nextLong();
+        if (!valid) {
+            return false;
+        }
+        arm.curBottom = curBottom;
+        arm.tgtBottom = tgtBottom;
+        arm.curLinkOne = curLinkOne;
+        arm.tgtLinkOne = tgtLinkOne;
+        arm.curLinkTwo = curLinkTwo;
+        arm.tgtLinkTwo = tgtLinkTwo;
+        arm.curGrip = curGrip;
+        arm.tgtGrip = tgtGrip;
+        return true;
+    }
+
+    private int nextSide() {
+        int fieldEnd = fieldEnd();
+        int side;
+        if (matchesIgnoreCase(pos, fieldEnd, "left")) {
+            side = MotorTelemetry.SIDE_LEFT;
+        } else if (matchesIgnoreCase(pos, fieldEnd, "right")) {
+            side = MotorTelemetry.SIDE_RIGHT;
+        } else {
+            valid = false;
+            side = MotorTelemetry.SIDE_RIGHT;
+        }
+        pos = fieldEnd + 1;
+        return side;
+    }
+
+    private long nextLong() {
+        if (!valid || pos > end) {
+            valid = false;
+            return 0;
+        }
+        int fieldEnd = fieldEnd();
+        int i = pos;
+        while (i < fieldEnd && buf[i] == ' ') {
+            i++;
+        }
+        boolean negative = false;
+        if (i < fieldEnd && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < fieldEnd && buf[i] >= '0' && buf[i] <= '9') {
+            value = value * 10 + (buf[i] - '0');
+            i++;
+        }
+        boolean hasDigits = i > digitsStart;
+        while (i < fieldEnd && buf[i] == ' ') {
+            i++;
+        }
+        if (!hasDigits || i != fieldEnd) {
+            valid = false;
+        }
+        pos = fieldEnd + 1;
+        return negative ? -value : value;
+    }
+
+    private int fieldEnd() {
+        int i = pos;
+        while (i < end && buf[i] != ':') {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean matchesIgnoreCase(int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if ((buf[from + i] | 0x20) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,179 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BinaryTelemetryEncoderTest {
+
+    private int pos;
+
+    private long readUnsigned(byte[] buf) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private long readSigned(byte[] buf) {
+        long raw = readUnsigned(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    @Test
+    public void encodesHeaderAndDeltaTimestamps() {
+        BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder(16);
+        MotorTelemetry motor = new MotorTelemetry();
+        motor.side = MotorTelemetry.SIDE_RIGHT;
+        motor.targetThrottle = -100;
+        motor.activeSpeed = 64;
+        motor.pulseCount = 1_000_000L;
+        motor.pwmOut = 255;
+        SteeringTelemetry steering = new SteeringTelemetry();
+        steering.currentAngle = 90;
+        steering.targetAngle = 85;
+
+        long base = 1_700_000_000_000L;
+        encoder.writeMotor(motor, base);
+        encoder.writeSteering(steering, base + 25);
+        assertEquals(2, encoder.count());
+
+        byte[] buf = encoder.buffer();
+        pos = 0;
+        assertEquals(BinaryTelemetryEncoder.FRAME_MAGIC, buf[pos++]);
+        assertEquals(base, readUnsigned(buf));
+        assertEquals(BinaryTelemetryEncoder.TAG_MOTOR_RIGHT, buf[pos++]);
+        assertEquals(0, readSigned(buf));
+        assertEquals(-100, readSigned(buf));
+        assertEquals(64, readSigned(buf));
+        assertEquals(1_000_000L, readSigned(buf));
+        assertEquals(255, readSigned(buf));
+        assertEquals(BinaryTelemetryEncoder.TAG_STEERING, buf[pos++]);
+        assertEquals(25, readSigned(buf));
+        assertEquals(90, readSigned(buf));
+        assertEquals(85, readSigned(buf));
+        assertEquals(encoder.size(), pos);
+    }
+
+    @Test
+    public void armRecordIsFarSmallerThanJson() {
+        BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder(16);
+        ArmTelemetry arm = new ArmTelemetry();
+        arm.curBottom = 90;
+        arm.tgtBottom = 90;
+        arm.curLinkOne = 45;
+        arm.tgtLinkOne = 50;
+        arm.curLinkTwo = 120;
+        arm.tgtLinkTwo = 120;
+        arm.curGrip = 10;
+        arm.tgtGrip = 30;
+        encoder.writeArm(arm, 1_700_000_000_000L);
+        int first = encoder.size();
+        encoder.writeArm(arm, 1_700_000_000_020L);
+        int record = encoder.size() - first;
+        assertTrue("arm record was " + record + " bytes", record <= 16);
+
+        encoder.reset();
+        assertTrue(encoder.isEmpty());
+        assertEquals(0, encoder.size());
+    }
+
+    @Test
+    public void deltaRecordCarriesMaskAndChangedFieldsOnly() {
+        BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder(16);
+        MotorTelemetry motor = new MotorTelemetry();
+        motor.side = MotorTelemetry.SIDE_LEFT;
+        motor.targetThrottle = 30;
+        motor.activeSpeed = 20;
+        motor.pulseCount = 5000;
+        motor.pwmOut = 120;
+        int mask = (1 << TelemetryDeltaFilter.MOTOR_ACTIVE_SPEED)
+                | (1 << TelemetryDeltaFilter.MOTOR_PULSE_COUNT);
+
+        encoder.writeMotor(motor, mask, 100L);
+
+        byte[] buf = encoder.buffer();
+        pos = 0;
+        assertEquals(BinaryTelemetryEncoder.FRAME_MAGIC, buf[pos++]);
+        assertEquals(100L, readUnsigned(buf));
+        assertEquals(BinaryTelemetryEncoder.TAG_MOTOR_LEFT | BinaryTelemetryEncoder.TAG_DELTA, buf[pos++]);
+        assertEquals(0, readSigned(buf));
+        assertEquals(mask, readUnsigned(buf));
+        assertEquals(20, readSigned(buf));
+        assertEquals(5000, readSigned(buf));
+        assertEquals(encoder.size(), pos);
+    }
+
+    @Test
+    public void fullMaskWritesPlainRecord() {
+        BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder(16);
+        SteeringTelemetry steering = new SteeringTelemetry();
+        steering.currentAngle = 90;
+        steering.targetAngle = 85;
+
+        encoder.writeSteering(steering, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_STEERING), 0L);
+
+        byte[] buf = encoder.buffer();
+        pos = 0;
+        assertEquals(BinaryTelemetryEncoder.FRAME_MAGIC, buf[pos++]);
+        readUnsigned(buf);
+        assertEquals(BinaryTelemetryEncoder.TAG_STEERING, buf[pos++]);
+        assertEquals(0, readSigned(buf));
+        assertEquals(90, readSigned(buf));
+        assertEquals(85, readSigned(buf));
+        assertEquals(encoder.size(), pos);
+    }
+
+    @Test
+    public void deviceRecordPrecedesRecordsOfEachVehicle() {
+        BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder(16);
+        SteeringTelemetry steering = new SteeringTelemetry();
+        // 필드가 1바이트 varint 가 되게 작은 값을 쓴다
+        steering.currentAngle = 10;
+        steering.targetAngle = 10;
+        String first = "AA";
+        String second = "BB";
+
+        encoder.setDevice(first);
+        encoder.writeSteering(steering, 100L);
+        encoder.writeSteering(steering, 110L);
+        encoder.setDevice(second);
+        encoder.writeSteering(steering, 120L);
+        assertEquals(3, encoder.count());
+
+        byte[] buf = encoder.buffer();
+        pos = 0;
+        assertEquals(BinaryTelemetryEncoder.FRAME_MAGIC, buf[pos++]);
+        assertEquals(100L, readUnsigned(buf));
+        assertEquals(BinaryTelemetryEncoder.TAG_DEVICE, buf[pos++]);
+        assertEquals(2, readUnsigned(buf));
+        assertEquals('A', buf[pos++]);
+        assertEquals('A', buf[pos++]);
+        assertEquals(BinaryTelemetryEncoder.TAG_STEERING, buf[pos++]);
+        pos += 3;
+        // 같은 차량이면 device 레코드가 다시 들어가지 않는다
+        assertEquals(BinaryTelemetryEncoder.TAG_STEERING, buf[pos++]);
+        pos += 3;
+        assertEquals(BinaryTelemetryEncoder.TAG_DEVICE, buf[pos++]);
+        assertEquals(2, readUnsigned(buf));
+        assertEquals('B', buf[pos++]);
+        assertEquals('B', buf[pos++]);
+        assertEquals(BinaryTelemetryEncoder.TAG_STEERING, buf[pos++]);
+        assertEquals(10, readSigned(buf));
+        pos += 2;
+        assertEquals(encoder.size(), pos);
+
+        // 새 프레임은 다시 device 레코드부터
+        encoder.reset();
+        encoder.writeSteering(steering, 200L);
+        pos = 1;
+        readUnsigned(buf);
+        assertEquals(BinaryTelemetryEncoder.TAG_DEVICE, buf[pos]);
+    }
+}
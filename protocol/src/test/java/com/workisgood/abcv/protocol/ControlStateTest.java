@@ -0,0 +1,31 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ControlStateTest {
+
+    @Test
+    public void tracksPressAndReleaseChanges() {
+        ControlState state = new ControlState();
+        assertTrue(state.press(ControlState.DRIVE_FORWARD));
+        assertFalse(state.press(ControlState.DRIVE_FORWARD));
+        assertTrue(state.press(ControlState.ARM_UP));
+        assertEquals(ControlState.DRIVE_FORWARD | ControlState.ARM_UP, state.mask());
+
+        assertTrue(state.release(ControlState.DRIVE_FORWARD));
+        assertFalse(state.release(ControlState.DRIVE_FORWARD));
+        assertEquals(ControlState.ARM_UP, state.mask());
+    }
+
+    @Test
+    public void encodesMaskAsHexFrame() {
+        int mask = ControlState.DRIVE_FORWARD | ControlState.LINK2_UP | ControlState.GRIP_RELEASE;
+        byte[] frame = ControlState.encodeFrame(mask);
+        assertEquals("c:2401\n", new String(frame, StandardCharsets.US_ASCII));
+        assertEquals("c:0000\n", new String(ControlState.encodeFrame(0), StandardCharsets.US_ASCII));
+    }
+}
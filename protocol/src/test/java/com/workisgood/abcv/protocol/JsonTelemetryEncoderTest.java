@@ -0,0 +1,127 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonTelemetryEncoderTest {
+
+    private static int parse(TelemetryParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void encodesMotorFrame() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "m:right:-40:12:123456:200");
+        StringBuilder sb = new StringBuilder();
+
+        assertTrue(JsonTelemetryEncoder.append(sb, parser, type, 1000L));
+        assertEquals("{\"timestamp\":1000,\"type\":\"motor\",\"data\":{\"side\":\"right\""
+                + ",\"targetThrottle\":-40,\"activeSpeed\":12,\"pulseCount\":123456,\"pwmOut\":200}}",
+                sb.toString());
+    }
+
+    @Test
+    public void encodesSteeringFrame() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "s:90:85");
+        StringBuilder sb = new StringBuilder();
+
+        assertTrue(JsonTelemetryEncoder.append(sb, parser, type, 7L));
+        assertEquals("{\"timestamp\":7,\"type\":\"steering\",\"data\":{\"currentAngle\":90,\"targetAngle\":85}}",
+                sb.toString());
+    }
+
+    @Test
+    public void encodesArmFrame() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "a:1:2:3:4:5:6:7:8");
+        StringBuilder sb = new StringBuilder();
+
+        assertTrue(JsonTelemetryEncoder.append(sb, parser, type, 0L));
+        assertEquals("{\"timestamp\":0,\"type\":\"arm\",\"data\":{"
+                + "\"armBottom\":{\"current\":1,\"target\":2}"
+                + ",\"linkOne\":{\"current\":3,\"target\":4}"
+                + ",\"linkTwo\":{\"current\":5,\"target\":6}"
+                + ",\"gripper\":{\"current\":7,\"target\":8}}}",
+                sb.toString());
+    }
+
+    @Test
+    public void appendsWithoutClearingAndIgnoresUnknownType() {
+        TelemetryParser parser = new TelemetryParser();
+        parse(parser, "s:1:2");
+        StringBuilder sb = new StringBuilder("[");
+
+        JsonTelemetryEncoder.append(sb, parser, TelemetryParser.TYPE_STEERING, 5L);
+        assertFalse(JsonTelemetryEncoder.append(sb, parser, TelemetryParser.TYPE_NONE, 5L));
+        assertTrue(sb.toString().startsWith("[{\"timestamp\":5,"));
+        assertTrue(sb.toString().endsWith("}}"));
+    }
+
+    @Test
+    public void deltaCarriesOnlyChangedFields() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "m:left:10:5:900:80");
+        StringBuilder sb = new StringBuilder();
+
+        JsonTelemetryEncoder.append(sb, parser, type,
+                1 << TelemetryDeltaFilter.MOTOR_PULSE_COUNT, 3L);
+        assertEquals("{\"timestamp\":3,\"type\":\"motor\",\"delta\":true"
+                + ",\"data\":{\"side\":\"left\",\"pulseCount\":900}}", sb.toString());
+
+        sb.setLength(0);
+        type = parse(parser, "s:91:85");
+        JsonTelemetryEncoder.append(sb, parser, type, 1 << TelemetryDeltaFilter.STEERING_TARGET, 4L);
+        assertEquals("{\"timestamp\":4,\"type\":\"steering\",\"delta\":true"
+                + ",\"data\":{\"targetAngle\":85}}", sb.toString());
+    }
+
+    @Test
+    public void armDeltaGroupsFieldsByJoint() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "a:1:2:3:4:5:6:7:8");
+        StringBuilder sb = new StringBuilder();
+        int mask = (1 << TelemetryDeltaFilter.ARM_TGT_LINK_ONE)
+                | (1 << TelemetryDeltaFilter.ARM_CUR_GRIP) | (1 << TelemetryDeltaFilter.ARM_TGT_GRIP);
+
+        JsonTelemetryEncoder.append(sb, parser, type, mask, 0L);
+        assertEquals("{\"timestamp\":0,\"type\":\"arm\",\"delta\":true,\"data\":{"
+                + "\"linkOne\":{\"target\":4}"
+                + ",\"gripper\":{\"current\":7,\"target\":8}}}",
+                sb.toString());
+    }
+
+    @Test
+    public void fullMaskEncodesKeyframeInOriginalFormat() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "s:90:85");
+        StringBuilder full = new StringBuilder();
+        StringBuilder keyframe = new StringBuilder();
+
+        JsonTelemetryEncoder.append(full, parser, type, 7L);
+        JsonTelemetryEncoder.append(keyframe, parser, type, TelemetryDeltaFilter.fullMask(type), 7L);
+        assertEquals(full.toString(), keyframe.toString());
+    }
+
+    @Test
+    public void tagDevicePutsDeviceFirst() {
+        TelemetryParser parser = new TelemetryParser();
+        int type = parse(parser, "s:90:85");
+        StringBuilder sb = new StringBuilder("[");
+        JsonTelemetryEncoder.append(sb, parser, type, 7L);
+        JsonTelemetryEncoder.tagDevice(sb, 1, "00:11:22:33:44:55");
+        assertEquals("[{\"device\":\"00:11:22:33:44:55\",\"timestamp\":7,\"type\":\"steering\""
+                + ",\"data\":{\"currentAngle\":90,\"targetAngle\":85}}", sb.toString());
+
+        StringBuilder untagged = new StringBuilder();
+        JsonTelemetryEncoder.append(untagged, parser, type, 7L);
+        String before = untagged.toString();
+        JsonTelemetryEncoder.tagDevice(untagged, 0, null);
+        assertEquals(before, untagged.toString());
+    }
+}
@@ -0,0 +1,69 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LineFramerTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineFramer.LineListener collector = (buf, offset, length) ->
+            lines.add(new String(buf, offset, length, StandardCharsets.US_ASCII));
+
+    private void feed(LineFramer framer, String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.US_ASCII);
+        framer.feed(bytes, 0, bytes.length, collector);
+    }
+
+    @Test
+    public void splitsLinesInsideOneRead() {
+        LineFramer framer = new LineFramer(64);
+        feed(framer, "s:1:2\na:1:2:3:4:5:6:7:8\n");
+        assertEquals(2, lines.size());
+        assertEquals("s:1:2", lines.get(0));
+        assertEquals("a:1:2:3:4:5:6:7:8", lines.get(1));
+    }
+
+    @Test
+    public void joinsLineSplitAcrossReads() {
+        LineFramer framer = new LineFramer(64);
+        feed(framer, "m:le");
+        feed(framer, "ft:10:20");
+        assertTrue(lines.isEmpty());
+        feed(framer, ":30:40\ns:");
+        assertEquals(1, lines.size());
+        assertEquals("m:left:10:20:30:40", lines.get(0));
+        feed(framer, "5:6\n");
+        assertEquals("s:5:6", lines.get(1));
+    }
+
+    @Test
+    public void dropsOverlongLineAndRecovers() {
+        LineFramer framer = new LineFramer(8);
+        feed(framer, "0123456789");
+        feed(framer, "abc\ns:1:2\n");
+        assertEquals(1, lines.size());
+        assertEquals("s:1:2", lines.get(0));
+        assertEquals(1, framer.getDroppedLines());
+    }
+
+    @Test
+    public void dropsOverlongLineInsideOneRead() {
+        LineFramer framer = new LineFramer(8);
+        // 한 read 안에서 끝나도 나뉘어 들어올 때와 같이 버린다. 딱 8바이트는 받는다
+        feed(framer, "0123456789\ns:1:2\n01234567\n");
+        assertEquals(2, lines.size());
+        assertEquals("s:1:2", lines.get(0));
+        assertEquals("01234567", lines.get(1));
+        assertEquals(1, framer.getDroppedLines());
+
+        feed(framer, "01234");
+        feed(framer, "5678\n");
+        assertEquals(2, lines.size());
+        assertEquals(2, framer.getDroppedLines());
+    }
+}
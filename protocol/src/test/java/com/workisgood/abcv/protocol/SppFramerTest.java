@@ -0,0 +1,138 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SppFramerTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final List<byte[]> frames = new ArrayList<>();
+    private final SppFramer.Listener collector = new SppFramer.Listener() {
+        @Override
+        public void onLine(byte[] buf, int offset, int length) {
+            lines.add(new String(buf, offset, length, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void onBinaryFrame(byte[] buf, int offset, int length) {
+            frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+        }
+    };
+
+    private static byte[] steering(int current, int target) {
+        SteeringTelemetry steering = new SteeringTelemetry();
+        steering.currentAngle = current;
+        steering.targetAngle = target;
+        byte[] frame = new byte[SppFrame.MAX_FRAME_LENGTH];
+        return Arrays.copyOf(frame, SppFrame.writeSteering(frame, 0, steering));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void helloMatchesKnownBytes() {
+        byte[] hello = SppFrame.hello(SppFrame.VERSION);
+        assertArrayEquals(new byte[]{(byte) 0xA5, 0x01, 0x7F, 0x01, (byte) 0xF3, (byte) 0xEA}, hello);
+        assertTrue(SppFrame.isValid(hello, 0, hello.length));
+        assertEquals(SppFrame.VERSION, SppFrame.helloVersion(hello, 0, hello.length));
+    }
+
+    @Test
+    public void separatesLinesAndFramesInOneStream() {
+        SppFramer framer = new SppFramer(64);
+        byte[] stream = concat(ascii("s:1:2\n"), SppFrame.hello(1), steering(90, 95), ascii("a:1:2:3:4:5:6:7:8\n"));
+        framer.feed(stream, 0, stream.length, collector);
+
+        assertEquals(Arrays.asList("s:1:2", "a:1:2:3:4:5:6:7:8"), lines);
+        assertEquals(2, frames.size());
+        assertEquals(SppFrame.TYPE_HELLO, SppFrame.type(frames.get(0), 0));
+        assertArrayEquals(steering(90, 95), frames.get(1));
+        assertTrue(framer.isBinaryPeer());
+        assertEquals(2, framer.getBinaryFrames());
+    }
+
+    @Test
+    public void joinsFrameSplitAcrossReads() {
+        SppFramer framer = new SppFramer(64);
+        byte[] stream = concat(steering(1, 2), steering(3, 4));
+        // 한 바이트씩 넣어도 같은 프레임이 나온다
+        for (int i = 0; i < stream.length; i++) {
+            framer.feed(stream, i, 1, collector);
+        }
+        assertEquals(2, frames.size());
+        assertArrayEquals(steering(3, 4), frames.get(1));
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void corruptFrameDoesNotSwallowFollowingFrames() {
+        SppFramer framer = new SppFramer(64);
+        byte[] broken = steering(10, 20);
+        // 길이를 부풀려서 뒤 프레임들까지 삼키게 만든다
+        broken[1] = (byte) SppFrame.MAX_PAYLOAD;
+        byte[] stream = concat(broken, steering(1, 1), steering(2, 2), steering(3, 3), steering(4, 4), steering(5, 5));
+        framer.feed(stream, 0, stream.length, collector);
+
+        assertTrue(framer.getCrcErrors() >= 1);
+        assertTrue(framer.getResyncBytes() > 0);
+        assertEquals(5, frames.size());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(steering(i + 1, i + 1), frames.get(i));
+        }
+    }
+
+    @Test
+    public void badCrcIsDropped() {
+        SppFramer framer = new SppFramer(64);
+        byte[] broken = steering(10, 20);
+        broken[broken.length - 1] ^= 0x01;
+        byte[] stream = concat(broken, steering(30, 40));
+        framer.feed(stream, 0, stream.length, collector);
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(steering(30, 40), frames.get(0));
+        assertEquals(1, framer.getCrcErrors());
+    }
+
+    @Test
+    public void oversizeLengthResyncsImmediately() {
+        SppFramer framer = new SppFramer(64);
+        byte[] stream = concat(new byte[]{(byte) 0xA5, (byte) 0xFF}, ascii("s:1:2\n"));
+        framer.feed(stream, 0, stream.length, collector);
+
+        assertEquals(1, framer.getCrcErrors());
+        assertTrue(frames.isEmpty());
+        // 버린 길이 바이트는 텍스트 쪽으로 넘어가 그 줄만 망가진다
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("s:1:2"));
+        assertFalse(framer.isBinaryPeer());
+    }
+
+    @Test
+    public void textOnlyPeerStaysText() {
+        SppFramer framer = new SppFramer(64);
+        byte[] stream = ascii("m:LEFT:1:2:3:4\ns:1:2\n");
+        framer.feed(stream, 0, stream.length, collector);
+
+        assertEquals(2, lines.size());
+        assertFalse(framer.isBinaryPeer());
+        assertEquals(0, framer.getCrcErrors());
+    }
+}
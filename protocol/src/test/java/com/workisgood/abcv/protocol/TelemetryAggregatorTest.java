@@ -0,0 +1,150 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TelemetryAggregatorTest {
+
+    private final TelemetryParser parser = new TelemetryParser();
+    private final TelemetryAggregator aggregator = new TelemetryAggregator(1000);
+
+    private boolean add(String line, long nowMs) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        int type = parser.parse(bytes, 0, bytes.length);
+        return aggregator.add(parser, type, nowMs);
+    }
+
+    private String summary(long ts) {
+        StringBuilder sb = new StringBuilder();
+        assertTrue(aggregator.appendSummary(sb, ts));
+        return sb.toString();
+    }
+
+    @Test
+    public void steeringMinMaxMean() {
+        assertFalse(add("s:90:90", 0));
+        assertFalse(add("s:95:90", 300));
+        assertFalse(add("s:85:91", 600));
+        assertEquals(3, aggregator.getSamples(TelemetryDeltaFilter.STREAM_STEERING));
+
+        assertTrue(add("s:80:80", 1000));
+        assertEquals("{\"timestamp\":5000,\"type\":\"summary\",\"data\":{\"windowMs\":1000"
+                        + ",\"steering\":{\"samples\":3,\"currentAngle\":[85,95,90.0],\"targetAngle\":[90,91,90.33]}}}",
+                summary(5000));
+        assertEquals(1, aggregator.getWindows());
+        assertFalse(aggregator.isWindowOpen());
+    }
+
+    @Test
+    public void closingSampleStartsNextWindow() {
+        add("s:90:90", 0);
+        assertTrue(add("s:80:80", 1200));
+        // add 가 true 면 아직 더해지지 않았다
+        assertEquals(1, aggregator.getSamples(TelemetryDeltaFilter.STREAM_STEERING));
+        assertTrue(summary(0).contains("\"windowMs\":1200"));
+
+        assertFalse(add("s:80:80", 1200));
+        assertEquals(1200, aggregator.getWindowStartMs());
+        assertTrue(add("s:80:80", 2200));
+        assertTrue(summary(0).contains("\"currentAngle\":[80,80,80.0]"));
+    }
+
+    @Test
+    public void pulsesPerSecondCarriesAcrossWindows() {
+        add("m:left:10:12:100:80", 0);
+        add("m:left:20:18:150:90", 500);
+        assertTrue(add("m:left:20:18:300:90", 1000));
+        // 첫 창은 첫 샘플 100 부터 잰다
+        assertTrue(summary(0).contains("\"left\":{\"samples\":2,\"targetThrottle\":[10,20,15.0]"
+                + ",\"activeSpeed\":[12,18,15.0],\"pwmOut\":[80,90,85.0],\"pulseCount\":150,\"pulsesPerSec\":50.0}"));
+
+        add("m:left:20:18:300:90", 1000);
+        add("m:left:20:18:400:90", 1500);
+        assertTrue(add("m:left:20:18:400:90", 2000));
+        // 다음 창은 이전 창의 마지막 값 150 부터 잰다
+        assertTrue(summary(0).contains("\"pulseCount\":400,\"pulsesPerSec\":250.0}"));
+    }
+
+    @Test
+    public void missingStreamsAreOmitted() {
+        add("m:right:0:0:0:0", 0);
+        add("a:90:90:45:45:120:120:10:10", 100);
+        add("a:92:90:45:45:120:120:10:20", 200);
+        assertTrue(add("a:90:90:45:45:120:120:10:10", 1000));
+        String json = summary(0);
+
+        assertTrue(json.contains("\"motor\":{\"right\":{"));
+        assertFalse(json.contains("\"left\""));
+        assertFalse(json.contains("\"steering\""));
+        assertTrue(json.contains("\"arm\":{\"samples\":2,\"armBottom\":{\"current\":[90,92,91.0],\"target\":[90,90,90.0]}"));
+        assertTrue(json.contains("\"gripper\":{\"current\":[10,10,10.0],\"target\":[10,20,15.0]}"));
+    }
+
+    @Test
+    public void resetDropsOpenWindowAndPulseBase() {
+        add("m:left:0:0:100:0", 0);
+        aggregator.reset();
+        assertFalse(aggregator.isWindowOpen());
+        assertFalse(aggregator.appendSummary(new StringBuilder(), 0));
+
+        add("m:left:0:0:500:0", 5000);
+        add("m:left:0:0:600:0", 5500);
+        assertTrue(add("m:left:0:0:600:0", 6000));
+        assertTrue(summary(0).contains("\"pulsesPerSec\":100.0"));
+    }
+
+    @Test
+    public void resetCountsDroppedWindow() {
+        aggregator.reset();
+        assertEquals(0, aggregator.getDroppedWindows());
+        add("s:90:90", 0);
+        aggregator.reset();
+        assertEquals(1, aggregator.getDroppedWindows());
+    }
+
+    @Test
+    public void closeWindowFlushesPartialWindow() {
+        assertFalse(aggregator.closeWindow(0));
+        add("m:left:0:0:100:0", 0);
+        add("m:left:0:0:150:0", 250);
+        assertTrue(aggregator.closeWindow(250));
+        String json = summary(0);
+        assertTrue(json.contains("\"windowMs\":250"));
+        assertTrue(json.contains("\"pulsesPerSec\":200.0"));
+        assertFalse(aggregator.isWindowOpen());
+    }
+
+    @Test
+    public void counterResetBetweenWindowsCountsFromZero() {
+        add("m:left:0:0:5000:0", 0);
+        assertTrue(add("m:left:0:0:5000:0", 1000));
+        summary(0);
+
+        // 아두이노가 리셋돼서 카운터가 0 부터 다시 센다
+        add("m:left:0:0:20:0", 1000);
+        add("m:left:0:0:80:0", 1500);
+        assertTrue(add("m:left:0:0:80:0", 2000));
+        assertTrue(summary(0).contains("\"pulseCount\":80,\"pulsesPerSec\":80.0}"));
+        assertEquals(1, aggregator.getPulseResets());
+    }
+
+    @Test
+    public void counterResetWithinWindowKeepsEarlierPulses() {
+        add("m:left:0:0:100:0", 0);
+        add("m:left:0:0:400:0", 300);
+        add("m:left:0:0:50:0", 600);
+        assertTrue(add("m:left:0:0:50:0", 1000));
+        // 100 → 400 에서 300, 0 → 50 에서 50
+        assertTrue(summary(0).contains("\"pulseCount\":50,\"pulsesPerSec\":350.0}"));
+        assertEquals(1, aggregator.getPulseResets());
+    }
+
+    @Test
+    public void unparsedLinesAreIgnored() {
+        assertFalse(aggregator.add(parser, TelemetryParser.TYPE_NONE, 0));
+        assertFalse(aggregator.isWindowOpen());
+    }
+}
@@ -0,0 +1,85 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TelemetryDeltaFilterTest {
+
+    private final TelemetryParser parser = new TelemetryParser();
+    private final TelemetryDeltaFilter filter = new TelemetryDeltaFilter(1000);
+
+    private int filter(String line, long nowMs) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        int type = parser.parse(bytes, 0, bytes.length);
+        return filter.filter(parser, type, nowMs);
+    }
+
+    @Test
+    public void firstRecordIsKeyframeAndRepeatsAreSuppressed() {
+        assertEquals(TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_ARM),
+                filter("a:90:90:45:45:120:120:10:10", 0));
+        assertEquals(0, filter("a:90:90:45:45:120:120:10:10", 50));
+        assertEquals(0, filter("a:90:90:45:45:120:120:10:10", 100));
+
+        assertEquals(1 << TelemetryDeltaFilter.ARM_CUR_LINK_ONE, filter("a:90:90:48:45:120:120:10:10", 150));
+        assertEquals(4, filter.getRecords());
+        assertEquals(1, filter.getKeyframes());
+        assertEquals(2, filter.getSuppressed());
+        assertEquals(1, filter.getDeltas());
+    }
+
+    @Test
+    public void streamsAreTrackedSeparately() {
+        filter("m:left:10:10:100:80", 0);
+        // 오른쪽 모터는 처음이라 왼쪽과 같은 값이어도 키프레임이다
+        assertEquals(TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_MOTOR), filter("m:right:10:10:100:80", 0));
+        assertEquals(1 << TelemetryDeltaFilter.MOTOR_PULSE_COUNT, filter("m:left:10:10:101:80", 10));
+        assertEquals(0, filter("m:right:10:10:100:80", 10));
+    }
+
+    @Test
+    public void deadbandIsMeasuredFromLastSentValue() {
+        filter.setAngleDeadband(1);
+        filter("s:90:90", 0);
+
+        assertEquals(0, filter("s:91:90", 10));
+        assertEquals(0, filter("s:89:90", 20));
+        // 1 씩 천천히 움직여도 마지막으로 보낸 90 에서 2 벗어나면 나간다
+        assertEquals(1 << TelemetryDeltaFilter.STEERING_CURRENT, filter("s:92:90", 30));
+        assertEquals(0, filter("s:93:90", 40));
+        assertEquals(1 << TelemetryDeltaFilter.STEERING_CURRENT, filter("s:94:90", 50));
+    }
+
+    @Test
+    public void speedDeadbandLeavesPulseCountExact() {
+        filter.setSpeedDeadband(2);
+        filter("m:left:10:10:100:80", 0);
+
+        assertEquals(0, filter("m:left:11:12:100:82", 10));
+        assertEquals(1 << TelemetryDeltaFilter.MOTOR_PULSE_COUNT, filter("m:left:11:12:101:82", 20));
+    }
+
+    @Test
+    public void keyframeRepeatsOnIntervalAndOnRequest() {
+        int full = TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_STEERING);
+        assertEquals(full, filter("s:90:90", 0));
+        assertEquals(0, filter("s:90:90", 999));
+        assertEquals(full, filter("s:90:90", 1000));
+        assertEquals(0, filter("s:90:90", 1100));
+
+        filter.requestKeyframe();
+        assertEquals(full, filter("s:90:90", 1200));
+        assertEquals(0, filter("s:90:90", 1300));
+        assertEquals(3, filter.getKeyframes());
+    }
+
+    @Test
+    public void unknownTypeIsIgnored() {
+        assertEquals(0, filter.filter(parser, TelemetryParser.TYPE_NONE, 0));
+        assertEquals(0, filter.getRecords());
+        assertEquals(0, TelemetryDeltaFilter.fullMask(TelemetryParser.TYPE_NONE));
+    }
+}
@@ -0,0 +1,93 @@
+package com.workisgood.abcv.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TelemetryParserTest {
+
+    private final TelemetryParser parser = new TelemetryParser();
+
+    private int parse(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void parsesMotorFrame() {
+        assertEquals(TelemetryParser.TYPE_MOTOR, parse("m:RIGHT:-120:85:123456:200\r"));
+        assertEquals(MotorTelemetry.SIDE_RIGHT, parser.motor.side);
+        assertEquals(-120, parser.motor.targetThrottle);
+        assertEquals(85, parser.motor.activeSpeed);
+        assertEquals(123456L, parser.motor.pulseCount);
+        assertEquals(200, parser.motor.pwmOut);
+    }
+
+    @Test
+    public void parsesSteeringAndArmFrames() {
+        assertEquals(TelemetryParser.TYPE_STEERING, parse("  s:90:95  "));
+        assertEquals(90, parser.steering.currentAngle);
+        assertEquals(95, parser.steering.targetAngle);
+
+        assertEquals(TelemetryParser.TYPE_ARM, parse("a:1:2:3:4:5:6:7:8"));
+        assertEquals(1, parser.arm.curBottom);
+        assertEquals(4, parser.arm.tgtLinkOne);
+        assertEquals(8, parser.arm.tgtGrip);
+    }
+
+    @Test
+    public void rejectsMalformedFramesWithoutTouchingRecords() {
+        assertEquals(TelemetryParser.TYPE_STEERING, parse("s:10:20"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("s:11"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("s:11:x2"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("m:up:1:2:3:4"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("a:1:2:3"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("x:1:2"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse("hello"));
+        assertEquals(TelemetryParser.TYPE_NONE, parse(""));
+        assertEquals(10, parser.steering.currentAngle);
+        assertEquals(20, parser.steering.targetAngle);
+        assertEquals(6, parser.getRejectedLines());
+    }
+
+    @Test
+    public void parsesBinaryFramesIntoSameRecords() {
+        MotorTelemetry motor = new MotorTelemetry();
+        motor.side = MotorTelemetry.SIDE_RIGHT;
+        motor.targetThrottle = -120;
+        motor.activeSpeed = 85;
+        motor.pulseCount = 123456;
+        motor.pwmOut = 200;
+        byte[] frame = new byte[SppFrame.MAX_FRAME_LENGTH];
+        int length = SppFrame.writeMotor(frame, 0, motor);
+
+        assertEquals(TelemetryParser.TYPE_MOTOR, parser.parseFrame(frame, 0, length));
+        assertTrue(parser.motor.sameAs(motor));
+        assertEquals(123456, parser.motor.pulseCount);
+
+        SteeringTelemetry steering = new SteeringTelemetry();
+        steering.currentAngle = -5;
+        steering.targetAngle = 95;
+        length = SppFrame.writeSteering(frame, 0, steering);
+        assertEquals(TelemetryParser.TYPE_STEERING, parser.parseFrame(frame, 0, length));
+        assertEquals(-5, parser.steering.currentAngle);
+        assertEquals(95, parser.steering.targetAngle);
+    }
+
+    @Test
+    public void rejectsBinaryFrameWithWrongShape() {
+        byte[] hello = SppFrame.hello(SppFrame.VERSION);
+        assertEquals(TelemetryParser.TYPE_NONE, parser.parseFrame(hello, 0, hello.length));
+        assertEquals(TelemetryParser.TYPE_NONE, parser.parseFrame(hello, 0, hello.length - 1));
+
+        ArmTelemetry arm = new ArmTelemetry();
+        byte[] frame = new byte[SppFrame.MAX_FRAME_LENGTH];
+        int length = SppFrame.writeArm(frame, 0, arm);
+        // 타입만 바꾸면 payload 길이가 맞지 않는다
+        frame[2] = (byte) SppFrame.TYPE_STEERING;
+        assertEquals(TelemetryParser.TYPE_NONE, parser.parseFrame(frame, 0, length));
+        assertEquals(3, parser.getRejectedLines());
+    }
+}
@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "ArduinoBluetoothControllerV2"
 include(":app")
+include(":protocol")
+include(":simulator")
  
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.workisgood.abcv.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 차량 → 앱 방향 RFCOMM 수신 버퍼 흉내. 고정 크기 링 버퍼이며 가득 차면 쓰는 쪽이 기다린다.
+ * 읽지 않고 쌓여 있는 바이트 수가 곧 앱 쪽 처리 적체(backlog)다.
+ * java.io.PipedInputStream 과 달리 스레드 생존 여부를 보지 않고, 1초 폴링 없이 바로 깨운다.
+ */
+final class BytePipe {
+
+    private final byte[] buffer;
+    private int head;
+    private int size;
+    private boolean writerClosed;
+    private boolean readerClosed;
+    private int maxBacklog;
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return BytePipe.this.read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BytePipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return backlog();
+        }
+
+        @Override
+        public void close() {
+            closeReader();
+        }
+    };
+
+    BytePipe(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    InputStream inputStream() {
+        return inputStream;
+    }
+
+    synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            while (size == buffer.length && !readerClosed && !writerClosed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted");
+                }
+            }
+            if (readerClosed || writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            int tail = (head + size) % buffer.length;
+            int chunk = Math.min(len, Math.min(buffer.length - size, buffer.length - tail));
+            System.arraycopy(b, off, buffer, tail, chunk);
+            size += chunk;
+            off += chunk;
+            len -= chunk;
+            if (size > maxBacklog) {
+                maxBacklog = size;
+            }
+            notifyAll();
+        }
+    }
+
+    synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (size == 0 && !writerClosed && !readerClosed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+        }
+        if (readerClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (size == 0) {
+            return -1;
+        }
+        int chunk = Math.min(len, Math.min(size, buffer.length - head));
+        System.arraycopy(buffer, head, b, off, chunk);
+        head = (head + chunk) % buffer.length;
+        size -= chunk;
+        notifyAll();
+        return chunk;
+    }
+
+    synchronized int backlog() {
+        return size;
+    }
+
+    synchronized int maxBacklog() {
+        return maxBacklog;
+    }
+
+    /** 남은 바이트는 마저 읽히고, 그 다음 read 는 EOF(-1) 를 돌려준다. */
+    synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    /** 소켓을 닫은 것처럼 막혀 있는 read 와 write 를 모두 IOException 으로 깨운다. */
+    synchronized void closeReader() {
+        readerClosed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,295 @@
+package com.workisgood.abcv.simulator;
+
+import com.workisgood.abcv.protocol.ArmTelemetry;
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.MotorTelemetry;
+import com.workisgood.abcv.protocol.SteeringTelemetry;
+
+/**
+ * 아두이노 펌웨어를 흉내 내는 차량 상태 모델.
+ * 글자 명령은 한 번에 목표값을 한 칸씩 옮기고, 상태 프레임(c:xxxx)은 눌린 입력을
+ * HOLD_REPEAT_HZ 로 반복한 것처럼 다룬다. 현재값은 step 마다 목표값을 일정 속도로 따라간다.
+ * 실제 펌웨어의 수치와 같을 필요는 없고, 명령이 텔레메트리에 반영되는 모양만 맞춘다.
+ */
+public final class VehicleModel {
+
+    public static final int MAX_THROTTLE = 255;
+    public static final int THROTTLE_STEP = 15;
+    public static final int STEER_CENTER = 90;
+    public static final int STEER_MIN = 45;
+    public static final int STEER_MAX = 135;
+    public static final int STEER_STEP = 5;
+    public static final int JOINT_MIN = 0;
+    public static final int JOINT_MAX = 180;
+    public static final int JOINT_STEP = 3;
+    public static final int HOLD_REPEAT_HZ = 20;
+
+    static final int JOINT_BOTTOM = 0;
+    static final int JOINT_LINK_ONE = 1;
+    static final int JOINT_LINK_TWO = 2;
+    static final int JOINT_GRIP = 3;
+
+    // 초당 변화량
+    private static final double SPEED_RATE = 400.0;
+    private static final double SERVO_RATE = 120.0;
+    private static final double PULSES_PER_SPEED_UNIT = 2.0;
+
+    private int throttle;
+    private final double[] speed = new double[2];
+    private final double[] pulses = new double[2];
+    private int steerTarget = STEER_CENTER;
+    private double steerCurrent = STEER_CENTER;
+    private final int[] jointTarget = {90, 90, 90, 90};
+    private final double[] jointCurrent = {90, 90, 90, 90};
+
+    private int heldMask;
+    private double holdCredit;
+    private long commands;
+
+    /** 글자 명령 하나를 적용한다. 모르는 바이트는 무시하고 false */
+    public synchronized boolean applyCommand(byte command) {
+        switch (command) {
+            case 'W':
+                nudgeThrottle(THROTTLE_STEP);
+                break;
+            case 'S':
+                nudgeThrottle(-THROTTLE_STEP);
+                break;
+            case 'A':
+                nudgeSteer(-STEER_STEP);
+                break;
+            case 'D':
+                nudgeSteer(STEER_STEP);
+                break;
+            // 팔 위/아래는 두 링크를 같이 움직이고, 좌/우는 바닥 회전이다
+            case 'K':
+                nudgeJoint(JOINT_LINK_ONE, JOINT_STEP);
+                nudgeJoint(JOINT_LINK_TWO, JOINT_STEP);
+                break;
+            case 'J':
+                nudgeJoint(JOINT_LINK_ONE, -JOINT_STEP);
+                nudgeJoint(JOINT_LINK_TWO, -JOINT_STEP);
+                break;
+            case 'H':
+                nudgeJoint(JOINT_BOTTOM, -JOINT_STEP);
+                break;
+            case 'L':
+                nudgeJoint(JOINT_BOTTOM, JOINT_STEP);
+                break;
+            case 'R':
+                nudgeJoint(JOINT_LINK_ONE, JOINT_STEP);
+                break;
+            case 'T':
+                nudgeJoint(JOINT_LINK_ONE, -JOINT_STEP);
+                break;
+            case 'Y':
+                nudgeJoint(JOINT_LINK_TWO, JOINT_STEP);
+                break;
+            case 'U':
+                nudgeJoint(JOINT_LINK_TWO, -JOINT_STEP);
+                break;
+            case 'I':
+                nudgeJoint(JOINT_GRIP, JOINT_STEP);
+                break;
+            case 'O':
+                nudgeJoint(JOINT_GRIP, -JOINT_STEP);
+                break;
+            case 'Q':
+                throttle = 0;
+                steerTarget = STEER_CENTER;
+                heldMask = 0;
+                break;
+            default:
+                return false;
+        }
+        commands++;
+        return true;
+    }
+
+    /** 상태 프레임으로 받은 눌린 입력 비트마스크 */
+    public synchronized void applyControlState(int mask) {
+        if (heldMask == 0 && mask != 0) {
+            // 누르자마자 한 칸 움직이도록 첫 반복을 바로 준다
+            holdCredit = 1.0;
+        }
+        heldMask = mask;
+        commands++;
+        applyHeld();
+    }
+
+    /** 경과 시간만큼 현재값을 목표값 쪽으로 옮긴다. */
+    public synchronized void step(long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        double seconds = elapsedNanos / 1e9;
+        if (heldMask != 0) {
+            holdCredit += seconds * HOLD_REPEAT_HZ;
+            applyHeld();
+        }
+        for (int side = 0; side < 2; side++) {
+            speed[side] = approach(speed[side], sideTarget(side), SPEED_RATE * seconds);
+            pulses[side] += Math.abs(speed[side]) * PULSES_PER_SPEED_UNIT * seconds;
+        }
+        steerCurrent = approach(steerCurrent, steerTarget, SERVO_RATE * seconds);
+        for (int i = 0; i < jointCurrent.length; i++) {
+            jointCurrent[i] = approach(jointCurrent[i], jointTarget[i], SERVO_RATE * seconds);
+        }
+    }
+
+    /** m:left|right:targetThrottle:activeSpeed:pulseCount:pwmOut */
+    public synchronized void appendMotorLine(StringBuilder sb, int side) {
+        int active = (int) Math.round(speed[side]);
+        sb.append("m:").append(side == 0 ? "left" : "right")
+                .append(':').append(sideTarget(side))
+                .append(':').append(active)
+                .append(':').append((long) pulses[side])
+                .append(':').append(Math.min(MAX_THROTTLE, Math.abs(active)))
+                .append('\n');
+    }
+
+    /** s:current:target */
+    public synchronized void appendSteeringLine(StringBuilder sb) {
+        sb.append("s:").append((int) Math.round(steerCurrent))
+                .append(':').append(steerTarget)
+                .append('\n');
+    }
+
+    /** a:bottom(cur:tgt):linkOne:linkTwo:grip */
+    public synchronized void appendArmLine(StringBuilder sb) {
+        sb.append("a:");
+        for (int i = 0; i < jointTarget.length; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append((int) Math.round(jointCurrent[i])).append(':').append(jointTarget[i]);
+        }
+        sb.append('\n');
+    }
+
+    /** appendMotorLine 과 같은 값을 레코드에 채운다 (바이너리 프레임용) */
+    public synchronized void fillMotor(MotorTelemetry motor, int side) {
+        int active = (int) Math.round(speed[side]);
+        motor.side = side;
+        motor.targetThrottle = sideTarget(side);
+        motor.activeSpeed = active;
+        motor.pulseCount = (long) pulses[side];
+        motor.pwmOut = Math.min(MAX_THROTTLE, Math.abs(active));
+    }
+
+    public synchronized void fillSteering(SteeringTelemetry steering) {
+        steering.currentAngle = (int) Math.round(steerCurrent);
+        steering.targetAngle = steerTarget;
+    }
+
+    public synchronized void fillArm(ArmTelemetry arm) {
+        arm.curBottom = (int) Math.round(jointCurrent[JOINT_BOTTOM]);
+        arm.tgtBottom = jointTarget[JOINT_BOTTOM];
+        arm.curLinkOne = (int) Math.round(jointCurrent[JOINT_LINK_ONE]);
+        arm.tgtLinkOne = jointTarget[JOINT_LINK_ONE];
+        arm.curLinkTwo = (int) Math.round(jointCurrent[JOINT_LINK_TWO]);
+        arm.tgtLinkTwo = jointTarget[JOINT_LINK_TWO];
+        arm.curGrip = (int) Math.round(jointCurrent[JOINT_GRIP]);
+        arm.tgtGrip = jointTarget[JOINT_GRIP];
+    }
+
+    public synchronized int getThrottle() {
+        return throttle;
+    }
+
+    public synchronized int getSteerTarget() {
+        return steerTarget;
+    }
+
+    public synchronized int getJointTarget(int joint) {
+        return jointTarget[joint];
+    }
+
+    public synchronized long getCommands() {
+        return commands;
+    }
+
+    // 좌회전이면 왼쪽, 우회전이면 오른쪽 바퀴를 조향 각도만큼 늦춘다
+    private int sideTarget(int side) {
+        int offset = steerTarget - STEER_CENTER;
+        int inner = side == 0 ? -offset : offset;
+        if (inner <= 0) {
+            return throttle;
+        }
+        return throttle * (STEER_MAX - STEER_CENTER - inner) / (STEER_MAX - STEER_CENTER);
+    }
+
+    private void applyHeld() {
+        while (holdCredit >= 1.0) {
+            holdCredit -= 1.0;
+            int mask = heldMask;
+            if ((mask & ControlState.DRIVE_FORWARD) != 0) {
+                nudgeThrottle(THROTTLE_STEP);
+            }
+            if ((mask & ControlState.DRIVE_BACKWARD) != 0) {
+                nudgeThrottle(-THROTTLE_STEP);
+            }
+            if ((mask & ControlState.DRIVE_LEFT) != 0) {
+                nudgeSteer(-STEER_STEP);
+            }
+            if ((mask & ControlState.DRIVE_RIGHT) != 0) {
+                nudgeSteer(STEER_STEP);
+            }
+            if ((mask & ControlState.ARM_UP) != 0) {
+                nudgeJoint(JOINT_LINK_ONE, JOINT_STEP);
+                nudgeJoint(JOINT_LINK_TWO, JOINT_STEP);
+            }
+            if ((mask & ControlState.ARM_DOWN) != 0) {
+                nudgeJoint(JOINT_LINK_ONE, -JOINT_STEP);
+                nudgeJoint(JOINT_LINK_TWO, -JOINT_STEP);
+            }
+            if ((mask & ControlState.ARM_LEFT) != 0) {
+                nudgeJoint(JOINT_BOTTOM, -JOINT_STEP);
+            }
+            if ((mask & ControlState.ARM_RIGHT) != 0) {
+                nudgeJoint(JOINT_BOTTOM, JOINT_STEP);
+            }
+            if ((mask & ControlState.LINK1_UP) != 0) {
+                nudgeJoint(JOINT_LINK_ONE, JOINT_STEP);
+            }
+            if ((mask & ControlState.LINK1_DOWN) != 0) {
+                nudgeJoint(JOINT_LINK_ONE, -JOINT_STEP);
+            }
+            if ((mask & ControlState.LINK2_UP) != 0) {
+                nudgeJoint(JOINT_LINK_TWO, JOINT_STEP);
+            }
+            if ((mask & ControlState.LINK2_DOWN) != 0) {
+                nudgeJoint(JOINT_LINK_TWO, -JOINT_STEP);
+            }
+            if ((mask & ControlState.GRIP_GRAB) != 0) {
+                nudgeJoint(JOINT_GRIP, JOINT_STEP);
+            }
+            if ((mask & ControlState.GRIP_RELEASE) != 0) {
+                nudgeJoint(JOINT_GRIP, -JOINT_STEP);
+            }
+        }
+    }
+
+    private void nudgeThrottle(int delta) {
+        throttle = clamp(throttle + delta, -MAX_THROTTLE, MAX_THROTTLE);
+    }
+
+    private void nudgeSteer(int delta) {
+        steerTarget = clamp(steerTarget + delta, STEER_MIN, STEER_MAX);
+    }
+
+    private void nudgeJoint(int joint, int delta) {
+        jointTarget[joint] = clamp(jointTarget[joint] + delta, JOINT_MIN, JOINT_MAX);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static double approach(double current, double target, double maxDelta) {
+        if (current < target) {
+            return Math.min(target, current + maxDelta);
+        }
+        return Math.max(target, current - maxDelta);
+    }
+}
@@ -0,0 +1,441 @@
+package com.workisgood.abcv.simulator;
+
+import com.workisgood.abcv.protocol.ArmTelemetry;
+import com.workisgood.abcv.protocol.MotorTelemetry;
+import com.workisgood.abcv.protocol.SppFrame;
+import com.workisgood.abcv.protocol.SteeringTelemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BluetoothSocket 자리에 꽂아 쓰는 가상 차량.
+ * getOutputStream 으로 들어온 글자 명령/상태 프레임을 VehicleModel 에 적용하고,
+ * 전용 스레드가 설정된 주기로 m:/s:/a: 라인을 getInputStream 쪽으로 내보낸다.
+ * 깨진 라인, 두 번에 나눠 쓰는 라인, 일정 시간 멈췄다가 몰아서 보내는 stall 을 섞을 수 있다.
+ * 방출 일정은 절대 시각 기준이라 stall 이나 수신 버퍼가 가득 차서 늦어진 만큼은 나중에 한꺼번에 나간다.
+ * binaryFraming 을 켜면 앱의 hello 프레임에 답하고 그 뒤로는 텔레메트리를 SppFrame 으로 보낸다.
+ * 끄면 hello 를 모르는 기존 펌웨어처럼 그 바이트를 명령으로 흘려 버린다.
+ */
+public final class VirtualVehicle implements Closeable {
+
+    /** 0 Hz 인 스트림은 내보내지 않는다. 확률은 라인 하나당이다. */
+    public static final class Config {
+        int motorHz = 20;
+        int steeringHz = 10;
+        int armHz = 10;
+        double garbageProbability;
+        double partialLineProbability;
+        double stallProbability;
+        long stallMillis = 300;
+        int receiveBufferBytes = 4096;
+        long seed = 1L;
+        boolean binaryFraming;
+
+        public Config motorHz(int hz) {
+            motorHz = hz;
+            return this;
+        }
+
+        public Config steeringHz(int hz) {
+            steeringHz = hz;
+            return this;
+        }
+
+        public Config armHz(int hz) {
+            armHz = hz;
+            return this;
+        }
+
+        public Config garbageProbability(double p) {
+            garbageProbability = p;
+            return this;
+        }
+
+        public Config partialLineProbability(double p) {
+            partialLineProbability = p;
+            return this;
+        }
+
+        public Config stall(double probability, long millis) {
+            stallProbability = probability;
+            stallMillis = millis;
+            return this;
+        }
+
+        public Config receiveBufferBytes(int bytes) {
+            receiveBufferBytes = bytes;
+            return this;
+        }
+
+        public Config seed(long value) {
+            seed = value;
+            return this;
+        }
+
+        /** hello 에 답하고 바이너리 프레임으로 바꾸는 펌웨어인지 */
+        public Config binaryFraming(boolean supported) {
+            binaryFraming = supported;
+            return this;
+        }
+    }
+
+    private static final int STREAM_MOTOR = 0;
+    private static final int STREAM_STEERING = 1;
+    private static final int STREAM_ARM = 2;
+    private static final byte[] GARBAGE_LEAD = "#@!?xz~".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_GARBAGE_LENGTH = 40;
+
+    private final Config config;
+    private final VehicleModel model = new VehicleModel();
+    private final BytePipe pipe;
+    private final CommandSink commandSink = new CommandSink();
+    private final Random random;
+    private final Thread thread;
+    private final StringBuilder line = new StringBuilder(64);
+    private final byte[] frame = new byte[SppFrame.MAX_FRAME_LENGTH];
+    private final MotorTelemetry motor = new MotorTelemetry();
+    private final SteeringTelemetry steering = new SteeringTelemetry();
+    private final ArmTelemetry arm = new ArmTelemetry();
+
+    private volatile boolean running;
+    // 명령 쪽이 hello 를 받으면 켜고, 방출 스레드가 답을 보낸 뒤 바이너리로 넘어간다
+    private volatile boolean helloPending;
+    private volatile boolean binaryMode;
+    private volatile long linesEmitted;
+    private volatile long bytesEmitted;
+    private volatile long garbageLines;
+    private volatile long partialLines;
+    private volatile long stalls;
+    private volatile long lagNanos;
+
+    public VirtualVehicle(Config config) {
+        this.config = config;
+        this.pipe = new BytePipe(config.receiveBufferBytes);
+        this.random = new Random(config.seed);
+        this.thread = new Thread(this::runLoop, "virtual-vehicle");
+        this.thread.setDaemon(true);
+    }
+
+    /** 차량 → 앱 (앱이 읽는 쪽) */
+    public InputStream getInputStream() {
+        return pipe.inputStream();
+    }
+
+    /** 앱 → 차량 (앱이 명령을 쓰는 쪽) */
+    public OutputStream getOutputStream() {
+        return commandSink;
+    }
+
+    public VehicleModel getModel() {
+        return model;
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /** 방출을 멈추고 송신 측을 닫는다. 이미 보낸 바이트는 마저 읽힌 뒤 EOF 가 된다. */
+    @Override
+    public void close() {
+        running = false;
+        pipe.closeWriter();
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** hello 에 답하고 텔레메트리를 바이너리 프레임으로 보내는 중인지 */
+    public boolean isBinaryMode() {
+        return binaryMode;
+    }
+
+    /** 정상 텔레메트리 라인 수 (깨진 라인 제외, motor 는 좌우 각각 1). 바이너리 모드에서는 프레임 수 */
+    public long getLinesEmitted() {
+        return linesEmitted;
+    }
+
+    public long getBytesEmitted() {
+        return bytesEmitted;
+    }
+
+    public long getGarbageLines() {
+        return garbageLines;
+    }
+
+    public long getPartialLines() {
+        return partialLines;
+    }
+
+    public long getStalls() {
+        return stalls;
+    }
+
+    public long getCommandsReceived() {
+        return model.getCommands();
+    }
+
+    /** 앱이 아직 읽지 않은 수신 버퍼 바이트 수 */
+    public int getBacklogBytes() {
+        return pipe.backlog();
+    }
+
+    public int getMaxBacklogBytes() {
+        return pipe.maxBacklog();
+    }
+
+    /** 방출 일정보다 늦어진 정도. 앱이 못 따라오면 수신 버퍼가 차서 이 값이 계속 커진다. */
+    public long getLagNanos() {
+        return lagNanos;
+    }
+
+    private void runLoop() {
+        long[] periods = {
+                periodNanos(config.motorHz), periodNanos(config.steeringHz), periodNanos(config.armHz)};
+        long start = System.nanoTime();
+        long[] deadlines = {start, start, start};
+        long lastStep = start;
+        try {
+            while (running) {
+                int stream = -1;
+                for (int i = 0; i < periods.length; i++) {
+                    if (periods[i] > 0 && (stream < 0 || deadlines[i] < deadlines[stream])) {
+                        stream = i;
+                    }
+                }
+                if (stream < 0) {
+                    return;
+                }
+                long now = System.nanoTime();
+                long wait = deadlines[stream] - now;
+                if (wait > 0) {
+                    lagNanos = 0;
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                lagNanos = -wait;
+                model.step(now - lastStep);
+                lastStep = now;
+                if (config.stallProbability > 0 && random.nextDouble() < config.stallProbability) {
+                    stalls++;
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.stallMillis));
+                    continue;
+                }
+                emit(stream);
+                deadlines[stream] += periods[stream];
+            }
+        } catch (IOException e) {
+            // 앱이 수신 측을 닫았다
+        } finally {
+            running = false;
+            pipe.closeWriter();
+        }
+    }
+
+    private void emit(int stream) throws IOException {
+        if (helloPending) {
+            // 답은 방출 스레드에서만 써서 나눠 쓰는 프레임 사이에 끼지 않게 한다
+            helloPending = false;
+            byte[] hello = SppFrame.hello(SppFrame.VERSION);
+            pipe.write(hello, 0, hello.length);
+            bytesEmitted += hello.length;
+            binaryMode = true;
+        }
+        if (binaryMode) {
+            emitFrames(stream);
+            return;
+        }
+        if (config.garbageProbability > 0 && random.nextDouble() < config.garbageProbability) {
+            writeGarbage();
+        }
+        switch (stream) {
+            case STREAM_MOTOR:
+                line.setLength(0);
+                model.appendMotorLine(line, 0);
+                writeLine();
+                line.setLength(0);
+                model.appendMotorLine(line, 1);
+                writeLine();
+                break;
+            case STREAM_STEERING:
+                line.setLength(0);
+                model.appendSteeringLine(line);
+                writeLine();
+                break;
+            default:
+                line.setLength(0);
+                model.appendArmLine(line);
+                writeLine();
+                break;
+        }
+    }
+
+    private void emitFrames(int stream) throws IOException {
+        switch (stream) {
+            case STREAM_MOTOR:
+                model.fillMotor(motor, 0);
+                writeFrame(SppFrame.writeMotor(frame, 0, motor));
+                model.fillMotor(motor, 1);
+                writeFrame(SppFrame.writeMotor(frame, 0, motor));
+                break;
+            case STREAM_STEERING:
+                model.fillSteering(steering);
+                writeFrame(SppFrame.writeSteering(frame, 0, steering));
+                break;
+            default:
+                model.fillArm(arm);
+                writeFrame(SppFrame.writeArm(frame, 0, arm));
+                break;
+        }
+    }
+
+    private void writeLine() throws IOException {
+        byte[] bytes = line.toString().getBytes(StandardCharsets.US_ASCII);
+        writeSplit(bytes, bytes.length);
+        linesEmitted++;
+    }
+
+    // 바이너리 모드의 깨진 라인: 같은 프레임의 한 바이트를 뒤집은 사본을 먼저 보낸다
+    private void writeFrame(int length) throws IOException {
+        if (config.garbageProbability > 0 && random.nextDouble() < config.garbageProbability) {
+            byte[] corrupt = new byte[length];
+            System.arraycopy(frame, 0, corrupt, 0, length);
+            corrupt[1 + random.nextInt(length - 1)] ^= (byte) (1 << random.nextInt(8));
+            pipe.write(corrupt, 0, length);
+            garbageLines++;
+            bytesEmitted += length;
+        }
+        writeSplit(frame, length);
+        linesEmitted++;
+    }
+
+    private void writeSplit(byte[] bytes, int length) throws IOException {
+        if (config.partialLineProbability > 0 && random.nextDouble() < config.partialLineProbability) {
+            // 라인 중간에서 끊어 두 번에 나눠 보낸다
+            int split = 1 + random.nextInt(length - 1);
+            pipe.write(bytes, 0, split);
+            Thread.yield();
+            pipe.write(bytes, split, length - split);
+            partialLines++;
+        } else {
+            pipe.write(bytes, 0, length);
+        }
+        bytesEmitted += length;
+    }
+
+    // 파서가 어떤 타입으로도 받아들이지 않는 첫 글자로 시작하는 한 줄
+    private void writeGarbage() throws IOException {
+        int length = 1 + random.nextInt(MAX_GARBAGE_LENGTH);
+        byte[] bytes = new byte[length + 1];
+        bytes[0] = GARBAGE_LEAD[random.nextInt(GARBAGE_LEAD.length)];
+        for (int i = 1; i < length; i++) {
+            bytes[i] = (byte) (0x21 + random.nextInt(0x7E - 0x21));
+        }
+        bytes[length] = '\n';
+        pipe.write(bytes, 0, bytes.length);
+        garbageLines++;
+        bytesEmitted += bytes.length;
+    }
+
+    private static long periodNanos(int hz) {
+        return hz <= 0 ? 0 : 1_000_000_000L / hz;
+    }
+
+    // 글자 명령은 바로 적용하고, "c:xxxx\n" 상태 프레임은 줄 끝까지 모았다가 적용한다.
+    // 바이너리를 아는 펌웨어면 sync 로 시작하는 hello 프레임도 모은다
+    private final class CommandSink extends OutputStream {
+        private final byte[] frame = new byte[16];
+        private int frameLength = -1;
+        private final byte[] binary = new byte[SppFrame.MAX_FRAME_LENGTH];
+        private int binaryLength;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!running) {
+                throw new IOException("Vehicle closed");
+            }
+            accept((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!running) {
+                throw new IOException("Vehicle closed");
+            }
+            for (int i = off; i < off + len; i++) {
+                accept(b[i]);
+            }
+        }
+
+        private synchronized void accept(byte b) {
+            if (binaryLength > 0) {
+                acceptBinary(b);
+                return;
+            }
+            if (frameLength >= 0) {
+                if (b == '\n') {
+                    applyFrame();
+                    frameLength = -1;
+                } else if (frameLength < frame.length) {
+                    frame[frameLength++] = b;
+                } else {
+                    frameLength = -1;
+                }
+                return;
+            }
+            if (b == 'c') {
+                frameLength = 0;
+                return;
+            }
+            if (config.binaryFraming && (b & 0xFF) == SppFrame.SYNC) {
+                binary[0] = b;
+                binaryLength = 1;
+                return;
+            }
+            model.applyCommand(b);
+        }
+
+        private void acceptBinary(byte b) {
+            binary[binaryLength++] = b;
+            int payload = binary[1] & 0xFF;
+            if (payload > SppFrame.MAX_PAYLOAD) {
+                binaryLength = 0;
+                return;
+            }
+            if (binaryLength < SppFrame.HEADER_LENGTH + payload + SppFrame.CRC_LENGTH) {
+                return;
+            }
+            if (SppFrame.isValid(binary, 0, binaryLength)
+                    && SppFrame.helloVersion(binary, 0, binaryLength) >= SppFrame.VERSION
+                    && !binaryMode) {
+                helloPending = true;
+            }
+            binaryLength = 0;
+        }
+
+        private void applyFrame() {
+            if (frameLength < 2 || frame[0] != ':') {
+                return;
+            }
+            int mask = 0;
+            for (int i = 1; i < frameLength; i++) {
+                int digit = Character.digit(frame[i], 16);
+                if (digit < 0) {
+                    return;
+                }
+                mask = (mask << 4) | digit;
+            }
+            model.applyControlState(mask);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.workisgood.abcv.simulator;
+
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class VehicleModelTest {
+
+    private static int parse(TelemetryParser parser, StringBuilder sb) {
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        // 끝의 '\n' 은 LineFramer 가 떼어 내므로 빼고 넘긴다
+        return parser.parse(bytes, 0, bytes.length - 1);
+    }
+
+    @Test
+    public void letterCommandsMoveTargetsByOneStep() {
+        VehicleModel model = new VehicleModel();
+
+        assertTrue(model.applyCommand((byte) 'W'));
+        assertTrue(model.applyCommand((byte) 'W'));
+        assertTrue(model.applyCommand((byte) 'D'));
+        assertTrue(model.applyCommand((byte) 'I'));
+        assertFalse(model.applyCommand((byte) 'z'));
+
+        assertEquals(2 * VehicleModel.THROTTLE_STEP, model.getThrottle());
+        assertEquals(VehicleModel.STEER_CENTER + VehicleModel.STEER_STEP, model.getSteerTarget());
+        assertEquals(90 + VehicleModel.JOINT_STEP, model.getJointTarget(VehicleModel.JOINT_GRIP));
+        assertEquals(4, model.getCommands());
+    }
+
+    @Test
+    public void targetsAreClamped() {
+        VehicleModel model = new VehicleModel();
+        for (int i = 0; i < 100; i++) {
+            model.applyCommand((byte) 'S');
+            model.applyCommand((byte) 'A');
+        }
+        assertEquals(-VehicleModel.MAX_THROTTLE, model.getThrottle());
+        assertEquals(VehicleModel.STEER_MIN, model.getSteerTarget());
+
+        model.applyCommand((byte) 'Q');
+        assertEquals(0, model.getThrottle());
+        assertEquals(VehicleModel.STEER_CENTER, model.getSteerTarget());
+    }
+
+    @Test
+    public void heldStateRepeatsAtHoldRate() {
+        VehicleModel model = new VehicleModel();
+
+        model.applyControlState(ControlState.DRIVE_FORWARD);
+        assertEquals(VehicleModel.THROTTLE_STEP, model.getThrottle());
+
+        // 0.5초 동안 누르고 있으면 HOLD_REPEAT_HZ / 2 번 더 움직인다
+        model.step(500_000_000L);
+        int expected = (1 + VehicleModel.HOLD_REPEAT_HZ / 2) * VehicleModel.THROTTLE_STEP;
+        assertEquals(expected, model.getThrottle());
+
+        model.applyControlState(0);
+        model.step(500_000_000L);
+        assertEquals(expected, model.getThrottle());
+    }
+
+    @Test
+    public void emittedLinesParseAndTrackTargets() {
+        VehicleModel model = new VehicleModel();
+        TelemetryParser parser = new TelemetryParser();
+        StringBuilder sb = new StringBuilder();
+        model.applyCommand((byte) 'W');
+        model.applyCommand((byte) 'R');
+        model.step(1_000_000_000L);
+
+        model.appendMotorLine(sb, 1);
+        assertEquals(TelemetryParser.TYPE_MOTOR, parse(parser, sb));
+        assertEquals(VehicleModel.THROTTLE_STEP, parser.motor.targetThrottle);
+        assertEquals(VehicleModel.THROTTLE_STEP, parser.motor.activeSpeed);
+        assertTrue(parser.motor.pulseCount > 0);
+
+        sb.setLength(0);
+        model.appendSteeringLine(sb);
+        assertEquals(TelemetryParser.TYPE_STEERING, parse(parser, sb));
+        assertEquals(VehicleModel.STEER_CENTER, parser.steering.targetAngle);
+
+        sb.setLength(0);
+        model.appendArmLine(sb);
+        assertEquals(TelemetryParser.TYPE_ARM, parse(parser, sb));
+        assertEquals(90 + VehicleModel.JOINT_STEP, parser.arm.tgtLinkOne);
+        assertEquals(90 + VehicleModel.JOINT_STEP, parser.arm.curLinkOne);
+    }
+}
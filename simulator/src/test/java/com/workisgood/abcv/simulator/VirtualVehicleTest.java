@@ -0,0 +1,191 @@
+package com.workisgood.abcv.simulator;
+
+import com.workisgood.abcv.protocol.ControlState;
+import com.workisgood.abcv.protocol.LineFramer;
+import com.workisgood.abcv.protocol.SppFrame;
+import com.workisgood.abcv.protocol.SppFramer;
+import com.workisgood.abcv.protocol.TelemetryParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class VirtualVehicleTest {
+
+    private VirtualVehicle vehicle;
+
+    @After
+    public void tearDown() {
+        if (vehicle != null) {
+            vehicle.close();
+        }
+    }
+
+    // EOF 까지 읽으며 인식된 프레임 수를 센다
+    private static long drain(InputStream in, LineFramer framer, TelemetryParser parser) throws IOException {
+        long[] frames = new long[1];
+        byte[] buffer = new byte[64];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            framer.feed(buffer, 0, n, (line, off, len) -> {
+                if (parser.parse(line, off, len) != TelemetryParser.TYPE_NONE) {
+                    frames[0]++;
+                }
+            });
+        }
+        return frames[0];
+    }
+
+    @Test
+    public void everyEmittedLineParsesDespiteGarbageAndSplits() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config()
+                .motorHz(500).steeringHz(250).armHz(250)
+                .garbageProbability(0.1)
+                .partialLineProbability(0.3)
+                .seed(42L));
+        vehicle.start();
+        LineFramer framer = new LineFramer(128);
+        TelemetryParser parser = new TelemetryParser();
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            vehicle.close();
+        });
+        closer.start();
+
+        long frames = drain(vehicle.getInputStream(), framer, parser);
+        closer.join();
+
+        assertTrue(vehicle.getLinesEmitted() > 100);
+        assertTrue(vehicle.getGarbageLines() > 0);
+        assertTrue(vehicle.getPartialLines() > 0);
+        assertEquals(vehicle.getLinesEmitted(), frames);
+        assertEquals(vehicle.getGarbageLines(), parser.getRejectedLines());
+        assertEquals(0, framer.getDroppedLines());
+    }
+
+    @Test
+    public void binaryPeerAnswersHelloAndFramesSurviveCorruption() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config()
+                .motorHz(500).steeringHz(250).armHz(250)
+                .garbageProbability(0.1)
+                .partialLineProbability(0.3)
+                .binaryFraming(true)
+                .seed(7L));
+        vehicle.start();
+        byte[] hello = SppFrame.hello(SppFrame.VERSION);
+        vehicle.getOutputStream().write(hello);
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            vehicle.close();
+        });
+        closer.start();
+
+        SppFramer framer = new SppFramer(128);
+        TelemetryParser parser = new TelemetryParser();
+        long[] counts = new long[3];
+        SppFramer.Listener listener = new SppFramer.Listener() {
+            @Override
+            public void onLine(byte[] line, int off, int len) {
+                if (parser.parse(line, off, len) != TelemetryParser.TYPE_NONE) {
+                    counts[0]++;
+                }
+            }
+
+            @Override
+            public void onBinaryFrame(byte[] buf, int off, int len) {
+                if (SppFrame.type(buf, off) == SppFrame.TYPE_HELLO) {
+                    counts[2]++;
+                } else if (parser.parseFrame(buf, off, len) != TelemetryParser.TYPE_NONE) {
+                    counts[1]++;
+                }
+            }
+        };
+        InputStream in = vehicle.getInputStream();
+        byte[] buffer = new byte[64];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            framer.feed(buffer, 0, n, listener);
+        }
+        closer.join();
+
+        assertTrue(vehicle.isBinaryMode());
+        assertEquals(1, counts[2]);
+        assertTrue(vehicle.getGarbageLines() > 0);
+        // hello 전에 나간 라인과 그 뒤의 프레임을 합치면 하나도 빠지지 않는다
+        assertEquals(vehicle.getLinesEmitted(), counts[0] + counts[1]);
+        assertTrue(counts[1] > 100);
+        // 깨진 사본의 payload 에 sync 가 섞여 있으면 한 사본에서 두 번 이상 어긋날 수 있다
+        assertTrue(framer.getCrcErrors() >= vehicle.getGarbageLines());
+    }
+
+    @Test
+    public void legacyPeerIgnoresHello() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config().motorHz(200).steeringHz(0).armHz(0));
+        vehicle.start();
+
+        vehicle.getOutputStream().write(SppFrame.hello(SppFrame.VERSION));
+        Thread.sleep(50);
+        vehicle.close();
+
+        long frames = drain(vehicle.getInputStream(), new LineFramer(128), new TelemetryParser());
+        assertFalse(vehicle.isBinaryMode());
+        assertEquals(0, vehicle.getCommandsReceived());
+        assertEquals(vehicle.getLinesEmitted(), frames);
+    }
+
+    @Test
+    public void commandsWrittenToOutputStreamReachModel() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config().motorHz(0).steeringHz(0).armHz(0));
+        vehicle.start();
+
+        vehicle.getOutputStream().write("WWA".getBytes(StandardCharsets.US_ASCII));
+        vehicle.getOutputStream().write(ControlState.encodeFrame(ControlState.GRIP_GRAB));
+
+        VehicleModel model = vehicle.getModel();
+        assertEquals(2 * VehicleModel.THROTTLE_STEP, model.getThrottle());
+        assertEquals(VehicleModel.STEER_CENTER - VehicleModel.STEER_STEP, model.getSteerTarget());
+        assertEquals(90 + VehicleModel.JOINT_STEP, model.getJointTarget(VehicleModel.JOINT_GRIP));
+        assertEquals(4, vehicle.getCommandsReceived());
+    }
+
+    @Test
+    public void stalledReaderBacksUpReceiveBuffer() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config()
+                .motorHz(1000).steeringHz(0).armHz(0)
+                .receiveBufferBytes(512));
+        vehicle.start();
+
+        Thread.sleep(200);
+
+        assertEquals(512, vehicle.getBacklogBytes());
+        assertEquals(512, vehicle.getMaxBacklogBytes());
+        assertTrue(vehicle.getLagNanos() > 0);
+    }
+
+    @Test
+    public void closingInputStreamStopsVehicle() throws Exception {
+        vehicle = new VirtualVehicle(new VirtualVehicle.Config().motorHz(100));
+        vehicle.start();
+        InputStream in = vehicle.getInputStream();
+        assertTrue(in.read(new byte[16]) > 0);
+
+        in.close();
+
+        try {
+            in.read(new byte[16]);
+            fail("read after close");
+        } catch (IOException expected) {
+        }
+    }
+}